@@ -0,0 +1,217 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.benchmarks;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.red5.io.object.ClassCodec;
+import org.red5.io.object.Deserializer;
+import org.red5.io.object.Input;
+import org.red5.io.object.Output;
+import org.red5.io.object.Serializer;
+
+/**
+ * AMF0 and AMF3 serialization of the objects a server writes and reads the most: the command object of a connect and a typed object as sent
+ * by shared objects and remote calls, with and without the class codecs.
+ *
+ * @author The Red5 Project
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AMFBenchmark {
+
+    @Param({ "amf0", "amf3" })
+    public String encoding;
+
+    @Param({ "false", "true" })
+    public boolean classCodecs;
+
+    private Map<String, Object> connectParams;
+
+    private StreamInfo streamInfo;
+
+    private byte[] connectBytes, streamInfoBytes;
+
+    private IoBuffer out;
+
+    @Setup
+    public void setUp() {
+        ClassCodec.setEnabled(classCodecs);
+        connectParams = Fixtures.connectParams();
+        streamInfo = new StreamInfo();
+        streamInfo.setName("stream1");
+        streamInfo.setPublishedName("stream1_720p");
+        streamInfo.setCreated(new Date(1700000000000L));
+        streamInfo.setBytesReceived(123456789L);
+        streamInfo.setCurrentTimestamp(3600000);
+        streamInfo.setVideoCodec("AVC");
+        streamInfo.setAudioCodec("AAC");
+        streamInfo.setWidth(1280);
+        streamInfo.setHeight(720);
+        streamInfo.setRecording(false);
+        out = IoBuffer.allocate(1024).setAutoExpand(true);
+        connectBytes = toArray(write(connectParams));
+        streamInfoBytes = toArray(write(streamInfo));
+    }
+
+    @Benchmark
+    public IoBuffer writeConnect() {
+        return write(connectParams);
+    }
+
+    @Benchmark
+    public Object readConnect() {
+        return read(connectBytes);
+    }
+
+    @Benchmark
+    public IoBuffer writeTypedObject() {
+        return write(streamInfo);
+    }
+
+    @Benchmark
+    public Object readTypedObject() {
+        return read(streamInfoBytes);
+    }
+
+    private IoBuffer write(Object object) {
+        out.clear();
+        Output output = "amf3".equals(encoding) ? new org.red5.io.amf3.Output(out) : new org.red5.io.amf.Output(out);
+        Serializer.serialize(output, object);
+        return out.flip();
+    }
+
+    private Object read(byte[] bytes) {
+        IoBuffer in = IoBuffer.wrap(bytes);
+        Input input = "amf3".equals(encoding) ? new org.red5.io.amf3.Input(in) : new org.red5.io.amf.Input(in);
+        return Deserializer.deserialize(input, Object.class);
+    }
+
+    private static byte[] toArray(IoBuffer buf) {
+        byte[] bytes = new byte[buf.remaining()];
+        buf.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Typed object written with its class name.
+     */
+    public static class StreamInfo {
+
+        private String name, publishedName, videoCodec, audioCodec;
+
+        private Date created;
+
+        private long bytesReceived;
+
+        private int currentTimestamp, width, height;
+
+        private boolean recording;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getPublishedName() {
+            return publishedName;
+        }
+
+        public void setPublishedName(String publishedName) {
+            this.publishedName = publishedName;
+        }
+
+        public String getVideoCodec() {
+            return videoCodec;
+        }
+
+        public void setVideoCodec(String videoCodec) {
+            this.videoCodec = videoCodec;
+        }
+
+        public String getAudioCodec() {
+            return audioCodec;
+        }
+
+        public void setAudioCodec(String audioCodec) {
+            this.audioCodec = audioCodec;
+        }
+
+        public Date getCreated() {
+            return created;
+        }
+
+        public void setCreated(Date created) {
+            this.created = created;
+        }
+
+        public long getBytesReceived() {
+            return bytesReceived;
+        }
+
+        public void setBytesReceived(long bytesReceived) {
+            this.bytesReceived = bytesReceived;
+        }
+
+        public int getCurrentTimestamp() {
+            return currentTimestamp;
+        }
+
+        public void setCurrentTimestamp(int currentTimestamp) {
+            this.currentTimestamp = currentTimestamp;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public void setWidth(int width) {
+            this.width = width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public void setHeight(int height) {
+            this.height = height;
+        }
+
+        public boolean isRecording() {
+            return recording;
+        }
+
+        public void setRecording(boolean recording) {
+            this.recording = recording;
+        }
+
+    }
+
+}
@@ -0,0 +1,137 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.benchmarks;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+
+/**
+ * Runs the benchmarks and optionally compares the scores with those of an earlier run. The arguments are the ones of the JMH command line
+ * plus these:
+ *
+ * <pre>
+ * --save file        writes the scores of this run to the file, to be used as baseline later
+ * --baseline file    compares the scores of this run with those in the file
+ * --threshold 0.1    fraction by which a score may be worse than its baseline, 0.1 by default
+ * </pre>
+ *
+ * A run compared with a baseline exits with status 1 when a benchmark got slower than the threshold allows: a throughput below its
+ * baseline, or a time per operation above it, by more than the threshold.
+ *
+ * @author The Red5 Project
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        File baseline = null, save = null;
+        double threshold = 0.1d;
+        List<String> jmhArgs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--baseline":
+                    baseline = new File(args[++i]);
+                    break;
+                case "--save":
+                    save = new File(args[++i]);
+                    break;
+                case "--threshold":
+                    threshold = Double.parseDouble(args[++i]);
+                    break;
+                default:
+                    jmhArgs.add(args[i]);
+            }
+        }
+        Collection<RunResult> results = new Runner(new CommandLineOptions(jmhArgs.toArray(new String[0]))).run();
+        if (save != null) {
+            save(results, save);
+        }
+        if (baseline != null && !compare(results, load(baseline), threshold)) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Compares the scores of a run with their baseline and prints the comparison.
+     *
+     * @param results
+     *            results of the run
+     * @param baseline
+     *            baseline scores by benchmark id
+     * @param threshold
+     *            fraction by which a score may be worse than its baseline
+     * @return true if no benchmark regressed
+     */
+    public static boolean compare(Collection<RunResult> results, Properties baseline, double threshold) {
+        boolean passed = true;
+        System.out.printf("%nComparison with baseline, threshold %.1f%%%n", threshold * 100d);
+        for (RunResult result : results) {
+            String id = id(result);
+            String value = baseline.getProperty(id);
+            if (value == null) {
+                System.out.printf("  %-90s no baseline%n", id);
+                continue;
+            }
+            double base = Double.parseDouble(value);
+            double score = result.getPrimaryResult().getScore();
+            // higher is better for throughput, lower for the time per operation of the other modes
+            double change = base != 0d ? (score - base) / base : 0d;
+            boolean regressed = result.getParams().getMode() == Mode.Throughput ? change < -threshold : change > threshold;
+            System.out.printf("  %-90s %12.3f -> %12.3f %s %+6.1f%% %s%n", id, base, score, result.getPrimaryResult().getScoreUnit(), change * 100d, regressed ? "REGRESSED" : "ok");
+            passed &= !regressed;
+        }
+        return passed;
+    }
+
+    private static String id(RunResult result) {
+        // benchmark name with its parameters and mode
+        return result.getParams().id();
+    }
+
+    private static Properties load(File file) throws IOException {
+        Properties scores = new Properties();
+        try (Reader reader = new FileReader(file)) {
+            scores.load(reader);
+        }
+        return scores;
+    }
+
+    private static void save(Collection<RunResult> results, File file) throws IOException {
+        // sorted, so baselines diff well
+        TreeMap<String, String> scores = new TreeMap<>();
+        for (RunResult result : results) {
+            scores.put(id(result), String.valueOf(result.getPrimaryResult().getScore()));
+        }
+        try (Writer writer = new FileWriter(file)) {
+            writer.write("# red5 benchmark scores\n");
+            for (Map.Entry<String, String> entry : scores.entrySet()) {
+                writer.write(escape(entry.getKey()) + '=' + entry.getValue() + '\n');
+            }
+        }
+    }
+
+    private static String escape(String key) {
+        return key.replace("\\", "\\\\").replace(":", "\\:").replace("=", "\\=").replace(" ", "\\ ");
+    }
+
+}
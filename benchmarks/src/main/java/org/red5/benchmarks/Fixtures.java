@@ -0,0 +1,281 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.benchmarks;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.io.IoConstants;
+import org.red5.io.utils.IOUtils;
+
+/**
+ * Media and command payloads shared by the benchmarks. The media is synthetic but shaped like a 30 fps H.264 stream with 44.1 kHz AAC
+ * audio: length prefixed NAL units behind the FLV video tag header, raw AAC frames behind the FLV audio tag header and the sequence headers
+ * a publisher sends first. The bytes are random from a fixed seed, so every run works on the same data.
+ *
+ * @author The Red5 Project
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+public final class Fixtures {
+
+    /**
+     * Video frames per second.
+     */
+    public static final int FRAME_RATE = 30;
+
+    /**
+     * Frames per group of pictures, a keyframe every two seconds.
+     */
+    public static final int GOP_SIZE = 60;
+
+    /**
+     * AAC frames per second at 44.1 kHz, 1024 samples each.
+     */
+    public static final int AUDIO_RATE = 43;
+
+    /**
+     * onStatus invoke captured from a publishing session, a 130 byte body split into a 128 byte chunk and a continuation chunk.
+     */
+    public static final String CAPTURED_ON_STATUS = "0400000000008214010000000200086f6e537461747573000000000000000000050300056c6576656c0200067374617475730004636f64650200174e657453747265616d2e5075626c6973682e5374617274000b6465736372697074696f6e020000000764657461696c7302000a6d697865722d6f7574330008636c69656e746964003ff000000000000000c40009";
+
+    private Fixtures() {
+    }
+
+    /**
+     * Returns an AVC sequence header, the decoder configuration sent ahead of the first keyframe.
+     *
+     * @return video tag body
+     */
+    public static byte[] avcSequenceHeader() {
+        return IOUtils.hexStringToByteArray("1700000000014d401fffe1001c674d401fe8802802dd80b501010140000003004000000c83c60c448001000468ebef20");
+    }
+
+    /**
+     * Returns an AAC sequence header, AAC LC at 44.1 kHz stereo.
+     *
+     * @return audio tag body
+     */
+    public static byte[] aacSequenceHeader() {
+        return new byte[] { (byte) 0xaf, 0x00, 0x12, 0x10 };
+    }
+
+    /**
+     * Returns an H.264 frame as carried in an FLV video tag, the slices of the picture following an access unit delimiter.
+     *
+     * @param keyframe
+     *            true for an IDR picture
+     * @param size
+     *            size of the tag body in bytes
+     * @param seed
+     *            seed of the slice data
+     * @return video tag body
+     */
+    public static byte[] avcFrame(boolean keyframe, int size, long seed) {
+        byte[] frame = new byte[Math.max(size, 16)];
+        new Random(seed).nextBytes(frame);
+        IoBuffer buf = IoBuffer.wrap(frame);
+        // frame type and codec, avc nalu, composition time
+        buf.put((byte) (keyframe ? 0x17 : 0x27)).put((byte) 1).put((byte) 0).put((byte) 0).put((byte) 0);
+        // access unit delimiter
+        buf.putInt(2).put((byte) 0x09).put((byte) 0xf0);
+        // slice
+        buf.putInt(frame.length - buf.position() - 4).put((byte) (keyframe ? 0x65 : 0x41));
+        return frame;
+    }
+
+    /**
+     * Returns a raw AAC frame as carried in an FLV audio tag.
+     *
+     * @param size
+     *            size of the tag body in bytes
+     * @param seed
+     *            seed of the frame data
+     * @return audio tag body
+     */
+    public static byte[] aacFrame(int size, long seed) {
+        byte[] frame = new byte[Math.max(size, 2)];
+        new Random(seed).nextBytes(frame);
+        frame[0] = (byte) 0xaf;
+        frame[1] = 1;
+        return frame;
+    }
+
+    /**
+     * Returns the size of a video frame within a group of pictures, keyframes being ten times the size of the frames which follow them.
+     *
+     * @param frame
+     *            frame number
+     * @param bitrate
+     *            video bitrate in bits per second
+     * @return size in bytes
+     */
+    public static int frameSize(int frame, int bitrate) {
+        // a gop holds one keyframe and the inter frames, a tenth of its size each
+        int interSize = bitrate / 8 * GOP_SIZE / FRAME_RATE / (GOP_SIZE + 9);
+        return frame % GOP_SIZE == 0 ? interSize * 10 : interSize;
+    }
+
+    /**
+     * Returns the command object of a connect as sent by Flash Player.
+     *
+     * @return command object
+     */
+    public static Map<String, Object> connectParams() {
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("app", "live");
+        params.put("flashVer", "WIN 32,0,0,465");
+        params.put("swfUrl", "http://localhost:5080/demos/publisher.swf");
+        params.put("tcUrl", "rtmp://localhost:1935/live");
+        params.put("fpad", Boolean.FALSE);
+        params.put("capabilities", 239d);
+        params.put("audioCodecs", 3575d);
+        params.put("videoCodecs", 252d);
+        params.put("videoFunction", 1d);
+        params.put("pageUrl", "http://localhost:5080/demos/publisher.html");
+        params.put("objectEncoding", 0d);
+        return params;
+    }
+
+    /**
+     * Returns the audio and video frames of one second of the stream in send order, the video starting with a keyframe.
+     *
+     * @param second
+     *            second of the stream, which seeds the data
+     * @param bitrate
+     *            video bitrate in bits per second
+     * @return frames
+     */
+    public static Frame[] second(int second, int bitrate) {
+        List<Frame> frames = new ArrayList<>(FRAME_RATE + AUDIO_RATE);
+        int audioFrame = second * AUDIO_RATE, end = audioFrame + AUDIO_RATE;
+        for (int i = 0; i < FRAME_RATE; i++) {
+            int frame = second * FRAME_RATE + i, ts = frame * 1000 / FRAME_RATE;
+            // the audio up to the video frame
+            for (; audioFrame < end && audioFrame * 1000 / AUDIO_RATE <= ts; audioFrame++) {
+                frames.add(new Frame(IoConstants.TYPE_AUDIO, audioFrame * 1000 / AUDIO_RATE, aacFrame(372, audioFrame)));
+            }
+            frames.add(new Frame(IoConstants.TYPE_VIDEO, ts, avcFrame(frame % GOP_SIZE == 0, frameSize(frame, bitrate), frame)));
+        }
+        for (; audioFrame < end; audioFrame++) {
+            frames.add(new Frame(IoConstants.TYPE_AUDIO, audioFrame * 1000 / AUDIO_RATE, aacFrame(372, audioFrame)));
+        }
+        return frames.toArray(new Frame[0]);
+    }
+
+    /**
+     * Writes an FLV file holding the given duration of synthetic audio and video.
+     *
+     * @param file
+     *            file to write
+     * @param seconds
+     *            duration
+     * @param bitrate
+     *            video bitrate in bits per second
+     * @return number of tags written
+     * @throws IOException
+     *             on error
+     */
+    public static int writeFlv(File file, int seconds, int bitrate) throws IOException {
+        int tags = 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            // signature, version, audio and video flags, header size and the size of the non-existent previous tag
+            out.write(new byte[] { 'F', 'L', 'V', 1, 5, 0, 0, 0, 9, 0, 0, 0, 0 });
+            writeTag(out, IoConstants.TYPE_VIDEO, 0, avcSequenceHeader());
+            writeTag(out, IoConstants.TYPE_AUDIO, 0, aacSequenceHeader());
+            tags += 2;
+            for (int second = 0; second < seconds; second++) {
+                for (Frame frame : second(second, bitrate)) {
+                    writeTag(out, frame.type, frame.timestamp, frame.body);
+                    tags++;
+                }
+            }
+        }
+        return tags;
+    }
+
+    private static void writeTag(DataOutputStream out, int type, int ts, byte[] body) throws IOException {
+        out.writeByte(type);
+        out.writeByte(body.length >>> 16);
+        out.writeShort(body.length);
+        out.writeByte(ts >>> 16);
+        out.writeShort(ts);
+        out.writeByte(ts >>> 24);
+        // stream id
+        out.writeByte(0);
+        out.writeShort(0);
+        out.write(body);
+        out.writeInt(body.length + 11);
+    }
+
+    /**
+     * Returns a file to read, the one named by a system property or else a copy of a bundled fixture.
+     *
+     * @param property
+     *            system property holding the path of the file
+     * @param resource
+     *            bundled fixture
+     * @return file
+     * @throws IOException
+     *             on error
+     */
+    public static File file(String property, String resource) throws IOException {
+        String path = System.getProperty(property);
+        if (path != null) {
+            return new File(path);
+        }
+        String name = resource.substring(resource.lastIndexOf('/') + 1);
+        File file = File.createTempFile("red5-bench-", name);
+        file.deleteOnExit();
+        try (InputStream in = Fixtures.class.getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IOException("Fixture not found: " + resource);
+            }
+            Files.copy(in, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return file;
+    }
+
+    /**
+     * Audio or video frame of the synthetic stream.
+     */
+    public static final class Frame {
+
+        /**
+         * Tag type, {@link IoConstants#TYPE_AUDIO} or {@link IoConstants#TYPE_VIDEO}.
+         */
+        public final byte type;
+
+        public final int timestamp;
+
+        public final byte[] body;
+
+        Frame(byte type, int timestamp, byte[] body) {
+            this.type = type;
+            this.timestamp = timestamp;
+            this.body = body;
+        }
+
+        public boolean isVideo() {
+            return type == IoConstants.TYPE_VIDEO;
+        }
+
+    }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.red5.io.ITag;
+import org.red5.io.flv.impl.FLVReader;
+import org.red5.io.mp4.impl.MP4Reader;
+import org.red5.io.mp4.impl.MP4SampleIndex;
+
+/**
+ * Reading of VOD files: every tag of a synthetic FLV file and the frame analysis of an MP4 file, which is done when the file is opened.
+ * The MP4 file is the sample bundled with the io tests unless the <i>red5.benchmarks.mp4</i> system property names another one.
+ *
+ * @author The Red5 Project
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MediaReaderBenchmark {
+
+    @Param({ "60" })
+    public int seconds;
+
+    private File flv, mp4;
+
+    @Setup
+    public void setUp() throws IOException {
+        flv = File.createTempFile("red5-bench-", ".flv");
+        flv.deleteOnExit();
+        Fixtures.writeFlv(flv, seconds, 2000000);
+        mp4 = Fixtures.file("red5.benchmarks.mp4", "/fixtures/sample.mp4");
+    }
+
+    @TearDown
+    public void tearDown() {
+        MP4SampleIndex.clearCache();
+        flv.delete();
+    }
+
+    /**
+     * Reads all the tags of the FLV file.
+     *
+     * @param bh
+     *            blackhole
+     * @return tags read
+     * @throws IOException
+     *             on error
+     */
+    @Benchmark
+    public int readFlvTags(Blackhole bh) throws IOException {
+        FLVReader reader = new FLVReader(flv);
+        int tags = 0;
+        try {
+            while (reader.hasMoreTags()) {
+                ITag tag = reader.readTag();
+                bh.consume(tag);
+                tags++;
+            }
+        } finally {
+            reader.close();
+        }
+        return tags;
+    }
+
+    /**
+     * Opens the MP4 file, parsing the movie and analyzing the frames.
+     *
+     * @return duration of the movie
+     * @throws IOException
+     *             on error
+     */
+    @Benchmark
+    public long analyzeMp4Frames() throws IOException {
+        // readers share the sample index of an unchanged file, which would skip the analysis
+        MP4SampleIndex.clearCache();
+        MP4Reader reader = new MP4Reader(mp4);
+        try {
+            return reader.getDuration();
+        } finally {
+            reader.close();
+        }
+    }
+
+}
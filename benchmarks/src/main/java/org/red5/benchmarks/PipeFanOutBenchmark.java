@@ -0,0 +1,133 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.red5.server.messaging.FanOutDispatcher;
+import org.red5.server.messaging.IMessage;
+import org.red5.server.messaging.IMessageComponent;
+import org.red5.server.messaging.IPipe;
+import org.red5.server.messaging.IPushableConsumer;
+import org.red5.server.messaging.InMemoryPushPushPipe;
+import org.red5.server.messaging.OOBControlMessage;
+import org.red5.server.net.rtmp.event.AudioData;
+import org.red5.server.net.rtmp.event.IRTMPEvent;
+import org.red5.server.net.rtmp.event.VideoData;
+import org.red5.server.stream.IStreamData;
+import org.red5.server.stream.message.RTMPMessage;
+
+/**
+ * Live stream fan-out: a second of audio and video pushed through a pipe to its subscribers, each of which reads the data of every message
+ * as a connection writing it would. Pushing is done on the caller's thread, or through the per-subscriber queues of a fan-out dispatcher.
+ *
+ * @author The Red5 Project
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipeFanOutBenchmark {
+
+    @Param({ "1", "10", "100" })
+    public int subscribers;
+
+    @Param({ "false", "true" })
+    public boolean fanOut;
+
+    private InMemoryPushPushPipe pipe;
+
+    private FanOutDispatcher dispatcher;
+
+    private Fixtures.Frame[] frames;
+
+    private IoBuffer[] bodies;
+
+    private int timeBase;
+
+    @Setup
+    public void setUp() throws Exception {
+        frames = Fixtures.second(0, 2000000);
+        bodies = new IoBuffer[frames.length];
+        for (int i = 0; i < frames.length; i++) {
+            bodies[i] = IoBuffer.wrap(frames[i].body).asReadOnlyBuffer();
+        }
+        pipe = new InMemoryPushPushPipe();
+        if (fanOut) {
+            dispatcher = new FanOutDispatcher();
+            dispatcher.setEnabled(true);
+            dispatcher.setOverflowPolicy(FanOutDispatcher.OverflowPolicy.DROP_INTERFRAMES);
+            dispatcher.afterPropertiesSet();
+            pipe.setFanOutDispatcher(dispatcher);
+        }
+        for (int i = 0; i < subscribers; i++) {
+            pipe.subscribe(new Subscriber(), null);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        pipe.close();
+        if (dispatcher != null) {
+            dispatcher.destroy();
+        }
+    }
+
+    /**
+     * Pushes a second of audio and video to the subscribers.
+     *
+     * @throws IOException
+     *             on error
+     */
+    @Benchmark
+    public void pushMessages() throws IOException {
+        for (int i = 0; i < bodies.length; i++) {
+            IRTMPEvent body = frames[i].isVideo() ? new VideoData(bodies[i].duplicate()) : new AudioData(bodies[i].duplicate());
+            RTMPMessage message = RTMPMessage.build(body, timeBase + frames[i].timestamp);
+            pipe.pushMessage(message);
+            // the queues hold their own references
+            body.release();
+        }
+        timeBase += 1000;
+    }
+
+    private static final class Subscriber implements IPushableConsumer {
+
+        // bytes read, one thread pushes to a subscriber at a time
+        long bytes;
+
+        public void pushMessage(IPipe pipe, IMessage message) throws IOException {
+            IoBuffer data = ((IStreamData<?>) ((RTMPMessage) message).getBody()).getData();
+            if (data != null) {
+                bytes += data.remaining();
+            }
+        }
+
+        public void onOOBControlMessage(IMessageComponent source, IPipe pipe, OOBControlMessage oobCtrlMsg) {
+        }
+
+    }
+
+}
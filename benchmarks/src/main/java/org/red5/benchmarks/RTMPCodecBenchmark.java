@@ -0,0 +1,237 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.red5.io.utils.IOUtils;
+import org.red5.server.api.Red5;
+import org.red5.server.net.rtmp.IRTMPHandler;
+import org.red5.server.net.rtmp.RTMPConnection;
+import org.red5.server.net.rtmp.RTMPMinaConnection;
+import org.red5.server.net.rtmp.codec.RTMP;
+import org.red5.server.net.rtmp.codec.RTMPProtocolDecoder;
+import org.red5.server.net.rtmp.codec.RTMPProtocolEncoder;
+import org.red5.server.net.rtmp.event.AudioData;
+import org.red5.server.net.rtmp.event.IRTMPEvent;
+import org.red5.server.net.rtmp.event.Invoke;
+import org.red5.server.net.rtmp.event.VideoData;
+import org.red5.server.net.rtmp.message.Constants;
+import org.red5.server.net.rtmp.message.Header;
+import org.red5.server.net.rtmp.message.Packet;
+import org.red5.server.net.rtmp.status.Status;
+import org.red5.server.net.rtmp.status.StatusCodes;
+import org.red5.server.service.PendingCall;
+
+/**
+ * RTMP packet encoding and decoding. The encoder writes a second of the synthetic stream, the decoder reads the same second back together
+ * with a captured onStatus invoke, at the default chunk size and at the chunk size most servers switch to.
+ *
+ * @author The Red5 Project
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RTMPCodecBenchmark {
+
+    @Param({ "128", "4096" })
+    public int chunkSize;
+
+    @Param({ "2000000" })
+    public int bitrate;
+
+    // tag bodies of one second of audio and video in send order
+    private IoBuffer[] bodies;
+
+    private byte[] types;
+
+    private int[] timestamps;
+
+    private RTMPProtocolEncoder encoder;
+
+    private RTMPConnection encoderConn;
+
+    private RTMPProtocolDecoder decoder;
+
+    private RTMPConnection decoderConn;
+
+    // one second of the stream as written to the socket
+    private byte[] encoded;
+
+    private byte[] captured;
+
+    private RTMPConnection capturedConn;
+
+    private IoBuffer in;
+
+    private int timeBase;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Fixtures.Frame[] frames = Fixtures.second(0, bitrate);
+        bodies = new IoBuffer[frames.length];
+        types = new byte[frames.length];
+        timestamps = new int[frames.length];
+        for (int i = 0; i < frames.length; i++) {
+            bodies[i] = IoBuffer.wrap(frames[i].body).asReadOnlyBuffer();
+            types[i] = frames[i].type;
+            timestamps[i] = frames[i].timestamp;
+        }
+        encoder = new RTMPProtocolEncoder();
+        encoderConn = connection();
+        encoderConn.getState().setWriteChunkSize(chunkSize);
+        // the stream as a fresh connection would receive it, each channel starting with a full header
+        RTMPConnection conn = connection();
+        conn.getState().setWriteChunkSize(chunkSize);
+        Red5.setConnectionLocal(conn);
+        IoBuffer stream = IoBuffer.allocate(bitrate / 8 * 2).setAutoExpand(true);
+        for (int i = 0; i < bodies.length; i++) {
+            IoBuffer out = encoder.encodePacket(packet(i, 0));
+            stream.put(out);
+            out.free();
+        }
+        stream.flip();
+        encoded = new byte[stream.remaining()];
+        stream.get(encoded);
+        captured = IOUtils.hexStringToByteArray(Fixtures.CAPTURED_ON_STATUS);
+        decoder = new RTMPProtocolDecoder();
+        decoderConn = connection();
+        decoderConn.getState().setState(RTMP.STATE_CONNECTED);
+        decoderConn.getState().setReadChunkSize(chunkSize);
+        // the captured invoke is chunked at the default size
+        capturedConn = connection();
+        capturedConn.getState().setState(RTMP.STATE_CONNECTED);
+        in = IoBuffer.allocate(Math.max(encoded.length, captured.length));
+        Red5.setConnectionLocal(null);
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpIteration() {
+        Red5.setConnectionLocal(encoderConn);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDownIteration() {
+        Red5.setConnectionLocal(null);
+    }
+
+    /**
+     * Encodes a second of audio and video.
+     *
+     * @return bytes written
+     */
+    @Benchmark
+    public int encodeStream() {
+        int written = 0;
+        for (int i = 0; i < bodies.length; i++) {
+            IoBuffer out = encoder.encodePacket(packet(i, timeBase));
+            written += out.remaining();
+            out.free();
+        }
+        timeBase += 1000;
+        return written;
+    }
+
+    /**
+     * Encodes an onStatus invoke.
+     *
+     * @return bytes written
+     */
+    @Benchmark
+    public int encodeInvoke() {
+        Status status = new Status(StatusCodes.NS_PUBLISH_START, Status.STATUS, "stream1 is now published");
+        status.setClientid(1);
+        status.setDetails("stream1");
+        Invoke invoke = new Invoke(new PendingCall("onStatus", new Object[] { status }));
+        Header header = new Header();
+        header.setChannelId(5);
+        header.setDataType(Constants.TYPE_INVOKE);
+        header.setStreamId(1);
+        IoBuffer out = encoder.encodePacket(new Packet(header, invoke));
+        int written = out.remaining();
+        out.free();
+        return written;
+    }
+
+    /**
+     * Decodes a second of audio and video.
+     *
+     * @return decoded packets
+     */
+    @Benchmark
+    public List<Object> decodeStream() {
+        in.clear();
+        in.put(encoded).flip();
+        return decoder.decodeBuffer(decoderConn, in);
+    }
+
+    /**
+     * Decodes the captured onStatus invoke.
+     *
+     * @return decoded packets
+     */
+    @Benchmark
+    public List<Object> decodeInvoke() {
+        in.clear();
+        in.put(captured).flip();
+        return decoder.decodeBuffer(capturedConn, in);
+    }
+
+    private Packet packet(int i, int timeBase) {
+        IRTMPEvent event = types[i] == Constants.TYPE_VIDEO_DATA ? new VideoData(bodies[i].duplicate()) : new AudioData(bodies[i].duplicate());
+        Header header = new Header();
+        header.setChannelId(types[i] == Constants.TYPE_VIDEO_DATA ? 6 : 4);
+        header.setDataType(types[i]);
+        header.setStreamId(1);
+        header.setTimer(timeBase + timestamps[i]);
+        event.setTimestamp(timeBase + timestamps[i]);
+        return new Packet(header, event);
+    }
+
+    private static RTMPConnection connection() {
+        RTMPConnection conn = new RTMPMinaConnection();
+        conn.setHandler(new NoopHandler());
+        return conn;
+    }
+
+    private static final class NoopHandler implements IRTMPHandler {
+
+        public void connectionOpened(RTMPConnection conn) {
+        }
+
+        public void messageReceived(RTMPConnection conn, Packet packet) throws Exception {
+        }
+
+        public void messageSent(RTMPConnection conn, Packet packet) {
+        }
+
+        public void connectionClosed(RTMPConnection conn) {
+        }
+
+    }
+
+}
@@ -226,7 +226,7 @@ public class OutboundHandshake extends RTMPHandshake {
                 System.arraycopy(s1, serverDHOffset, incomingPublicKey, 0, KEY_LENGTH);
                 log.debug("Server public key: {}", Hex.encodeHexString(incomingPublicKey));
                 // create the RC4 ciphers
-                initRC4Encryption(getSharedSecret(incomingPublicKey, keyAgreement));
+                initRC4Encryption(getSharedSecret(incomingPublicKey));
                 switch (handshakeType) {
                     case RTMPConnection.RTMP_ENCRYPTED:
                         // update 'encoder / decoder state' for the RC4 keys. Both parties *pretend* as if handshake part 2 (1536 bytes) was encrypted
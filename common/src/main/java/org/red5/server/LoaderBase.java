@@ -8,8 +8,8 @@
 package org.red5.server;
 
 import java.io.File;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.red5.logging.Red5LoggerFactory;
 import org.red5.server.api.IApplicationContext;
@@ -36,9 +36,9 @@ public abstract class LoaderBase implements ApplicationContextAware {
     protected static ApplicationContext applicationContext;
 
     /**
-     * Current Red5 application context, set by the different loaders.
+     * Current Red5 application context, set by the different loaders; applications may be started concurrently.
      */
-    public static final Map<String, IApplicationContext> red5AppCtx = new HashMap<>();
+    public static final Map<String, IApplicationContext> red5AppCtx = new ConcurrentHashMap<>();
 
     /**
      * Loader for new applications.
@@ -92,7 +92,7 @@ public abstract class LoaderBase implements ApplicationContextAware {
     public static IApplicationContext getRed5ApplicationContext(String path) {
         log.debug("Get red5 application context - path: {}", path);
         //log.trace("Map at get: {}", red5AppCtx);
-        return red5AppCtx.get(path);
+        return path != null ? red5AppCtx.get(path) : null;
     }
 
     /**
@@ -125,7 +125,7 @@ public abstract class LoaderBase implements ApplicationContextAware {
      */
     public static IApplicationContext removeRed5ApplicationContext(String path) {
         log.debug("Remove red5 application context - path: {}", path);
-        return red5AppCtx.remove(path);
+        return path != null ? red5AppCtx.remove(path) : null;
     }
 
     /**
@@ -0,0 +1,176 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time spent in each phase of the start-up of a web application, as recorded by the loader starting it. The timeline of the application
+ * being started on the current thread is available to the components started along with it, so they can record phases of their own.
+ *
+ * @author The Red5 Project
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+public class StartupTimeline {
+
+    /**
+     * Loader queued the application and waits for a thread to start it
+     */
+    public static final String QUEUED = "queued";
+
+    /**
+     * Parent context of the application is resolved
+     */
+    public static final String PARENT_CONTEXT = "parentContext";
+
+    /**
+     * Resources, class loader and context class of the application are loaded
+     */
+    public static final String CLASS_LOADING = "classLoading";
+
+    /**
+     * Application context is refreshed, scope registration included
+     */
+    public static final String REFRESH = "refresh";
+
+    /**
+     * Scope of the application is registered with the server
+     */
+    public static final String SCOPE_REGISTRATION = "scopeRegistration";
+
+    /**
+     * Realm is set and the application context started
+     */
+    public static final String START = "start";
+
+    private static final ThreadLocal<StartupTimeline> current = new ThreadLocal<>();
+
+    private final String name;
+
+    private final long created = System.nanoTime();
+
+    // nanoseconds by phase, in the order the phases were first recorded
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+
+    private volatile long total = -1L;
+
+    private volatile String failure;
+
+    public StartupTimeline(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Returns the timeline of the application being started on the current thread.
+     *
+     * @return timeline or null if no application is being started
+     */
+    public static StartupTimeline current() {
+        return current.get();
+    }
+
+    /**
+     * Sets the timeline of the application being started on the current thread.
+     *
+     * @param timeline
+     *            timeline or null once the application is started
+     */
+    public static void setCurrent(StartupTimeline timeline) {
+        if (timeline != null) {
+            current.set(timeline);
+        } else {
+            current.remove();
+        }
+    }
+
+    /**
+     * Records the time elapsed since the given start as spent in a phase; time recorded more than once for a phase adds up.
+     *
+     * @param phase
+     *            phase name
+     * @param start
+     *            start of the phase as returned by {@link System#nanoTime()}
+     */
+    public void record(String phase, long start) {
+        long elapsed = System.nanoTime() - start;
+        synchronized (phases) {
+            phases.merge(phase, elapsed, Long::sum);
+        }
+    }
+
+    /**
+     * Marks the start-up as done.
+     *
+     * @param cause
+     *            cause of the failure or null if the application started
+     */
+    public void finished(Throwable cause) {
+        if (cause != null) {
+            failure = String.valueOf(cause.getCause() != null ? cause.getCause() : cause);
+        }
+        total = System.nanoTime() - created;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the milliseconds spent in each phase recorded so far.
+     *
+     * @return milliseconds by phase
+     */
+    public Map<String, Long> getPhases() {
+        Map<String, Long> millis = new LinkedHashMap<>();
+        synchronized (phases) {
+            phases.forEach((phase, nanos) -> millis.put(phase, TimeUnit.NANOSECONDS.toMillis(nanos)));
+        }
+        return millis;
+    }
+
+    /**
+     * Returns the milliseconds from queueing to the end of the start-up.
+     *
+     * @return milliseconds or -1 while the application is starting
+     */
+    public long getTotal() {
+        long nanos = total;
+        return nanos < 0 ? -1L : TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    public boolean isFinished() {
+        return total >= 0;
+    }
+
+    /**
+     * Returns the cause of a failed start-up.
+     *
+     * @return cause or null if the application started or is starting
+     */
+    public String getFailure() {
+        return failure;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(name);
+        getPhases().forEach((phase, millis) -> sb.append(' ').append(phase).append('=').append(millis).append("ms"));
+        if (isFinished()) {
+            sb.append(" total=").append(getTotal()).append("ms");
+            if (failure != null) {
+                sb.append(" failed: ").append(failure);
+            }
+        } else {
+            sb.append(" starting");
+        }
+        return sb.toString();
+    }
+
+}
@@ -101,6 +101,20 @@ public interface IStreamCapableConnection extends IConnection {
      */
     long getPendingVideoMessages(Number streamId);
 
+    /**
+     * Calls the listener once, as soon as no more than the given number of messages are pending on the connection. Connections which can
+     * not tell when their messages are written return false and never call the listener.
+     *
+     * @param pending
+     *            number of pending messages to wait for
+     * @param listener
+     *            listener, called on the thread which wrote the message or right away if few enough messages are pending
+     * @return true if the listener was registered
+     */
+    default boolean addWritableListener(long pending, Runnable listener) {
+        return false;
+    }
+
     Map<Number, IClientStream> getStreamsMap();
 
 }
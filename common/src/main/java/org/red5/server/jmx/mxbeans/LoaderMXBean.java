@@ -23,6 +23,13 @@ public interface LoaderMXBean extends ShutdownMXBean {
 
     public void removeContext(String path);
 
+    /**
+     * Returns the start-up timeline of each web application, one line per application with the milliseconds spent in each phase.
+     *
+     * @return timelines in the order the applications were queued
+     */
+    public String[] getStartupTimeline();
+
     public void destroy() throws Exception;
 
 }
@@ -0,0 +1,56 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.jmx.mxbeans;
+
+import javax.management.MXBean;
+
+/**
+ * Size-classed buffer pool used by the RTMP codec.
+ *
+ * @author The Red5 Project
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+@MXBean
+public interface PooledBufferAllocatorMXBean {
+
+    public boolean isEnabled();
+
+    public boolean isDirect();
+
+    public int getMinClassSize();
+
+    public int getMaxClassSize();
+
+    public int getThreadCacheSize();
+
+    public int getPoolCapacity();
+
+    public boolean isLeakDetection();
+
+    public long getAllocatedCount();
+
+    public long getReusedCount();
+
+    public long getUnpooledCount();
+
+    public long getOutstandingCount();
+
+    public long getLeakCount();
+
+    public int getPooledCount();
+
+    public long getPooledBytes();
+
+    /**
+     * Returns the number of idle shared buffers per size class, smallest class first; buffers held in thread caches are not included.
+     *
+     * @return idle buffers per size class
+     */
+    public int[] getPoolOccupancy();
+
+}
@@ -0,0 +1,39 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.jmx.mxbeans;
+
+import java.util.List;
+
+import javax.management.MXBean;
+
+/**
+ * Scheduling service that uses a hashed timer wheel as backend.
+ *
+ * @author The Red5 Project
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+@MXBean
+public interface WheelSchedulingServiceMXBean {
+
+    public String getJobName();
+
+    public void removeScheduledJob(String name);
+
+    public List<String> getScheduledJobNames();
+
+    public int getScheduledJobCount();
+
+    public long getExecutedJobCount();
+
+    public long getTickInterval();
+
+    public int getWheelSize();
+
+    public int getThreadCount();
+
+}
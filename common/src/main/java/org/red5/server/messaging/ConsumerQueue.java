@@ -0,0 +1,256 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.messaging;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.red5.server.messaging.FanOutDispatcher.OverflowPolicy;
+import org.red5.server.net.rtmp.event.IRTMPEvent;
+import org.red5.server.net.rtmp.event.VideoData;
+import org.red5.server.net.rtmp.event.VideoData.FrameType;
+import org.red5.server.stream.message.RTMPMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded, lock-free queue of messages for a single pushable consumer of a fan-out pipe. Any number of threads may offer messages; only one
+ * thread at a time drains the queue, which is guaranteed by the scheduled flag. Message bodies are shared by reference between all queues of a
+ * pipe and are retained by the pipe when offered and released here once they have been pushed or discarded.
+ *
+ * @author The Red5 Project
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+final class ConsumerQueue implements Runnable {
+
+    private static final Logger log = LoggerFactory.getLogger(ConsumerQueue.class);
+
+    /**
+     * Outcome of an offer.
+     */
+    static enum Offer {
+        ENQUEUED, DROPPED, OVERFLOW
+    };
+
+    private final IPipe pipe;
+
+    private final IPushableConsumer consumer;
+
+    private final FanOutDispatcher dispatcher;
+
+    private final OverflowPolicy policy;
+
+    private final int affinity;
+
+    private final int capacity;
+
+    private final int mask;
+
+    /**
+     * Occupancy above which video inter-frames are no longer queued
+     */
+    private final int highWaterMark;
+
+    private final AtomicReferenceArray<IMessage> buffer;
+
+    private final AtomicLongArray sequence;
+
+    private final AtomicLong tail = new AtomicLong();
+
+    private volatile long head;
+
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    private volatile boolean closed;
+
+    /**
+     * Set when video has been dropped and nothing but a keyframe may follow
+     */
+    private volatile boolean waitForKeyframe;
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    ConsumerQueue(IPipe pipe, IPushableConsumer consumer, FanOutDispatcher dispatcher) {
+        this.pipe = pipe;
+        this.consumer = consumer;
+        this.dispatcher = dispatcher;
+        this.policy = dispatcher.getOverflowPolicy();
+        this.affinity = System.identityHashCode(consumer) & Integer.MAX_VALUE;
+        int size = Math.max(2, Integer.highestOneBit(Math.max(1, dispatcher.getQueueCapacity() - 1)) << 1);
+        this.capacity = size;
+        this.mask = size - 1;
+        this.highWaterMark = size - (size >> 2);
+        this.buffer = new AtomicReferenceArray<>(size);
+        this.sequence = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequence.set(i, i);
+        }
+    }
+
+    /**
+     * Offers a message to the queue, applying the overflow policy.
+     *
+     * @param message
+     *            message whose body has already been retained by the caller
+     * @return outcome of the offer
+     */
+    Offer offer(IMessage message) {
+        if (closed) {
+            return Offer.DROPPED;
+        }
+        FrameType frameType = getVideoFrameType(message);
+        if (frameType != null && policy != OverflowPolicy.DISCONNECT) {
+            if (frameType == FrameType.KEYFRAME) {
+                waitForKeyframe = false;
+            } else if (waitForKeyframe) {
+                return drop();
+            } else if (size() >= highWaterMark) {
+                if (policy == OverflowPolicy.DROP_TO_KEYFRAME) {
+                    waitForKeyframe = true;
+                }
+                return drop();
+            }
+        }
+        if (!enqueue(message)) {
+            if (policy == OverflowPolicy.DISCONNECT) {
+                return Offer.OVERFLOW;
+            }
+            if (frameType != null && policy == OverflowPolicy.DROP_TO_KEYFRAME) {
+                waitForKeyframe = true;
+            }
+            return drop();
+        }
+        schedule();
+        return Offer.ENQUEUED;
+    }
+
+    private Offer drop() {
+        dropped.incrementAndGet();
+        return Offer.DROPPED;
+    }
+
+    private boolean enqueue(IMessage message) {
+        long pos;
+        int idx;
+        for (;;) {
+            pos = tail.get();
+            idx = (int) (pos & mask);
+            long dif = sequence.get(idx) - pos;
+            if (dif == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    break;
+                }
+            } else if (dif < 0) {
+                // full
+                return false;
+            }
+        }
+        buffer.set(idx, message);
+        sequence.set(idx, pos + 1);
+        return true;
+    }
+
+    private IMessage poll() {
+        long pos = head;
+        int idx = (int) (pos & mask);
+        if (sequence.get(idx) - (pos + 1) < 0) {
+            return null;
+        }
+        IMessage message = buffer.get(idx);
+        buffer.set(idx, null);
+        sequence.set(idx, pos + capacity);
+        head = pos + 1;
+        return message;
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            if (!dispatcher.submit(this)) {
+                scheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Drains up to one batch of messages to the consumer.
+     */
+    public void run() {
+        int batch = dispatcher.getDrainBatchSize();
+        IMessage message;
+        for (int i = 0; i < batch && (message = poll()) != null; i++) {
+            if (!closed) {
+                try {
+                    consumer.pushMessage(pipe, message);
+                } catch (Throwable t) {
+                    log.warn("Exception pushing message to consumer: {}", consumer, t);
+                }
+            }
+            release(message);
+        }
+        scheduled.set(false);
+        if (size() > 0) {
+            schedule();
+        }
+    }
+
+    /**
+     * Closes the queue and releases any messages still held.
+     */
+    void close() {
+        closed = true;
+        if (scheduled.compareAndSet(false, true)) {
+            IMessage message;
+            while ((message = poll()) != null) {
+                release(message);
+            }
+            scheduled.set(false);
+        }
+    }
+
+    int size() {
+        return (int) Math.max(0, tail.get() - head);
+    }
+
+    long getDropped() {
+        return dropped.get();
+    }
+
+    int getAffinity() {
+        return affinity;
+    }
+
+    static void retain(IMessage message) {
+        if (message instanceof RTMPMessage) {
+            ((RTMPMessage) message).getBody().retain();
+        }
+    }
+
+    static void release(IMessage message) {
+        if (message instanceof RTMPMessage) {
+            ((RTMPMessage) message).getBody().release();
+        }
+    }
+
+    /**
+     * Returns the frame type of a video message or null for anything else. Video configuration is reported as a keyframe, since it must never
+     * be dropped.
+     */
+    private static FrameType getVideoFrameType(IMessage message) {
+        if (message instanceof RTMPMessage) {
+            IRTMPEvent body = ((RTMPMessage) message).getBody();
+            if (body instanceof VideoData) {
+                VideoData video = (VideoData) body;
+                return video.isConfig() ? FrameType.KEYFRAME : video.getFrameType();
+            }
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,204 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.messaging;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.red5.server.jmx.mxbeans.FanOutDispatcherMXBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Node-wide worker pool used by push pipes in fan-out mode. Each consumer attached to a fan-out pipe is given its own bounded queue, which is
+ * always drained by the same worker (consumer affinity), so ordering per consumer is preserved while one slow consumer can no longer delay
+ * the publisher or any other consumer of the same pipe.
+ *
+ * @author The Red5 Project
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+@ManagedResource(objectName = "org.red5.server:name=fanOutDispatcher,type=FanOutDispatcher")
+public class FanOutDispatcher implements FanOutDispatcherMXBean, InitializingBean, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(FanOutDispatcher.class);
+
+    /**
+     * What to do when a consumer queue is full or above its high-water mark.
+     */
+    public static enum OverflowPolicy {
+        /** Drop video inter-frames, keyframes / audio / data are kept while there is room */
+        DROP_INTERFRAMES,
+        /** Drop video until the next keyframe once any video frame had to be dropped */
+        DROP_TO_KEYFRAME,
+        /** Evict the consumer from the pipe */
+        DISCONNECT
+    };
+
+    /**
+     * Whether or not fan-out is enabled
+     */
+    private boolean enabled;
+
+    /**
+     * Number of drain workers
+     */
+    private int workers = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Capacity of each consumer queue; rounded up to a power of two
+     */
+    private int queueCapacity = 256;
+
+    /**
+     * Batch size of messages pushed to a consumer before its drain task yields the worker
+     */
+    private int drainBatchSize = 64;
+
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_TO_KEYFRAME;
+
+    private ExecutorService[] executors;
+
+    private final AtomicLong pushed = new AtomicLong();
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final AtomicLong evicted = new AtomicLong();
+
+    /** {@inheritDoc} */
+    public void afterPropertiesSet() throws Exception {
+        if (enabled) {
+            log.debug("Starting fan-out dispatcher - workers: {} queue capacity: {} policy: {}", workers, queueCapacity, overflowPolicy);
+            executors = new ExecutorService[workers];
+            for (int i = 0; i < workers; i++) {
+                executors[i] = Executors.newSingleThreadExecutor(new CustomizableThreadFactory(String.format("FanOut-%d-", i)));
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void destroy() throws Exception {
+        if (executors != null) {
+            for (ExecutorService executor : executors) {
+                executor.shutdown();
+            }
+            for (ExecutorService executor : executors) {
+                executor.awaitTermination(1000L, TimeUnit.MILLISECONDS);
+            }
+            executors = null;
+        }
+    }
+
+    /**
+     * Returns true if the dispatcher has been started and accepts work.
+     *
+     * @return true if running and false otherwise
+     */
+    public boolean isRunning() {
+        return enabled && executors != null;
+    }
+
+    /**
+     * Submits a drain task for the given consumer queue on its affine worker.
+     *
+     * @param queue
+     *            consumer queue
+     * @return true if submitted and false otherwise
+     */
+    boolean submit(ConsumerQueue queue) {
+        ExecutorService[] local = executors;
+        if (local != null) {
+            try {
+                local[queue.getAffinity() % local.length].execute(queue);
+                return true;
+            } catch (RejectedExecutionException e) {
+                log.debug("Drain task rejected, dispatcher is shutting down");
+            }
+        }
+        return false;
+    }
+
+    void recordPushed() {
+        pushed.incrementAndGet();
+    }
+
+    void recordDropped() {
+        dropped.incrementAndGet();
+    }
+
+    void recordEvicted() {
+        evicted.incrementAndGet();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public void setWorkers(int workers) {
+        this.workers = Math.max(1, workers);
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public int getDrainBatchSize() {
+        return drainBatchSize;
+    }
+
+    public void setDrainBatchSize(int drainBatchSize) {
+        this.drainBatchSize = Math.max(1, drainBatchSize);
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /** {@inheritDoc} */
+    public String getOverflowPolicyName() {
+        return overflowPolicy.name();
+    }
+
+    /** {@inheritDoc} */
+    public long getPushedCount() {
+        return pushed.get();
+    }
+
+    /** {@inheritDoc} */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /** {@inheritDoc} */
+    public long getEvictedCount() {
+        return evicted.get();
+    }
+
+}
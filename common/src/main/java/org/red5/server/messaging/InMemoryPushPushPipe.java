@@ -8,13 +8,20 @@
 package org.red5.server.messaging;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * A simple in-memory version of push-push pipe. It is triggered by an active provider to push messages through it to an event-driven consumer.
+ * <br>
+ * By default messages are pushed to each consumer in turn on the provider's thread. When a running {@link FanOutDispatcher} is set, the pipe
+ * switches to fan-out mode: every consumer gets its own bounded queue of shared (retained, not copied) messages which is drained by a
+ * dispatcher worker, so the provider never waits on a slow consumer.
  *
  * @author Steven Gong (steven.gong@gmail.com)
  * @author Paul Gregoire (mondain@gmail.com)
@@ -23,6 +30,21 @@ public class InMemoryPushPushPipe extends AbstractPipe {
 
     private static final Logger log = LoggerFactory.getLogger(InMemoryPushPushPipe.class);
 
+    /**
+     * Parameter set on the consumer disconnect event when a consumer was evicted due to queue overflow
+     */
+    public static final String OVERFLOW_EVICTION = "overflowEviction";
+
+    /**
+     * Dispatcher used in fan-out mode, null for serial pushing
+     */
+    private volatile FanOutDispatcher dispatcher;
+
+    /**
+     * Per-consumer queues used in fan-out mode
+     */
+    private final ConcurrentMap<IConsumer, ConsumerQueue> queues = new ConcurrentHashMap<>();
+
     public InMemoryPushPushPipe() {
         super();
     }
@@ -41,6 +63,10 @@ public class InMemoryPushPushPipe extends AbstractPipe {
                 log.debug("Consumer subscribe{} {} params: {}", new Object[] { (success ? "d" : " failed"), consumer, paramMap });
             }
             if (success) {
+                FanOutDispatcher fanOut = dispatcher;
+                if (fanOut != null) {
+                    openQueue(consumer, fanOut);
+                }
                 fireConsumerConnectionEvent(consumer, PipeConnectionEvent.EventType.CONSUMER_CONNECT_PUSH, paramMap);
             }
             return success;
@@ -62,6 +88,17 @@ public class InMemoryPushPushPipe extends AbstractPipe {
         return success;
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public boolean unsubscribe(IConsumer consumer) {
+        boolean success = super.unsubscribe(consumer);
+        ConsumerQueue queue = queues.remove(consumer);
+        if (queue != null) {
+            queue.close();
+        }
+        return success;
+    }
+
     /** {@inheritDoc} */
     public IMessage pullMessage() {
         return null;
@@ -84,6 +121,11 @@ public class InMemoryPushPushPipe extends AbstractPipe {
         if (log.isDebugEnabled()) {
             log.debug("pushMessage: {} to {} consumers", message, consumers.size());
         }
+        final FanOutDispatcher fanOut = dispatcher;
+        if (fanOut != null && fanOut.isRunning()) {
+            fanOutMessage(fanOut, message);
+            return;
+        }
         for (IConsumer consumer : consumers) {
             try {
                 ((IPushableConsumer) consumer).pushMessage(this, message);
@@ -97,4 +139,128 @@ public class InMemoryPushPushPipe extends AbstractPipe {
         }
     }
 
+    /**
+     * Queues a message for every consumer; the message body is retained once per queue and released by the queue after it is pushed.
+     *
+     * @param fanOut
+     *            dispatcher
+     * @param message
+     *            the message to be pushed to consumers
+     */
+    private void fanOutMessage(FanOutDispatcher fanOut, IMessage message) {
+        for (IConsumer consumer : consumers) {
+            ConsumerQueue queue = queues.get(consumer);
+            if (queue == null) {
+                // unsubscribed or evicted meanwhile
+                continue;
+            }
+            ConsumerQueue.retain(message);
+            switch (queue.offer(message)) {
+                case ENQUEUED:
+                    fanOut.recordPushed();
+                    break;
+                case DROPPED:
+                    ConsumerQueue.release(message);
+                    fanOut.recordDropped();
+                    break;
+                case OVERFLOW:
+                    ConsumerQueue.release(message);
+                    evict(consumer);
+                    fanOut.recordEvicted();
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Creates the queue of a subscribed consumer. The queue is closed again if the consumer was unsubscribed while it was created.
+     *
+     * @param consumer
+     *            consumer
+     * @param fanOut
+     *            dispatcher
+     */
+    private void openQueue(IConsumer consumer, FanOutDispatcher fanOut) {
+        ConsumerQueue queue = new ConsumerQueue(this, (IPushableConsumer) consumer, fanOut);
+        if (queues.putIfAbsent(consumer, queue) == null && !consumers.contains(consumer) && queues.remove(consumer, queue)) {
+            queue.close();
+        }
+    }
+
+    /**
+     * Removes a consumer whose queue overflowed. Listeners receive a consumer disconnect event carrying the {@link #OVERFLOW_EVICTION}
+     * parameter.
+     *
+     * @param consumer
+     *            consumer to evict
+     */
+    private void evict(IConsumer consumer) {
+        if (consumers.remove(consumer)) {
+            log.warn("Evicting consumer due to queue overflow: {}", consumer);
+            ConsumerQueue queue = queues.remove(consumer);
+            if (queue != null) {
+                queue.close();
+            }
+            fireConsumerConnectionEvent(consumer, PipeConnectionEvent.EventType.CONSUMER_DISCONNECT, Collections.singletonMap(OVERFLOW_EVICTION, Boolean.TRUE));
+            listeners.remove(consumer);
+        }
+    }
+
+    /**
+     * Returns the number of messages waiting to be pushed to the given consumer; always 0 when not in fan-out mode.
+     *
+     * @param consumer
+     *            consumer
+     * @return pending message count
+     */
+    public int getPendingMessages(IConsumer consumer) {
+        ConsumerQueue queue = queues.get(consumer);
+        return queue != null ? queue.size() : 0;
+    }
+
+    /**
+     * Returns the number of messages dropped for the given consumer due to its overflow policy.
+     *
+     * @param consumer
+     *            consumer
+     * @return dropped message count
+     */
+    public long getDroppedMessages(IConsumer consumer) {
+        ConsumerQueue queue = queues.get(consumer);
+        return queue != null ? queue.getDropped() : 0L;
+    }
+
+    /**
+     * Sets the dispatcher which enables fan-out mode; null restores serial pushing.
+     *
+     * @param dispatcher
+     *            fan-out dispatcher
+     */
+    public void setFanOutDispatcher(FanOutDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+        if (dispatcher != null) {
+            for (IConsumer consumer : consumers) {
+                openQueue(consumer, dispatcher);
+            }
+        }
+    }
+
+    /**
+     * Returns true if messages are currently pushed through per-consumer queues.
+     *
+     * @return true if in fan-out mode
+     */
+    public boolean isFanOut() {
+        FanOutDispatcher fanOut = dispatcher;
+        return fanOut != null && fanOut.isRunning();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void close() {
+        super.close();
+        queues.values().forEach(ConsumerQueue::close);
+        queues.clear();
+    }
+
 }
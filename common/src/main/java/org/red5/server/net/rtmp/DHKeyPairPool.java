@@ -0,0 +1,149 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.net.rtmp;
+
+import java.security.KeyPair;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Pool of precomputed Diffie-Hellman key pairs for encrypted handshakes. Generating a pair is the most expensive step of an RTMPE
+ * handshake, so pairs are generated ahead of time on a background thread which tops the pool up whenever it falls below half of its size.
+ * Each pair is handed out once; when the pool is empty the pair is generated on the calling thread.
+ *
+ * @author The Red5 Project
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+public class DHKeyPairPool implements InitializingBean, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(DHKeyPairPool.class);
+
+    private int size = 64;
+
+    private BlockingQueue<KeyPair> pool;
+
+    private ExecutorService refillExecutor;
+
+    private final AtomicBoolean refilling = new AtomicBoolean();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private volatile boolean disposed;
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        pool = new ArrayBlockingQueue<>(Math.max(1, size));
+        refillExecutor = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("DHKeyPairPool-"));
+        refill();
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        disposed = true;
+        if (refillExecutor != null) {
+            refillExecutor.shutdownNow();
+        }
+        if (pool != null) {
+            pool.clear();
+        }
+    }
+
+    /**
+     * Returns a key pair which has not been handed out before.
+     *
+     * @return dh key pair
+     */
+    public KeyPair take() {
+        KeyPair keyPair = pool != null ? pool.poll() : null;
+        if (keyPair != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            keyPair = RTMPHandshake.createKeyPair();
+        }
+        if (pool != null && pool.size() < size / 2) {
+            refill();
+        }
+        return keyPair;
+    }
+
+    private void refill() {
+        if (!disposed && refilling.compareAndSet(false, true)) {
+            try {
+                refillExecutor.execute(() -> {
+                    try {
+                        while (!disposed && pool.remainingCapacity() > 0) {
+                            pool.offer(RTMPHandshake.createKeyPair());
+                        }
+                    } catch (Exception e) {
+                        log.warn("Exception refilling the key pair pool", e);
+                    } finally {
+                        refilling.set(false);
+                    }
+                });
+            } catch (Exception e) {
+                refilling.set(false);
+                log.debug("Key pair pool refill rejected", e);
+            }
+        }
+    }
+
+    /**
+     * Sets the number of key pairs kept ready.
+     *
+     * @param size
+     *            key pairs
+     */
+    public void setSize(int size) {
+        this.size = size;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the number of key pairs ready to be handed out.
+     *
+     * @return pooled key pairs
+     */
+    public int getPooledCount() {
+        return pool != null ? pool.size() : 0;
+    }
+
+    /**
+     * Returns the number of key pairs handed out from the pool.
+     *
+     * @return pool hits
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of key pairs generated on the calling thread because the pool was empty.
+     *
+     * @return pool misses
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+}
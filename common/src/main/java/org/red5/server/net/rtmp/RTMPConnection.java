@@ -277,6 +277,11 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
      */
     protected transient ConcurrentMap<Number, AtomicInteger> pendingVideos = new ConcurrentHashMap<>(1, 0.9f, 1);
 
+    /**
+     * Listeners waiting for the pending messages to drain, keyed by the number of messages they wait for.
+     */
+    protected transient ConcurrentMap<Runnable, Long> writableListeners = new ConcurrentHashMap<>(1, 0.9f, 1);
+
     /**
      * Number of (NetStream) streams used.
      */
@@ -376,6 +381,27 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
      */
     protected volatile LinkedTransferQueue<Packet> receivedPacketQueue = new LinkedTransferQueue<>();
 
+    /**
+     * Whether received messages are handled in order by a serial consumer on the message executor, instead of by a dedicated polling thread
+     * per connection.
+     */
+    private boolean serialExecution;
+
+    /**
+     * Number of queued received messages at which reading from the client is suspended in serial execution mode, 0 to disable.
+     */
+    private int maxQueuedMessages = 256;
+
+    /**
+     * Set while the serial consumer is scheduled or running.
+     */
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+
+    /**
+     * Set while reading from the client is suspended because too many received messages are queued.
+     */
+    private final AtomicBoolean receiveSuspended = new AtomicBoolean(false);
+
     /**
      * Creates anonymous RTMP connection without scope.
      *
@@ -1038,6 +1064,7 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
             pendingCalls.clear();
             deferredResults.clear();
             pendingVideos.clear();
+            writableListeners.clear();
             streamBuffers.clear();
             if (isTrace) {
                 // dump memory stats
@@ -1449,6 +1476,15 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
             // increment the queue size
             receivedQueueSizeUpdater.incrementAndGet(this);
         }
+        if (serialExecution) {
+            // stop reading from the client until the consumer catches up
+            if (maxQueuedMessages > 0 && receivedQueueSize >= maxQueuedMessages && receiveSuspended.compareAndSet(false, true)) {
+                log.debug("Suspending receive on {} queued: {}", sessionId, receivedQueueSize);
+                suspendReceive();
+            }
+            scheduleReceivedPackets();
+            return;
+        }
         // create the future for processing the queue as needed
         if (receivedPacketFuture == null) {
             final RTMPConnection conn = this;
@@ -1516,6 +1552,73 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
         }
     }
 
+    /**
+     * Schedules the serial consumer of received packets, unless it is already scheduled. When the executor is saturated, the packets are
+     * handled on the calling thread which holds off further reads from the client, rather than being dropped.
+     */
+    private void scheduleReceivedPackets() {
+        while (draining.compareAndSet(false, true)) {
+            try {
+                executor.execute(() -> {
+                    if (drainReceivedPackets()) {
+                        scheduleReceivedPackets();
+                    }
+                });
+                return;
+            } catch (TaskRejectedException tre) {
+                log.debug("Executor saturated, handling received packets of {} on the calling thread", sessionId);
+                if (!drainReceivedPackets()) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Handles a batch of received packets in order; the batch size keeps a busy connection from holding an executor thread indefinitely.
+     *
+     * @return true if more packets are waiting
+     */
+    private boolean drainReceivedPackets() {
+        try {
+            if (state.getState() >= RTMP.STATE_ERROR) {
+                receivedPacketQueue.clear();
+                receivedQueueSizeUpdater.set(this, 0);
+                return false;
+            }
+            Packet p;
+            for (int handled = 0; handled < 32 && (p = receivedPacketQueue.poll()) != null; handled++) {
+                // decrement the queue size
+                receivedQueueSizeUpdater.decrementAndGet(this);
+                ReceivedMessageTask task = new ReceivedMessageTask(this, p);
+                try {
+                    task.call();
+                } catch (Throwable e) {
+                    log.warn("Incoming message failed task: {}", task, e);
+                }
+            }
+            if (receiveSuspended.get() && receivedQueueSize <= maxQueuedMessages / 2 && receiveSuspended.compareAndSet(true, false)) {
+                log.debug("Resuming receive on {} queued: {}", sessionId, receivedQueueSize);
+                resumeReceive();
+            }
+        } finally {
+            draining.set(false);
+        }
+        return !receivedPacketQueue.isEmpty();
+    }
+
+    /**
+     * Stops reading from the client; called when too many received messages are waiting to be handled.
+     */
+    protected void suspendReceive() {
+    }
+
+    /**
+     * Resumes reading from the client once the received messages have been mostly handled.
+     */
+    protected void resumeReceive() {
+    }
+
     /**
      * Mark message as sent.
      *
@@ -1543,6 +1646,34 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
             log.debug("Message sent: {} data type: {}", event.getType(), event.getDataType());
         }
         writtenMessages.incrementAndGet();
+        if (!writableListeners.isEmpty()) {
+            notifyWritableListeners();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean addWritableListener(long pending, Runnable listener) {
+        writableListeners.put(listener, pending);
+        // the last message may have been written before the listener was added
+        notifyWritableListeners();
+        return true;
+    }
+
+    /**
+     * Calls and removes the listeners waiting for no more than the number of messages now pending.
+     */
+    protected void notifyWritableListeners() {
+        final long pending = getPendingMessages();
+        writableListeners.forEach((listener, threshold) -> {
+            if (pending <= threshold && writableListeners.remove(listener, threshold)) {
+                try {
+                    listener.run();
+                } catch (Exception e) {
+                    log.warn("Exception in writable listener", e);
+                }
+            }
+        });
     }
 
     /**
@@ -1587,6 +1718,17 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
         // create a new sync message for every client to avoid concurrent access through multiple threads
         SharedObjectMessage syncMessage = state.getEncoding() == Encoding.AMF3 ? new FlexSharedObjectMessage(null, name, currentVersion, persistent) : new SharedObjectMessage(null, name, currentVersion, persistent);
         syncMessage.addEvents(events);
+        sendSharedObjectMessage(syncMessage);
+    }
+
+    /**
+     * Send a shared object message, which must be a {@link FlexSharedObjectMessage} if the connection uses AMF3. The message is written as
+     * is, so its events may be shared with the messages of other connections.
+     *
+     * @param syncMessage
+     *            shared object message
+     */
+    public void sendSharedObjectMessage(SharedObjectMessage syncMessage) {
         try {
             // get the channel for so updates
             Optional.ofNullable(getChannel(3)).ifPresent(c -> c.write(syncMessage));
@@ -1779,6 +1921,22 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
         this.maxPollTimeout = maxPollTimeout;
     }
 
+    public boolean isSerialExecution() {
+        return serialExecution;
+    }
+
+    public void setSerialExecution(boolean serialExecution) {
+        this.serialExecution = serialExecution;
+    }
+
+    public int getMaxQueuedMessages() {
+        return maxQueuedMessages;
+    }
+
+    public void setMaxQueuedMessages(int maxQueuedMessages) {
+        this.maxQueuedMessages = maxQueuedMessages;
+    }
+
     public int getChannelsInitalCapacity() {
         return channelsInitalCapacity;
     }
@@ -9,6 +9,7 @@ package org.red5.server.net.rtmp;
 
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
 import java.security.InvalidKeyException;
 import java.security.KeyFactory;
 import java.security.KeyPair;
@@ -118,7 +119,24 @@ public abstract class RTMPHandshake implements IHandshake {
 
     protected static final Random random = new Random();
 
-    protected KeyAgreement keyAgreement;
+    // digests and key agreements are done within a single call, so the instances are kept per thread instead of looked up for each one
+    private static final ThreadLocal<Mac> HMAC_SHA256 = ThreadLocal.withInitial(() -> getInstance(() -> Mac.getInstance("Hmac-SHA256", BouncyCastleProvider.PROVIDER_NAME)));
+
+    private static final ThreadLocal<KeyAgreement> DH_AGREEMENT = ThreadLocal.withInitial(() -> getInstance(() -> KeyAgreement.getInstance("DH")));
+
+    private static final ThreadLocal<KeyFactory> DH_KEY_FACTORY = ThreadLocal.withInitial(() -> getInstance(() -> KeyFactory.getInstance("DH")));
+
+    private static final ThreadLocal<KeyPairGenerator> DH_KEY_GENERATOR = ThreadLocal.withInitial(() -> getInstance(() -> {
+        KeyPairGenerator keyGen = KeyPairGenerator.getInstance("DH");
+        keyGen.initialize(new DHParameterSpec(DH_MODULUS, DH_BASE));
+        return keyGen;
+    }));
+
+    // precomputed dh key pairs, generated on demand if not set
+    private static DHKeyPairPool keyPairPool;
+
+    // this ends dh key pair
+    protected KeyPair keyPair;
 
     protected Cipher cipherOut;
 
@@ -216,26 +234,30 @@ public abstract class RTMPHandshake implements IHandshake {
     }
 
     /**
-     * Creates a Diffie-Hellman key pair.
+     * Creates a Diffie-Hellman key pair, taken from the key pair pool if there is one.
      *
      * @return dh keypair
      */
     protected KeyPair generateKeyPair() {
-        KeyPair keyPair = null;
-        DHParameterSpec keySpec = new DHParameterSpec(DH_MODULUS, DH_BASE);
+        keyPair = null;
         try {
-            KeyPairGenerator keyGen = KeyPairGenerator.getInstance("DH");
-            keyGen.initialize(keySpec);
-            keyPair = keyGen.generateKeyPair();
-            keyAgreement = KeyAgreement.getInstance("DH");
-            // key agreement is initialized with "this" ends private key
-            keyAgreement.init(keyPair.getPrivate());
+            DHKeyPairPool pool = keyPairPool;
+            keyPair = pool != null ? pool.take() : createKeyPair();
         } catch (Exception e) {
             log.error("Error generating keypair", e);
         }
         return keyPair;
     }
 
+    /**
+     * Generates a Diffie-Hellman key pair on the calling thread.
+     *
+     * @return dh keypair
+     */
+    static KeyPair createKeyPair() {
+        return DH_KEY_GENERATOR.get().generateKeyPair();
+    }
+
     /**
      * Returns the public key for a given key pair.
      *
@@ -252,6 +274,24 @@ public abstract class RTMPHandshake implements IHandshake {
         return Arrays.copyOfRange(BigIntegers.asUnsignedByteArray(dhY), 0, KEY_LENGTH);
     }
 
+    /**
+     * Computes the shared secret of this ends key pair and the other ends public key.
+     *
+     * @param publicKeyBytes
+     *            public key bytes
+     * @return shared secret bytes
+     */
+    protected byte[] getSharedSecret(byte[] publicKeyBytes) {
+        KeyAgreement agreement = DH_AGREEMENT.get();
+        try {
+            // key agreement is initialized with "this" ends private key
+            agreement.init(keyPair.getPrivate());
+        } catch (InvalidKeyException e) {
+            log.error("Exception initializing the key agreement", e);
+        }
+        return getSharedSecret(publicKeyBytes, agreement);
+    }
+
     /**
      * Determines the validation scheme for given input.
      *
@@ -264,7 +304,7 @@ public abstract class RTMPHandshake implements IHandshake {
     protected byte[] getSharedSecret(byte[] publicKeyBytes, KeyAgreement agreement) {
         BigInteger otherPublicKeyInt = new BigInteger(1, publicKeyBytes);
         try {
-            KeyFactory keyFactory = KeyFactory.getInstance("DH");
+            KeyFactory keyFactory = DH_KEY_FACTORY.get();
             KeySpec otherPublicKeySpec = new DHPublicKeySpec(otherPublicKeyInt, RTMPHandshake.DH_MODULUS, RTMPHandshake.DH_BASE);
             PublicKey otherPublicKey = keyFactory.generatePublic(otherPublicKeySpec);
             agreement.doPhase(otherPublicKey, true);
@@ -313,13 +353,18 @@ public abstract class RTMPHandshake implements IHandshake {
             log.trace("calculateDigest - digestPos: {} handshakeOffset: {} keyLen: {} digestOffset: {}", digestPos, handshakeOffset, keyLen, digestOffset);
         }
         int messageLen = Constants.HANDSHAKE_SIZE - DIGEST_LENGTH; // 1504
-        byte[] message = new byte[messageLen];
-        // copy bytes from handshake message starting at handshake offset into message start at index 0 and up-to digest position length
-        System.arraycopy(handshakeMessage, handshakeOffset, message, 0, digestPos);
-        // copy bytes from handshake message starting at handshake offset plus digest position plus digest length
-        // into message start at digest position and up-to message length minus digest position
-        System.arraycopy(handshakeMessage, handshakeOffset + digestPos + DIGEST_LENGTH, message, digestPos, messageLen - digestPos);
-        calculateHMAC_SHA256(message, 0, messageLen, key, keyLen, digest, digestOffset);
+        try {
+            Mac hmac = HMAC_SHA256.get();
+            hmac.init(new SecretKeySpec(key, 0, keyLen, "HmacSHA256"));
+            // the message is the handshake message without the digest, hashed from both sides of it instead of copied together
+            hmac.update(handshakeMessage, handshakeOffset, digestPos);
+            hmac.update(handshakeMessage, handshakeOffset + digestPos + DIGEST_LENGTH, messageLen - digestPos);
+            hmac.doFinal(digest, digestOffset);
+        } catch (InvalidKeyException e) {
+            log.error("Invalid key", e);
+        } catch (Exception e) {
+            log.error("Hash calculation failed", e);
+        }
     }
 
     /**
@@ -341,7 +386,7 @@ public abstract class RTMPHandshake implements IHandshake {
         }
         byte[] calcDigest = new byte[DIGEST_LENGTH];
         calculateDigest(digestPos, handshakeMessage, 0, key, keyLen, calcDigest, 0);
-        if (!Arrays.equals(Arrays.copyOfRange(handshakeMessage, digestPos, (digestPos + DIGEST_LENGTH)), calcDigest)) {
+        if (!Arrays.equals(handshakeMessage, digestPos, digestPos + DIGEST_LENGTH, calcDigest, 0, DIGEST_LENGTH)) {
             return false;
         }
         return true;
@@ -372,16 +417,11 @@ public abstract class RTMPHandshake implements IHandshake {
             log.trace("calculateHMAC_SHA256 - keyLen: {} key: {}", keyLen, Hex.encodeHexString(Arrays.copyOf(key, keyLen)));
             //log.trace("calculateHMAC_SHA256 - digestOffset: {} digest: {}", digestOffset, Hex.encodeHexString(Arrays.copyOfRange(digest, digestOffset, digestOffset + DIGEST_LENGTH)));
         }
-        byte[] calcDigest;
         try {
-            Mac hmac = Mac.getInstance("Hmac-SHA256", BouncyCastleProvider.PROVIDER_NAME);
-            hmac.init(new SecretKeySpec(Arrays.copyOf(key, keyLen), "HmacSHA256"));
-            byte[] actualMessage = Arrays.copyOfRange(message, messageOffset, messageOffset + messageLen);
-            calcDigest = hmac.doFinal(actualMessage);
-            //if (log.isTraceEnabled()) {
-            //    log.trace("Calculated digest: {}", Hex.encodeHexString(calcDigest));
-            //}
-            System.arraycopy(calcDigest, 0, digest, digestOffset, DIGEST_LENGTH);
+            Mac hmac = HMAC_SHA256.get();
+            hmac.init(new SecretKeySpec(key, 0, keyLen, "HmacSHA256"));
+            hmac.update(message, messageOffset, messageLen);
+            hmac.doFinal(digest, digestOffset);
         } catch (InvalidKeyException e) {
             log.error("Invalid key", e);
         } catch (Exception e) {
@@ -697,4 +737,33 @@ public abstract class RTMPHandshake implements IHandshake {
         return swfVerificationBytes;
     }
 
+    /**
+     * Sets the pool of precomputed key pairs used for encrypted handshakes.
+     *
+     * @param keyPairPool
+     *            key pair pool
+     */
+    public static void setKeyPairPool(DHKeyPairPool keyPairPool) {
+        RTMPHandshake.keyPairPool = keyPairPool;
+    }
+
+    public static DHKeyPairPool getKeyPairPool() {
+        return keyPairPool;
+    }
+
+    private static <T> T getInstance(SecurityFactory<T> factory) {
+        try {
+            return factory.get();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface SecurityFactory<T> {
+
+        T get() throws GeneralSecurityException;
+
+    }
+
 }
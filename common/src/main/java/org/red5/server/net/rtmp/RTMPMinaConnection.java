@@ -239,6 +239,22 @@ public class RTMPMinaConnection extends RTMPConnection implements RTMPMinaConnec
         return true;
     }
 
+    /** {@inheritDoc} */
+    @Override
+    protected void suspendReceive() {
+        if (ioSession != null) {
+            ioSession.suspendRead();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void resumeReceive() {
+        if (ioSession != null) {
+            ioSession.resumeRead();
+        }
+    }
+
     /** {@inheritDoc} */
     @Override
     public long getPendingMessages() {
@@ -387,6 +403,14 @@ public class RTMPMinaConnection extends RTMPConnection implements RTMPMinaConnec
         }
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public void messageSent(Packet message) {
+        // the encoded packet has been written, so its buffer may go back to the pool
+        message.releaseEncoded();
+        super.messageSent(message);
+    }
+
     /** {@inheritDoc} */
     @Override
     public void writeRaw(IoBuffer out) {
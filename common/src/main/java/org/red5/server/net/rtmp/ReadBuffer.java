@@ -6,16 +6,13 @@
  */
 package org.red5.server.net.rtmp;
 
-import java.io.ByteArrayOutputStream;
-import java.nio.ByteBuffer;
-
 import org.apache.mina.core.buffer.IoBuffer;
-import org.red5.server.net.rtmp.message.Constants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Buffer for incoming data.
+ * Buffer for incoming data. Incoming buffers are referenced rather than copied while nothing else is buffered, so a buffer added to this
+ * one must not be modified afterwards; bytes are only copied when data has to be accumulated across reads.
  *
  * @author Paul Gregoire (mondain@gmail.com)
  *
@@ -24,8 +21,11 @@ public class ReadBuffer {
 
     private Logger log = LoggerFactory.getLogger(getClass());
 
-    // buffer for incoming data
-    private ByteArrayOutputStream buffer = new ByteArrayOutputStream(Constants.HANDSHAKE_SIZE);
+    // buffered data between position and limit, null when empty
+    private IoBuffer buffer;
+
+    // whether or not the buffer was allocated here and may be appended to
+    private boolean owned;
 
     /**
      * Returns the buffer size.
@@ -33,7 +33,7 @@ public class ReadBuffer {
      * @return buffer remaining
      */
     public int getBufferSize() {
-        return buffer.size();
+        return buffer != null ? buffer.remaining() : 0;
     }
 
     /**
@@ -44,22 +44,37 @@ public class ReadBuffer {
      */
     public void addBuffer(byte[] in) {
         log.debug("Adding buffer - first: {} length: {}", in[0], in.length);
-        buffer.writeBytes(in);
+        addBuffer(IoBuffer.wrap(in));
     }
 
     /**
-     * Add a IoBuffer to the buffer.
+     * Add a IoBuffer to the buffer. The remaining bytes of the incoming buffer are consumed.
      *
      * @param in
      *            incoming IoBuffer
      */
     public void addBuffer(IoBuffer in) {
-        byte[] tmp = new byte[in.remaining()];
-        in.get(tmp);
         if (log.isDebugEnabled()) {
-            log.debug("Adding buffer - first: {} length: {} total buffered: {}", tmp[0], tmp.length, buffer.size());
+            log.debug("Adding buffer - length: {} total buffered: {}", in.remaining(), getBufferSize());
         }
-        buffer.writeBytes(tmp);
+        if (getBufferSize() == 0) {
+            // nothing buffered, reference the incoming bytes
+            buffer = in.slice();
+            owned = false;
+        } else if (owned) {
+            // drop the bytes already read and append
+            buffer.compact();
+            buffer.put(in);
+            buffer.flip();
+        } else {
+            IoBuffer joined = IoBuffer.allocate(buffer.remaining() + in.remaining());
+            joined.setAutoExpand(true);
+            joined.put(buffer);
+            joined.put(in);
+            buffer = joined.flip();
+            owned = true;
+        }
+        in.position(in.limit());
     }
 
     /**
@@ -68,9 +83,9 @@ public class ReadBuffer {
      * @return IoBuffer
      */
     public IoBuffer getBufferAsIoBuffer() {
-        byte[] arr = buffer.toByteArray();
-        buffer.reset();
-        return IoBuffer.wrap(arr);
+        IoBuffer buf = buffer != null ? buffer : IoBuffer.allocate(0);
+        buffer = null;
+        return buf;
     }
 
     /**
@@ -79,9 +94,7 @@ public class ReadBuffer {
      * @return bytes
      */
     public byte[] getBuffer() {
-        byte[] arr = buffer.toByteArray();
-        buffer.reset();
-        return arr;
+        return getBuffer(getBufferSize());
     }
 
     /**
@@ -91,18 +104,15 @@ public class ReadBuffer {
      * @return bytes
      */
     public byte[] getBuffer(int length) {
-        ByteBuffer buf = ByteBuffer.wrap(buffer.toByteArray());
-        buffer.reset();
         byte[] slice = new byte[length];
-        buf.get(slice);
-        byte[] remaining = new byte[buf.remaining()];
-        buf.get(remaining);
-        buffer.writeBytes(remaining);
+        if (length > 0) {
+            buffer.get(slice);
+        }
         return slice;
     }
 
     public void clearBuffer() {
-        buffer.reset();
+        buffer = null;
     }
 
 }
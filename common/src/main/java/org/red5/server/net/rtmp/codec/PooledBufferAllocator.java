@@ -0,0 +1,511 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.net.rtmp.codec;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.mina.core.buffer.AbstractIoBuffer;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.buffer.IoBufferAllocator;
+import org.red5.server.jmx.mxbeans.PooledBufferAllocatorMXBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ * Size-classed buffer pool for the RTMP codec. Requests are rounded up to a power of two between the minimum and maximum class size; larger
+ * requests are served unpooled. Freed buffers go to a small cache of the freeing thread first and to a bounded pool shared by all threads
+ * after that, so buffers freed by the I/O processors once written are available to any encoding thread.
+ * <br>
+ * The pool is not installed as the global allocator, only buffers allocated from it explicitly are pooled. Views created from a pooled
+ * buffer (duplicate, slice, read-only) are not pooled themselves and keep their parent from being reclaimed while in use. A buffer must not
+ * be used once freed. With leak detection enabled, buffers which are garbage collected without having been freed are counted and their
+ * memory is returned to the pool.
+ *
+ * @author The Red5 Project
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+@ManagedResource(objectName = "org.red5.server:name=rtmpBufferPool,type=PooledBufferAllocator")
+public class PooledBufferAllocator implements IoBufferAllocator, PooledBufferAllocatorMXBean, InitializingBean, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(PooledBufferAllocator.class);
+
+    private static final int HEAP = 0, DIRECT = 1;
+
+    /**
+     * Whether or not the pool is used
+     */
+    private boolean enabled;
+
+    /**
+     * Whether or not to allocate direct buffers when the type isn't requested explicitly
+     */
+    private boolean direct;
+
+    /**
+     * Smallest size class; rounded up to a power of two
+     */
+    private int minClassSize = 256;
+
+    /**
+     * Largest size class; rounded up to a power of two
+     */
+    private int maxClassSize = 65536;
+
+    /**
+     * Idle buffers kept per size class by each thread
+     */
+    private int threadCacheSize = 16;
+
+    /**
+     * Idle buffers kept per size class in the shared pool
+     */
+    private int poolCapacity = 512;
+
+    /**
+     * Whether or not to track buffers which are never freed
+     */
+    private boolean leakDetection = true;
+
+    private int minShift;
+
+    private int classes;
+
+    private ConcurrentLinkedQueue<ByteBuffer>[][] pools;
+
+    private AtomicIntegerArray pooled;
+
+    private ThreadLocal<ArrayDeque<ByteBuffer>[][]> threadCaches;
+
+    private final Set<Tracker> trackers = ConcurrentHashMap.newKeySet();
+
+    private final ReferenceQueue<PooledBuffer> collected = new ReferenceQueue<>();
+
+    private final AtomicLong allocated = new AtomicLong();
+
+    private final AtomicLong reused = new AtomicLong();
+
+    private final AtomicLong unpooled = new AtomicLong();
+
+    private final AtomicLong outstanding = new AtomicLong();
+
+    private final AtomicLong leaks = new AtomicLong();
+
+    private volatile boolean disposed;
+
+    /** {@inheritDoc} */
+    @SuppressWarnings("unchecked")
+    public void afterPropertiesSet() throws Exception {
+        minClassSize = roundUp(Math.max(16, minClassSize));
+        maxClassSize = roundUp(Math.max(minClassSize, maxClassSize));
+        minShift = Integer.numberOfTrailingZeros(minClassSize);
+        classes = Integer.numberOfTrailingZeros(maxClassSize) - minShift + 1;
+        pools = new ConcurrentLinkedQueue[2][classes];
+        for (int type = HEAP; type <= DIRECT; type++) {
+            for (int i = 0; i < classes; i++) {
+                pools[type][i] = new ConcurrentLinkedQueue<>();
+            }
+        }
+        pooled = new AtomicIntegerArray(2 * classes);
+        final int cacheClasses = classes;
+        threadCaches = ThreadLocal.withInitial(() -> {
+            ArrayDeque<ByteBuffer>[][] caches = new ArrayDeque[2][cacheClasses];
+            for (int type = HEAP; type <= DIRECT; type++) {
+                for (int i = 0; i < cacheClasses; i++) {
+                    caches[type][i] = new ArrayDeque<>();
+                }
+            }
+            return caches;
+        });
+        disposed = false;
+        log.debug("Buffer pool enabled: {} direct: {} size classes: {}-{}", enabled, direct, minClassSize, maxClassSize);
+    }
+
+    /** {@inheritDoc} */
+    public void destroy() throws Exception {
+        disposed = true;
+        if (pools != null) {
+            for (int type = HEAP; type <= DIRECT; type++) {
+                for (int i = 0; i < classes; i++) {
+                    pools[type][i].clear();
+                    pooled.set(type * classes + i, 0);
+                }
+            }
+        }
+        trackers.clear();
+    }
+
+    /**
+     * Allocates a buffer of the configured type.
+     *
+     * @param capacity
+     *            requested capacity
+     * @return buffer whose limit is the requested capacity
+     */
+    public IoBuffer allocate(int capacity) {
+        return allocate(capacity, direct);
+    }
+
+    /** {@inheritDoc} */
+    public IoBuffer allocate(int capacity, boolean direct) {
+        expunge();
+        PooledBuffer buffer = new PooledBuffer(allocateNioBuffer(capacity, direct), true);
+        buffer.limit(capacity);
+        outstanding.incrementAndGet();
+        if (leakDetection) {
+            buffer.tracker = new Tracker(buffer, collected);
+            trackers.add(buffer.tracker);
+        }
+        return buffer;
+    }
+
+    /** {@inheritDoc} */
+    public ByteBuffer allocateNioBuffer(int capacity, boolean direct) {
+        allocated.incrementAndGet();
+        int index = classIndex(capacity);
+        if (index < 0) {
+            unpooled.incrementAndGet();
+            return newNioBuffer(capacity, direct);
+        }
+        int type = direct ? DIRECT : HEAP;
+        ByteBuffer buf = null;
+        if (threadCacheSize > 0) {
+            buf = threadCaches.get()[type][index].pollFirst();
+        }
+        if (buf == null) {
+            buf = pools[type][index].poll();
+            if (buf != null) {
+                pooled.decrementAndGet(type * classes + index);
+            }
+        }
+        if (buf == null) {
+            return newNioBuffer(minClassSize << index, direct);
+        }
+        reused.incrementAndGet();
+        buf.clear();
+        buf.order(ByteOrder.BIG_ENDIAN);
+        return buf;
+    }
+
+    /** {@inheritDoc} */
+    public IoBuffer wrap(ByteBuffer nioBuffer) {
+        // wrapped buffers are owned by the caller and never pooled
+        return new PooledBuffer(nioBuffer, false);
+    }
+
+    /**
+     * Does nothing, since MINA calls this on the global allocator whenever a buffer is constructed; the pool is emptied on {@link #destroy()}.
+     */
+    public void dispose() {
+    }
+
+    /**
+     * Returns whether or not the given buffer was allocated by this pool and has not been freed yet.
+     *
+     * @param buffer
+     *            buffer
+     * @return true if pooled and in use
+     */
+    public boolean isPooled(IoBuffer buffer) {
+        return buffer instanceof PooledBuffer && ((PooledBuffer) buffer).owner && ((PooledBuffer) buffer).buf != null;
+    }
+
+    /**
+     * Returns a buffer to the pool; buffers whose capacity doesn't match a size class are left to the garbage collector.
+     *
+     * @param buf
+     *            NIO buffer
+     */
+    private void recycle(ByteBuffer buf) {
+        if (disposed || buf.isReadOnly()) {
+            return;
+        }
+        int capacity = buf.capacity();
+        int index = classIndex(capacity);
+        if (index < 0 || (minClassSize << index) != capacity) {
+            return;
+        }
+        int type = buf.isDirect() ? DIRECT : HEAP;
+        if (threadCacheSize > 0) {
+            ArrayDeque<ByteBuffer> cache = threadCaches.get()[type][index];
+            if (cache.size() < threadCacheSize) {
+                cache.offerFirst(buf);
+                return;
+            }
+        }
+        if (pooled.incrementAndGet(type * classes + index) <= poolCapacity) {
+            pools[type][index].offer(buf);
+        } else {
+            pooled.decrementAndGet(type * classes + index);
+        }
+    }
+
+    /**
+     * Reclaims the memory of buffers which were collected without having been freed.
+     */
+    private void expunge() {
+        Reference<? extends PooledBuffer> ref;
+        while ((ref = collected.poll()) != null) {
+            Tracker tracker = (Tracker) ref;
+            if (trackers.remove(tracker)) {
+                long count = leaks.incrementAndGet();
+                outstanding.decrementAndGet();
+                log.debug("Buffer of {} bytes was not freed before being collected, leaks: {}", tracker.buf.capacity(), count);
+                recycle(tracker.buf);
+            }
+        }
+    }
+
+    private int classIndex(int capacity) {
+        if (capacity > maxClassSize) {
+            return -1;
+        }
+        if (capacity <= minClassSize) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(capacity - 1) - minShift;
+    }
+
+    private static ByteBuffer newNioBuffer(int capacity, boolean direct) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    private static int roundUp(int size) {
+        int rounded = Integer.highestOneBit(size);
+        return rounded < size ? rounded << 1 : rounded;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isDirect() {
+        return direct;
+    }
+
+    public void setDirect(boolean direct) {
+        this.direct = direct;
+    }
+
+    public int getMinClassSize() {
+        return minClassSize;
+    }
+
+    public void setMinClassSize(int minClassSize) {
+        this.minClassSize = minClassSize;
+    }
+
+    public int getMaxClassSize() {
+        return maxClassSize;
+    }
+
+    public void setMaxClassSize(int maxClassSize) {
+        this.maxClassSize = maxClassSize;
+    }
+
+    public int getThreadCacheSize() {
+        return threadCacheSize;
+    }
+
+    public void setThreadCacheSize(int threadCacheSize) {
+        this.threadCacheSize = threadCacheSize;
+    }
+
+    public int getPoolCapacity() {
+        return poolCapacity;
+    }
+
+    public void setPoolCapacity(int poolCapacity) {
+        this.poolCapacity = poolCapacity;
+    }
+
+    public boolean isLeakDetection() {
+        return leakDetection;
+    }
+
+    public void setLeakDetection(boolean leakDetection) {
+        this.leakDetection = leakDetection;
+    }
+
+    public long getAllocatedCount() {
+        return allocated.get();
+    }
+
+    public long getReusedCount() {
+        return reused.get();
+    }
+
+    public long getUnpooledCount() {
+        return unpooled.get();
+    }
+
+    public long getOutstandingCount() {
+        return outstanding.get();
+    }
+
+    public long getLeakCount() {
+        expunge();
+        return leaks.get();
+    }
+
+    public int getPooledCount() {
+        int count = 0;
+        for (int occupancy : getPoolOccupancy()) {
+            count += occupancy;
+        }
+        return count;
+    }
+
+    public long getPooledBytes() {
+        long bytes = 0;
+        int[] occupancy = getPoolOccupancy();
+        for (int i = 0; i < occupancy.length; i++) {
+            bytes += (long) occupancy[i] * (minClassSize << i);
+        }
+        return bytes;
+    }
+
+    public int[] getPoolOccupancy() {
+        int[] occupancy = new int[classes];
+        for (int i = 0; i < classes; i++) {
+            occupancy[i] = pooled.get(HEAP * classes + i) + pooled.get(DIRECT * classes + i);
+        }
+        return occupancy;
+    }
+
+    /**
+     * Weak reference to an allocated buffer, holding on to its memory in case it's collected without being freed.
+     */
+    private static final class Tracker extends WeakReference<PooledBuffer> {
+
+        ByteBuffer buf;
+
+        Tracker(PooledBuffer buffer, ReferenceQueue<PooledBuffer> queue) {
+            super(buffer, queue);
+            this.buf = buffer.buf;
+        }
+
+    }
+
+    /**
+     * Buffer handed out by the pool. Derived buffers hold their parent, the owner of the memory, so it cannot be reclaimed while a view is
+     * still in use.
+     */
+    private final class PooledBuffer extends AbstractIoBuffer {
+
+        private final PooledBuffer parent;
+
+        /**
+         * Whether or not the memory of this buffer is returned to the pool when freed
+         */
+        private final boolean owner;
+
+        private ByteBuffer buf;
+
+        private Tracker tracker;
+
+        PooledBuffer(ByteBuffer buf, boolean owner) {
+            // this constructor installs the given allocator as the global one, so hand it the current global allocator to leave it as it
+            // is; expansion allocates through the global allocator and the memory it returns is pooled once freed like any other
+            super(IoBuffer.getAllocator(), buf.capacity());
+            this.parent = null;
+            this.owner = owner;
+            this.buf = buf;
+        }
+
+        PooledBuffer(PooledBuffer parent, ByteBuffer buf) {
+            super(parent);
+            this.parent = parent;
+            this.owner = false;
+            this.buf = buf;
+        }
+
+        @Override
+        public ByteBuffer buf() {
+            return buf;
+        }
+
+        @Override
+        protected void buf(ByteBuffer newBuf) {
+            ByteBuffer oldBuf = buf;
+            buf = newBuf;
+            if (tracker != null) {
+                tracker.buf = newBuf;
+            }
+            // the contents have been copied by the expansion
+            if (owner && oldBuf != null) {
+                recycle(oldBuf);
+            }
+        }
+
+        @Override
+        protected IoBuffer duplicate0() {
+            return new PooledBuffer(this, buf.duplicate());
+        }
+
+        @Override
+        protected IoBuffer slice0() {
+            return new PooledBuffer(this, buf.slice());
+        }
+
+        @Override
+        protected IoBuffer asReadOnlyBuffer0() {
+            return new PooledBuffer(this, buf.asReadOnlyBuffer());
+        }
+
+        @Override
+        public byte[] array() {
+            return buf.array();
+        }
+
+        @Override
+        public int arrayOffset() {
+            return buf.arrayOffset();
+        }
+
+        @Override
+        public boolean hasArray() {
+            return buf.hasArray();
+        }
+
+        @Override
+        public synchronized void free() {
+            if (!owner || buf == null) {
+                // views and wrapped buffers don't own their memory
+                return;
+            }
+            ByteBuffer oldBuf = buf;
+            buf = null;
+            if (tracker != null) {
+                trackers.remove(tracker);
+                tracker.clear();
+                tracker = null;
+            }
+            outstanding.decrementAndGet();
+            recycle(oldBuf);
+        }
+
+    }
+
+}
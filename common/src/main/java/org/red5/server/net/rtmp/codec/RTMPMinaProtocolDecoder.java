@@ -28,6 +28,11 @@ public class RTMPMinaProtocolDecoder extends ProtocolDecoderAdapter {
 
     protected static Logger log = LoggerFactory.getLogger(RTMPMinaProtocolDecoder.class);
 
+    /**
+     * Session attribute holding the bytes of an incomplete chunk
+     */
+    private static final String BUFFER = "buffer";
+
     private RTMPProtocolDecoder decoder = new RTMPProtocolDecoder();
 
     /** {@inheritDoc} */
@@ -50,30 +55,25 @@ public class RTMPMinaProtocolDecoder extends ProtocolDecoderAdapter {
             if (conn != null) {
                 // set the connection to local if its referred to by this session
                 Red5.setConnectionLocal(conn);
-                // copy data range from incoming
                 if (log.isTraceEnabled()) {
                     log.trace("Incomming: position {}, limit {}, remaining {}", new Object[] { in.position(), in.limit(), in.remaining() });
                 }
-                byte[] arr = new byte[in.remaining()];
-                in.get(arr);
-                // create a buffer and store it on the session
-                IoBuffer buf = (IoBuffer) session.getAttribute("buffer");
-                if (buf == null) {
-                    buf = IoBuffer.allocate(arr.length);
-                    buf.setAutoExpand(true);
-                    session.setAttribute("buffer", buf);
+                // bytes of an incomplete chunk left from the previous read, if any
+                IoBuffer buf = (IoBuffer) session.removeAttribute(BUFFER);
+                if (buf != null) {
+                    // append to them and flip so we can read
+                    buf.put(in);
+                    buf.flip();
+                } else {
+                    // decode straight from the incoming buffer
+                    buf = in;
                 }
-                // copy incoming into buffer
-                buf.put(arr);
-                // flip so we can read
-                buf.flip();
                 if (log.isTraceEnabled()) {
-                    //log.trace("Buffer before: {}", Hex.encodeHexString(arr));
                     log.trace("Buffers info before: position {}, limit {}, remaining {}", new Object[] { buf.position(), buf.limit(), buf.remaining() });
                 }
                 try {
-                    // construct any objects from the decoded buffer
-                    List<?> objects = decoder.decodeBuffer(conn, buf);
+                    // construct any objects from the decoded buffer, bodies of single chunk messages are slices of it
+                    List<?> objects = decoder.decodeBufferInPlace(conn, buf);
                     log.trace("Decoded: {}", objects);
                     if (objects != null) {
                         int writeCount = 0;
@@ -90,9 +90,13 @@ public class RTMPMinaProtocolDecoder extends ProtocolDecoderAdapter {
                     Red5.setConnectionLocal(null);
                 }
                 if (log.isTraceEnabled()) {
-                    //log.trace("Buffer after: {}", Hex.encodeHexString(Arrays.copyOfRange(buf.array(), buf.position(), buf.limit())));
                     log.trace("Buffers info after: position {}, limit {}, remaining {}", new Object[] { buf.position(), buf.limit(), buf.remaining() });
                 }
+                if (buf.hasRemaining()) {
+                    keep(session, conn, buf, buf != in);
+                }
+                // the incoming bytes are all consumed, either decoded or kept
+                in.position(in.limit());
             } else {
                 log.debug("Closing and skipping decode for unregistered connection: {}", sessionId);
                 session.closeNow();
@@ -103,6 +107,34 @@ public class RTMPMinaProtocolDecoder extends ProtocolDecoderAdapter {
         }
     }
 
+    /**
+     * Keeps the bytes of an incomplete chunk for the next read. They are moved to a buffer of their own unless nothing was decoded from the
+     * buffer holding them, since decoded message bodies may be slices of it; the new buffer is sized for the data the decoder waits for,
+     * so that a large chunk arriving over many reads is copied only once.
+     *
+     * @param session
+     *            session
+     * @param conn
+     *            connection
+     * @param buf
+     *            buffer positioned at the first byte not decoded
+     * @param owned
+     *            whether the buffer was allocated by this decoder
+     */
+    private void keep(IoSession session, RTMPConnection conn, IoBuffer buf, boolean owned) {
+        IoBuffer rest;
+        if (owned && buf.position() == 0) {
+            // nothing decoded from our own buffer, keep appending to it
+            rest = buf.compact();
+        } else {
+            int needed = conn.getDecoderState().getDecoderBufferAmount();
+            rest = IoBuffer.allocate(Math.max(buf.remaining(), needed));
+            rest.setAutoExpand(true);
+            rest.put(buf);
+        }
+        session.setAttribute(BUFFER, rest);
+    }
+
     /**
      * Sets the RTMP protocol decoder.
      *
@@ -8,7 +8,9 @@
 package org.red5.server.net.rtmp.codec;
 
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
 
 import org.apache.mina.core.buffer.IoBuffer;
 import org.apache.mina.core.session.IoSession;
@@ -18,6 +20,7 @@ import org.apache.mina.filter.codec.ProtocolEncoderOutput;
 import org.red5.server.api.Red5;
 import org.red5.server.net.IConnectionManager;
 import org.red5.server.net.rtmp.RTMPConnection;
+import org.red5.server.net.rtmp.message.Packet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -32,6 +35,11 @@ public class RTMPMinaProtocolEncoder extends ProtocolEncoderAdapter {
 
     private int targetChunkSize = 2048;
 
+    {
+        // encoded packets are freed by the connection once they have been sent
+        encoder.setPooledOutput(true);
+    }
+
     /** {@inheritDoc} */
     public void encode(IoSession session, Object message, ProtocolEncoderOutput out) throws ProtocolCodecException {
         // get the connection from the session
@@ -54,8 +62,10 @@ public class RTMPMinaProtocolEncoder extends ProtocolEncoderAdapter {
                 }
                 Boolean interrupted = false;
                 try {
+                    // shared read-only payload, written as-is after the connection specific buffer
+                    final List<IoBuffer> sharedParts = new ArrayList<>(1);
                     // get the buffer
-                    final IoBuffer buf = message instanceof IoBuffer ? (IoBuffer) message : encoder.encode(message);
+                    final IoBuffer buf = message instanceof IoBuffer ? (IoBuffer) message : encoder.encode(message, sharedParts);
                     if (buf != null) {
                         int requestedWriteChunkSize = conn.getState().getWriteChunkSize();
                         log.trace("Requested chunk size: {} target chunk size: {}", requestedWriteChunkSize, targetChunkSize);
@@ -66,6 +76,12 @@ public class RTMPMinaProtocolEncoder extends ProtocolEncoderAdapter {
                             int sentChunks = Chunker.chunkAndWrite(out, buf, requestedWriteChunkSize, targetChunkSize);
                             log.trace("Wrote {} chunks", sentChunks);
                         }
+                        for (IoBuffer sharedPart : sharedParts) {
+                            out.write(sharedPart);
+                        }
+                        if (message instanceof Packet) {
+                            ((Packet) message).setEncoded(buf);
+                        }
                     } else {
                         log.trace("Response buffer was null after encoding");
                     }
@@ -99,6 +115,7 @@ public class RTMPMinaProtocolEncoder extends ProtocolEncoderAdapter {
      */
     public void setEncoder(RTMPProtocolEncoder encoder) {
         this.encoder = encoder;
+        encoder.setPooledOutput(true);
     }
 
     /**
@@ -91,6 +91,29 @@ public class RTMPProtocolDecoder implements Constants, IEventDecoder {
      * @return a list of decoded objects, may be empty if nothing could be decoded
      */
     public List<Object> decodeBuffer(RTMPConnection conn, IoBuffer buffer) {
+        List<Object> result = decodeBuffer(conn, buffer, false);
+        if (conn != null) {
+            buffer.compact();
+        }
+        return result;
+    }
+
+    /**
+     * Decode all available objects in buffer without compacting it. The body of a message carried by a single chunk is a slice of the
+     * buffer instead of a copy, so the content of the buffer must not be modified afterwards. The position of the buffer is left at the
+     * first byte which could not be decoded yet, at its limit if it was consumed entirely.
+     *
+     * @param conn
+     *            RTMP connection
+     * @param buffer
+     *            IoBuffer of data to be decoded
+     * @return a list of decoded objects, may be empty if nothing could be decoded
+     */
+    public List<Object> decodeBufferInPlace(RTMPConnection conn, IoBuffer buffer) {
+        return decodeBuffer(conn, buffer, true);
+    }
+
+    private List<Object> decodeBuffer(RTMPConnection conn, IoBuffer buffer, boolean slice) {
         final int position = buffer.position();
         //if (isTrace) {
         //    log.trace("decodeBuffer: {}", Hex.encodeHexString(Arrays.copyOfRange(buffer.array(), position, buffer.limit())));
@@ -119,7 +142,7 @@ public class RTMPProtocolDecoder implements Constants, IEventDecoder {
                         log.trace("Cannot start decoding");
                         break;
                     }
-                    final Object decodedObject = decode(conn, state, buffer);
+                    final Object decodedObject = decode(conn, state, buffer, slice);
                     if (state.hasDecodedObject()) {
                         //log.trace("Has decoded object");
                         if (decodedObject != null) {
@@ -134,19 +157,21 @@ public class RTMPProtocolDecoder implements Constants, IEventDecoder {
                     }
                 }
             } catch (Exception ex) {
-                log.warn("Failed to decodeBuffer: pos {}, limit {}, chunk size {}, buffer {}", position, buffer.limit(), conn.getState().getReadChunkSize(), Hex.encodeHexString(Arrays.copyOfRange(buffer.array(), position, buffer.limit())));
+                log.warn("Failed to decodeBuffer: pos {}, limit {}, chunk size {}, buffer {}", position, buffer.limit(), conn.getState().getReadChunkSize(), buffer.hasArray() ? Hex.encodeHexString(Arrays.copyOfRange(buffer.array(), buffer.arrayOffset() + position, buffer.arrayOffset() + buffer.limit())) : buffer.getHexDump());
                 // catch any non-handshake exception in the decoding; close the connection
                 log.warn("Closing connection because decoding failed: {}", conn, ex);
                 // clear the buffer to eliminate memory leaks when we can't parse protocol
-                buffer.clear();
+                if (slice) {
+                    buffer.position(buffer.limit());
+                } else {
+                    buffer.clear();
+                }
                 // close connection because we can't parse data from it
                 conn.close();
-            } finally {
-                //if (isTrace) {
-                //    log.trace("decodeBuffer - post decode input buffer position: {} remaining: {}", buffer.position(), buffer.remaining());
-                //}
-                buffer.compact();
             }
+            //if (isTrace) {
+            //    log.trace("decodeBuffer - post decode input buffer position: {} remaining: {}", buffer.position(), buffer.remaining());
+            //}
         } else {
             log.error("Decoding buffer failed, no current connection!?");
         }
@@ -173,6 +198,10 @@ public class RTMPProtocolDecoder implements Constants, IEventDecoder {
      *             on error
      */
     public Object decode(RTMPConnection conn, RTMPDecodeState state, IoBuffer in) throws ProtocolException {
+        return decode(conn, state, in, false);
+    }
+
+    private Object decode(RTMPConnection conn, RTMPDecodeState state, IoBuffer in, boolean slice) throws ProtocolException {
         //if (isTrace) {
         //log.trace("Decoding for {}", conn.getSessionId());
         //}
@@ -180,7 +209,7 @@ public class RTMPProtocolDecoder implements Constants, IEventDecoder {
             final byte connectionState = conn.getStateCode();
             switch (connectionState) {
                 case RTMP.STATE_CONNECTED:
-                    return decodePacket(conn, state, in);
+                    return decodePacket(conn, state, in, slice);
                 case RTMP.STATE_ERROR:
                 case RTMP.STATE_DISCONNECTING:
                 case RTMP.STATE_DISCONNECTED:
@@ -214,6 +243,23 @@ public class RTMPProtocolDecoder implements Constants, IEventDecoder {
      * @return Packet
      */
     public Packet decodePacket(RTMPConnection conn, RTMPDecodeState state, IoBuffer in) {
+        return decodePacket(conn, state, in, false);
+    }
+
+    /**
+     * Decodes an IoBuffer into a Packet.
+     *
+     * @param conn
+     *            Connection
+     * @param state
+     *            RTMP protocol state
+     * @param in
+     *            IoBuffer
+     * @param slice
+     *            whether the body of a message carried by a single chunk may be a slice of the input
+     * @return Packet
+     */
+    protected Packet decodePacket(RTMPConnection conn, RTMPDecodeState state, IoBuffer in, boolean slice) {
         final int position = in.position();
         //if (isTrace) {
         //log.trace("decodePacket - state: {} buffer: {}", state, in);
@@ -256,7 +302,19 @@ public class RTMPProtocolDecoder implements Constants, IEventDecoder {
         int readChunkSize = rtmp.getReadChunkSize();
         // check to see if this is a new packet or continue decoding an existing one
         Packet packet = rtmp.getLastReadPacket(channelId);
-        if (packet == null) {
+        if (packet == null && slice && size <= readChunkSize) {
+            // the whole message is in this chunk, decode it from the input without copying
+            if (in.remaining() < size) {
+                log.debug("In buffer is too small, buffering ({},{})", in.remaining(), size);
+                state.bufferDecoding(in.position() - position + size);
+                in.position(position);
+                return null;
+            }
+            IoBuffer body = in.getSlice(size);
+            // positioned at its end, like a packet buffer filled chunk by chunk
+            body.position(size);
+            packet = new Packet(header.clone(), body);
+        } else if (packet == null) {
             log.trace("Creating new packet");
             // create a new packet
             packet = new Packet(header.clone());
@@ -278,15 +336,14 @@ public class RTMPProtocolDecoder implements Constants, IEventDecoder {
             in.position(position);
             return null;
         }
-        // get the chunk from our input
-        byte[] chunk = Arrays.copyOfRange(in.array(), in.position(), in.position() + length);
         if (isTrace) {
-            log.trace("Read chunkSize: {}, length: {}, chunk: {}", readChunkSize, length, Hex.encodeHexString(chunk));
+            log.trace("Read chunkSize: {}, length: {}, chunk: {}", readChunkSize, length, in.getHexDump(length));
         }
-        // move the position
-        in.skip(length);
-        // put the chunk into the packet
-        buf.put(chunk);
+        // put the chunk from our input into the packet, moving the position
+        final int limit = in.limit();
+        in.limit(in.position() + length);
+        buf.put(in);
+        in.limit(limit);
         if (buf.hasRemaining()) {
             if (isTrace) {
                 log.trace("Packet is incomplete ({},{})", buf.remaining(), buf.limit());
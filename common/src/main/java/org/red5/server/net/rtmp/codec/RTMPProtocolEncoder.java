@@ -43,6 +43,7 @@ import org.red5.server.net.rtmp.event.VideoData.FrameType;
 import org.red5.server.net.rtmp.message.Constants;
 import org.red5.server.net.rtmp.message.Header;
 import org.red5.server.net.rtmp.message.Packet;
+import org.red5.server.net.rtmp.message.SharedChunkCache;
 import org.red5.server.net.rtmp.message.SharedObjectTypeMapping;
 import org.red5.server.net.rtmp.status.Status;
 import org.red5.server.net.rtmp.status.StatusCodes;
@@ -50,6 +51,7 @@ import org.red5.server.net.rtmp.status.StatusObject;
 import org.red5.server.service.Call;
 import org.red5.server.so.ISharedObjectEvent;
 import org.red5.server.so.ISharedObjectMessage;
+import org.red5.server.so.SharedObjectMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -60,6 +62,11 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
 
     protected Logger log = LoggerFactory.getLogger(RTMPProtocolEncoder.class);
 
+    /**
+     * Pool for the buffers of encoded messages, unset or disabled to use regular heap buffers
+     */
+    private static PooledBufferAllocator bufferPool;
+
     /**
      * Tolerance (in milliseconds) for late media on streams. A set of levels based on this value will be determined.
      */
@@ -85,6 +92,11 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
      */
     private boolean dropEncoded;
 
+    /**
+     * Whether or not packets are encoded into pooled buffers; only set this if the caller frees the buffers once written.
+     */
+    private boolean pooledOutput;
+
     /**
      * Encodes object with given protocol state to byte buffer
      *
@@ -95,9 +107,25 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
      *             Any decoding exception
      */
     public IoBuffer encode(Object message) throws Exception {
+        return encode(message, null);
+    }
+
+    /**
+     * Encodes object with given protocol state to byte buffer, allowing shared payload parts to be returned separately for a gathering write.
+     *
+     * @param message
+     *            Object to encode
+     * @param sharedParts
+     *            receives read-only shared payload to be written after the returned buffer, may be null
+     * @return IoBuffer with encoded data
+     * @throws Exception
+     *             Any decoding exception
+     * @see #encodePacket(Packet, List)
+     */
+    public IoBuffer encode(Object message, List<IoBuffer> sharedParts) throws Exception {
         if (message != null) {
             try {
-                return encodePacket((Packet) message);
+                return encodePacket((Packet) message, sharedParts);
             } catch (Exception e) {
                 log.error("Error encoding", e);
             }
@@ -120,6 +148,23 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
      * @return Encoded data
      */
     public IoBuffer encodePacket(Packet packet) {
+        return encodePacket(packet, null);
+    }
+
+    /**
+     * Encode packet. Live audio and video and shared object updates carrying a {@link SharedChunkCache} are chunked only once per chunk size
+     * and channel, no matter how many connections they are written to; only the first chunk header is encoded per connection. Shared object
+     * updates are also serialized only once. If a list is given for the shared parts,
+     * the chunked body is added to it as a read-only buffer and the returned buffer holds the header alone, otherwise the body is copied into
+     * the returned buffer.
+     *
+     * @param packet
+     *            RTMP packet
+     * @param sharedParts
+     *            receives read-only shared payload to be written after the returned buffer, may be null
+     * @return Encoded data
+     */
+    public IoBuffer encodePacket(Packet packet, List<IoBuffer> sharedParts) {
         IoBuffer out = null;
         Header header = packet.getHeader();
         int channelId = header.getChannelId();
@@ -132,7 +177,18 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
         // normally the message is expected not to be dropped
         if (!dropMessage(channelId, message)) {
             //log.trace("Header time: {} message timestamp: {}", header.getTimer(), message.getTimestamp());
-            IoBuffer data = encodeMessage(header, message);
+            SharedChunkCache chunkCache = getChunkCache(message);
+            IoBuffer data = null;
+            if (chunkCache != null && message instanceof ISharedObjectMessage) {
+                data = chunkCache.getPayload();
+                if (data == null && (data = encodeMessage(header, message)) != null) {
+                    IoBuffer encoded = data.flip();
+                    data = chunkCache.putPayload(encoded);
+                    encoded.free();
+                }
+            } else {
+                data = encodeMessage(header, message);
+            }
             if (data != null) {
                 RTMP rtmp = ((RTMPConnection) Red5.getConnectionLocal()).getState();
                 // set last write packet
@@ -159,21 +215,37 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
                     log.trace("Channel id: {} chunkSize: {}", channelId, chunkSize);
                 }
                 // attempt to properly guess the size of the buffer we'll need
-                int bufSize = dataLen + 18 + (numChunks * 2);
+                int bufSize = (chunkCache != null && sharedParts != null) ? 18 : dataLen + 18 + (numChunks * 2);
                 //log.trace("Allocated buffer size: {}", bufSize);
-                out = IoBuffer.allocate(bufSize, false);
+                out = pooledOutput ? allocate(bufSize) : IoBuffer.allocate(bufSize, false);
                 out.setAutoExpand(true);
-                do {
-                    // encode the header
-                    encodeHeader(header, lastHeader, out);
-                    // write a chunk
-                    byte[] buf = new byte[Math.min(chunkSize, data.remaining())];
-                    data.get(buf);
-                    //log.trace("Buffer: {}", Hex.encodeHexString(buf));
-                    out.put(buf);
-                    // move header over to last header
-                    lastHeader = header.clone();
-                } while (data.hasRemaining());
+                // encode the first header, which is specific to this connection
+                encodeHeader(header, lastHeader, out);
+                // move header over to last header
+                lastHeader = header.clone();
+                // continuation headers only differ between connections when they carry an extended timestamp
+                if (chunkCache != null && !header.isExtended()) {
+                    IoBuffer body = chunkCache.get(chunkSize, channelId);
+                    if (body == null) {
+                        body = chunkCache.put(chunkSize, channelId, chunkBody(data, chunkSize, channelId));
+                    }
+                    if (sharedParts != null) {
+                        sharedParts.add(body);
+                    } else {
+                        out.put(body);
+                    }
+                } else {
+                    // write the first chunk
+                    putChunk(data, chunkSize, out);
+                    while (data.hasRemaining()) {
+                        // encode the header
+                        encodeHeader(header, lastHeader, out);
+                        // write a chunk
+                        putChunk(data, chunkSize, out);
+                        // move header over to last header
+                        lastHeader = header.clone();
+                    }
+                }
                 // collapse the time stamps on the last header after decode is complete
                 lastHeader.setTimerBase(lastHeader.getTimer());
                 // clear the delta
@@ -189,6 +261,81 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
         return out;
     }
 
+    /**
+     * Allocates a buffer from the buffer pool if there is one.
+     *
+     * @param capacity
+     *            capacity
+     * @return buffer
+     */
+    protected static IoBuffer allocate(int capacity) {
+        PooledBufferAllocator pool = bufferPool;
+        if (pool != null && pool.isEnabled()) {
+            return pool.allocate(capacity);
+        }
+        return IoBuffer.allocate(capacity);
+    }
+
+    /**
+     * Copies the next chunk of data into the output buffer.
+     *
+     * @param data
+     *            data being chunked
+     * @param chunkSize
+     *            chunk size
+     * @param out
+     *            output buffer
+     */
+    private static void putChunk(IoBuffer data, int chunkSize, IoBuffer out) {
+        int limit = data.limit();
+        data.limit(Math.min(limit, data.position() + chunkSize));
+        out.put(data);
+        data.limit(limit);
+    }
+
+    /**
+     * Chunks a payload without its first header; every chunk after the first is preceded by a type 3 (continue) header for the channel.
+     *
+     * @param data
+     *            payload
+     * @param chunkSize
+     *            chunk size
+     * @param channelId
+     *            channel id
+     * @return chunked body ready for reading
+     */
+    private static IoBuffer chunkBody(IoBuffer data, int chunkSize, int channelId) {
+        IoBuffer payload = data.duplicate();
+        int dataLen = payload.remaining();
+        int numChunks = (int) Math.ceil(dataLen / (float) chunkSize);
+        IoBuffer body = IoBuffer.allocate(dataLen + (numChunks * 3), false);
+        body.setAutoExpand(true);
+        putChunk(payload, chunkSize, body);
+        while (payload.hasRemaining()) {
+            RTMPUtils.encodeHeaderByte(body, HEADER_CONTINUE, channelId);
+            putChunk(payload, chunkSize, body);
+        }
+        return body.flip();
+    }
+
+    /**
+     * Returns the shared chunk cache of a live audio or video message or a shared object update, if it has one.
+     *
+     * @param message
+     *            RTMP event
+     * @return chunk cache or null
+     */
+    private static SharedChunkCache getChunkCache(IRTMPEvent message) {
+        if (message instanceof VideoData) {
+            return ((VideoData) message).getChunkCache();
+        } else if (message instanceof AudioData) {
+            return ((AudioData) message).getChunkCache();
+        } else if (message instanceof SharedObjectMessage) {
+            return ((SharedObjectMessage) message).getChunkCache();
+        }
+        return null;
+    }
+
     /**
      * Determine if this message should be dropped. If the traffic from server to client is congested, then drop LIVE messages to help alleviate congestion.
      *
@@ -590,7 +737,7 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
      * @return Encoded event data
      */
     private IoBuffer encodeServerBW(ServerBW serverBW) {
-        final IoBuffer out = IoBuffer.allocate(4);
+        final IoBuffer out = allocate(4);
         out.putInt(serverBW.getBandwidth());
         return out;
     }
@@ -603,7 +750,7 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
      * @return Encoded event data
      */
     private IoBuffer encodeClientBW(ClientBW clientBW) {
-        final IoBuffer out = IoBuffer.allocate(5);
+        final IoBuffer out = allocate(5);
         out.putInt(clientBW.getBandwidth());
         out.put(clientBW.getLimitType());
         return out;
@@ -611,14 +758,14 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
 
     /** {@inheritDoc} */
     public IoBuffer encodeChunkSize(ChunkSize chunkSize) {
-        final IoBuffer out = IoBuffer.allocate(4);
+        final IoBuffer out = allocate(4);
         out.putInt(chunkSize.getSize());
         return out;
     }
 
     /** {@inheritDoc} */
     public IoBuffer encodeFlexSharedObject(ISharedObjectMessage so) {
-        final IoBuffer out = IoBuffer.allocate(128);
+        final IoBuffer out = allocate(128);
         out.setAutoExpand(true);
         out.put((byte) 0x00); // unknown (not AMF version)
         doEncodeSharedObject(so, out);
@@ -627,7 +774,7 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
 
     /** {@inheritDoc} */
     public IoBuffer encodeSharedObject(ISharedObjectMessage so) {
-        final IoBuffer out = IoBuffer.allocate(128);
+        final IoBuffer out = allocate(128);
         out.setAutoExpand(true);
         doEncodeSharedObject(so, out);
         return out;
@@ -786,7 +933,7 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
      * @return Encoded event data
      */
     protected IoBuffer encodeCommand(Notify invoke) {
-        IoBuffer out = IoBuffer.allocate(1024);
+        IoBuffer out = allocate(1024);
         out.setAutoExpand(true);
         encodeCommand(out, invoke);
         return out;
@@ -879,7 +1026,7 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
             default:
                 len = 6;
         }
-        final IoBuffer out = IoBuffer.allocate(len);
+        final IoBuffer out = allocate(len);
         out.putShort(type);
         switch (type) {
             case Ping.STREAM_BEGIN:
@@ -917,7 +1064,7 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
 
     /** {@inheritDoc} */
     public IoBuffer encodeBytesRead(BytesRead bytesRead) {
-        final IoBuffer out = IoBuffer.allocate(4);
+        final IoBuffer out = allocate(4);
         out.putInt(bytesRead.getBytesRead());
         return out;
     }
@@ -999,7 +1146,7 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
      * @return Encoded data
      */
     public IoBuffer encodeFlexMessage(FlexMessage msg) {
-        IoBuffer out = IoBuffer.allocate(1024);
+        IoBuffer out = allocate(1024);
         out.setAutoExpand(true);
         // Unknown byte, always 0?
         out.put((byte) 0);
@@ -1033,6 +1180,28 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
         this.dropLiveFuture = dropLiveFuture;
     }
 
+    public boolean isPooledOutput() {
+        return pooledOutput;
+    }
+
+    public void setPooledOutput(boolean pooledOutput) {
+        this.pooledOutput = pooledOutput;
+    }
+
+    /**
+     * Sets the pool for the buffers of encoded messages.
+     *
+     * @param bufferPool
+     *            buffer pool
+     */
+    public static void setBufferPool(PooledBufferAllocator bufferPool) {
+        RTMPProtocolEncoder.bufferPool = bufferPool;
+    }
+
+    public static PooledBufferAllocator getBufferPool() {
+        return bufferPool;
+    }
+
     public void setDropEncoded(boolean dropEncoded) {
         this.dropEncoded = dropEncoded;
     }
@@ -7,13 +7,9 @@
 
 package org.red5.server.net.rtmp.event;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInput;
-import java.io.ObjectInputStream;
 import java.io.ObjectOutput;
-import java.io.ObjectOutputStream;
 import java.util.LinkedList;
 
 import org.apache.mina.core.buffer.IoBuffer;
@@ -206,7 +202,9 @@ public class Aggregate extends BaseEvent implements IoConstants, IStreamData<Agg
     /** {@inheritDoc} */
     @Override
     protected void releaseInternal() {
-        if (data != null) {
+        if (releaseSharedPayload()) {
+            data = null;
+        } else if (data != null) {
             final IoBuffer localData = data;
             // null out the data first so we don't accidentally
             // return a valid reference first
@@ -238,35 +236,12 @@ public class Aggregate extends BaseEvent implements IoConstants, IStreamData<Agg
     }
 
     /**
-     * Duplicate this message / event.
+     * Duplicate this message / event. The duplicate shares the payload of this event through a read-only view instead of a copy.
      *
      * @return duplicated event
      */
     public Aggregate duplicate() throws IOException, ClassNotFoundException {
-        Aggregate result = new Aggregate();
-        // serialize
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        ObjectOutputStream oos = new ObjectOutputStream(baos);
-        writeExternal(oos);
-        oos.close();
-        // convert to byte array
-        byte[] buf = baos.toByteArray();
-        baos.close();
-        // create input streams
-        ByteArrayInputStream bais = new ByteArrayInputStream(buf);
-        ObjectInputStream ois = new ObjectInputStream(bais);
-        // deserialize
-        result.readExternal(ois);
-        ois.close();
-        bais.close();
-        // clone the header if there is one
-        if (header != null) {
-            result.setHeader(header.clone());
-        }
-        result.setSourceType(sourceType);
-        result.setSource(source);
-        result.setTimestamp(timestamp);
-        return result;
+        return copyTo(new Aggregate(sharedView(data)));
     }
 
 }
@@ -7,18 +7,15 @@
 
 package org.red5.server.net.rtmp.event;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInput;
-import java.io.ObjectInputStream;
 import java.io.ObjectOutput;
-import java.io.ObjectOutputStream;
 
 import org.apache.mina.core.buffer.IoBuffer;
 import org.red5.codec.AudioCodec;
 import org.red5.io.ITag;
 import org.red5.server.api.stream.IStreamPacket;
+import org.red5.server.net.rtmp.message.SharedChunkCache;
 import org.red5.server.stream.IStreamData;
 
 public class AudioData extends BaseEvent implements IStreamData<AudioData>, IStreamPacket {
@@ -42,6 +39,11 @@ public class AudioData extends BaseEvent implements IStreamData<AudioData>, IStr
      */
     protected boolean config;
 
+    /**
+     * Encode-once cache for the chunked payload, shared by every copy made of a live message
+     */
+    protected transient SharedChunkCache chunkCache;
+
     /** Constructs a new AudioData. */
     public AudioData() {
         this(IoBuffer.allocate(0).flip());
@@ -94,7 +96,7 @@ public class AudioData extends BaseEvent implements IStreamData<AudioData>, IStr
             codec = AudioCodec.valueOfById(((data.get(0) & 0xff) & ITag.MASK_SOUND_FORMAT) >> 4);
             // determine by codec whether or not config data is included
             if (AudioCodec.getConfigured().contains(codec)) {
-                config = (data.get() == 0);
+                config = (data.get(data.position()) == 0);
             }
             data.reset();
         }
@@ -113,10 +115,31 @@ public class AudioData extends BaseEvent implements IStreamData<AudioData>, IStr
         return config;
     }
 
+    /**
+     * Returns the shared chunk cache, if this is (a copy of) a live message.
+     *
+     * @return chunk cache or null
+     */
+    public SharedChunkCache getChunkCache() {
+        return chunkCache;
+    }
+
+    /**
+     * Sets the shared chunk cache; copies of a live message must be given the same cache as the original.
+     *
+     * @param chunkCache
+     *            chunk cache
+     */
+    public void setChunkCache(SharedChunkCache chunkCache) {
+        this.chunkCache = chunkCache;
+    }
+
     /** {@inheritDoc} */
     @Override
     protected void releaseInternal() {
-        if (data != null) {
+        if (releaseSharedPayload()) {
+            data = null;
+        } else if (data != null) {
             data.free();
             data = null;
         }
@@ -150,34 +173,14 @@ public class AudioData extends BaseEvent implements IStreamData<AudioData>, IStr
     }
 
     /**
-     * Duplicate this message / event.
+     * Duplicate this message / event. The duplicate shares the payload of this event through a read-only view instead of a copy.
      *
      * @return duplicated event
      */
     public AudioData duplicate() throws IOException, ClassNotFoundException {
-        AudioData result = new AudioData();
-        // serialize
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        ObjectOutputStream oos = new ObjectOutputStream(baos);
-        writeExternal(oos);
-        oos.close();
-        // convert to byte array
-        byte[] buf = baos.toByteArray();
-        baos.close();
-        // create input streams
-        ByteArrayInputStream bais = new ByteArrayInputStream(buf);
-        ObjectInputStream ois = new ObjectInputStream(bais);
-        // deserialize
-        result.readExternal(ois);
-        ois.close();
-        bais.close();
-        // clone the header if there is one
-        if (header != null) {
-            result.setHeader(header.clone());
-        }
-        result.setSourceType(sourceType);
-        result.setSource(source);
-        result.setTimestamp(timestamp);
+        AudioData result = copyTo(new AudioData(sharedView(data)));
+        result.setDataType(dataType);
+        result.setChunkCache(chunkCache);
         return result;
     }
 
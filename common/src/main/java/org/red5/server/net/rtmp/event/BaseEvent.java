@@ -13,6 +13,7 @@ import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.mina.core.buffer.IoBuffer;
 import org.red5.server.api.event.IEventListener;
 import org.red5.server.net.rtmp.message.Constants;
 import org.red5.server.net.rtmp.message.Header;
@@ -66,6 +67,11 @@ public abstract class BaseEvent implements Constants, IRTMPEvent, Externalizable
      */
     protected AtomicInteger refcount = new AtomicInteger(1);
 
+    /**
+     * Event this event was duplicated from and whose payload it shares, retained until this event is released
+     */
+    protected transient BaseEvent payloadSource;
+
     public BaseEvent() {
         // set a default type
         this(Type.SERVER, null);
@@ -190,6 +196,57 @@ public abstract class BaseEvent implements Constants, IRTMPEvent, Externalizable
      */
     protected abstract void releaseInternal();
 
+    /**
+     * Copies the properties common to all events to a duplicate of this event: type, source type, source, timestamp and a clone of the
+     * header. The duplicate shares the payload of this event, so this event is retained until the duplicate is released.
+     *
+     * @param copy
+     *            duplicate of this event
+     * @param <T>
+     *            type of the event
+     * @return the duplicate
+     */
+    protected <T extends BaseEvent> T copyTo(T copy) {
+        final BaseEvent event = copy;
+        event.type = type;
+        event.sourceType = sourceType;
+        event.source = source;
+        event.timestamp = timestamp;
+        if (header != null) {
+            event.header = header.clone();
+        }
+        retain();
+        event.payloadSource = this;
+        return copy;
+    }
+
+    /**
+     * Releases the event whose payload this event shares, if it is a duplicate.
+     *
+     * @return true if the payload is shared and must not be freed by this event, false otherwise
+     */
+    protected boolean releaseSharedPayload() {
+        final BaseEvent localSource = payloadSource;
+        if (localSource != null) {
+            payloadSource = null;
+            localSource.release();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns a read-only view of a payload, positioned at its start, for a duplicate to share it without copying. Anything which has to
+     * modify the payload of a duplicate has to copy it first.
+     *
+     * @param payload
+     *            payload of an event
+     * @return view of the payload or null if there is none
+     */
+    protected static IoBuffer sharedView(IoBuffer payload) {
+        return payload != null ? payload.asReadOnlyBuffer().rewind() : null;
+    }
+
     @Override
     public int hashCode() {
         final int prime = 31;
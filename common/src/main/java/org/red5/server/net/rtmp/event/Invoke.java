@@ -7,11 +7,7 @@
 
 package org.red5.server.net.rtmp.event;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 
 import org.apache.mina.core.buffer.IoBuffer;
 import org.red5.server.api.service.IPendingServiceCall;
@@ -86,25 +82,14 @@ public class Invoke extends Notify {
     }
 
     /**
-     * Duplicate this Invoke message to future injection. Serialize to memory and deserialize, safe way.
+     * Duplicate this Invoke message to future injection. The payload is shared through a read-only view instead of a copy, as is the
+     * pending call.
      *
      * @return duplicated Invoke event
      */
     @Override
     public Invoke duplicate() throws IOException, ClassNotFoundException {
-        Invoke result = new Invoke();
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        ObjectOutputStream oos = new ObjectOutputStream(baos);
-        writeExternal(oos);
-        oos.close();
-        byte[] buf = baos.toByteArray();
-        baos.close();
-        ByteArrayInputStream bais = new ByteArrayInputStream(buf);
-        ObjectInputStream ois = new ObjectInputStream(bais);
-        result.readExternal(ois);
-        ois.close();
-        bais.close();
-        return result;
+        return duplicate(new Invoke());
     }
 
 }
@@ -7,13 +7,10 @@
 
 package org.red5.server.net.rtmp.event;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInput;
-import java.io.ObjectInputStream;
 import java.io.ObjectOutput;
-import java.io.ObjectOutputStream;
+import java.util.HashMap;
 import java.util.Map;
 
 import org.apache.mina.core.buffer.IoBuffer;
@@ -226,7 +223,9 @@ public class Notify extends BaseEvent implements ICommand, IStreamData<Notify>,
     /** {@inheritDoc} */
     @Override
     protected void releaseInternal() {
-        if (data != null) {
+        if (releaseSharedPayload()) {
+            data = null;
+        } else if (data != null) {
             data.free();
             data = null;
         }
@@ -267,28 +266,39 @@ public class Notify extends BaseEvent implements ICommand, IStreamData<Notify>,
     }
 
     /**
-     * Duplicate this Notify message to future injection Serialize to memory and deserialize, safe way.
+     * Duplicate this Notify message to future injection. The payload is shared through a read-only view instead of a copy, as is the
+     * service call; the connection parameters are copied.
      *
      * @return duplicated Notify event
      */
     public Notify duplicate() throws IOException, ClassNotFoundException {
-        Notify result = new Notify();
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        ObjectOutputStream oos = new ObjectOutputStream(baos);
-        writeExternal(oos);
-        oos.close();
-        byte[] buf = baos.toByteArray();
-        baos.close();
-        ByteArrayInputStream bais = new ByteArrayInputStream(buf);
-        ObjectInputStream ois = new ObjectInputStream(bais);
-        result.readExternal(ois);
-        ois.close();
-        bais.close();
-        // set the action if it exists
-        result.setAction(getAction());
-        result.setSourceType(sourceType);
-        result.setSource(source);
-        result.setTimestamp(timestamp);
+        return duplicate(new Notify());
+    }
+
+    /**
+     * Copies this event into a new instance of the same kind.
+     *
+     * @param result
+     *            new event
+     * @param <T>
+     *            type of the event
+     * @return duplicated event
+     * @throws IOException
+     *             on error
+     * @throws ClassNotFoundException
+     *             on class not found
+     */
+    protected <T extends Notify> T duplicate(T result) throws IOException, ClassNotFoundException {
+        final Notify copy = copyTo(result);
+        copy.data = sharedView(data);
+        copy.dataType = dataType;
+        copy.transactionId = transactionId;
+        copy.action = action;
+        // calls are externalized with AMF rather than serialized, so the call is shared
+        copy.call = call;
+        if (connectionParams != null) {
+            copy.connectionParams = new HashMap<>(connectionParams);
+        }
         return result;
     }
 
@@ -7,19 +7,16 @@
 
 package org.red5.server.net.rtmp.event;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInput;
-import java.io.ObjectInputStream;
 import java.io.ObjectOutput;
-import java.io.ObjectOutputStream;
 
 import org.apache.mina.core.buffer.IoBuffer;
 import org.red5.codec.VideoCodec;
 import org.red5.io.ITag;
 import org.red5.io.IoConstants;
 import org.red5.server.api.stream.IStreamPacket;
+import org.red5.server.net.rtmp.message.SharedChunkCache;
 import org.red5.server.stream.IStreamData;
 
 /**
@@ -66,6 +63,11 @@ public class VideoData extends BaseEvent implements IoConstants, IStreamData<Vid
      */
     protected boolean endOfSequence;
 
+    /**
+     * Encode-once cache for the chunked payload, shared by every copy made of a live message
+     */
+    protected transient SharedChunkCache chunkCache;
+
     /** Constructs a new VideoData. */
     public VideoData() {
         this(IoBuffer.allocate(0).flip());
@@ -169,10 +171,31 @@ public class VideoData extends BaseEvent implements IoConstants, IStreamData<Vid
         return endOfSequence;
     }
 
+    /**
+     * Returns the shared chunk cache, if this is (a copy of) a live message.
+     *
+     * @return chunk cache or null
+     */
+    public SharedChunkCache getChunkCache() {
+        return chunkCache;
+    }
+
+    /**
+     * Sets the shared chunk cache; copies of a live message must be given the same cache as the original.
+     *
+     * @param chunkCache
+     *            chunk cache
+     */
+    public void setChunkCache(SharedChunkCache chunkCache) {
+        this.chunkCache = chunkCache;
+    }
+
     /** {@inheritDoc} */
     @Override
     protected void releaseInternal() {
-        if (data != null) {
+        if (releaseSharedPayload()) {
+            data = null;
+        } else if (data != null) {
             final IoBuffer localData = data;
             // null out the data first so we don't accidentally
             // return a valid reference first
@@ -212,34 +235,14 @@ public class VideoData extends BaseEvent implements IoConstants, IStreamData<Vid
     }
 
     /**
-     * Duplicate this message / event.
+     * Duplicate this message / event. The duplicate shares the payload of this event through a read-only view instead of a copy.
      *
      * @return duplicated event
      */
     public VideoData duplicate() throws IOException, ClassNotFoundException {
-        VideoData result = new VideoData();
-        // serialize
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        ObjectOutputStream oos = new ObjectOutputStream(baos);
-        writeExternal(oos);
-        oos.close();
-        // convert to byte array
-        byte[] buf = baos.toByteArray();
-        baos.close();
-        // create input streams
-        ByteArrayInputStream bais = new ByteArrayInputStream(buf);
-        ObjectInputStream ois = new ObjectInputStream(bais);
-        // deserialize
-        result.readExternal(ois);
-        ois.close();
-        bais.close();
-        // clone the header if there is one
-        if (header != null) {
-            result.setHeader(header.clone());
-        }
-        result.setSourceType(sourceType);
-        result.setSource(source);
-        result.setTimestamp(timestamp);
+        VideoData result = copyTo(new VideoData(sharedView(data)));
+        result.setDataType(dataType);
+        result.setChunkCache(chunkCache);
         return result;
     }
 
@@ -54,6 +54,11 @@ public class Packet implements Externalizable {
      */
     private transient final AtomicBoolean processed = new AtomicBoolean(false);
 
+    /**
+     * Encoded form of the packet, held until it has been written
+     */
+    private transient IoBuffer encoded;
+
     public Packet() {
         log.trace("ctor");
     }
@@ -72,6 +77,22 @@ public class Packet implements Externalizable {
         data = IoBuffer.allocate(header.getSize()).setAutoExpand(true);
     }
 
+    /**
+     * Create packet with given header and data, the data buffer is used as is.
+     *
+     * @param header
+     *            Packet header
+     * @param data
+     *            Packet data
+     */
+    public Packet(Header header, IoBuffer data) {
+        if (log.isTraceEnabled()) {
+            log.trace("Header: {}", header);
+        }
+        this.header = header;
+        this.data = data;
+    }
+
     /**
      * Create packet with given header and event context.
      *
@@ -172,6 +193,27 @@ public class Packet implements Externalizable {
         }
     }
 
+    /**
+     * Sets the buffer the packet was encoded into, to be freed by {@link #releaseEncoded()} once written.
+     *
+     * @param encoded
+     *            encoded packet
+     */
+    public void setEncoded(IoBuffer encoded) {
+        this.encoded = encoded;
+    }
+
+    /**
+     * Frees the buffer the packet was encoded into, which returns it to its pool if it was pooled.
+     */
+    public void releaseEncoded() {
+        IoBuffer buf = encoded;
+        if (buf != null) {
+            encoded = null;
+            buf.free();
+        }
+    }
+
     /**
      * Return the expiration time.
      *
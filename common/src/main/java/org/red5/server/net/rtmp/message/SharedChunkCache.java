@@ -0,0 +1,116 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.net.rtmp.message;
+
+import org.apache.mina.core.buffer.IoBuffer;
+
+/**
+ * Encode-once cache of a chunked payload, shared by all the per-connection copies of one live audio or video message or shared object update.
+ * A chunked body holds the payload with the type 3 continuation headers already interleaved; it only depends on the write chunk size and
+ * channel id, so every connection using the same pair can write its own first chunk header followed by the very same read-only bytes. Messages
+ * whose payload is costly to encode, such as shared object updates, also keep the encoded payload itself.
+ *
+ * @author The Red5 Project
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+public final class SharedChunkCache {
+
+    /**
+     * Most recently added entry; entries are immutable and form a short list as there are rarely more than one or two distinct chunk sizes
+     */
+    private volatile Entry head;
+
+    /**
+     * Encoded payload before chunking, if kept
+     */
+    private volatile IoBuffer payload;
+
+    /**
+     * Returns the encoded payload, or null if it hasn't been encoded yet.
+     *
+     * @return read-only duplicate of the payload or null
+     */
+    public IoBuffer getPayload() {
+        IoBuffer data = payload;
+        return data != null ? data.asReadOnlyBuffer() : null;
+    }
+
+    /**
+     * Keeps a copy of an encoded payload unless another thread already stored one.
+     *
+     * @param data
+     *            payload, flipped and ready for reading; it is left untouched and still owned by the caller
+     * @return read-only duplicate of the cached payload
+     */
+    public synchronized IoBuffer putPayload(IoBuffer data) {
+        if (payload == null) {
+            IoBuffer copy = IoBuffer.allocate(data.remaining(), false);
+            copy.put(data.duplicate());
+            payload = copy.flip();
+        }
+        return payload.asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns the chunked body for the given chunk size and channel, or null if it hasn't been encoded yet.
+     *
+     * @param chunkSize
+     *            write chunk size
+     * @param channelId
+     *            channel id
+     * @return read-only duplicate of the chunked body or null
+     */
+    public IoBuffer get(int chunkSize, int channelId) {
+        for (Entry entry = head; entry != null; entry = entry.next) {
+            if (entry.chunkSize == chunkSize && entry.channelId == channelId) {
+                return entry.body.asReadOnlyBuffer();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Stores a chunked body unless another thread already stored one for the same key.
+     *
+     * @param chunkSize
+     *            write chunk size
+     * @param channelId
+     *            channel id
+     * @param body
+     *            chunked body, flipped and ready for reading
+     * @return read-only duplicate of the cached chunked body
+     */
+    public synchronized IoBuffer put(int chunkSize, int channelId, IoBuffer body) {
+        IoBuffer existing = get(chunkSize, channelId);
+        if (existing != null) {
+            return existing;
+        }
+        head = new Entry(chunkSize, channelId, body, head);
+        return body.asReadOnlyBuffer();
+    }
+
+    private static final class Entry {
+
+        final int chunkSize;
+
+        final int channelId;
+
+        final IoBuffer body;
+
+        final Entry next;
+
+        Entry(int chunkSize, int channelId, IoBuffer body, Entry next) {
+            this.chunkSize = chunkSize;
+            this.channelId = channelId;
+            this.body = body;
+            this.next = next;
+        }
+
+    }
+
+}
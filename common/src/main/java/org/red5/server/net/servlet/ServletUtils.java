@@ -11,6 +11,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -44,6 +45,31 @@ public class ServletUtils {
         copy(input, output, DEFAULT_BUFFER_SIZE);
     }
 
+    /**
+     * Writes the remaining bytes of a buffer to the output stream without moving its position. A heap buffer is written straight from its
+     * backing array, a direct buffer goes through a copy buffer of the default size.
+     *
+     * @param buffer
+     *            buffer
+     * @param output
+     *            output
+     * @throws java.io.IOException
+     *             on error
+     */
+    public static void write(ByteBuffer buffer, OutputStream output) throws IOException {
+        if (buffer.hasArray()) {
+            output.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        } else {
+            ByteBuffer src = buffer.duplicate();
+            byte[] copy = new byte[Math.min(DEFAULT_BUFFER_SIZE, src.remaining())];
+            while (src.hasRemaining()) {
+                int len = Math.min(copy.length, src.remaining());
+                src.get(copy, 0, len);
+                output.write(copy, 0, len);
+            }
+        }
+    }
+
     /**
      * Copies information from the input stream to the output stream using the specified buffer size
      *
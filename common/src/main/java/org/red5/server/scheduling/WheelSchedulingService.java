@@ -0,0 +1,354 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.scheduling;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.red5.logging.Red5LoggerFactory;
+import org.red5.server.api.scheduling.IScheduledJob;
+import org.red5.server.api.scheduling.ISchedulingService;
+import org.red5.server.jmx.mxbeans.WheelSchedulingServiceMXBean;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Scheduling service backed by a hashed timer wheel. A single thread moves the wheel one slot per tick and hands the jobs due to a pool
+ * of workers, so adding or removing a job costs a queue operation no matter how many jobs are scheduled, and a removed job is simply
+ * dropped once its slot comes up. Jobs run no earlier than asked and at most one tick late; a job scheduled without delay goes straight
+ * to the workers. A periodic job is put back on the wheel after it ran, so it never overlaps itself, and a paused job drops off the wheel
+ * until it is resumed.
+ *
+ * @author The Red5 Project
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+@ManagedResource(objectName = "org.red5.server:name=schedulingService,type=WheelSchedulingService")
+public class WheelSchedulingService implements ISchedulingService, WheelSchedulingServiceMXBean, InitializingBean, DisposableBean {
+
+    private static Logger log = Red5LoggerFactory.getLogger(WheelSchedulingService.class);
+
+    private long tickInterval = 10;
+
+    private int wheelSize = 512;
+
+    private int threadCount = Runtime.getRuntime().availableProcessors() * 2;
+
+    private ScheduledExecutorService ticker;
+
+    private ExecutorService workers;
+
+    private Queue<WheelJob>[] wheel;
+
+    // time the wheel was started at
+    private long startTime;
+
+    // last tick the wheel moved past
+    private volatile long tick;
+
+    /**
+     * Storage for jobs keyed by name
+     */
+    protected ConcurrentMap<String, WheelJob> keyMap = new ConcurrentHashMap<>();
+
+    protected AtomicInteger jobDetailCounter = new AtomicInteger();
+
+    private final LongAdder executed = new LongAdder();
+
+    @SuppressWarnings("unchecked")
+    public void afterPropertiesSet() throws Exception {
+        log.debug("Initializing...");
+        Queue<WheelJob>[] slots = new Queue[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            slots[i] = new ConcurrentLinkedQueue<>();
+        }
+        wheel = slots;
+        startTime = System.nanoTime();
+        workers = Executors.newFixedThreadPool(threadCount, new CustomizableThreadFactory("SchedulingWorker-"));
+        ticker = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("SchedulingWheel-"));
+        ticker.scheduleAtFixedRate(this::advance, tickInterval, tickInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /** {@inheritDoc} */
+    public String addScheduledJob(int interval, IScheduledJob job) {
+        return schedule(job, interval, interval);
+    }
+
+    /** {@inheritDoc} */
+    public String addScheduledOnceJob(Date date, IScheduledJob job) {
+        return schedule(job, date.getTime() - System.currentTimeMillis(), 0);
+    }
+
+    /** {@inheritDoc} */
+    public String addScheduledOnceJob(long timeDelta, IScheduledJob job) {
+        return schedule(job, timeDelta, 0);
+    }
+
+    /** {@inheritDoc} */
+    public String addScheduledJobAfterDelay(int interval, IScheduledJob job, int delay) {
+        return schedule(job, delay, interval);
+    }
+
+    private String schedule(IScheduledJob job, long delay, long interval) {
+        String name = getJobName();
+        WheelJob wheelJob = new WheelJob(name, job, Math.max(0, interval));
+        keyMap.put(name, wheelJob);
+        enqueue(wheelJob, delay);
+        return name;
+    }
+
+    /**
+     * Puts a job on the wheel, or hands it to the workers if it is due now.
+     */
+    private void enqueue(WheelJob job, long delay) {
+        if (delay <= 0) {
+            dispatch(job);
+        } else {
+            final long tickNanos = TimeUnit.MILLISECONDS.toNanos(tickInterval);
+            final long due = System.nanoTime() - startTime + TimeUnit.MILLISECONDS.toNanos(delay);
+            // one tick of slack, the wheel may be moving past the next slot right now
+            job.deadline = Math.max((due + tickNanos - 1) / tickNanos, tick + 2);
+            wheel[(int) (job.deadline % wheelSize)].add(job);
+        }
+    }
+
+    private void dispatch(WheelJob job) {
+        try {
+            workers.execute(job);
+        } catch (RejectedExecutionException e) {
+            log.debug("Job {} rejected, the service is shutting down", job.name);
+        }
+    }
+
+    /**
+     * Moves the wheel up to the current time, a tick at a time, and dispatches the jobs due.
+     */
+    private void advance() {
+        final long now = (System.nanoTime() - startTime) / TimeUnit.MILLISECONDS.toNanos(tickInterval);
+        while (tick < now) {
+            advance(tick + 1);
+        }
+    }
+
+    private void advance(final long current) {
+        tick = current;
+        Queue<WheelJob> slot = wheel[(int) (current % wheelSize)];
+        List<WheelJob> later = null;
+        WheelJob job;
+        while ((job = slot.poll()) != null) {
+            if (job.cancelled) {
+                continue;
+            }
+            if (job.deadline > current) {
+                // due in a later round
+                if (later == null) {
+                    later = new ArrayList<>();
+                }
+                later.add(job);
+            } else {
+                dispatch(job);
+            }
+        }
+        if (later != null) {
+            slot.addAll(later);
+        }
+    }
+
+    /**
+     * Getter for job name.
+     *
+     * @return Job name
+     */
+    public String getJobName() {
+        return String.format("ScheduledJob_%d", jobDetailCounter.getAndIncrement());
+    }
+
+    /** {@inheritDoc} */
+    public List<String> getScheduledJobNames() {
+        if (wheel != null) {
+            return new ArrayList<>(keyMap.keySet());
+        } else {
+            log.warn("No scheduler is available");
+        }
+        return Collections.emptyList();
+    }
+
+    /** {@inheritDoc} */
+    public void pauseScheduledJob(String name) {
+        WheelJob job = keyMap.get(name);
+        if (job != null) {
+            synchronized (job) {
+                job.paused = true;
+            }
+        } else {
+            log.debug("No key found for job: {}", name);
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void resumeScheduledJob(String name) {
+        WheelJob job = keyMap.get(name);
+        if (job != null) {
+            synchronized (job) {
+                job.paused = false;
+                if (job.parked) {
+                    job.parked = false;
+                    enqueue(job, job.interval);
+                }
+            }
+        } else {
+            log.debug("No key found for job: {}", name);
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void removeScheduledJob(String name) {
+        WheelJob job = keyMap.remove(name);
+        if (job != null) {
+            // the wheel drops the job when its slot comes up
+            job.cancelled = true;
+        } else {
+            log.debug("No key found for job: {} or the job was done", name);
+        }
+    }
+
+    public void destroy() throws Exception {
+        log.debug("Destroying...");
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+        if (workers != null) {
+            workers.shutdownNow();
+        }
+        for (WheelJob job : keyMap.values()) {
+            job.cancelled = true;
+        }
+        keyMap.clear();
+    }
+
+    public int getScheduledJobCount() {
+        return keyMap.size();
+    }
+
+    public long getExecutedJobCount() {
+        return executed.sum();
+    }
+
+    public long getTickInterval() {
+        return tickInterval;
+    }
+
+    /**
+     * Sets the tick of the wheel, which is the precision of the scheduled times.
+     *
+     * @param tickInterval
+     *            milliseconds
+     */
+    public void setTickInterval(long tickInterval) {
+        this.tickInterval = Math.max(1L, tickInterval);
+    }
+
+    public int getWheelSize() {
+        return wheelSize;
+    }
+
+    /**
+     * Sets the number of slots of the wheel. Jobs due further out than a turn of the wheel stay in their slot for more rounds.
+     *
+     * @param wheelSize
+     *            slots
+     */
+    public void setWheelSize(int wheelSize) {
+        this.wheelSize = Math.max(16, wheelSize);
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Sets the number of threads running the jobs.
+     *
+     * @param threadCount
+     *            threads
+     */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = Math.max(1, threadCount);
+    }
+
+    /**
+     * Job on the wheel.
+     */
+    private final class WheelJob implements Runnable {
+
+        final String name;
+
+        final IScheduledJob job;
+
+        // milliseconds between the end of a run and the next one, 0 for a job which runs once
+        final long interval;
+
+        // tick at which the job is due
+        long deadline;
+
+        volatile boolean cancelled;
+
+        // guarded by the job
+        boolean paused, parked;
+
+        WheelJob(String name, IScheduledJob job, long interval) {
+            this.name = name;
+            this.job = job;
+            this.interval = interval;
+        }
+
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+            synchronized (this) {
+                if (paused) {
+                    // off the wheel until resumed
+                    parked = true;
+                    return;
+                }
+            }
+            try {
+                job.execute(WheelSchedulingService.this);
+            } catch (Throwable e) {
+                log.warn("Job {} execution failed", job.toString(), e);
+            } finally {
+                executed.increment();
+                if (interval > 0) {
+                    if (!cancelled) {
+                        enqueue(this, interval);
+                    }
+                } else {
+                    keyMap.remove(name, this);
+                }
+            }
+        }
+
+    }
+
+}
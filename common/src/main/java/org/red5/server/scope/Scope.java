@@ -13,9 +13,9 @@ import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashSet;
 import java.util.Map;
-import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -443,6 +443,28 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
         return subscopeStats.getCurrent();
     }
 
+    /**
+     * Returns the number of child scopes of a given type.
+     *
+     * @param type
+     *            Scope type
+     * @return number of child scopes
+     */
+    public int getBasicScopeCount(ScopeType type) {
+        return children.count(type);
+    }
+
+    /**
+     * Makes a child broadcast scope findable by the subscribe aliases of its stream. Called when the stream is attached to the scope and when
+     * the stream gets an alias.
+     *
+     * @param scope
+     *            child broadcast scope
+     */
+    public void addBroadcastAliases(IBroadcastScope scope) {
+        children.addAliases(scope);
+    }
+
     /**
      * Return the broadcast scope for a given name.
      *
@@ -502,7 +524,7 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
             // if its broadcast type then also check aliases
             if (type == ScopeType.BROADCAST) {
                 final Set<String> broadcastNames = new HashSet<>();
-                Set<IBasicScope> broadcastScopes = children.stream().filter(child -> child.getType().equals(type)).collect(Collectors.toSet());
+                Set<IBasicScope> broadcastScopes = children.getBasicScopes(type);
                 broadcastScopes.forEach(bs -> {
                     // add the streams name
                     broadcastNames.add(bs.getName());
@@ -522,7 +544,7 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
                 });
                 return broadcastNames;
             } else {
-                return children.stream().filter(child -> child.getType().equals(type)).map(IBasicScope::getName).collect(Collectors.toSet());
+                return children.getBasicScopes(type).stream().map(IBasicScope::getName).collect(Collectors.toSet());
             }
         }
         return getScopeNames();
@@ -1343,10 +1365,29 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
         return true;
     }
 
+    /**
+     * Child scopes, ordered as before and indexed by type and name and by the subscribe aliases of their broadcast streams, so looking a
+     * child up takes the same time however many children there are.
+     */
     private final class ConcurrentScopeSet extends ConcurrentSkipListSet<org.red5.server.api.scope.IBasicScope> {
 
         private static final long serialVersionUID = 283917025588555L;
 
+        // children by name for each type, also giving the number of children of each type
+        private final transient Map<ScopeType, ConcurrentMap<String, IBasicScope>> byType = new EnumMap<>(ScopeType.class);
+
+        // broadcast scopes by the subscribe aliases of their streams
+        private final transient ConcurrentMap<String, IBasicScope> byAlias = new ConcurrentHashMap<>();
+
+        // aliases indexed for each broadcast scope, to drop them with the scope
+        private final transient ConcurrentMap<IBasicScope, Set<String>> aliasesOf = new ConcurrentHashMap<>();
+
+        ConcurrentScopeSet() {
+            for (ScopeType type : ScopeType.values()) {
+                byType.put(type, new ConcurrentHashMap<>());
+            }
+        }
+
         @Override
         public boolean add(IBasicScope scope) {
             boolean added = false;
@@ -1370,6 +1411,10 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
                         // add the entry
                         added = super.add(scope);
                         if (added) {
+                            byType.get(scope.getType()).put(scope.getName(), scope);
+                            if (scope instanceof IBroadcastScope) {
+                                addAliases((IBroadcastScope) scope);
+                            }
                             subscopeStats.increment();
                         } else {
                             log.debug("Subscope was not added");
@@ -1412,6 +1457,12 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
             }
             // remove the entry, ensure removed value is equal to the given object
             if (super.remove(scope)) {
+                IBasicScope child = (IBasicScope) scope;
+                byType.get(child.getType()).remove(child.getName(), child);
+                Set<String> aliases = aliasesOf.remove(child);
+                if (aliases != null) {
+                    aliases.forEach(alias -> byAlias.remove(alias, child));
+                }
                 subscopeStats.decrement();
                 return true;
             } else {
@@ -1420,6 +1471,28 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
             return false;
         }
 
+        /**
+         * Indexes the subscribe aliases of the stream of a broadcast scope, if the scope is one of the children.
+         *
+         * @param scope
+         *            broadcast scope
+         */
+        public void addAliases(IBroadcastScope scope) {
+            IClientBroadcastStream cbs = scope.getClientBroadcastStream();
+            if (cbs != null && cbs.hasAlias() && byType.get(ScopeType.BROADCAST).get(scope.getName()) == scope) {
+                Set<String> aliases = aliasesOf.computeIfAbsent(scope, s -> ConcurrentHashMap.newKeySet());
+                for (String alias : cbs.getAliases()) {
+                    aliases.add(alias);
+                    byAlias.put(alias, scope);
+                }
+                // removed meanwhile
+                if (byType.get(ScopeType.BROADCAST).get(scope.getName()) != scope) {
+                    aliases.forEach(alias -> byAlias.remove(alias, scope));
+                    aliasesOf.remove(scope);
+                }
+            }
+        }
+
         /**
          * Returns the scope names.
          *
@@ -1427,7 +1500,7 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
          */
         public Set<String> getNames() {
             Set<String> names = new HashSet<String>();
-            stream().forEach(child -> names.add(child.getName()));
+            byType.values().forEach(scopes -> names.addAll(scopes.keySet()));
             return names;
         }
 
@@ -1441,13 +1514,28 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
                 log.debug("hasName: {}", name);
             }
             if (name != null) {
-                return stream().filter(child -> child.getName().equals(name)).findFirst().isPresent();
+                for (ConcurrentMap<String, IBasicScope> scopes : byType.values()) {
+                    if (scopes.containsKey(name)) {
+                        return true;
+                    }
+                }
             } else {
                 log.info("Invalid scope name, null is not allowed");
             }
             return false;
         }
 
+        /**
+         * Returns the number of child scopes of a given type.
+         *
+         * @param type
+         *            Scope type
+         * @return number of scopes matching type
+         */
+        public int count(ScopeType type) {
+            return type != null ? byType.get(type).size() : 0;
+        }
+
         /**
          * Returns child scopes for a given type.
          *
@@ -1456,11 +1544,12 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
          * @return set of scopes matching type
          */
         public Set<IBasicScope> getBasicScopes(ScopeType type) {
-            return stream().filter(child -> child.getType().equals(type)).collect(Collectors.toUnmodifiableSet());
+            return type != null ? Set.copyOf(byType.get(type).values()) : Collections.emptySet();
         }
 
         /**
-         * Returns a child scope for a given name and type.
+         * Returns a child scope for a given name and type. A broadcast scope is also found by the subscribe aliases of its stream, a scope
+         * with the name being preferred over one with the alias.
          *
          * @param type
          *            Scope type
@@ -1469,47 +1558,37 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
          * @return scope
          */
         public IBasicScope getBasicScope(ScopeType type, String name) {
-            Optional<IBasicScope> scope = null;
+            if (type == null || name == null) {
+                return null;
+            }
             // skip type check?
             if (ScopeType.UNDEFINED.equals(type)) {
-                scope = stream().filter(child -> child.getName().equals(name)).findFirst();
-            } else {
-                // if its broadcast type then allow an alias match in addition to the name match
-                if (ScopeType.BROADCAST.equals(type)) {
-                    // checks publish and subscribe aliases
-                    for (IBasicScope child : this) {
-                        // ensure type is broadcast type, since we'll pull out a cbs
-                        if (child.getType().equals(type)) {
-                            String childName = child.getName();
-                            IClientBroadcastStream cbs = ((IBroadcastScope) child).getClientBroadcastStream();
-                            if (cbs != null) {
-                                String pubName = cbs.getPublishedName();
-                                if (childName.equals(name)) {
-                                    log.debug("Scope found by name: {} on {}", name, pubName);
-                                    return child;
-                                } else if (cbs.containsAlias(name)) {
-                                    log.debug("Scope found with alias: {} on {}", name, pubName);
-                                    return child;
-                                } else {
-                                    log.debug("No match for name or alias of {} on published stream: {}", name, pubName);
-                                }
-                            } else {
-                                //log.debug("Broadcast scope: {} has no stream attached", name);
-                                if (childName.equals(name)) {
-                                    log.debug("Scope found by name: {} but has no stream", name);
-                                    return child;
-                                }
-                            }
-                        }
+                // first in the order of the set, which sorts scopes of the same name by type
+                for (ConcurrentMap<String, IBasicScope> scopes : byType.values()) {
+                    IBasicScope child = scopes.get(name);
+                    if (child != null) {
+                        return child;
                     }
-                } else {
-                    scope = stream().filter(child -> child.getType().equals(type) && child.getName().equals(name)).findFirst();
                 }
+                return null;
             }
-            if (scope != null && scope.isPresent()) {
-                return scope.get();
+            IBasicScope child = byType.get(type).get(name);
+            // if its broadcast type then allow an alias match in addition to the name match
+            if (child == null && ScopeType.BROADCAST.equals(type)) {
+                child = byAlias.get(name);
+                if (child != null) {
+                    IClientBroadcastStream cbs = ((IBroadcastScope) child).getClientBroadcastStream();
+                    if (cbs != null && cbs.containsAlias(name)) {
+                        log.debug("Scope found with alias: {} on {}", name, cbs.getPublishedName());
+                    } else {
+                        // the alias was dropped by the stream, or the stream replaced
+                        log.debug("No match for alias: {} on {}", name, child);
+                        byAlias.remove(name, child);
+                        child = null;
+                    }
+                }
             }
-            return null;
+            return child;
         }
 
     }
@@ -0,0 +1,153 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.service;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+import org.apache.commons.beanutils.ConversionException;
+import org.red5.io.utils.ConversionUtils;
+import org.red5.server.api.IConnection;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Service method resolved for one call signature, that is a method name and the classes of the call arguments. It holds a method handle
+ * for the method and which of the arguments have to be converted to the parameter types, so that calls with the same signature neither
+ * search the methods of the service nor convert arguments which are already of the right type.
+ *
+ * @author The Red5 Project
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+final class MethodDispatch {
+
+    /** Arguments are passed as they are */
+    static final int AS_IS = 0;
+
+    /** Arguments are converted to the parameter types */
+    static final int CONVERT = 1;
+
+    /** Connection is passed as first parameter, followed by the converted arguments */
+    static final int CONNECTION = 2;
+
+    /** Signature without a matching method */
+    static final MethodDispatch NOT_FOUND = new MethodDispatch();
+
+    final Method method;
+
+    private final int mode;
+
+    private final Class<?>[] paramTypes;
+
+    /**
+     * Parameters whose argument is not of the parameter type already
+     */
+    private final boolean[] convert;
+
+    /**
+     * Handle taking the service and the parameter array, or null if the method is invoked reflectively
+     */
+    private final MethodHandle handle;
+
+    private MethodDispatch() {
+        method = null;
+        mode = AS_IS;
+        paramTypes = null;
+        convert = null;
+        handle = null;
+    }
+
+    MethodDispatch(Method method, int mode, Class<?>[] argTypes) {
+        this.method = method;
+        this.mode = mode;
+        this.paramTypes = method.getParameterTypes();
+        convert = new boolean[paramTypes.length];
+        if (mode != AS_IS) {
+            int offset = mode == CONNECTION ? 1 : 0;
+            for (int i = offset; i < paramTypes.length; i++) {
+                Class<?> argType = argTypes[i - offset];
+                convert[i] = argType == null ? paramTypes[i].isPrimitive() : !ClassUtils.resolvePrimitiveIfNecessary(paramTypes[i]).isAssignableFrom(argType);
+            }
+        }
+        this.handle = mode != AS_IS ? handle(method) : null;
+    }
+
+    /**
+     * Builds the parameters of a call.
+     *
+     * @param conn
+     *            current connection
+     * @param args
+     *            call arguments
+     * @return parameters
+     * @throws ConversionException
+     *             if an argument cannot be converted
+     */
+    Object[] params(IConnection conn, Object[] args) throws ConversionException {
+        if (mode == AS_IS) {
+            return args;
+        }
+        Object[] params = new Object[paramTypes.length];
+        int offset = 0;
+        if (mode == CONNECTION) {
+            params[0] = conn;
+            offset = 1;
+        }
+        for (int i = offset; i < params.length; i++) {
+            Object arg = args[i - offset];
+            params[i] = convert[i] ? ConversionUtils.convert(arg, paramTypes[i]) : arg;
+        }
+        return params;
+    }
+
+    /**
+     * Invokes the method.
+     *
+     * @param service
+     *            service object
+     * @param params
+     *            parameters
+     * @return result or null for void methods
+     * @throws InvocationTargetException
+     *             wrapping anything thrown by the method
+     * @throws IllegalAccessException
+     *             if the method is not accessible
+     */
+    Object invoke(Object service, Object[] params) throws InvocationTargetException, IllegalAccessException {
+        if (handle == null) {
+            return method.invoke(service, params);
+        }
+        if (params.length != paramTypes.length) {
+            throw new IllegalArgumentException("wrong number of arguments");
+        }
+        try {
+            return handle.invokeExact(service, params);
+        } catch (Throwable t) {
+            throw new InvocationTargetException(t);
+        }
+    }
+
+    /**
+     * Returns a handle of type (Object, Object[])Object for the method, or null if it isn't publicly accessible.
+     */
+    private static MethodHandle handle(Method method) {
+        try {
+            MethodHandle handle = MethodHandles.publicLookup().unreflect(method);
+            if (Modifier.isStatic(method.getModifiers())) {
+                handle = MethodHandles.dropArguments(handle, 0, Object.class);
+            }
+            return handle.asSpreader(Object[].class, method.getParameterCount()).asType(MethodType.methodType(Object.class, Object.class, Object[].class));
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+    }
+
+}
@@ -10,17 +10,20 @@ package org.red5.server.service;
 import java.lang.reflect.Method;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.red5.io.utils.ConversionUtils;
 import org.red5.server.api.IConnection;
 import org.red5.server.api.service.IServiceCall;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.util.ClassUtils;
 
 /**
- * Provides a means for locating methods within service classes using reflection.
+ * Provides a means for locating methods within service classes using reflection. Methods are looked up once per service class and
+ * method name, and methods resolved for a call signature are kept in a dispatch table of the service class; both are held by the class
+ * itself, so they go away with it when its class loader is unloaded.
  */
 public class ReflectionUtils {
 
@@ -31,6 +34,16 @@ public class ReflectionUtils {
     // used to prevent extra object creation when a method with a set of params is not found
     private static final Object[] NULL_RETURN = new Object[] { null, null };
 
+    // maximum number of call signatures kept per service class
+    private static final int MAX_SIGNATURES = 256;
+
+    private static final ClassValue<ServiceClass> serviceClasses = new ClassValue<ServiceClass>() {
+        @Override
+        protected ServiceClass computeValue(Class<?> type) {
+            return new ServiceClass(type);
+        }
+    };
+
     // Note for .26 update is to ensure other service methods don't fail when a method is not found
     // See https://github.com/Red5/red5-server/commit/d4096a4d7b35b2b92905154a9e18edea04268fb4
 
@@ -52,10 +65,10 @@ public class ReflectionUtils {
         // return value(s)
         Object[] methodResult = NULL_RETURN;
         // get all the name matched methods once, then filter out the ones that contain a $
-        final Set<Method> methods = Arrays.stream(service.getClass().getMethods()).filter(m -> (m.getName().equals(methodName) && !m.getName().contains("$"))).filter(m -> m.getParameterCount() == 1 || m.getParameterCount() == listArgs.size()).collect(Collectors.toUnmodifiableSet());
-        if (!methods.isEmpty()) {
+        final Method[] methods = serviceClasses.get(service.getClass()).getMethods(methodName);
+        if (methods.length > 0) {
             if (isDebug) {
-                log.debug("Named method(s) {}: {} found in {}", methods.size(), methodName, service);
+                log.debug("Named method(s) {}: {} found in {}", methods.length, methodName, service);
             }
             Object[] args = listArgs.toArray();
             // convert the args to their class types
@@ -64,6 +77,9 @@ public class ReflectionUtils {
             for (Method method : methods) {
                 // track method parameters count
                 int paramCount = method.getParameterCount();
+                if (paramCount != 1 && paramCount != listArgs.size()) {
+                    continue;
+                }
                 if (isTrace) {
                     log.trace("Method {} count - parameters: {} args: {}", methodName, paramCount, callParams.length);
                 }
@@ -118,11 +134,25 @@ public class ReflectionUtils {
      * @return Method/params pairs or null if not found
      */
     public static Object[] findMethod(IConnection conn, IServiceCall call, Object service, String methodName) {
+        Object[] dispatchResult = findDispatch(conn, call, service, methodName);
+        MethodDispatch dispatch = (MethodDispatch) dispatchResult[0];
+        return dispatch != null ? new Object[] { dispatch.method, dispatchResult[1] } : NULL_RETURN;
+    }
+
+    /**
+     * Returns (dispatch, params) for the given service or method name if found on a service or scope handler. The method is taken from the
+     * dispatch table of the service class if a call with the same signature was made before.
+     *
+     * @param conn current connection
+     * @param call service call interested in the method
+     * @param service service to search for the method, if given
+     * @param methodName method name to find
+     * @return dispatch/params pairs or null if not found
+     */
+    static Object[] findDispatch(IConnection conn, IServiceCall call, Object service, String methodName) {
         if (isDebug) {
             log.debug("Find method: {} in service: {} for call: {} and connection: {}", methodName, service, call, conn);
         }
-        // return value(s)
-        Object[] methodResult = NULL_RETURN;
         // clear any previous exception from the call as it may be reused
         if (call.getException() != null) {
             log.debug("Clearing status and exception from call: {}", call);
@@ -132,37 +162,65 @@ public class ReflectionUtils {
         // get the arguments
         final Object[] args = call.getArguments();
         // convert the args to their class types
-        Class<?>[] callParams = ConversionUtils.convertParams(args);
-        // XXX(paul) someday this will be deprecated as its an extremely legacy feature to have a method with a
-        // connection as the first parameter
-        // build an array with the incoming args and the current connection as the first element
-        final Object[] argsWithConnection;
-        if (args != null) {
-            argsWithConnection = new Object[args.length + 1];
-            argsWithConnection[0] = conn;
-            for (int i = 0; i < args.length; i++) {
-                if (isDebug) {
-                    log.debug("Arg: {} type: {} => {}", i, (args[i] != null ? args[i].getClass().getName() : null), args[i]);
-                }
-                argsWithConnection[i + 1] = args[i];
+        final Class<?>[] callParams = ConversionUtils.convertParams(args);
+        final ServiceClass serviceClass = serviceClasses.get(service.getClass());
+        final Signature signature = new Signature(methodName, callParams, conn != null);
+        Object[] dispatchResult = null;
+        final MethodDispatch dispatch = serviceClass.dispatchTable.get(signature);
+        if (dispatch == MethodDispatch.NOT_FOUND) {
+            log.warn("Method {} not found in {} with parameters {}", methodName, service, Arrays.asList(callParams));
+            dispatchResult = NULL_RETURN;
+        } else if (dispatch != null) {
+            try {
+                dispatchResult = new Object[] { dispatch, dispatch.params(conn, args) };
+            } catch (Exception e) {
+                // the values at hand can't be converted, look for another method taking them
+                log.debug("Method {} of {} does not take the arguments of this call", methodName, service, e);
+                dispatchResult = resolve(serviceClass, conn, service, methodName, args, callParams);
             }
         } else {
-            argsWithConnection = conn != null ? new Object[] { conn } : new Object[0];
+            dispatchResult = resolve(serviceClass, conn, service, methodName, args, callParams);
+            if (serviceClass.dispatchTable.size() < MAX_SIGNATURES && signature.isCacheSafe(serviceClass.type.getClassLoader())) {
+                if (dispatchResult[0] != null) {
+                    serviceClass.dispatchTable.putIfAbsent(signature, (MethodDispatch) dispatchResult[0]);
+                } else if (!serviceClass.hasCandidates(methodName, callParams.length, conn != null)) {
+                    // a miss is only remembered when no method could take that many arguments, otherwise other values may convert
+                    serviceClass.dispatchTable.putIfAbsent(signature, MethodDispatch.NOT_FOUND);
+                }
+            }
         }
-        // get all the name matched methods once, then filter out the ones that contain a $
-        final Set<Method> methods = Arrays.stream(service.getClass().getMethods()).filter(m -> (m.getName().equals(methodName) && !m.getName().contains("$"))).filter(m -> m.getParameterCount() == 1 || m.getParameterCount() == callParams.length || m.getParameterCount() == (callParams.length + 1)).collect(Collectors.toUnmodifiableSet());
-        if (methods.isEmpty()) {
-            log.warn("Named method: {} not found in {}", methodName, service);
+        if (dispatchResult[0] == null) {
             call.setStatus(Call.STATUS_METHOD_NOT_FOUND);
-            call.setException(new MethodNotFoundException(methodName, call.getArguments()));
+            call.setException(new MethodNotFoundException(methodName, args));
+        }
+        return dispatchResult;
+    }
+
+    /**
+     * Searches the methods of the service for one taking the call arguments.
+     *
+     * @return dispatch/params pairs or null if not found
+     */
+    private static Object[] resolve(ServiceClass serviceClass, IConnection conn, Object service, String methodName, Object[] args, Class<?>[] callParams) {
+        // return value(s)
+        Object[] dispatchResult = NULL_RETURN;
+        // XXX(paul) someday this will be deprecated as its an extremely legacy feature to have a method with a
+        // connection as the first parameter
+        // get all the name matched methods once
+        final Method[] methods = serviceClass.getMethods(methodName);
+        if (methods.length == 0) {
+            log.warn("Named method: {} not found in {}", methodName, service);
         } else {
             if (isDebug) {
-                log.debug("Named method(s) {}: {} found in {}", methods.size(), methodName, service);
+                log.debug("Named method(s) {}: {} found in {}", methods.length, methodName, service);
             }
             // search for method with matching parameters
             for (Method method : methods) {
                 // track method parameters count
                 int paramCount = method.getParameterCount();
+                if (paramCount != 1 && paramCount != callParams.length && paramCount != (callParams.length + 1)) {
+                    continue;
+                }
                 if (isTrace) {
                     log.trace("Method {} count - parameters: {} args: {}", methodName, paramCount, callParams.length);
                 }
@@ -172,7 +230,8 @@ public class ReflectionUtils {
                         log.trace("Method {} matched - zero-length", methodName);
                     }
                     // fastest way to handle zero parameter methods
-                    methodResult = new Object[] { method, args };
+                    MethodDispatch dispatch = new MethodDispatch(method, MethodDispatch.CONVERT, callParams);
+                    dispatchResult = new Object[] { dispatch, dispatch.params(conn, args) };
                     break;
                 }
                 // get the methods parameter types
@@ -182,18 +241,19 @@ public class ReflectionUtils {
                     if (isTrace) {
                         log.trace("Method {} matched - parameter 0 is an array", methodName);
                     }
-                    methodResult = new Object[] { method, args };
+                    dispatchResult = new Object[] { new MethodDispatch(method, MethodDispatch.AS_IS, callParams), args };
                     break;
                 }
                 // search for method matching parameters without a forced connection parameter
                 if (paramCount == callParams.length && !paramTypes[0].isAssignableFrom(IConnection.class)) {
                     // attempt to convert the args to match the method
                     try {
-                        Object[] convertedArgs = ConversionUtils.convertParams(args, paramTypes);
+                        MethodDispatch dispatch = new MethodDispatch(method, MethodDispatch.CONVERT, callParams);
+                        Object[] convertedArgs = dispatch.params(conn, args);
                         if (isTrace) {
                             log.trace("Found method {} {} - parameters: {}", methodName, method, paramTypes);
                         }
-                        methodResult = new Object[] { method, convertedArgs };
+                        dispatchResult = new Object[] { dispatch, convertedArgs };
                         break;
                     } catch (Exception e) {
                         log.warn("Method {} not found in {} with parameters {}", methodName, service, Arrays.asList(paramTypes), e);
@@ -203,11 +263,12 @@ public class ReflectionUtils {
                 if (conn != null && paramCount == (callParams.length + 1) && paramTypes[0].isAssignableFrom(IConnection.class)) {
                     // attempt to convert the args to match the method
                     try {
-                        Object[] convertedArgs = ConversionUtils.convertParams(argsWithConnection, paramTypes);
+                        MethodDispatch dispatch = new MethodDispatch(method, MethodDispatch.CONNECTION, callParams);
+                        Object[] convertedArgs = dispatch.params(conn, args);
                         if (isTrace) {
                             log.trace("Found method {} {} - parameters: {}", methodName, method, paramTypes);
                         }
-                        methodResult = new Object[] { method, convertedArgs };
+                        dispatchResult = new Object[] { dispatch, convertedArgs };
                         break;
                     } catch (Exception e) {
                         log.warn("Method {} not found in {} with parameters {}", methodName, service, Arrays.asList(paramTypes), e);
@@ -215,15 +276,109 @@ public class ReflectionUtils {
                 }
             }
             if (isTrace) {
-                log.trace("Method name: {} result: {}", methodName, methodResult[0]);
+                log.trace("Method name: {} result: {}", methodName, dispatchResult[0]);
             }
-            if (methodResult[0] == null) {
+            if (dispatchResult[0] == null) {
                 log.warn("Method {} not found in {} with parameters {}", methodName, service, Arrays.asList(callParams));
-                call.setStatus(Call.STATUS_METHOD_NOT_FOUND);
-                call.setException(new MethodNotFoundException(methodName, args));
             }
         }
-        return methodResult;
+        return dispatchResult;
+    }
+
+    /**
+     * Methods and dispatch table of a service class.
+     */
+    private static final class ServiceClass {
+
+        final Class<?> type;
+
+        final ConcurrentMap<String, Method[]> methods = new ConcurrentHashMap<>();
+
+        final ConcurrentMap<Signature, MethodDispatch> dispatchTable = new ConcurrentHashMap<>();
+
+        ServiceClass(Class<?> type) {
+            this.type = type;
+        }
+
+        /**
+         * Returns the public methods with the given name, leaving out the ones that contain a $.
+         */
+        Method[] getMethods(String methodName) {
+            Method[] named = methods.get(methodName);
+            if (named == null) {
+                named = Arrays.stream(type.getMethods()).filter(m -> m.getName().equals(methodName) && !m.getName().contains("$")).toArray(Method[]::new);
+                // unknown names are not kept, there is no end to them
+                if (named.length > 0) {
+                    methods.putIfAbsent(methodName, named);
+                }
+            }
+            return named;
+        }
+
+        /**
+         * Returns whether a method with the given name could take a call with the given number of arguments, depending on their values.
+         */
+        boolean hasCandidates(String methodName, int argCount, boolean withConnection) {
+            for (Method method : getMethods(methodName)) {
+                int paramCount = method.getParameterCount();
+                if (paramCount == argCount || (paramCount == 1 && method.getParameterTypes()[0].isArray()) || (withConnection && paramCount == argCount + 1)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+    }
+
+    /**
+     * Call signature: method name, argument classes and whether a connection is available.
+     */
+    private static final class Signature {
+
+        final String methodName;
+
+        final Class<?>[] argTypes;
+
+        final boolean withConnection;
+
+        final int hash;
+
+        Signature(String methodName, Class<?>[] argTypes, boolean withConnection) {
+            this.methodName = methodName;
+            this.argTypes = argTypes;
+            this.withConnection = withConnection;
+            this.hash = 31 * (31 * methodName.hashCode() + Arrays.hashCode(argTypes)) + Boolean.hashCode(withConnection);
+        }
+
+        /**
+         * Whether the argument classes can be kept by the given class loader without keeping their own class loader from being unloaded.
+         */
+        boolean isCacheSafe(ClassLoader classLoader) {
+            for (Class<?> argType : argTypes) {
+                if (argType != null && !ClassUtils.isCacheSafe(argType, classLoader)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Signature)) {
+                return false;
+            }
+            Signature other = (Signature) obj;
+            return withConnection == other.withConnection && methodName.equals(other.methodName) && Arrays.equals(argTypes, other.argTypes);
+        }
+
     }
 
 }
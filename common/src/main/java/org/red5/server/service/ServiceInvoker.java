@@ -114,17 +114,18 @@ public class ServiceInvoker implements IServiceInvoker {
             log.trace("Method: {} call exception: ", methodName, call.getException());
         }
         // look up the method with provided matching arguments
-        Object[] methodResult = ReflectionUtils.findMethod(conn, call, service, methodName);
+        Object[] methodResult = ReflectionUtils.findDispatch(conn, call, service, methodName);
         // get the method from the result, methodResult itself cannot be null!
-        Method method = (Method) methodResult[0];
+        MethodDispatch dispatch = (MethodDispatch) methodResult[0];
         // checking  "|| call.getException() != null" here causes a reused call to fail if a previous attempt failed
-        if (method == null) {
+        if (dispatch == null) {
             log.warn("Method not found: {}", methodName);
         } else {
             log.debug("Method found: {}", methodName);
             // get the parameters; the value at index 1 can be null, but the methodResult array will never be null
             @SuppressWarnings("null")
             Object[] params = (Object[]) methodResult[1];
+            Method method = dispatch.method;
             try {
                 /* XXX(paul) legacy flash logic for restricting access to methods
                 if (method.isAnnotationPresent(DeclarePrivate.class)) {
@@ -140,13 +141,13 @@ public class ServiceInvoker implements IServiceInvoker {
                 }
                 */
                 Object result = null;
-                log.debug("Invoking method: {}", method.toString());
+                log.debug("Invoking method: {}", method);
                 if (method.getReturnType().equals(Void.TYPE)) {
-                    method.invoke(service, params);
+                    dispatch.invoke(service, params);
                     call.setStatus(Call.STATUS_SUCCESS_VOID);
                     log.debug("result: void");
                 } else {
-                    result = method.invoke(service, params);
+                    result = dispatch.invoke(service, params);
                     call.setStatus(result == null ? Call.STATUS_SUCCESS_NULL : Call.STATUS_SUCCESS_RESULT);
                     log.debug("result: {}", result);
                 }
@@ -8,16 +8,20 @@
 package org.red5.server.so;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.CopyOnWriteArraySet;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -29,6 +33,7 @@ import org.red5.io.object.Output;
 import org.red5.io.object.Serializer;
 import org.red5.server.AttributeStore;
 import org.red5.server.api.IAttributeStore;
+import org.red5.server.api.IConnection.Encoding;
 import org.red5.server.api.Red5;
 import org.red5.server.api.event.IEventListener;
 import org.red5.server.api.persistence.IPersistable;
@@ -38,6 +43,7 @@ import org.red5.server.api.statistics.ISharedObjectStatistics;
 import org.red5.server.api.statistics.support.StatisticsCounter;
 import org.red5.server.net.rtmp.RTMPConnection;
 import org.red5.server.net.rtmp.codec.RTMP;
+import org.red5.server.net.rtmp.message.SharedChunkCache;
 import org.red5.server.net.rtmp.message.Constants;
 import org.red5.server.so.ISharedObjectEvent.Type;
 import org.slf4j.Logger;
@@ -55,9 +61,9 @@ public class SharedObject extends AttributeStore implements ISharedObjectStatist
     protected static Logger log = LoggerFactory.getLogger(SharedObject.class);
 
     /**
-     * Reentrant lock with fairness enabled; used for writes.
+     * Guards the attributes; held only while they are read or changed, never while updates are sent.
      */
-    private transient ReentrantReadWriteLock lock = new ReentrantReadWriteLock(true);
+    private transient ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
 
     private transient WriteLock writeLock = lock.writeLock();
 
@@ -111,6 +117,22 @@ public class SharedObject extends AttributeStore implements ISharedObjectStatist
      */
     protected transient volatile ConcurrentSkipListSet<ISharedObjectEvent> syncEvents = new ConcurrentSkipListSet<>();
 
+    /**
+     * Number of sync requests since the last sync started; a sync is scheduled when it rises from zero, so only one runs at a time
+     */
+    private transient AtomicInteger pendingSyncs = new AtomicInteger();
+
+    /**
+     * Names of the attributes changed since the persistence store last collected them, only tracked while persistent in a store which
+     * collects them
+     */
+    protected transient Set<String> changedAttributes = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Whether the persistence store collects the changed attributes
+     */
+    protected transient volatile boolean trackChanges;
+
     /**
      * Listeners
      */
@@ -288,9 +310,10 @@ public class SharedObject extends AttributeStore implements ISharedObjectStatist
     }
 
     /**
-     * Send update notification over data channel of RTMP connection
+     * Send update notification over data channel of RTMP connection. The owner of the update gets its events right away, while sync events
+     * for the other listeners are left to the next sync of this shared object.
      */
-    protected synchronized void sendUpdates() {
+    protected void sendUpdates() {
         log.debug("sendUpdates");
         // get the current version
         final int currentVersion = version.get();
@@ -300,12 +323,16 @@ public class SharedObject extends AttributeStore implements ISharedObjectStatist
         //get owner events
         Set<ISharedObjectEvent> ownerEvents = ownerMessage.getEvents();
         if (!ownerEvents.isEmpty()) {
-            // get all current owner events - single ordered set going to the event owner
-            final TreeSet<ISharedObjectEvent> events = new TreeSet<>(ownerEvents);
-            ownerEvents.removeAll(events);
+            // take all current owner events - single ordered set going to the event owner
+            final TreeSet<ISharedObjectEvent> events = new TreeSet<>();
+            for (Iterator<ISharedObjectEvent> it = ownerEvents.iterator(); it.hasNext();) {
+                events.add(it.next());
+                it.remove();
+            }
             // send update to "owner" of this update request
-            if (source != null) {
-                final RTMPConnection con = (RTMPConnection) source;
+            final IEventListener owner = source;
+            if (owner != null) {
+                final RTMPConnection con = (RTMPConnection) owner;
                 // create a worker
                 SharedObjectService.submitTask(() -> {
                     Red5.setConnectionLocal(con);
@@ -322,43 +349,153 @@ public class SharedObject extends AttributeStore implements ISharedObjectStatist
         }
         // tell all the listeners
         if (!syncEvents.isEmpty()) {
-            // get the listeners
-            Set<IEventListener> listeners = getListeners();
             // if there are no listeners, clear the events
             if (listeners.isEmpty()) {
                 log.debug("No listeners for {} sync events, clearing", syncEvents.size());
                 syncEvents.clear();
-            } else {
-                if (log.isTraceEnabled()) {
-                    log.trace("Listeners: {}", listeners);
-                }
-                // get all current sync events
-                final TreeSet<ISharedObjectEvent> events = new TreeSet<>(syncEvents);
-                syncEvents.removeAll(events);
-                // updates all registered clients of this shared object
-                listeners.stream().filter(listener -> listener != source).forEach(listener -> {
-                    final RTMPConnection con = (RTMPConnection) listener;
-                    // create a worker
-                    SharedObjectService.submitTask(() -> {
-                        if (con.isConnected()) {
-                            Red5.setConnectionLocal(con);
-                            con.sendSharedObjectMessage(name, currentVersion, persistent, events);
-                            Red5.setConnectionLocal(null);
-                        } else {
-                            log.trace("Skipping {} connection: {}", RTMP.states[con.getStateCode()], con.getId());
-                            // if the connection is 'disconnected' remove it
-                            if (con.isDisconnected()) {
-                                unregister(con);
-                            }
-                        }
-                    });
-                });
+            } else if (pendingSyncs.getAndIncrement() == 0) {
+                scheduleSync();
             }
         } else if (log.isTraceEnabled()) {
             log.trace("No sync events to send");
         }
     }
 
+    /**
+     * Schedules a sync, after the sync interval if there is one so that changes made in the meantime are coalesced.
+     */
+    private void scheduleSync() {
+        long interval = SharedObjectService.getSyncInterval();
+        try {
+            if (interval > 0) {
+                SharedObjectService.scheduleTask(this::sync, interval);
+            } else {
+                SharedObjectService.submitTask(this::sync);
+            }
+        } catch (RejectedExecutionException e) {
+            log.warn("Sync of {} was rejected", name, e);
+            // let the next change try again
+            pendingSyncs.set(0);
+        }
+    }
+
+    /**
+     * Sends the pending sync events and schedules another sync if more were requested meanwhile.
+     */
+    private void sync() {
+        int requested = pendingSyncs.get();
+        try {
+            sendSyncEvents();
+        } catch (Exception e) {
+            log.warn("Exception syncing {}", name, e);
+        } finally {
+            if (pendingSyncs.addAndGet(-requested) != 0) {
+                scheduleSync();
+            }
+        }
+    }
+
+    /**
+     * Sends the sync events collected since the last sync to the listeners. Updates and deletes of the same attribute are coalesced into the
+     * latest one, and the resulting events are serialized once per encoding for all the listeners which didn't make any of the changes.
+     */
+    protected void sendSyncEvents() {
+        List<ISharedObjectEvent> pending = new ArrayList<>();
+        for (ISharedObjectEvent event; (event = syncEvents.pollFirst()) != null;) {
+            pending.add(event);
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        // if there are no listeners, drop the events
+        if (listeners.isEmpty()) {
+            log.debug("No listeners for {} sync events, clearing", pending.size());
+            return;
+        }
+        final ConcurrentSkipListSet<ISharedObjectEvent> events = coalesce(pending);
+        log.debug("Syncing {} events, coalesced from {}", events.size(), pending.size());
+        // listeners which made a change don't get it back
+        Set<IEventListener> sources = new HashSet<>();
+        for (ISharedObjectEvent event : events) {
+            if (event instanceof SyncEvent && ((SyncEvent) event).source != null) {
+                sources.add(((SyncEvent) event).source);
+            }
+        }
+        final int currentVersion = version.get();
+        final SharedChunkCache amf0Cache = new SharedChunkCache(), amf3Cache = new SharedChunkCache();
+        for (IEventListener listener : listeners) {
+            final RTMPConnection con = (RTMPConnection) listener;
+            if (!con.isConnected()) {
+                log.trace("Skipping {} connection: {}", RTMP.states[con.getStateCode()], con.getId());
+                // if the connection is 'disconnected' remove it
+                if (con.isDisconnected()) {
+                    unregister(con);
+                }
+                continue;
+            }
+            boolean amf3 = con.getEncoding() == Encoding.AMF3;
+            ConcurrentSkipListSet<ISharedObjectEvent> conEvents = events;
+            SharedChunkCache chunkCache = amf3 ? amf3Cache : amf0Cache;
+            if (sources.contains(listener)) {
+                conEvents = new ConcurrentSkipListSet<>();
+                for (ISharedObjectEvent event : events) {
+                    if (!(event instanceof SyncEvent) || ((SyncEvent) event).source != listener) {
+                        conEvents.add(event);
+                    }
+                }
+                if (conEvents.isEmpty()) {
+                    continue;
+                }
+                chunkCache = null;
+            }
+            SharedObjectMessage syncMessage = amf3 ? new FlexSharedObjectMessage(null, name, currentVersion, persistent) : new SharedObjectMessage(null, name, currentVersion, persistent);
+            syncMessage.setEvents(conEvents);
+            syncMessage.setChunkCache(chunkCache);
+            Red5.setConnectionLocal(con);
+            try {
+                con.sendSharedObjectMessage(syncMessage);
+            } finally {
+                Red5.setConnectionLocal(null);
+            }
+        }
+    }
+
+    /**
+     * Coalesces sync events, keeping only the latest update or delete of each attribute. Other events are all kept.
+     *
+     * @param events
+     *            events in the order they occurred
+     * @return coalesced events
+     */
+    static ConcurrentSkipListSet<ISharedObjectEvent> coalesce(List<ISharedObjectEvent> events) {
+        ConcurrentSkipListSet<ISharedObjectEvent> result = new ConcurrentSkipListSet<>();
+        Set<String> keys = new HashSet<>();
+        // walk back from the latest event, so later changes of an attribute hide the earlier ones
+        for (int i = events.size() - 1; i >= 0; i--) {
+            ISharedObjectEvent event = events.get(i);
+            Type type = event.getType();
+            if ((type == Type.CLIENT_UPDATE_DATA || type == Type.CLIENT_DELETE_DATA) && event.getKey() != null && !keys.add(event.getKey())) {
+                continue;
+            }
+            result.add(event);
+        }
+        return result;
+    }
+
+    /**
+     * Adds a sync event on behalf of the current update source.
+     *
+     * @param type
+     *            event type
+     * @param key
+     *            attribute name or message handler
+     * @param value
+     *            value or message arguments
+     */
+    private void addSyncEvent(Type type, String key, Object value) {
+        syncEvents.add(new SyncEvent(type, key, value, source));
+    }
+
     /**
      * Send notification about modification of SO
      */
@@ -390,20 +527,12 @@ public class SharedObject extends AttributeStore implements ISharedObjectStatist
     @Override
     public Object getAttribute(String name) {
         Object result = null;
-        if (hasAttribute(name)) {
-            boolean locked = false;
+        if (name != null) {
+            lock.readLock().lock();
             try {
-                if (locked = lock.readLock().tryLock(10L, TimeUnit.MILLISECONDS)) {
-                    result = attributes.get(name);
-                } else {
-                    log.trace("Failed to get read lock");
-                }
-            } catch (Exception e) {
-                log.warn("Exception in setAttribute", e);
+                result = attributes.get(name);
             } finally {
-                if (locked) {
-                    lock.readLock().unlock();
-                }
+                lock.readLock().unlock();
             }
         }
         return result;
@@ -439,16 +568,17 @@ public class SharedObject extends AttributeStore implements ISharedObjectStatist
     public boolean setAttribute(String name, Object value) {
         log.debug("setAttribute - name: {} value: {}", name, value);
         boolean result = false;
-        boolean locked = false;
+        beginUpdate();
         try {
-            beginUpdate();
-            if (locked = writeLock.tryLock(100L, TimeUnit.MILLISECONDS)) {
+            writeLock.lock();
+            try {
                 if (ownerMessage.addEvent(Type.CLIENT_UPDATE_ATTRIBUTE, name, null)) {
                     // Setting a null value removes the attribute
                     if (value == null) {
                         boolean removed = super.removeAttribute(name);
                         if (removed) {
-                            syncEvents.add(new SharedObjectEvent(Type.CLIENT_DELETE_DATA, name, null));
+                            attributeChanged(name);
+                            addSyncEvent(Type.CLIENT_DELETE_DATA, name, null);
                             deleteStats.incrementAndGet();
                             result = true;
                         }
@@ -456,22 +586,20 @@ public class SharedObject extends AttributeStore implements ISharedObjectStatist
                         boolean set = super.setAttribute(name, value);
                         log.debug("Set attribute?: {}", set);
                         if (set) {
+                            attributeChanged(name);
                             // only sync if the attribute changed
-                            syncEvents.add(new SharedObjectEvent(Type.CLIENT_UPDATE_DATA, name, value));
+                            addSyncEvent(Type.CLIENT_UPDATE_DATA, name, value);
                             changeStats.incrementAndGet();
                             result = true;
                         }
                     }
                 }
-            } else {
-                log.trace("Failed to get write lock");
+            } finally {
+                writeLock.unlock();
             }
         } catch (Exception e) {
             log.warn("Exception in setAttribute", e);
         } finally {
-            if (locked) {
-                writeLock.unlock();
-            }
             endUpdate();
         }
         return result;
@@ -487,6 +615,7 @@ public class SharedObject extends AttributeStore implements ISharedObjectStatist
                 writeLock.lockInterruptibly();
                 for (Map.Entry<String, Object> entry : values.entrySet()) {
                     if (super.setAttribute(entry.getKey(), entry.getValue())) {
+                        attributeChanged(entry.getKey());
                         --valuesCount;
                     }
                 }
@@ -521,7 +650,8 @@ public class SharedObject extends AttributeStore implements ISharedObjectStatist
             final SharedObjectEvent event = new SharedObjectEvent(Type.CLIENT_DELETE_DATA, name, null);
             if (ownerMessage.addEvent(event)) {
                 if (super.removeAttribute(name)) {
-                    syncEvents.add(event);
+                    attributeChanged(name);
+                    addSyncEvent(Type.CLIENT_DELETE_DATA, name, null);
                     deleteStats.incrementAndGet();
                     result = true;
                 }
@@ -558,7 +688,7 @@ public class SharedObject extends AttributeStore implements ISharedObjectStatist
     protected void sendMessage(String handler, List<?> arguments) {
         final SharedObjectEvent event = new SharedObjectEvent(Type.CLIENT_SEND_MESSAGE, handler, arguments);
         if (ownerMessage.addEvent(event)) {
-            syncEvents.add(event);
+            addSyncEvent(Type.CLIENT_SEND_MESSAGE, handler, arguments);
             sendStats.incrementAndGet();
             if (log.isTraceEnabled()) {
                 log.trace("Send message: {}", arguments);
@@ -681,6 +811,92 @@ public class SharedObject extends AttributeStore implements ISharedObjectStatist
         }
     }
 
+    /**
+     * Records a changed attribute for incremental persistence.
+     *
+     * @param name
+     *            attribute name
+     */
+    private void attributeChanged(String name) {
+        if (trackChanges && persistent && name != null) {
+            changedAttributes.add(name);
+        }
+    }
+
+    /**
+     * Returns whether changed attributes are recorded for {@link #drainChanges()}.
+     *
+     * @return true if they are
+     */
+    public boolean isTrackChanges() {
+        return trackChanges;
+    }
+
+    /**
+     * Sets whether changed attributes are recorded for {@link #drainChanges()}; only stores which persist changes rather than the whole
+     * object turn it on, since nothing else collects them. Turning it off forgets the changes recorded so far.
+     *
+     * @param trackChanges
+     *            true to record changed attributes
+     */
+    public void setTrackChanges(boolean trackChanges) {
+        this.trackChanges = trackChanges;
+        if (!trackChanges) {
+            changedAttributes.clear();
+        }
+    }
+
+    /**
+     * Returns the changes made since the last call, for stores which persist changes rather than the whole object. Changes are coalesced
+     * per attribute: each event is an update with the current value or a delete.
+     *
+     * @return update and delete events, empty if nothing changed
+     */
+    public List<ISharedObjectEvent> drainChanges() {
+        List<ISharedObjectEvent> changes = new ArrayList<>(changedAttributes.size());
+        lock.readLock().lock();
+        try {
+            for (String name : changedAttributes) {
+                // remove first so that a concurrent change is collected by the next call
+                changedAttributes.remove(name);
+                Object value = attributes.get(name);
+                changes.add(new SharedObjectEvent(value != null ? Type.CLIENT_UPDATE_DATA : Type.CLIENT_DELETE_DATA, name, value));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return changes;
+    }
+
+    /**
+     * Applies changes read back from a persistence store without notifying listeners or the store.
+     *
+     * @param changes
+     *            update, delete and clear events
+     */
+    public void applyChanges(Collection<ISharedObjectEvent> changes) {
+        writeLock.lock();
+        try {
+            for (ISharedObjectEvent change : changes) {
+                switch (change.getType()) {
+                    case CLIENT_UPDATE_DATA:
+                        super.setAttribute(change.getKey(), change.getValue());
+                        break;
+                    case CLIENT_DELETE_DATA:
+                        super.removeAttribute(change.getKey());
+                        break;
+                    case CLIENT_CLEAR_DATA:
+                        super.removeAttributes();
+                        break;
+                    default:
+                        log.debug("Ignoring change of type {}", change.getType());
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
     /** {@inheritDoc} */
     public void serialize(Output output) throws IOException {
         log.debug("serialize - name: {}", name);
@@ -741,8 +957,14 @@ public class SharedObject extends AttributeStore implements ISharedObjectStatist
     protected void close() {
         log.debug("close");
         closed.compareAndSet(false, true);
-        // clear collections
-        removeAttributes();
+        // clear collections; the attributes are dropped without recording or storing their removal, the stored data outlives this reference
+        writeLock.lock();
+        try {
+            attributes.clear();
+        } finally {
+            writeLock.unlock();
+        }
+        changedAttributes.clear();
         listeners.clear();
         syncEvents.clear();
         ownerMessage.getEvents().clear();
@@ -831,17 +1053,34 @@ public class SharedObject extends AttributeStore implements ISharedObjectStatist
         log.trace("setDirty: {}", name);
         // get uses read lock, no need to do locking here
         Object value = getAttribute(name);
+        attributeChanged(name);
         if (ownerMessage.addEvent(Type.CLIENT_UPDATE_ATTRIBUTE, name, null)) {
             // a null value means a removal the attribute
             if (value == null) {
-                syncEvents.add(new SharedObjectEvent(Type.CLIENT_DELETE_DATA, name, null));
+                addSyncEvent(Type.CLIENT_DELETE_DATA, name, null);
                 deleteStats.incrementAndGet();
             } else {
-                syncEvents.add(new SharedObjectEvent(Type.CLIENT_UPDATE_DATA, name, value));
+                addSyncEvent(Type.CLIENT_UPDATE_DATA, name, value);
                 changeStats.incrementAndGet();
             }
             notifyModified();
         }
     }
 
+    /**
+     * Sync event remembering the listener which made the change, so that the change isn't sent back to it.
+     */
+    private static final class SyncEvent extends SharedObjectEvent {
+
+        private static final long serialVersionUID = 4426432853528423826L;
+
+        final transient IEventListener source;
+
+        SyncEvent(Type type, String key, Object value, IEventListener source) {
+            super(type, key, value);
+            this.source = source;
+        }
+
+    }
+
 }
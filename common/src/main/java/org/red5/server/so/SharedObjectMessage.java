@@ -17,6 +17,7 @@ import java.util.concurrent.ConcurrentSkipListSet;
 
 import org.red5.server.api.event.IEventListener;
 import org.red5.server.net.rtmp.event.BaseEvent;
+import org.red5.server.net.rtmp.message.SharedChunkCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -49,6 +50,11 @@ public class SharedObjectMessage extends BaseEvent implements ISharedObjectMessa
      */
     private boolean persistent;
 
+    /**
+     * Encode-once cache for the payload, shared by every copy of an update sent to many connections
+     */
+    protected transient SharedChunkCache chunkCache;
+
     public SharedObjectMessage() {
     }
 
@@ -169,11 +175,42 @@ public class SharedObjectMessage extends BaseEvent implements ISharedObjectMessa
         this.events.addAll(events);
     }
 
+    /**
+     * Sets the events of this message. The given set is used as is rather than copied, so that one set of events can be sent to many
+     * connections; it must not be modified afterwards.
+     *
+     * @param events
+     *            events
+     */
+    public void setEvents(ConcurrentSkipListSet<ISharedObjectEvent> events) {
+        this.events = events;
+    }
+
     /** {@inheritDoc} */
     public Set<ISharedObjectEvent> getEvents() {
         return events;
     }
 
+    /**
+     * Returns the encode-once cache shared by the copies of this update.
+     *
+     * @return chunk cache or null
+     */
+    public SharedChunkCache getChunkCache() {
+        return chunkCache;
+    }
+
+    /**
+     * Sets the encode-once cache shared by the copies of this update; every copy sharing a cache must carry the same events, version and
+     * encoding.
+     *
+     * @param chunkCache
+     *            chunk cache
+     */
+    public void setChunkCache(SharedChunkCache chunkCache) {
+        this.chunkCache = chunkCache;
+    }
+
     /** {@inheritDoc} */
     public void clear() {
         events.clear();
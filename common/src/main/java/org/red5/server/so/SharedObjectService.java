@@ -8,6 +8,7 @@
 package org.red5.server.so;
 
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import org.red5.server.api.persistence.IPersistable;
 import org.red5.server.api.persistence.IPersistenceStore;
@@ -43,6 +44,12 @@ public class SharedObjectService implements ISharedObjectService {
      */
     private static ThreadPoolTaskScheduler scheduler;
 
+    /**
+     * Interval in milliseconds over which changes to a shared object are collected and coalesced before they are sent to its listeners; 0
+     * sends them as soon as a scheduler thread is available.
+     */
+    private static long syncInterval;
+
     /**
      * Persistence class name
      */
@@ -58,6 +65,33 @@ public class SharedObjectService implements ISharedObjectService {
         scheduler.execute(task);
     }
 
+    /**
+     * Pushes a task to the scheduler for single execution after the given delay.
+     *
+     * @param task
+     *            runnable
+     * @param delay
+     *            delay in milliseconds
+     */
+    public static void scheduleTask(Runnable task, long delay) {
+        scheduler.getScheduledExecutor().schedule(task, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the interval over which shared object changes are coalesced, in milliseconds
+     */
+    public static long getSyncInterval() {
+        return syncInterval;
+    }
+
+    /**
+     * @param syncInterval
+     *            the interval over which shared object changes are coalesced, in milliseconds
+     */
+    public static void setSyncInterval(long syncInterval) {
+        SharedObjectService.syncInterval = syncInterval;
+    }
+
     /**
      * @param maximumEventsPerUpdate
      *            the maximumEventsPerUpdate to set
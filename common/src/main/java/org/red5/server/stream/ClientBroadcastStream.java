@@ -47,6 +47,7 @@ import org.red5.server.api.Red5;
 import org.red5.server.api.event.IEvent;
 import org.red5.server.api.event.IEventDispatcher;
 import org.red5.server.api.event.IEventListener;
+import org.red5.server.api.scope.IBroadcastScope;
 import org.red5.server.api.scope.IScope;
 import org.red5.server.api.statistics.IClientBroadcastStreamStatistics;
 import org.red5.server.api.statistics.support.StatisticsCounter;
@@ -74,8 +75,10 @@ import org.red5.server.net.rtmp.event.Notify;
 import org.red5.server.net.rtmp.event.VideoData;
 import org.red5.server.net.rtmp.message.Constants;
 import org.red5.server.net.rtmp.message.Header;
+import org.red5.server.net.rtmp.message.SharedChunkCache;
 import org.red5.server.net.rtmp.status.Status;
 import org.red5.server.net.rtmp.status.StatusCodes;
+import org.red5.server.scope.Scope;
 import org.red5.server.stream.message.RTMPMessage;
 import org.red5.server.stream.message.StatusMessage;
 import org.slf4j.Logger;
@@ -370,6 +373,12 @@ public class ClientBroadcastStream extends AbstractClientStream implements IClie
                     try {
                         // route to live
                         if (livePipe != null) {
+                            // let all the subscriber copies of this message share one chunked payload
+                            if (rtmpEvent instanceof VideoData) {
+                                ((VideoData) rtmpEvent).setChunkCache(new SharedChunkCache());
+                            } else if (rtmpEvent instanceof AudioData) {
+                                ((AudioData) rtmpEvent).setChunkCache(new SharedChunkCache());
+                            }
                             // create new RTMP message, initialize it and push through pipe
                             RTMPMessage msg = RTMPMessage.build(rtmpEvent, eventTime);
                             livePipe.pushMessage(msg);
@@ -1017,6 +1026,14 @@ public class ClientBroadcastStream extends AbstractClientStream implements IClie
         }
         // check local registry first then attempt the add
         if (!localAliases.contains(alias) && aliases.add(alias)) {
+            // index the alias with the broadcast scope of the stream, if it has one yet
+            IScope scope = getScope();
+            if (scope instanceof Scope && publishedName != null) {
+                IBroadcastScope bsScope = scope.getBroadcastScope(publishedName);
+                if (bsScope != null && bsScope.getClientBroadcastStream() == this) {
+                    ((Scope) scope).addBroadcastAliases(bsScope);
+                }
+            }
             return true;
         }
         return false;
@@ -24,7 +24,8 @@ public interface IStreamData<T> {
     public IoBuffer getData();
 
     /**
-     * Creates a byte accurate copy.
+     * Creates a byte accurate copy. The copy shares the data of this item through a read-only view rather than copying it, so it costs
+     * next to nothing; this item is retained until the copy is released.
      *
      * @return duplicate of the current data item
      * @throws IOException
@@ -34,4 +35,15 @@ public interface IStreamData<T> {
      */
     public IStreamData<T> duplicate() throws IOException, ClassNotFoundException;
 
+    /**
+     * Adds a reference to this item; each call must be matched by a call to {@link #release()}.
+     */
+    public void retain();
+
+    /**
+     * Removes a reference to this item. When the last reference is removed, the data is freed, or handed back to the item it was
+     * duplicated from.
+     */
+    public void release();
+
 }
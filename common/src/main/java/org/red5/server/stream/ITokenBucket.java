@@ -61,7 +61,8 @@ public interface ITokenBucket {
     double getSpeed();
 
     /**
-     * Reset this token bucket. All pending threads are woken up with false returned for acquiring token and callback is removed without calling back.
+     * Reset this token bucket. All pending threads are woken up with false returned for acquiring token, and pending callbacks are removed
+     * after their {@link ITokenBucketCallback#reset(ITokenBucket, long)} is called.
      */
     void reset();
 
@@ -80,7 +81,8 @@ public interface ITokenBucket {
         void available(ITokenBucket bucket, long tokenCount);
 
         /**
-         * Resets tokens in bucket
+         * Being called when the bucket is reset while the tokens requested are pending; they will not become available through this
+         * request.
          *
          * @param bucket
          *            Bucket
@@ -7,15 +7,21 @@
 
 package org.red5.server.stream;
 
+import org.red5.server.api.scope.IScopeService;
+import org.red5.server.api.stream.ISubscriberStream;
+
 /**
  * A service used to create and manage token buckets.
  *
  * @author The Red5 Project
  * @author Steven Gong (steven.gong@gmail.com)
  */
-public interface ITokenBucketService {
+public interface ITokenBucketService extends IScopeService {
+
     public static final String KEY = "TokenBucketService";
 
+    public static String BEAN_NAME = "tokenBucketService";
+
     /**
      * Create a token bucket.
      *
@@ -27,6 +33,29 @@ public interface ITokenBucketService {
      */
     ITokenBucket createTokenBucket(long capacity, long speed);
 
+    /**
+     * Create a token bucket nested in another one; tokens are only handed out when the parent has them as well.
+     *
+     * @param parent
+     *            Parent bucket or null
+     * @param capacity
+     *            Capacity of the bucket.
+     * @param speed
+     *            Speed of the bucket. Bytes per millisecond.
+     * @return null if fail to create.
+     */
+    ITokenBucket createTokenBucket(ITokenBucket parent, long capacity, long speed);
+
+    /**
+     * Create the bucket for the egress of a subscriber stream. It is nested in the buckets shared by the connection, the application
+     * scope and the whole server.
+     *
+     * @param stream
+     *            Subscriber stream
+     * @return null if the stream is not limited
+     */
+    ITokenBucket createStreamBucket(ISubscriberStream stream);
+
     /**
      * Remove this bucket.
      *
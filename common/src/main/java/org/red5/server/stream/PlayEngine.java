@@ -19,6 +19,7 @@ import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.codec.FrameRingBuffer;
 import org.red5.codec.IAudioStreamCodec;
 import org.red5.codec.IStreamCodecInfo;
 import org.red5.codec.IVideoStreamCodec;
@@ -34,6 +35,7 @@ import org.red5.server.api.scope.IScope;
 import org.red5.server.api.stream.IBroadcastStream;
 import org.red5.server.api.stream.IPlayItem;
 import org.red5.server.api.stream.IPlaylistSubscriberStream;
+import org.red5.server.api.stream.IStreamCapableConnection;
 import org.red5.server.api.stream.ISubscriberStream;
 import org.red5.server.api.stream.OperationNotSupportedException;
 import org.red5.server.api.stream.StreamState;
@@ -64,9 +66,11 @@ import org.red5.server.net.rtmp.message.Constants;
 import org.red5.server.net.rtmp.message.Header;
 import org.red5.server.net.rtmp.status.Status;
 import org.red5.server.net.rtmp.status.StatusCodes;
+import org.red5.server.stream.ITokenBucket.ITokenBucketCallback;
 import org.red5.server.stream.message.RTMPMessage;
 import org.red5.server.stream.message.ResetMessage;
 import org.red5.server.stream.message.StatusMessage;
+import org.red5.server.util.ScopeUtils;
 import org.slf4j.Logger;
 
 /**
@@ -83,6 +87,11 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
 
     private static final Logger log = Red5LoggerFactory.getLogger(PlayEngine.class);
 
+    /**
+     * Milliseconds between push and pull runs when the connection can not tell when its messages are written.
+     */
+    private static final long PULL_INTERVAL = 10L;
+
     private static boolean isDebug = log.isDebugEnabled();
 
     private static boolean isTrace = log.isTraceEnabled();
@@ -174,14 +183,51 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
     private volatile long playbackStart;
 
     /**
-     * Flag denoting whether or not the push and pull job is scheduled. The job makes sure messages are sent to the client.
+     * Name of the scheduled push and pull job, which runs once. The job sends messages to the client until it has to wait for the client
+     * or the connection, and arranges to be scheduled again once they are ready.
+     */
+    private String pullAndPush;
+
+    /**
+     * The scheduled push and pull job and the time it is due.
+     */
+    private PullAndPushRunnable pullJob;
+
+    private long pullDue;
+
+    /**
+     * Name of the job that closes stream after buffer runs out.
+     */
+    private String deferredStop;
+
+    private DeferredStopRunnable deferredStopJob;
+
+    /**
+     * Guards the push and pull and the deferred stop jobs.
      */
-    private volatile String pullAndPush;
+    private final Object jobLock = new Object();
 
     /**
-     * Flag denoting whether or not the job that closes stream after buffer runs out is scheduled.
+     * Set when a push and pull run was asked for while one was running, the running one then goes on.
      */
-    private volatile String deferredStop;
+    private final AtomicBoolean pullRequested = new AtomicBoolean(false);
+
+    /**
+     * Wakes the push and pull job once the connection or the egress bucket is ready for more data.
+     */
+    private final Runnable pullWaker = this::wakePullAndPush;
+
+    private final ITokenBucketCallback bucketCallback = new ITokenBucketCallback() {
+
+        public void available(ITokenBucket bucket, long tokenCount) {
+            wakePullAndPush();
+        }
+
+        public void reset(ITokenBucket bucket, long tokenCount) {
+            wakePullAndPush();
+        }
+
+    };
 
     /**
      * Monitor guarding completion of a given push/pull run. Used to wait for job cancellation to finish.
@@ -209,9 +255,9 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
     private int playDecision = 3;
 
     /**
-     * Index of the buffered interframe to send instead of current frame
+     * Position in the buffered group of pictures, its frames are sent instead of the current frames until a newer group begins
      */
-    private int bufferedInterframeIdx = -1;
+    private volatile FrameRingBuffer.Cursor gopCursor;
 
     /**
      * List of pending operations
@@ -227,6 +273,11 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
 
     private boolean configsDone;
 
+    /**
+     * Bucket limiting the egress of the stream, null if the stream is not limited
+     */
+    private ITokenBucket egressBucket;
+
     /**
      * Constructs a new PlayEngine.
      */
@@ -294,6 +345,7 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
                 IMessageOutput out = consumerService.getConsumerOutput(subscriberStream);
                 if (msgOutReference.compareAndSet(null, out)) {
                     out.subscribe(this, null);
+                    createEgressBucket(out);
                 } else if (isDebug) {
                     log.debug("Message output was already set for stream: {}", subscriberStream);
                 }
@@ -415,7 +467,6 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
                                 }
                                 sendNotifications = false;
                                 if (videoCodec.getNumInterframes() > 0 || videoCodec.getKeyframe() != null) {
-                                    bufferedInterframeIdx = 0;
                                     videoFrameDropper.reset(IFrameDropper.SEND_ALL);
                                 }
                             }
@@ -560,13 +611,25 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
                             log.debug("Pushing video decoder configuration");
                             sendMessage(RTMPMessage.build(conf, ts));
                         }
-                        // check for keyframes to send
-                        FrameData[] keyFrames = videoCodec.getKeyframes();
-                        for (FrameData keyframe : keyFrames) {
-                            log.debug("Keyframe is available");
-                            VideoData video = new VideoData(keyframe.getFrame(), true);
-                            log.debug("Pushing keyframe");
-                            sendMessage(RTMPMessage.build(video, ts));
+                        // check for keyframes to send, starting the replay of the buffered group of pictures
+                        FrameRingBuffer.Cursor cursor = videoCodec.attachCursor();
+                        if (cursor != null) {
+                            FrameRingBuffer.Frame frame;
+                            while ((frame = cursor.peek()) != null && frame.isKeyframe()) {
+                                cursor.poll();
+                                log.debug("Pushing keyframe");
+                                sendMessage(RTMPMessage.build(new VideoData(frame.getFrame(), true), ts));
+                            }
+                            // the interframes follow in place of the live frames
+                            gopCursor = cursor;
+                        } else {
+                            FrameData[] keyFrames = videoCodec.getKeyframes();
+                            for (FrameData keyframe : keyFrames) {
+                                log.debug("Keyframe is available");
+                                VideoData video = new VideoData(keyframe.getFrame(), true);
+                                log.debug("Pushing keyframe");
+                                sendMessage(RTMPMessage.build(video, ts));
+                            }
                         }
                     } else {
                         log.debug("No video decoder configuration available");
@@ -821,6 +884,7 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
             subscriberStream.setState(StreamState.CLOSED);
             clearWaitJobs();
             releasePendingMessage();
+            removeEgressBucket();
             lastMessageTs = 0;
             // XXX is clear ping required?
             //sendClearPing();
@@ -845,7 +909,7 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
 
     /**
      * Check if it's okay to send the client more data. This takes the configured bandwidth as well as the requested client buffer into
-     * account.
+     * account. If not, the push and pull job is woken once the client buffer, the connection or the egress bucket is ready.
      *
      * @param message
      * @return true if it is ok to send more, false otherwise
@@ -854,7 +918,9 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
         if (message instanceof IStreamData) {
             final long now = System.currentTimeMillis();
             // check client buffer size
-            if (isClientBufferFull(now)) {
+            long excess = clientBufferExcess(now);
+            if (excess > 0) {
+                schedulePullAndPush(excess);
                 return false;
             }
             // get pending message count
@@ -869,6 +935,13 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
             // check for under run
             if (pending > underrunTrigger) {
                 // too many messages already queued on the connection
+                if (!subscriberStream.getConnection().addWritableListener(underrunTrigger, pullWaker)) {
+                    schedulePullAndPush(PULL_INTERVAL);
+                }
+                return false;
+            }
+            // hold the message back until the stream, connection and application may send it
+            if (egressBucket != null && !egressBucket.acquireTokenNonblocking(dataSize(message), bucketCallback)) {
                 return false;
             }
             return true;
@@ -883,14 +956,59 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
         }
     }
 
+    /**
+     * Creates the egress bucket of the stream if the scope has a token bucket service, and hands it to the connection consumer.
+     *
+     * @param out
+     *            message output of the stream
+     */
+    private void createEgressBucket(IMessageOutput out) {
+        ITokenBucketService bucketService = (ITokenBucketService) ScopeUtils.getScopeService(subscriberStream.getScope(), ITokenBucketService.class, false);
+        if (bucketService != null) {
+            egressBucket = bucketService.createStreamBucket(subscriberStream);
+            if (egressBucket != null) {
+                log.debug("Egress of stream {} is limited by {}", streamId, egressBucket);
+                OOBControlMessage bucketMessage = new OOBControlMessage();
+                bucketMessage.setTarget("ConnectionConsumer");
+                bucketMessage.setServiceName("tokenBucket");
+                Map<String, Object> paramMap = new HashMap<>();
+                paramMap.put("tokenBucket", egressBucket);
+                bucketMessage.setServiceParamMap(paramMap);
+                out.sendOOBControlMessage(this, bucketMessage);
+            }
+        }
+    }
+
+    /**
+     * Returns the egress bucket of the stream to the token bucket service.
+     */
+    private void removeEgressBucket() {
+        ITokenBucket bucket = egressBucket;
+        if (bucket != null) {
+            egressBucket = null;
+            ITokenBucketService bucketService = (ITokenBucketService) ScopeUtils.getScopeService(subscriberStream.getScope(), ITokenBucketService.class, false);
+            if (bucketService != null) {
+                bucketService.removeTokenBucket(bucket);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of bytes of stream data carried by the event.
+     */
+    private static int dataSize(IRTMPEvent event) {
+        IoBuffer data = event instanceof IStreamData ? ((IStreamData<?>) event).getData() : null;
+        return data != null ? data.limit() : 0;
+    }
+
     /**
      * Estimate client buffer fill.
      *
      * @param now
      *            The current timestamp being used.
-     * @return True if it appears that the client buffer is full, otherwise false.
+     * @return Milliseconds of data in the client buffer beyond what it needs, 0 if it appears that the client buffer is not full.
      */
-    private boolean isClientBufferFull(final long now) {
+    private long clientBufferExcess(final long now) {
         // check client buffer length when we've already sent some messages
         if (lastMessageTs > 0) {
             // duration the stream is playing / playback duration
@@ -903,25 +1021,29 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
             // fix for SN-122, this sends double the size of the client buffer
             if (buffer > 0 && buffered > (buffer * 2)) {
                 // client is likely to have enough data in the buffer
-                return true;
+                return buffered - (buffer * 2);
             }
         }
-        return false;
+        return 0;
+    }
+
+    /**
+     * Estimate the data left in the client buffer.
+     *
+     * @return Milliseconds of data in the client buffer, negative once it ran out.
+     */
+    private long clientBufferLength() {
+        // duration the stream is playing / playback duration
+        final long delta = System.currentTimeMillis() - playbackStart;
+        // expected amount of data present in client buffer
+        final long buffered = lastMessageTs - delta;
+        log.trace("clientBufferLength: timestamp {} delta {} buffered {}", new Object[] { lastMessageTs, delta, buffered });
+        return buffered;
     }
 
     private boolean isClientBufferEmpty() {
         // check client buffer length when we've already sent some messages
-        if (lastMessageTs >= 0) {
-            // duration the stream is playing / playback duration
-            final long delta = System.currentTimeMillis() - playbackStart;
-            // expected amount of data present in client buffer
-            final long buffered = lastMessageTs - delta;
-            log.trace("isClientBufferEmpty: timestamp {} delta {} buffered {}", new Object[] { lastMessageTs, delta, buffered });
-            if (buffered < 0) {
-                return true;
-            }
-        }
-        return false;
+        return lastMessageTs >= 0 && clientBufferLength() < 0;
     }
 
     /**
@@ -929,9 +1051,38 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
      */
     private void ensurePullAndPushRunning() {
         log.trace("State should be PLAYING to running this task: {}", subscriberStream.getState());
-        if (pullMode && pullAndPush == null && subscriberStream.getState() == StreamState.PLAYING) {
-            // client buffer is at least 100ms
-            pullAndPush = subscriberStream.scheduleWithFixedDelay(new PullAndPushRunnable(), 10);
+        if (pullMode && subscriberStream.getState() == StreamState.PLAYING) {
+            schedulePullAndPush(0);
+        }
+    }
+
+    /**
+     * Runs the pull and push processing, unless the stream has been paused or stopped meanwhile.
+     */
+    private void wakePullAndPush() {
+        if (pullMode && subscriberStream.getState() == StreamState.PLAYING) {
+            schedulePullAndPush(0);
+        }
+    }
+
+    /**
+     * Schedules the pull and push job to run once after the given delay, unless it is due earlier already.
+     *
+     * @param delay
+     *            milliseconds
+     */
+    private void schedulePullAndPush(long delay) {
+        final long due = System.currentTimeMillis() + delay;
+        synchronized (jobLock) {
+            if (pullJob != null) {
+                if (pullDue <= due) {
+                    return;
+                }
+                schedulingService.removeScheduledJob(pullAndPush);
+            }
+            pullJob = new PullAndPushRunnable();
+            pullDue = due;
+            pullAndPush = schedulingService.addScheduledOnceJob(delay, pullJob);
         }
     }
 
@@ -940,11 +1091,14 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
      */
     private void clearWaitJobs() {
         log.debug("Clear wait jobs");
-        if (pullAndPush != null) {
-            subscriberStream.cancelJob(pullAndPush);
-            releasePendingMessage();
-            pullAndPush = null;
+        synchronized (jobLock) {
+            if (pullJob != null) {
+                schedulingService.removeScheduledJob(pullAndPush);
+                pullJob = null;
+                pullAndPush = null;
+            }
         }
+        releasePendingMessage();
         if (waitLiveJob != null) {
             schedulingService.removeScheduledJob(waitLiveJob);
             waitLiveJob = null;
@@ -1008,10 +1162,16 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
                 event = new Aggregate(((Aggregate) eventIn).getData());
                 break;
             case Constants.TYPE_AUDIO_DATA:
-                event = new AudioData(((AudioData) eventIn).getData());
+                AudioData audioIn = (AudioData) eventIn;
+                AudioData audioOut = new AudioData(audioIn.getData());
+                audioOut.setChunkCache(audioIn.getChunkCache());
+                event = audioOut;
                 break;
             case Constants.TYPE_VIDEO_DATA:
-                event = new VideoData(((VideoData) eventIn).getData());
+                VideoData videoIn = (VideoData) eventIn;
+                VideoData videoOut = new VideoData(videoIn.getData());
+                videoOut.setChunkCache(videoIn.getChunkCache());
+                event = videoOut;
                 break;
             default:
                 event = new Notify(((Notify) eventIn).getData());
@@ -1420,6 +1580,16 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
                     pullMode = false;
                 }
                 break;
+            case CONSUMER_DISCONNECT:
+                if (event.getConsumer() == this && event.getParamMap().containsKey(InMemoryPushPushPipe.OVERFLOW_EVICTION)) {
+                    // the live pipe dropped us because we could not keep up, so disconnect the subscriber
+                    IStreamCapableConnection conn = subscriberStream.getConnection();
+                    log.warn("Subscriber evicted from live stream due to overflow, closing connection: {}", conn != null ? conn.getSessionId() : null);
+                    if (conn != null) {
+                        conn.close();
+                    }
+                }
+                break;
             default:
                 if (isDebug) {
                     log.debug("Unhandled pipe event: {}", event);
@@ -1452,6 +1622,8 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
             IRTMPEvent body = rtmpMessage.getBody();
             if (body instanceof IStreamData) {
                 final String subscribedStreamName = subscriberStream.getBroadcastStreamPublishName();
+                // whether the tokens for the message were taken already
+                boolean charged = false;
                 // the subscriber paused
                 if (subscriberStream.getState() == StreamState.PAUSED) {
                     if (log.isInfoEnabled() && shouldLogPacketDrop()) {
@@ -1518,16 +1690,30 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
                                     videoFrameDropper.dropPacket(rtmpMessage);
                                     return;
                                 }
+                                // drop when the egress limit is reached, the dropper skips the frames depending on this one
+                                if (egressBucket != null) {
+                                    if (!egressBucket.acquireTokenNonblocking(dataSize(body), null)) {
+                                        droppedPacketsCount++;
+                                        if (log.isInfoEnabled() && shouldLogPacketDrop()) {
+                                            log.info("Drop packet. Failed to acquire token. sessionId={} stream={} dropped={}", sessionId, subscribedStreamName, droppedPacketsCount);
+                                        }
+                                        videoFrameDropper.dropPacket(rtmpMessage);
+                                        return;
+                                    }
+                                    charged = true;
+                                }
                                 // we are ok to send, check if we should send buffered frame
-                                if (bufferedInterframeIdx > -1) {
-                                    IVideoStreamCodec.FrameData fd = videoCodec.getInterframe(bufferedInterframeIdx++);
-                                    if (fd != null) {
-                                        VideoData interframe = new VideoData(fd.getFrame());
+                                FrameRingBuffer.Cursor cursor = gopCursor;
+                                if (cursor != null) {
+                                    FrameRingBuffer.Frame frame = cursor.poll();
+                                    // once the cursor reaches the newest frame the replay has caught up with the live frames
+                                    if (frame != null && cursor.getLag() > 0) {
+                                        VideoData interframe = new VideoData(frame.getFrame());
                                         interframe.setTimestamp(body.getTimestamp());
                                         rtmpMessage = RTMPMessage.build(interframe);
                                     } else {
-                                        // it means that new keyframe was received and we should send current frames instead of buffered
-                                        bufferedInterframeIdx = -1;
+                                        // it means that new keyframe was received or the replay caught up and we should send current frames instead of buffered
+                                        gopCursor = null;
                                     }
                                 }
                             }
@@ -1548,6 +1734,10 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
                         return;
                     }
                 }
+                if (egressBucket != null && !charged) {
+                    // audio and frames which can't be dropped are sent anyway, but use up what the bucket has
+                    egressBucket.acquireTokenBestEffort(dataSize(body));
+                }
                 sendMessage(rtmpMessage);
             } else {
                 throw new RuntimeException(String.format("Expected IStreamData but got %s (type %s)", body.getClass(), body.getDataType()));
@@ -1717,17 +1907,29 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
         clearWaitJobs();
         // Schedule deferred stop executor.
         log.trace("Ran deferred stop");
-        if (deferredStop == null) {
-            // set deferred stop if we get a job name returned
-            deferredStop = subscriberStream.scheduleWithFixedDelay(new DeferredStopRunnable(), 100);
+        synchronized (jobLock) {
+            if (deferredStopJob == null) {
+                scheduleDeferredStop();
+            }
         }
     }
 
+    /**
+     * Schedules the deferred stop for when the client should have played out its buffer.
+     */
+    private void scheduleDeferredStop() {
+        deferredStopJob = new DeferredStopRunnable();
+        deferredStop = schedulingService.addScheduledOnceJob(Math.max(PULL_INTERVAL, clientBufferLength() + 1), deferredStopJob);
+    }
+
     private void cancelDeferredStop() {
         log.debug("Cancel deferred stop");
-        if (deferredStop != null) {
-            subscriberStream.cancelJob(deferredStop);
-            deferredStop = null;
+        synchronized (jobLock) {
+            if (deferredStopJob != null) {
+                schedulingService.removeScheduledJob(deferredStop);
+                deferredStopJob = null;
+                deferredStop = null;
+            }
         }
     }
 
@@ -1871,7 +2073,7 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
     }
 
     /**
-     * Periodically triggered by executor to send messages to the client.
+     * Triggered by executor to send messages to the client, until the client or the connection has to catch up.
      */
     private final class PullAndPushRunnable implements IScheduledJob {
 
@@ -1879,8 +2081,18 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
          * Trigger sending of messages.
          */
         public void execute(ISchedulingService svc) {
-            // ensure the job is not already running
-            if (pushPullRunning.compareAndSet(false, true)) {
+            synchronized (jobLock) {
+                if (pullJob != this) {
+                    // cancelled or replaced by an earlier run
+                    return;
+                }
+                pullJob = null;
+                pullAndPush = null;
+            }
+            pullRequested.set(true);
+            // ensure the job is not already running, the running one goes on if so
+            while (pullRequested.get() && pushPullRunning.compareAndSet(false, true)) {
+                pullRequested.set(false);
                 try {
                     // handle any pending operations
                     Runnable worker = null;
@@ -1905,49 +2117,47 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
                     }
                     // receive then send if message is data (not audio or video)
                     if (subscriberStream.getState() == StreamState.PLAYING && pullMode) {
+                        // send the message held back first, or wait until woken once it may be sent
                         if (pendingMessage != null) {
                             IRTMPEvent body = pendingMessage.getBody();
-                            if (okayToSendMessage(body)) {
-                                sendMessage(pendingMessage);
-                                releasePendingMessage();
-                            } else {
-                                return;
+                            if (!okayToSendMessage(body)) {
+                                continue;
                             }
-                        } else {
-                            IMessage msg = null;
-                            IMessageInput in = msgInReference.get();
-                            do {
-                                msg = in.pullMessage();
-                                if (msg != null) {
-                                    if (msg instanceof RTMPMessage) {
-                                        RTMPMessage rtmpMessage = (RTMPMessage) msg;
-                                        if (checkSendMessageEnabled(rtmpMessage)) {
-                                            // Adjust timestamp when playing lists
-                                            IRTMPEvent body = rtmpMessage.getBody();
-                                            body.setTimestamp(body.getTimestamp() + timestampOffset);
-                                            if (okayToSendMessage(body)) {
-                                                log.trace("ts: {}", rtmpMessage.getBody().getTimestamp());
-                                                sendMessage(rtmpMessage);
-                                                IoBuffer data = ((IStreamData<?>) body).getData();
-                                                if (data != null) {
-                                                    data.free();
-                                                }
-                                                // continue to pull and feed
-                                            } else {
-                                                // ensure p/p executable scheduled and break to exit
-                                                pendingMessage = rtmpMessage;
-                                                ensurePullAndPushRunning();
-                                                break;
+                            sendMessage(pendingMessage);
+                            releasePendingMessage();
+                        }
+                        IMessage msg = null;
+                        IMessageInput in = msgInReference.get();
+                        do {
+                            msg = in.pullMessage();
+                            if (msg != null) {
+                                if (msg instanceof RTMPMessage) {
+                                    RTMPMessage rtmpMessage = (RTMPMessage) msg;
+                                    if (checkSendMessageEnabled(rtmpMessage)) {
+                                        // Adjust timestamp when playing lists
+                                        IRTMPEvent body = rtmpMessage.getBody();
+                                        body.setTimestamp(body.getTimestamp() + timestampOffset);
+                                        if (okayToSendMessage(body)) {
+                                            log.trace("ts: {}", rtmpMessage.getBody().getTimestamp());
+                                            sendMessage(rtmpMessage);
+                                            IoBuffer data = ((IStreamData<?>) body).getData();
+                                            if (data != null) {
+                                                data.free();
                                             }
+                                            // continue to pull and feed
+                                        } else {
+                                            // hold the message until woken and break to exit
+                                            pendingMessage = rtmpMessage;
+                                            break;
                                         }
                                     }
-                                } else {
-                                    // No more packets to send
-                                    log.debug("Ran out of packets");
-                                    runDeferredStop();
                                 }
-                            } while (msg != null);
-                        }
+                            } else {
+                                // No more packets to send
+                                log.debug("Ran out of packets");
+                                runDeferredStop();
+                            }
+                        } while (msg != null);
                     }
                 } catch (IOException err) {
                     // we couldn't get more data, stop stream.
@@ -1957,8 +2167,6 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
                     // reset running flag
                     pushPullRunning.compareAndSet(true, false);
                 }
-            } else {
-                log.debug("Push / pull already running");
             }
         }
     }
@@ -1966,10 +2174,20 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
     private class DeferredStopRunnable implements IScheduledJob {
 
         public void execute(ISchedulingService service) {
-            if (isClientBufferEmpty()) {
-                log.trace("Buffer is empty, stop will proceed");
-                stop();
+            synchronized (jobLock) {
+                if (deferredStopJob != this) {
+                    return;
+                }
+                if (!isClientBufferEmpty()) {
+                    // check again once the client should have played out its buffer
+                    scheduleDeferredStop();
+                    return;
+                }
+                deferredStopJob = null;
+                deferredStop = null;
             }
+            log.trace("Buffer is empty, stop will proceed");
+            stop();
         }
 
     }
@@ -31,6 +31,7 @@ import org.red5.server.net.rtmp.event.Ping;
 import org.red5.server.net.rtmp.event.VideoData;
 import org.red5.server.net.rtmp.message.Constants;
 import org.red5.server.net.rtmp.message.Header;
+import org.red5.server.stream.ITokenBucket;
 import org.red5.server.stream.message.RTMPMessage;
 import org.red5.server.stream.message.ResetMessage;
 import org.red5.server.stream.message.StatusMessage;
@@ -84,6 +85,11 @@ public class ConnectionConsumer implements IPushableConsumer, IPipeConnectionLis
      */
     private AtomicBoolean chunkSizeSent = new AtomicBoolean(false);
 
+    /**
+     * Bucket limiting the egress of the stream, if any
+     */
+    private volatile ITokenBucket tokenBucket;
+
     /**
      * Create RTMP connection consumer for given connection and channels.
      *
@@ -172,6 +178,7 @@ public class ConnectionConsumer implements IPushableConsumer, IPipeConnectionLis
                     buf = ((AudioData) msg).getData();
                     if (buf != null) {
                         AudioData audioData = new AudioData(buf.asReadOnlyBuffer());
+                        audioData.setChunkCache(((AudioData) msg).getChunkCache());
                         audioData.setHeader(header);
                         audioData.setTimestamp(header.getTimer());
                         audioData.setSourceType(((AudioData) msg).getSourceType());
@@ -185,6 +192,7 @@ public class ConnectionConsumer implements IPushableConsumer, IPipeConnectionLis
                     buf = ((VideoData) msg).getData();
                     if (buf != null) {
                         VideoData videoData = new VideoData(buf.asReadOnlyBuffer());
+                        videoData.setChunkCache(((VideoData) msg).getChunkCache());
                         videoData.setHeader(header);
                         videoData.setTimestamp(header.getTimer());
                         videoData.setSourceType(((VideoData) msg).getSourceType());
@@ -287,12 +295,16 @@ public class ConnectionConsumer implements IPushableConsumer, IPipeConnectionLis
                 // always return 0 if the connection is encrypted
                 oobCtrlMsg.setResult(0L);
             } else if ("writeDelta".equals(serviceName)) {
-                //TODO: Revisit the max stream value later
-                long maxStream = 120 * 1024;
+                // a limited stream may have a burst worth of data in flight
+                ITokenBucket bucket = tokenBucket;
+                long maxStream = bucket != null && bucket.getCapacity() > 0 ? bucket.getCapacity() : 120 * 1024;
                 // Return the current delta between sent bytes and bytes the client
                 // reported to have received, and the interval the client should use
                 // for generating BytesRead messages (half of the allowed bandwidth).
                 oobCtrlMsg.setResult(new Long[] { conn.getWrittenBytes() - conn.getClientBytesRead(), maxStream / 2 });
+            } else if ("tokenBucket".equals(serviceName)) {
+                tokenBucket = (ITokenBucket) oobCtrlMsg.getServiceParamMap().get("tokenBucket");
+                log.debug("Egress limited by {}", tokenBucket);
             } else if ("chunkSize".equals(serviceName)) {
                 int newSize = (Integer) oobCtrlMsg.getServiceParamMap().get("chunkSize");
                 if (newSize != chunkSize) {
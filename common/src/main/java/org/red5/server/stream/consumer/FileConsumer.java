@@ -8,17 +8,17 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.red5.codec.VideoCodec;
 import org.red5.io.ITag;
 import org.red5.io.ITagWriter;
+import org.red5.io.RecordingScheduler;
 import org.red5.io.flv.impl.FLVWriter;
 import org.red5.server.api.scope.IScope;
 import org.red5.server.api.stream.IClientStream;
@@ -57,9 +57,9 @@ public class FileConsumer implements Constants, IPushableConsumer, IPipeConnecti
     private AtomicBoolean initialized = new AtomicBoolean(false);
 
     /**
-     * Executor for all instance writer jobs
+     * Whether a drain of the queue is pending on the recording workers
      */
-    private ExecutorService executor = Executors.newFixedThreadPool(1);
+    private final AtomicBoolean draining = new AtomicBoolean(false);
 
     private static QueuedMediaDataComparator comparator = new QueuedMediaDataComparator();
 
@@ -105,7 +105,7 @@ public class FileConsumer implements Constants, IPushableConsumer, IPipeConnecti
     private ITag audioConfigurationTag;
 
     /**
-     * Keeps track of the last spawned write worker.
+     * Keeps track of the last submitted queue drain.
      */
     private volatile Future<?> writerFuture;
 
@@ -232,87 +232,8 @@ public class FileConsumer implements Constants, IPushableConsumer, IPipeConnecti
                     log.warn("Stream data was not accepted by the queue - timestamp: {} data type: {}", timestamp, dataType, e);
                 }
             }
-            // initialize a writer
-            if (writer == null) {
-                executor.submit(new Runnable() {
-                    public void run() {
-                        Thread.currentThread().setName("ProFileConsumer-" + path.getFileName());
-                        try {
-                            if (log.isTraceEnabled()) {
-                                log.trace("Running FileConsumer thread. queue size: {} initialized: {} writerNotNull={}", queue.size(), initialized, (writer != null));
-                            }
-                            init();
-                            while (writer != null) {
-                                if (log.isTraceEnabled()) {
-                                    log.trace("Processing packet from queue. queue size: {}", queue.size());
-                                }
-
-                                try {
-                                    QueuedMediaData queued = queue.take();
-                                    if (queued != null) {
-                                        // get data type
-                                        byte dataType = queued.getDataType();
-                                        // get timestamp
-                                        int timestamp = queued.getTimestamp();
-                                        ITag tag = queued.getData();
-                                        // ensure that our first video frame written is a key frame
-                                        if (queued.isVideo()) {
-                                            if (log.isTraceEnabled()) {
-                                                log.trace("pushMessage video - waitForKeyframe: {} gotKeyframe: {} timestamp: {}", waitForVideoKeyframe, gotKeyFrame, queued.getTimestamp());
-                                            }
-                                            if (queued.codecId == VideoCodec.AVC.getId()) {
-                                                if (queued.isConfig()) {
-                                                    videoConfigurationTag = tag;
-                                                    gotKeyFrame = true;
-                                                }
-                                                if (videoConfigurationTag == null && waitForVideoKeyframe) {
-                                                    continue;
-                                                }
-                                            } else {
-                                                if (queued.frameType == VideoData.FrameType.KEYFRAME) {
-                                                    gotKeyFrame = true;
-                                                }
-                                                if (waitForVideoKeyframe && !gotKeyFrame) {
-                                                    continue;
-                                                }
-                                            }
-                                        } else if (queued.isAudio()) {
-                                            if (queued.isConfig()) {
-                                                audioConfigurationTag = tag;
-                                            }
-                                        }
-
-                                        if (queued.isVideo()) {
-                                            if (log.isTraceEnabled()) {
-                                                log.trace("Writing packet. frameType={} timestamp={}", queued.frameType, queued.getTimestamp());
-                                            }
-                                        }
-
-                                        // write
-                                        write(dataType, timestamp, tag);
-                                        // clean up
-                                        queued.dispose();
-                                    } else {
-                                        if (log.isTraceEnabled()) {
-                                            log.trace("Queued media is null. queue size: {}", queue.size());
-                                        }
-                                    }
-                                } catch (InterruptedException e) {
-                                    log.warn("{}", e.getMessage(), e);
-                                }
-                                //finally {
-                                //    if (log.isTraceEnabled()) {
-                                //        log.trace("Clearing queue. queue size: {}", queue.size());
-                                //    }
-                                //    queue.clear();
-                                //}
-                            }
-                        } catch (IOException e) {
-                            log.warn("{}", e.getMessage(), e);
-                        }
-                    }
-                });
-            }
+            // have the queue written by the recording workers
+            scheduleDrain();
         } else if (message instanceof ResetMessage) {
             startTimestamp = -1;
         } else if (log.isDebugEnabled()) {
@@ -320,6 +241,99 @@ public class FileConsumer implements Constants, IPushableConsumer, IPipeConnecti
         }
     }
 
+    /**
+     * Submits a drain of the queue to the recording workers, unless one is pending already.
+     */
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            try {
+                writerFuture = RecordingScheduler.getInstance().submit(this::drain);
+            } catch (RejectedExecutionException e) {
+                draining.set(false);
+                log.warn("Queue drain was rejected for {}", path, e);
+            }
+        }
+    }
+
+    /**
+     * Writes up to a threshold worth of queued data, then yields the worker to the other recordings.
+     */
+    private void drain() {
+        try {
+            init();
+            final BlockingQueue<QueuedMediaData> queue = this.queue;
+            if (queue != null) {
+                if (log.isTraceEnabled()) {
+                    log.trace("Running FileConsumer drain. queue size: {} initialized: {} writerNotNull={}", queue.size(), initialized, (writer != null));
+                }
+                int count = 0;
+                QueuedMediaData queued;
+                while (writer != null && count++ < Math.max(queueThreshold, 1) && (queued = queue.poll()) != null) {
+                    if (log.isTraceEnabled()) {
+                        log.trace("Processing packet from queue. queue size: {}", queue.size());
+                    }
+                    process(queued);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("{}", e.getMessage(), e);
+        } finally {
+            draining.set(false);
+        }
+        // more data may have arrived while draining
+        final BlockingQueue<QueuedMediaData> queue = this.queue;
+        if (writer != null && queue != null && !queue.isEmpty()) {
+            scheduleDrain();
+        }
+    }
+
+    /**
+     * Writes queued data, ensuring that the first video frame written is a key frame.
+     *
+     * @param queued
+     *            queued data
+     */
+    private void process(QueuedMediaData queued) {
+        // get data type
+        byte dataType = queued.getDataType();
+        // get timestamp
+        int timestamp = queued.getTimestamp();
+        ITag tag = queued.getData();
+        // ensure that our first video frame written is a key frame
+        if (queued.isVideo()) {
+            if (log.isTraceEnabled()) {
+                log.trace("pushMessage video - waitForKeyframe: {} gotKeyframe: {} timestamp: {}", waitForVideoKeyframe, gotKeyFrame, queued.getTimestamp());
+            }
+            if (queued.codecId == VideoCodec.AVC.getId()) {
+                if (queued.isConfig()) {
+                    videoConfigurationTag = tag;
+                    gotKeyFrame = true;
+                }
+                if (videoConfigurationTag == null && waitForVideoKeyframe) {
+                    return;
+                }
+            } else {
+                if (queued.frameType == VideoData.FrameType.KEYFRAME) {
+                    gotKeyFrame = true;
+                }
+                if (waitForVideoKeyframe && !gotKeyFrame) {
+                    return;
+                }
+            }
+            if (log.isTraceEnabled()) {
+                log.trace("Writing packet. frameType={} timestamp={}", queued.frameType, queued.getTimestamp());
+            }
+        } else if (queued.isAudio()) {
+            if (queued.isConfig()) {
+                audioConfigurationTag = tag;
+            }
+        }
+        // write
+        write(dataType, timestamp, tag);
+        // clean up
+        queued.dispose();
+    }
+
     /**
      * Out-of-band control message handler
      *
@@ -416,6 +430,9 @@ public class FileConsumer implements Constants, IPushableConsumer, IPipeConnecti
         if (initialized.get()) {
             log.debug("Uninit");
             if (writer != null) {
+                // no further drains are scheduled once the queue is gone
+                final BlockingQueue<QueuedMediaData> queue = this.queue;
+                this.queue = null;
                 if (writerFuture != null) {
                     try {
                         writerFuture.get();
@@ -428,8 +445,9 @@ public class FileConsumer implements Constants, IPushableConsumer, IPipeConnecti
                 }
                 writerFuture = null;
                 // clear the queue
-                queue.clear();
-                queue = null;
+                if (queue != null) {
+                    queue.clear();
+                }
                 // close the writer
                 writer.close();
                 writer = null;
@@ -446,7 +464,8 @@ public class FileConsumer implements Constants, IPushableConsumer, IPipeConnecti
      *            queued data for write
      */
     private final void write(byte dataType, int timestamp, ITag tag) {
-        if (tag != null) {
+        final ITagWriter writer = this.writer;
+        if (tag != null && writer != null) {
             // only allow blank tags if they are of audio type
             if (tag.getBodySize() > 0 || dataType == ITag.TYPE_AUDIO) {
                 try {
@@ -593,11 +612,19 @@ public class FileConsumer implements Constants, IPushableConsumer, IPipeConnecti
         // no-op
     }
 
+    /**
+     * Returns the number of items waiting in the queue.
+     *
+     * @return queue size
+     */
+    public int getQueueSize() {
+        final BlockingQueue<QueuedMediaData> queue = this.queue;
+        return queue != null ? queue.size() : 0;
+    }
+
     @Override
     public void destroy() throws Exception {
-        if (executor != null) {
-            executor.shutdown();
-        }
+        // the queue is drained by the shared recording workers, there is nothing to shut down
     }
 
 }
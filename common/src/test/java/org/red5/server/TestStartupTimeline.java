@@ -0,0 +1,52 @@
+package org.red5.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TestStartupTimeline {
+
+    @Test
+    public void testPhases() throws Exception {
+        StartupTimeline timeline = new StartupTimeline("/live");
+        assertFalse(timeline.isFinished());
+        assertEquals(-1L, timeline.getTotal());
+        assertTrue(timeline.toString().endsWith("starting"));
+        long start = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(20);
+        timeline.record(StartupTimeline.CLASS_LOADING, start);
+        timeline.record(StartupTimeline.REFRESH, System.nanoTime());
+        // recorded twice, adds up
+        timeline.record(StartupTimeline.CLASS_LOADING, System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(5));
+        timeline.finished(null);
+        Map<String, Long> phases = timeline.getPhases();
+        assertEquals("[classLoading, refresh]", phases.keySet().toString());
+        assertTrue(phases.get(StartupTimeline.CLASS_LOADING) >= 25L);
+        assertTrue(timeline.isFinished());
+        assertTrue(timeline.getTotal() >= 0L);
+        assertNull(timeline.getFailure());
+        assertTrue(timeline.toString(), timeline.toString().startsWith("/live classLoading="));
+    }
+
+    @Test
+    public void testFailureAndCurrent() throws Exception {
+        StartupTimeline timeline = new StartupTimeline("/vod");
+        StartupTimeline.setCurrent(timeline);
+        try {
+            assertSame(timeline, StartupTimeline.current());
+        } finally {
+            StartupTimeline.setCurrent(null);
+        }
+        assertNull(StartupTimeline.current());
+        timeline.finished(new RuntimeException("Failed to load", new ClassNotFoundException("org.example.Missing")));
+        assertEquals("java.lang.ClassNotFoundException: org.example.Missing", timeline.getFailure());
+        assertTrue(timeline.toString().contains("failed: java.lang.ClassNotFoundException"));
+    }
+
+}
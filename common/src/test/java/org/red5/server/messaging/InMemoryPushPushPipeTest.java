@@ -0,0 +1,204 @@
+package org.red5.server.messaging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.red5.server.messaging.FanOutDispatcher.OverflowPolicy;
+import org.red5.server.net.rtmp.event.VideoData;
+import org.red5.server.stream.message.RTMPMessage;
+
+public class InMemoryPushPushPipeTest {
+
+    private FanOutDispatcher dispatcher;
+
+    private InMemoryPushPushPipe pipe;
+
+    @Before
+    public void setUp() throws Exception {
+        dispatcher = new FanOutDispatcher();
+        dispatcher.setEnabled(true);
+        dispatcher.setWorkers(2);
+        dispatcher.setQueueCapacity(8);
+        pipe = new InMemoryPushPushPipe();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pipe.close();
+        dispatcher.destroy();
+    }
+
+    @Test
+    public void testFanOutPreservesOrderAndReleases() throws Exception {
+        dispatcher.afterPropertiesSet();
+        pipe.setFanOutDispatcher(dispatcher);
+        final int count = 100;
+        final CountDownLatch latch = new CountDownLatch(count * 2);
+        final List<Integer> first = new CopyOnWriteArrayList<>();
+        final List<Integer> second = new CopyOnWriteArrayList<>();
+        pipe.subscribe(new RecordingConsumer(first, latch, null), null);
+        pipe.subscribe(new RecordingConsumer(second, latch, null), null);
+        VideoData[] frames = new VideoData[count];
+        for (int i = 0; i < count; i++) {
+            frames[i] = keyframe(i);
+            pipe.pushMessage(RTMPMessage.build(frames[i]));
+            // the publisher releases its own reference right after the push, as BaseRTMPHandler does
+            frames[i].release();
+            // let the small queues drain so nothing is dropped
+            while (pipe.getPendingMessages(pipe.getConsumers().get(0)) > 4 || pipe.getPendingMessages(pipe.getConsumers().get(1)) > 4) {
+                Thread.sleep(1L);
+            }
+        }
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, first.get(i).intValue());
+            assertEquals(i, second.get(i).intValue());
+        }
+        // all references are released once pushed, which frees the payload
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (frames[count - 1].getData() != null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        assertEquals(null, frames[count - 1].getData());
+    }
+
+    @Test
+    public void testSlowConsumerDropsToKeyframe() throws Exception {
+        dispatcher.setOverflowPolicy(OverflowPolicy.DROP_TO_KEYFRAME);
+        dispatcher.afterPropertiesSet();
+        pipe.setFanOutDispatcher(dispatcher);
+        final CountDownLatch blocker = new CountDownLatch(1);
+        final List<Integer> slow = new CopyOnWriteArrayList<>();
+        RecordingConsumer slowConsumer = new RecordingConsumer(slow, null, blocker);
+        pipe.subscribe(slowConsumer, null);
+        pipe.pushMessage(RTMPMessage.build(keyframe(0)));
+        for (int i = 1; i < 32; i++) {
+            pipe.pushMessage(RTMPMessage.build(interframe(i)));
+        }
+        pipe.pushMessage(RTMPMessage.build(keyframe(32)));
+        // the publisher was never blocked and the slow consumer had frames dropped
+        assertTrue(pipe.getDroppedMessages(slowConsumer) > 0);
+        blocker.countDown();
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (!slow.contains(32) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        assertTrue(slow.contains(32));
+        // frames up to the first drop arrive in order, after which nothing but the next keyframe follows
+        int idx = slow.indexOf(32);
+        for (int i = 0; i < idx; i++) {
+            assertEquals(i, slow.get(i).intValue());
+        }
+        assertEquals(idx + 1, slow.size());
+    }
+
+    @Test
+    public void testOverflowEvictsWithDisconnectPolicy() throws Exception {
+        dispatcher.setOverflowPolicy(OverflowPolicy.DISCONNECT);
+        dispatcher.afterPropertiesSet();
+        pipe.setFanOutDispatcher(dispatcher);
+        final CountDownLatch blocker = new CountDownLatch(1);
+        RecordingConsumer slowConsumer = new RecordingConsumer(new CopyOnWriteArrayList<>(), null, blocker);
+        pipe.subscribe(slowConsumer, null);
+        for (int i = 0; i < 32; i++) {
+            pipe.pushMessage(RTMPMessage.build(interframe(i)));
+        }
+        assertFalse(pipe.getConsumers().contains(slowConsumer));
+        assertEquals(1L, dispatcher.getEvictedCount());
+        blocker.countDown();
+    }
+
+    @Test
+    public void testNoQueueForConsumerUnsubscribedDuringFanOut() throws Exception {
+        dispatcher.setOverflowPolicy(OverflowPolicy.DISCONNECT);
+        // a single worker, blocked by the slow consumer, so nothing queued is drained
+        dispatcher.setWorkers(1);
+        dispatcher.afterPropertiesSet();
+        pipe.setFanOutDispatcher(dispatcher);
+        final CountDownLatch blocker = new CountDownLatch(1);
+        final RecordingConsumer waitingConsumer = new RecordingConsumer(new CopyOnWriteArrayList<>(), null, null);
+        final RecordingConsumer slowConsumer = new RecordingConsumer(new CopyOnWriteArrayList<>(), null, blocker);
+        pipe.subscribe(waitingConsumer, null);
+        pipe.subscribe(slowConsumer, null);
+        // the slow consumer goes away while the message overflowing the waiting one is being fanned out
+        pipe.addPipeConnectionListener(event -> {
+            if (event.getConsumer() == waitingConsumer && event.getParamMap() != null && event.getParamMap().containsKey(InMemoryPushPushPipe.OVERFLOW_EVICTION)) {
+                pipe.unsubscribe(slowConsumer);
+            }
+        });
+        try {
+            VideoData frame = null;
+            for (int i = 0; i < 32 && pipe.getConsumers().contains(waitingConsumer); i++) {
+                frame = interframe(i);
+                pipe.pushMessage(RTMPMessage.build(frame));
+                frame.release();
+            }
+            assertFalse(pipe.getConsumers().contains(waitingConsumer));
+            assertFalse(pipe.getConsumers().contains(slowConsumer));
+            assertEquals(1L, dispatcher.getEvictedCount());
+            // no queue was recreated for the unsubscribed consumer, so the last message was released right away
+            assertEquals(0, pipe.getPendingMessages(slowConsumer));
+            assertEquals(null, frame.getData());
+        } finally {
+            blocker.countDown();
+        }
+    }
+
+    private static VideoData keyframe(int ts) {
+        VideoData video = new VideoData(IoBuffer.wrap(new byte[] { 0x17, 0x01, 0, 0, 0 }));
+        video.setTimestamp(ts);
+        return video;
+    }
+
+    private static VideoData interframe(int ts) {
+        VideoData video = new VideoData(IoBuffer.wrap(new byte[] { 0x27, 0x01, 0, 0, 0 }));
+        video.setTimestamp(ts);
+        return video;
+    }
+
+    private static class RecordingConsumer implements IPushableConsumer {
+
+        private final List<Integer> timestamps;
+
+        private final CountDownLatch latch;
+
+        private final CountDownLatch blocker;
+
+        RecordingConsumer(List<Integer> timestamps, CountDownLatch latch, CountDownLatch blocker) {
+            this.timestamps = timestamps;
+            this.latch = latch;
+            this.blocker = blocker;
+        }
+
+        @Override
+        public void onOOBControlMessage(IMessageComponent source, IPipe pipe, OOBControlMessage oobCtrlMsg) {
+        }
+
+        @Override
+        public void pushMessage(IPipe pipe, IMessage message) {
+            if (blocker != null) {
+                try {
+                    blocker.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            timestamps.add(((RTMPMessage) message).getBody().getTimestamp());
+            if (latch != null) {
+                latch.countDown();
+            }
+        }
+
+    }
+
+}
@@ -2,9 +2,18 @@ package org.red5.server.net.rtmp;
 
 import static org.junit.Assert.*;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.red5.server.net.rtmp.message.Header;
+import org.red5.server.net.rtmp.message.Packet;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
 import static org.red5.server.net.rtmp.RTMPConnection.MAX_RESERVED_STREAMS;
 
 public class TestRTMPConnection {
@@ -217,6 +226,52 @@ public class TestRTMPConnection {
         System.out.printf("Stream id: %f valid: %b\n", streamId.doubleValue(), valid);
     }
 
+    @Test
+    public void testSerialExecutionKeepsOrderWithoutRejecting() throws Exception {
+        // a single thread and no queue, so most submissions are rejected
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(0);
+        executor.initialize();
+        final int count = 500;
+        final List<Integer> received = new CopyOnWriteArrayList<>();
+        final CountDownLatch done = new CountDownLatch(count);
+        RTMPConnection conn = new RTMPMinaConnection();
+        conn.setExecutor(executor);
+        conn.setSerialExecution(true);
+        conn.setMaxQueuedMessages(16);
+        conn.setHandler(new IRTMPHandler() {
+
+            public void connectionOpened(RTMPConnection conn) {
+            }
+
+            public void messageReceived(RTMPConnection conn, Packet packet) throws Exception {
+                received.add(packet.getHeader().getTimer());
+                done.countDown();
+            }
+
+            public void messageSent(RTMPConnection conn, Packet packet) {
+            }
+
+            public void connectionClosed(RTMPConnection conn) {
+            }
+
+        });
+        for (int i = 0; i < count; i++) {
+            Header header = new Header();
+            header.setTimer(i);
+            conn.handleMessageReceived(new Packet(header));
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(count, received.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, received.get(i).intValue());
+        }
+        assertEquals(0, conn.currentQueueSize());
+        executor.shutdown();
+    }
+
     //	@Test
     //	public void testDeleteStreamById() {
     //		fail("Not yet implemented");
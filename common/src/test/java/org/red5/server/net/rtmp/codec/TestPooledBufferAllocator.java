@@ -0,0 +1,135 @@
+package org.red5.server.net.rtmp.codec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.buffer.IoBufferAllocator;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestPooledBufferAllocator {
+
+    private PooledBufferAllocator pool;
+
+    @Before
+    public void setUp() throws Exception {
+        pool = new PooledBufferAllocator();
+        pool.setEnabled(true);
+        pool.setMinClassSize(256);
+        pool.setMaxClassSize(4096);
+        pool.setThreadCacheSize(2);
+        pool.setPoolCapacity(4);
+        pool.afterPropertiesSet();
+    }
+
+    @Test
+    public void testSizeClasses() {
+        IoBufferAllocator global = IoBuffer.getAllocator();
+        IoBuffer buf = pool.allocate(300);
+        assertSame(global, IoBuffer.getAllocator());
+        assertEquals(300, buf.limit());
+        assertEquals(512, buf.capacity());
+        assertTrue(pool.isPooled(buf));
+        assertEquals(5, pool.getPoolOccupancy().length);
+        // larger than the largest class
+        IoBuffer large = pool.allocate(5000);
+        assertEquals(5000, large.capacity());
+        assertEquals(1L, pool.getUnpooledCount());
+        buf.free();
+        large.free();
+        assertEquals(0L, pool.getOutstandingCount());
+    }
+
+    @Test
+    public void testReuseAfterFree() {
+        IoBuffer buf = pool.allocate(100);
+        ByteBuffer nio = buf.buf();
+        buf.putInt(42);
+        buf.free();
+        // freeing twice must not put the memory in the pool twice
+        buf.free();
+        IoBuffer first = pool.allocate(200);
+        IoBuffer second = pool.allocate(200);
+        assertSame(nio, first.buf());
+        assertNotSame(nio, second.buf());
+        assertEquals(0, first.position());
+        assertEquals(1L, pool.getReusedCount());
+        first.free();
+        second.free();
+    }
+
+    @Test
+    public void testViewsAreNotPooled() {
+        IoBuffer buf = pool.allocate(100);
+        buf.put(new byte[100]).flip();
+        IoBuffer slice = buf.getSlice(50);
+        IoBuffer readOnly = buf.asReadOnlyBuffer();
+        assertFalse(pool.isPooled(slice));
+        assertFalse(pool.isPooled(readOnly));
+        slice.free();
+        readOnly.free();
+        assertEquals(1L, pool.getOutstandingCount());
+        buf.free();
+        assertEquals(0L, pool.getOutstandingCount());
+    }
+
+    @Test
+    public void testFreeOnOtherThreadGoesToSharedPool() throws Exception {
+        final IoBuffer[] buffers = new IoBuffer[4];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = pool.allocate(1000);
+        }
+        Thread writer = new Thread(() -> {
+            for (IoBuffer buf : buffers) {
+                buf.free();
+            }
+        });
+        writer.start();
+        writer.join();
+        // two went to the cache of the freeing thread, the rest to the shared pool
+        assertEquals(2, pool.getPooledCount());
+        assertEquals(2048L, pool.getPooledBytes());
+        pool.allocate(1000).free();
+        assertEquals(1L, pool.getReusedCount());
+    }
+
+    @Test
+    public void testExpansionReturnsOldMemory() {
+        IoBuffer buf = pool.allocate(256);
+        buf.setAutoExpand(true);
+        ByteBuffer nio = buf.buf();
+        buf.put(new byte[1000]);
+        assertEquals(1024, buf.capacity());
+        assertEquals(1000, buf.position());
+        IoBuffer next = pool.allocate(256);
+        assertSame(nio, next.buf());
+        next.free();
+        buf.free();
+    }
+
+    @Test
+    public void testLeakDetection() throws Exception {
+        leak();
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (pool.getLeakCount() == 0 && System.currentTimeMillis() < deadline) {
+            System.gc();
+            Thread.sleep(10L);
+        }
+        assertEquals(1L, pool.getLeakCount());
+        assertEquals(0L, pool.getOutstandingCount());
+        // the memory of the leaked buffer is reused
+        pool.allocate(256).free();
+        assertEquals(1L, pool.getReusedCount());
+    }
+
+    private void leak() {
+        pool.allocate(256).putInt(1);
+    }
+
+}
@@ -0,0 +1,84 @@
+package org.red5.server.net.rtmp.event;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.nio.ReadOnlyBufferException;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.Test;
+import org.red5.server.net.rtmp.message.Constants;
+import org.red5.server.net.rtmp.message.Header;
+import org.red5.server.service.PendingCall;
+
+public class TestEventDuplicate {
+
+    @Test
+    public void testVideoDataSharesPayload() throws Exception {
+        byte[] bytes = new byte[] { 0x17, 0x01, 0x00, 0x00, 0x00, 0x01, 0x02, 0x03 };
+        VideoData video = new VideoData(IoBuffer.wrap(bytes));
+        video.setTimestamp(1234);
+        Header header = new Header();
+        header.setChannelId(5);
+        video.setHeader(header);
+        // as it would be after being written out once
+        video.getData().position(bytes.length);
+        VideoData copy = video.duplicate();
+        assertEquals(1234, copy.getTimestamp());
+        assertEquals(VideoData.FrameType.KEYFRAME, copy.getFrameType());
+        assertNotSame(header, copy.getHeader());
+        assertEquals(5, copy.getHeader().getChannelId());
+        // the whole payload, without a copy
+        IoBuffer data = copy.getData();
+        assertEquals(bytes.length, data.remaining());
+        bytes[7] = 0x07;
+        assertEquals(0x07, data.get(7));
+        // and read-only
+        try {
+            data.put(0, (byte) 0);
+            throw new AssertionError("Payload of a duplicate is writable");
+        } catch (ReadOnlyBufferException e) {
+        }
+        // the original is held until the duplicate is released
+        assertEquals(2, video.refcount.get());
+        copy.release();
+        assertNull(copy.getData());
+        assertEquals(1, video.refcount.get());
+        assertNotNull(video.getData());
+    }
+
+    @Test
+    public void testAudioDataDuplicateOfDuplicate() throws Exception {
+        AudioData audio = new AudioData(IoBuffer.wrap(new byte[] { (byte) 0xaf, 0x01, 0x21, 0x10 }));
+        AudioData copy = audio.duplicate();
+        AudioData copyOfCopy = copy.duplicate();
+        assertEquals(4, copyOfCopy.getData().remaining());
+        copyOfCopy.release();
+        copy.release();
+        assertEquals(1, audio.refcount.get());
+        audio.release();
+        assertNull(audio.getData());
+    }
+
+    @Test
+    public void testNotifyDuplicate() throws Exception {
+        Notify notify = new Notify(IoBuffer.wrap(new byte[] { 0x02, 0x00, 0x02, 0x6f, 0x6e }), "onMetaData");
+        notify.setTimestamp(10);
+        Notify copy = notify.duplicate();
+        assertEquals("onMetaData", copy.getAction());
+        assertEquals(notify.getType(), copy.getType());
+        assertEquals(10, copy.getTimestamp());
+        assertEquals(5, copy.getData().remaining());
+        assertNull(copy.getCall());
+        Invoke invoke = new Invoke(new PendingCall("play", new Object[] { "stream1" }));
+        invoke.setTransactionId(4);
+        Invoke invokeCopy = invoke.duplicate();
+        assertEquals(4, invokeCopy.getTransactionId());
+        assertSame(invoke.getCall(), invokeCopy.getCall());
+        assertEquals(Constants.TYPE_INVOKE, invokeCopy.getDataType());
+    }
+
+}
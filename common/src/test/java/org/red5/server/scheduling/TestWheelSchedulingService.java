@@ -0,0 +1,111 @@
+package org.red5.server.scheduling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestWheelSchedulingService {
+
+    private WheelSchedulingService service;
+
+    @Before
+    public void setUp() throws Exception {
+        service = new WheelSchedulingService();
+        service.setTickInterval(5);
+        service.setWheelSize(16);
+        service.setThreadCount(2);
+        service.afterPropertiesSet();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        service.destroy();
+    }
+
+    @Test
+    public void testOnceJobRunsNoEarlierThanAsked() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final long start = System.nanoTime();
+        final long[] elapsed = new long[1];
+        // further out than a turn of the wheel
+        String name = service.addScheduledOnceJob(120, svc -> {
+            elapsed[0] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            latch.countDown();
+        });
+        assertTrue(service.getScheduledJobNames().contains(name));
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue("Ran after " + elapsed[0] + "ms", elapsed[0] >= 120);
+        // once jobs are removed after they ran
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (service.getScheduledJobCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5L);
+        }
+        assertEquals(0, service.getScheduledJobCount());
+    }
+
+    @Test
+    public void testRemovedJobDoesNotRun() throws Exception {
+        final AtomicInteger runs = new AtomicInteger();
+        String name = service.addScheduledJob(10, svc -> runs.incrementAndGet());
+        String once = service.addScheduledOnceJob(20, svc -> runs.incrementAndGet());
+        service.removeScheduledJob(once);
+        service.removeScheduledJob(name);
+        Thread.sleep(100L);
+        assertEquals(0, runs.get());
+        assertFalse(service.getScheduledJobNames().contains(name));
+    }
+
+    @Test
+    public void testPausedJobDropsOffTheWheel() throws Exception {
+        final AtomicInteger runs = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(3);
+        String name = service.addScheduledJob(10, svc -> {
+            runs.incrementAndGet();
+            latch.countDown();
+        });
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        service.pauseScheduledJob(name);
+        // a run in flight may still finish
+        Thread.sleep(50L);
+        int paused = runs.get();
+        Thread.sleep(100L);
+        assertEquals(paused, runs.get());
+        service.resumeScheduledJob(name);
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (runs.get() == paused && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5L);
+        }
+        assertTrue(runs.get() > paused);
+        service.removeScheduledJob(name);
+    }
+
+    @Test
+    public void testPeriodicJobDoesNotOverlap() throws Exception {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger overlaps = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(5);
+        String name = service.addScheduledJob(5, svc -> {
+            if (running.incrementAndGet() > 1) {
+                overlaps.incrementAndGet();
+            }
+            try {
+                Thread.sleep(20L);
+            } catch (InterruptedException e) {
+            }
+            running.decrementAndGet();
+            latch.countDown();
+        });
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        service.removeScheduledJob(name);
+        assertEquals(0, overlaps.get());
+    }
+
+}
@@ -0,0 +1,125 @@
+package org.red5.server.so;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.red5.server.net.rtmp.RTMPMinaConnection;
+import org.red5.server.so.ISharedObjectEvent.Type;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+public class TestSharedObject {
+
+    private ThreadPoolTaskScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(2);
+        scheduler.initialize();
+        SharedObjectService.setScheduler(scheduler);
+        SharedObjectService.setSyncInterval(50);
+    }
+
+    @After
+    public void tearDown() {
+        SharedObjectService.setSyncInterval(0);
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testCoalesce() {
+        List<ISharedObjectEvent> events = new ArrayList<>();
+        events.add(new SharedObjectEvent(Type.CLIENT_UPDATE_DATA, "a", 1));
+        events.add(new SharedObjectEvent(Type.CLIENT_SEND_MESSAGE, "handler", Arrays.asList("x")));
+        events.add(new SharedObjectEvent(Type.CLIENT_UPDATE_DATA, "b", 1));
+        events.add(new SharedObjectEvent(Type.CLIENT_UPDATE_DATA, "a", 2));
+        events.add(new SharedObjectEvent(Type.CLIENT_DELETE_DATA, "b", null));
+        List<ISharedObjectEvent> coalesced = new ArrayList<>(SharedObject.coalesce(events));
+        assertEquals(3, coalesced.size());
+        assertSame(events.get(1), coalesced.get(0));
+        assertSame(events.get(3), coalesced.get(1));
+        assertSame(events.get(4), coalesced.get(2));
+    }
+
+    @Test
+    public void testUpdatesAreCoalescedAndShared() throws Exception {
+        SharedObject so = new SharedObject("chat", "/test", false);
+        RecordingConnection owner = new RecordingConnection(), first = new RecordingConnection(), second = new RecordingConnection();
+        so.register(owner);
+        so.register(first);
+        so.register(second);
+        so.beginUpdate(owner);
+        for (int i = 0; i < 100; i++) {
+            so.setAttribute("slot", i);
+        }
+        so.endUpdate();
+        SharedObjectMessage a = first.messages.poll(2, TimeUnit.SECONDS);
+        SharedObjectMessage b = second.messages.poll(2, TimeUnit.SECONDS);
+        assertNotNull(a);
+        assertNotNull(b);
+        assertEquals(1, a.getEvents().size());
+        ISharedObjectEvent event = a.getEvents().iterator().next();
+        assertEquals("slot", event.getKey());
+        assertEquals(99, event.getValue());
+        // both listeners get the very same events and encoding cache
+        assertSame(a.getEvents(), b.getEvents());
+        assertNotNull(a.getChunkCache());
+        assertSame(a.getChunkCache(), b.getChunkCache());
+        // the owner only gets the acknowledgements, not its own change back
+        Thread.sleep(200L);
+        for (SharedObjectMessage message : owner.messages) {
+            for (ISharedObjectEvent ack : message.getEvents()) {
+                assertEquals(Type.CLIENT_UPDATE_ATTRIBUTE, ack.getType());
+            }
+        }
+        assertTrue(first.messages.isEmpty());
+    }
+
+    @Test
+    public void testChangesTrackedOnlyForDeltaStores() {
+        SharedObject so = new SharedObject("scores", "/test", true);
+        // a store writing whole objects collects nothing, so nothing is kept
+        so.setAttribute("a", 1);
+        so.removeAttribute("a");
+        assertTrue(so.drainChanges().isEmpty());
+        so.setTrackChanges(true);
+        so.setAttribute("a", 1);
+        so.setAttribute("b", 2);
+        so.removeAttribute("a");
+        List<ISharedObjectEvent> changes = so.drainChanges();
+        assertEquals(2, changes.size());
+        assertTrue(so.drainChanges().isEmpty());
+        so.setAttribute("c", 3);
+        so.setTrackChanges(false);
+        assertTrue(so.drainChanges().isEmpty());
+    }
+
+    private static class RecordingConnection extends RTMPMinaConnection {
+
+        final BlockingQueue<SharedObjectMessage> messages = new LinkedBlockingQueue<>();
+
+        @Override
+        public boolean isConnected() {
+            return true;
+        }
+
+        @Override
+        public void sendSharedObjectMessage(SharedObjectMessage syncMessage) {
+            messages.add(syncMessage);
+        }
+
+    }
+
+}
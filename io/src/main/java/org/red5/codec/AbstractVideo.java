@@ -1,8 +1,5 @@
 package org.red5.codec;
 
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.atomic.AtomicInteger;
-
 import org.apache.mina.core.buffer.IoBuffer;
 import org.red5.io.IoConstants;
 
@@ -14,19 +11,9 @@ public class AbstractVideo implements IVideoStreamCodec, IoConstants {
     protected int keyframeTimestamp;
 
     /**
-     * Storage for key frames
-     */
-    protected final CopyOnWriteArrayList<FrameData> keyframes = new CopyOnWriteArrayList<>();
-
-    /**
-     * Storage for frames buffered since last key frame
-     */
-    protected final CopyOnWriteArrayList<FrameData> interframes = new CopyOnWriteArrayList<>();
-
-    /**
-     * Number of frames buffered since last key frame
+     * Storage for the key frames and the frames buffered since the last key frame
      */
-    protected final AtomicInteger numInterframes = new AtomicInteger(0);
+    protected final FrameRingBuffer frames = new FrameRingBuffer();
 
     /**
      * Whether or not to buffer interframes
@@ -80,31 +67,32 @@ public class AbstractVideo implements IVideoStreamCodec, IoConstants {
     /** {@inheritDoc} */
     @Override
     public IoBuffer getKeyframe() {
-        if (keyframes.isEmpty()) {
-            return null;
-        }
-        return keyframes.get(0).getFrame();
+        FrameData[] keyframes = frames.getKeyframes();
+        return keyframes.length > 0 ? keyframes[0].getFrame() : null;
     }
 
     /** {@inheritDoc} */
     @Override
     public FrameData[] getKeyframes() {
-        return keyframes.toArray(new FrameData[0]);
+        return frames.getKeyframes();
     }
 
     /** {@inheritDoc} */
     @Override
     public int getNumInterframes() {
-        return numInterframes.get();
+        return frames.getNumInterframes();
     }
 
     /** {@inheritDoc} */
     @Override
     public FrameData getInterframe(int index) {
-        if (index < numInterframes.get()) {
-            return interframes.get(index);
-        }
-        return null;
+        return frames.getInterframe(index);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public FrameRingBuffer.Cursor attachCursor() {
+        return frames.attach();
     }
 
     public boolean isBufferInterframes() {
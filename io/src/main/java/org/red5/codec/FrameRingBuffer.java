@@ -0,0 +1,261 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.codec;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.codec.IVideoStreamCodec.FrameData;
+
+/**
+ * Ring buffer holding the current group of pictures of a live video stream, written by the publishing thread and read by any number of
+ * subscribers. Frames are numbered in the order they are added and each one is copied once into a frame shared by all readers; the slots
+ * are allocated up front, so adding a frame costs no more than the copy. Readers go through a {@link Cursor}, which starts at the keyframe
+ * of the group and stops as soon as a newer group has begun, leaving the reader to continue with the live frames from that keyframe on.
+ * <br>
+ * A group which does not start with a keyframe, or grows beyond the capacity, can not be replayed; the buffer picks up again with the next
+ * group.
+ *
+ * @author The Red5 Project
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+public class FrameRingBuffer {
+
+    private static final long NONE = -1L;
+
+    private final AtomicReferenceArray<Frame> slots;
+
+    private final int mask;
+
+    // number of the next frame to be added
+    private volatile long writeSeq;
+
+    // number of the first frame of the current group
+    private volatile long groupStart;
+
+    // number of the keyframe starting the current group, NONE if the group can not be replayed
+    private volatile long keyframeSeq = NONE;
+
+    // leading keyframes of the current group, several keyframes may share a timestamp
+    private volatile int keyframeCount;
+
+    /**
+     * Creates a buffer for groups of up to 1024 frames.
+     */
+    public FrameRingBuffer() {
+        this(1024);
+    }
+
+    /**
+     * Creates a buffer for groups of up to the given number of frames, rounded up to a power of two.
+     *
+     * @param capacity
+     *            frames
+     */
+    public FrameRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        slots = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+    }
+
+    /**
+     * Adds a frame to the current group. Only the publishing thread may call this.
+     *
+     * @param data
+     *            frame data, copied from the start up to the limit
+     * @param timestamp
+     *            timestamp
+     * @param keyframe
+     *            whether or not the frame is a keyframe
+     */
+    public void add(IoBuffer data, int timestamp, boolean keyframe) {
+        final long seq = writeSeq;
+        final long start = groupStart;
+        if (seq == start) {
+            keyframeSeq = keyframe ? seq : NONE;
+        } else if (seq - start >= slots.length()) {
+            // the start of the group is about to be overwritten
+            keyframeSeq = NONE;
+        }
+        if (keyframe && keyframeCount == seq - start) {
+            keyframeCount++;
+        }
+        slots.set((int) seq & mask, new Frame(seq, timestamp, keyframe, new FrameData(data)));
+        writeSeq = seq + 1;
+    }
+
+    /**
+     * Ends the current group, the next frame added starts a new one. The frames of the ended group are released. Only the publishing thread
+     * may call this.
+     */
+    public void clear() {
+        final long seq = writeSeq;
+        for (long s = Math.max(groupStart, seq - slots.length()); s < seq; s++) {
+            slots.set((int) s & mask, null);
+        }
+        keyframeSeq = NONE;
+        keyframeCount = 0;
+        groupStart = seq;
+    }
+
+    /**
+     * Returns a cursor at the keyframe of the current group.
+     *
+     * @return cursor or null if the current group can not be replayed
+     */
+    public Cursor attach() {
+        long start = keyframeSeq;
+        return start != NONE ? new Cursor(start) : null;
+    }
+
+    /**
+     * Returns the leading keyframes of the current group.
+     *
+     * @return keyframes
+     */
+    public FrameData[] getKeyframes() {
+        long start = keyframeSeq;
+        if (start == NONE) {
+            return new FrameData[0];
+        }
+        List<FrameData> keyframes = new ArrayList<>(1);
+        Frame frame;
+        for (long seq = start; (frame = get(seq)) != null && frame.keyframe; seq++) {
+            keyframes.add(frame.data);
+        }
+        return keyframes.toArray(new FrameData[0]);
+    }
+
+    /**
+     * Returns the number of frames following the leading keyframes of the current group.
+     *
+     * @return interframes
+     */
+    public int getNumInterframes() {
+        long start = groupStart;
+        return (int) Math.max(0, Math.min(writeSeq - start, slots.length()) - keyframeCount);
+    }
+
+    /**
+     * Returns a frame following the leading keyframes of the current group.
+     *
+     * @param index
+     *            index of the interframe
+     * @return interframe or null if there is no such frame
+     */
+    public FrameData getInterframe(int index) {
+        if (index < 0) {
+            return null;
+        }
+        Frame frame = get(groupStart + keyframeCount + index);
+        return frame != null ? frame.data : null;
+    }
+
+    private Frame get(long seq) {
+        if (seq < 0 || seq >= writeSeq) {
+            return null;
+        }
+        Frame frame = slots.get((int) seq & mask);
+        // the slot may hold a later frame or have been released
+        return frame != null && frame.seq == seq ? frame : null;
+    }
+
+    /**
+     * Frame of the buffer, shared by all readers.
+     */
+    public static final class Frame {
+
+        private final long seq;
+
+        private final int timestamp;
+
+        private final boolean keyframe;
+
+        private final FrameData data;
+
+        Frame(long seq, int timestamp, boolean keyframe, FrameData data) {
+            this.seq = seq;
+            this.timestamp = timestamp;
+            this.keyframe = keyframe;
+            this.data = data;
+        }
+
+        public int getTimestamp() {
+            return timestamp;
+        }
+
+        public boolean isKeyframe() {
+            return keyframe;
+        }
+
+        /**
+         * Returns a read-only view of the frame data.
+         *
+         * @return frame data
+         */
+        public IoBuffer getFrame() {
+            return data.getFrame();
+        }
+
+    }
+
+    /**
+     * Position of a reader in the buffer.
+     */
+    public final class Cursor {
+
+        // first frame of the group being replayed
+        private final long group;
+
+        private long next;
+
+        private Cursor(long start) {
+            this.group = start;
+            this.next = start;
+        }
+
+        /**
+         * Returns the next frame without moving past it.
+         *
+         * @return frame or null if there is none to replay
+         */
+        public Frame peek() {
+            // a newer group has begun, the reader catches up at its keyframe
+            if (groupStart != group) {
+                return null;
+            }
+            return get(next);
+        }
+
+        /**
+         * Returns the next frame and moves past it.
+         *
+         * @return frame or null if there is none to replay
+         */
+        public Frame poll() {
+            Frame frame = peek();
+            if (frame != null) {
+                next++;
+            }
+            return frame;
+        }
+
+        /**
+         * Returns the number of frames added since the frame the cursor is at.
+         *
+         * @return frames behind the writer
+         */
+        public long getLag() {
+            return Math.max(0, writeSeq - next);
+        }
+
+    }
+
+}
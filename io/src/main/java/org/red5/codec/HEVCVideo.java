@@ -46,9 +46,7 @@ public class HEVCVideo extends AbstractVideo {
 
     // reset all except decoder configuration
     private void softReset() {
-        keyframes.clear();
-        interframes.clear();
-        numInterframes.set(0);
+        frames.clear();
     }
 
     /** {@inheritDoc} */
@@ -99,7 +97,7 @@ public class HEVCVideo extends AbstractVideo {
                                 softReset();
                             }
                             // store keyframe
-                            keyframes.add(new FrameData(data));
+                            frames.add(data, timestamp, true);
                             break;
                         case 0: // configuration
                             if (isDebug) {
@@ -119,13 +117,7 @@ public class HEVCVideo extends AbstractVideo {
                     // rewind
                     data.rewind();
                     try {
-                        int lastInterframe = numInterframes.getAndIncrement();
-                        //log.trace("Buffering interframe #{}", lastInterframe);
-                        if (lastInterframe < interframes.size()) {
-                            interframes.get(lastInterframe).setData(data);
-                        } else {
-                            interframes.add(new FrameData(data));
-                        }
+                        frames.add(data, timestamp, false);
                     } catch (Throwable e) {
                         log.warn("Failed to buffer interframe", e);
                     }
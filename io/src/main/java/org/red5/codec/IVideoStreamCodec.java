@@ -118,6 +118,15 @@ public interface IVideoStreamCodec {
      */
     FrameData getInterframe(int index);
 
+    /**
+     * Returns a cursor at the last keyframe, for replaying the buffered frames to a new subscriber.
+     *
+     * @return cursor or null if there are no frames to replay
+     */
+    default FrameRingBuffer.Cursor attachCursor() {
+        return null;
+    }
+
     /**
      * Holder for video frame data.
      */
@@ -7,9 +7,6 @@
 
 package org.red5.codec;
 
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.atomic.AtomicInteger;
-
 import org.apache.mina.core.buffer.IoBuffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,31 +27,6 @@ public class SorensonVideo extends AbstractVideo {
      */
     static final String CODEC_NAME = "SorensonVideo";
 
-    /**
-     * Block of data
-     */
-    private byte[] blockData;
-
-    /**
-     * Number of data blocks
-     */
-    private int dataCount;
-
-    /**
-     * Data block size
-     */
-    private int blockSize;
-
-    /**
-     * Storage for frames buffered since last key frame
-     */
-    private final CopyOnWriteArrayList<FrameData> interframes = new CopyOnWriteArrayList<>();
-
-    /**
-     * Number of frames buffered since last key frame
-     */
-    private final AtomicInteger numInterframes = new AtomicInteger(0);
-
     /** Constructs a new SorensonVideo. */
     public SorensonVideo() {
         this.reset();
@@ -75,9 +47,7 @@ public class SorensonVideo extends AbstractVideo {
     /** {@inheritDoc} */
     @Override
     public void reset() {
-        this.blockData = null;
-        this.blockSize = 0;
-        this.dataCount = 0;
+        frames.clear();
     }
 
     /** {@inheritDoc} */
@@ -108,16 +78,9 @@ public class SorensonVideo extends AbstractVideo {
         if (frameType != FLAG_FRAMETYPE_KEYFRAME) {
             // Not a keyframe
             try {
-                int lastInterframe = numInterframes.getAndIncrement();
                 if (frameType != FLAG_FRAMETYPE_DISPOSABLE) {
-                    log.trace("Buffering interframe #{}", lastInterframe);
-                    if (lastInterframe < interframes.size()) {
-                        interframes.get(lastInterframe).setData(data);
-                    } else {
-                        interframes.add(new FrameData(data));
-                    }
-                } else {
-                    numInterframes.set(lastInterframe);
+                    log.trace("Buffering interframe #{}", frames.getNumInterframes());
+                    frames.add(data, 0, false);
                 }
             } catch (Throwable e) {
                 log.error("Failed to buffer interframe", e);
@@ -125,49 +88,11 @@ public class SorensonVideo extends AbstractVideo {
             data.rewind();
             return true;
         }
-        numInterframes.set(0);
-        interframes.clear();
         // Store last keyframe
-        dataCount = data.limit();
-        if (blockSize < dataCount) {
-            blockSize = dataCount;
-            blockData = new byte[blockSize];
-        }
-        data.get(blockData, 0, dataCount);
+        frames.clear();
+        frames.add(data, 0, true);
         data.rewind();
         return true;
     }
 
-    /** {@inheritDoc} */
-    @Override
-    public IoBuffer getKeyframe() {
-        if (dataCount > 0) {
-            IoBuffer result = IoBuffer.allocate(dataCount);
-            result.put(blockData, 0, dataCount);
-            result.rewind();
-            return result;
-        }
-        return null;
-    }
-
-    /** {@inheritDoc} */
-    @Override
-    public int getNumInterframes() {
-        return numInterframes.get();
-    }
-
-    /** {@inheritDoc} */
-    @Override
-    public FrameData getInterframe(int index) {
-        if (index < numInterframes.get()) {
-            return interframes.get(index);
-        }
-        return null;
-    }
-
-    @Override
-    public FrameData[] getKeyframes() {
-        return dataCount > 0 ? new FrameData[] { new FrameData(getKeyframe()) } : new FrameData[0];
-    }
-
 }
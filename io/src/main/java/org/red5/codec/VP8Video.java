@@ -169,10 +169,10 @@ public class VP8Video extends AbstractVideo {
                                 //log.trace("New keyframe");
                                 // new keyframe
                                 keyframeTimestamp = timestamp;
-                                keyframes.clear();
+                                frames.clear();
                             }
                             // store keyframe
-                            keyframes.add(new FrameData(data));
+                            frames.add(data, timestamp, true);
                             break;
                         case 0: // no decoder configuration for vp8
                             //log.trace("Decoder configuration");
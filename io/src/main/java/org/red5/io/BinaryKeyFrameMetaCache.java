@@ -0,0 +1,349 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.red5.io.flv.IKeyFrameDataAnalyzer.KeyFrameMeta;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keyframe metadata cache persisting to a compact binary sidecar file (<i>name.kfm</i>) next to the media file. Sidecars are read through a
+ * memory-mapped channel and decoded with bulk copies; loaded entries are kept in a size-bounded, least recently used in-memory layer.
+ * Concurrent requests for the same file share a single load while loads of different files never wait on each other.
+ * <br>
+ * Sidecar layout, big-endian:
+ *
+ * <pre>
+ * int magic ("R5KF"), short version, short flags (bit 0: audio only)
+ * long media last modified, long media length, long duration
+ * int video codec id, int audio codec id, int keyframe count
+ * long[count] positions, int[count] timestamps
+ * </pre>
+ *
+ * @author The Red5 Project
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+public class BinaryKeyFrameMetaCache implements IKeyFrameMetaCache {
+
+    private static Logger log = LoggerFactory.getLogger(BinaryKeyFrameMetaCache.class);
+
+    /** Sidecar file extension */
+    public static final String EXTENSION = ".kfm";
+
+    private static final int MAGIC = 0x52354B46;
+
+    private static final short VERSION = 1;
+
+    private static final short FLAG_AUDIO_ONLY = 0x01;
+
+    private static final int HEADER_SIZE = 44;
+
+    private final ConcurrentMap<String, CacheEntry> entries = new ConcurrentHashMap<>();
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private final AtomicLong cachedBytes = new AtomicLong();
+
+    private final FileKeyFrameMetaCache legacyCache = new FileKeyFrameMetaCache();
+
+    private int maxCacheEntry = 500;
+
+    private long maxCacheBytes = 64 * 1024 * 1024;
+
+    // sidecars smaller than this are read into a heap buffer rather than mapped
+    private int mapThreshold = 64 * 1024;
+
+    private boolean migrateLegacy = true;
+
+    /** {@inheritDoc} */
+    @Override
+    public KeyFrameMeta loadKeyFrameMeta(File file) {
+        String path = file.getAbsolutePath();
+        long lastModified = file.lastModified();
+        long length = file.length();
+        CacheEntry entry = entries.get(path);
+        if (entry != null && !entry.matches(lastModified, length)) {
+            remove(path, entry);
+            entry = null;
+        }
+        if (entry == null) {
+            CacheEntry created = new CacheEntry(lastModified, length, new FutureTask<>(() -> load(file, lastModified, length)));
+            entry = entries.putIfAbsent(path, created);
+            if (entry == null) {
+                entry = created;
+                entry.loader.run();
+                KeyFrameMeta meta = entry.get();
+                if (meta == null) {
+                    // nothing to cache, a later save will create the sidecar
+                    entries.remove(path, entry);
+                    return null;
+                }
+                entry.size = sizeOf(meta);
+                cachedBytes.addAndGet(entry.size);
+                evict();
+            }
+        }
+        entry.lastAccess = clock.incrementAndGet();
+        return entry.get();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void removeKeyFrameMeta(File file) {
+        String path = file.getAbsolutePath();
+        CacheEntry entry = entries.get(path);
+        if (entry != null) {
+            remove(path, entry);
+        }
+        File sidecar = getSidecar(file);
+        if (sidecar.exists() && !sidecar.delete()) {
+            log.warn("Keyframe index was not deleted - {}", sidecar);
+            sidecar.deleteOnExit();
+        }
+        legacyCache.removeKeyFrameMeta(file);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void saveKeyFrameMeta(File file, KeyFrameMeta meta) {
+        String path = file.getAbsolutePath();
+        CacheEntry entry = entries.get(path);
+        if (entry != null) {
+            remove(path, entry);
+        }
+        if (meta.positions.length == 0) {
+            // Don't store empty meta informations
+            return;
+        }
+        write(file, meta);
+    }
+
+    /**
+     * Returns the sidecar file holding the keyframe index of the given media file.
+     *
+     * @param file
+     *            media file
+     * @return sidecar file
+     */
+    public static File getSidecar(File file) {
+        return new File(file.getAbsolutePath() + EXTENSION);
+    }
+
+    private KeyFrameMeta load(File file, long lastModified, long length) {
+        File sidecar = getSidecar(file);
+        if (sidecar.exists()) {
+            KeyFrameMeta meta = read(sidecar.toPath(), lastModified, length);
+            if (meta != null) {
+                return meta;
+            }
+        }
+        if (migrateLegacy) {
+            KeyFrameMeta meta = legacyCache.loadKeyFrameMeta(file);
+            if (meta != null) {
+                log.debug("Migrating keyframe metadata of {}", file.getName());
+                write(file, meta);
+                return meta;
+            }
+        }
+        return null;
+    }
+
+    private KeyFrameMeta read(Path sidecar, long lastModified, long length) {
+        try (FileChannel channel = FileChannel.open(sidecar, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                return null;
+            }
+            ByteBuffer buf;
+            if (size >= mapThreshold) {
+                buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                buf = ByteBuffer.allocate((int) size);
+                while (buf.hasRemaining() && channel.read(buf) >= 0) {
+                }
+                buf.flip();
+            }
+            if (buf.getInt() != MAGIC || buf.getShort() != VERSION) {
+                log.debug("Unsupported keyframe index {}", sidecar);
+                return null;
+            }
+            short flags = buf.getShort();
+            if (buf.getLong() != lastModified || buf.getLong() != length) {
+                // File has changed in the meantime
+                return null;
+            }
+            KeyFrameMeta meta = new KeyFrameMeta();
+            meta.audioOnly = (flags & FLAG_AUDIO_ONLY) != 0;
+            meta.duration = buf.getLong();
+            meta.videoCodecId = buf.getInt();
+            meta.audioCodecId = buf.getInt();
+            int count = buf.getInt();
+            if (count <= 0 || buf.remaining() != count * 12L) {
+                log.debug("Truncated keyframe index {}", sidecar);
+                return null;
+            }
+            meta.positions = new long[count];
+            meta.timestamps = new int[count];
+            buf.asLongBuffer().get(meta.positions);
+            buf.position(buf.position() + count * 8);
+            buf.asIntBuffer().get(meta.timestamps);
+            return meta;
+        } catch (IOException e) {
+            log.warn("Could not read keyframe index {}", sidecar, e);
+        }
+        return null;
+    }
+
+    private void write(File file, KeyFrameMeta meta) {
+        int count = meta.positions.length;
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + count * 12);
+        buf.putInt(MAGIC);
+        buf.putShort(VERSION);
+        buf.putShort(meta.audioOnly ? FLAG_AUDIO_ONLY : 0);
+        buf.putLong(file.lastModified());
+        buf.putLong(file.length());
+        buf.putLong(meta.duration);
+        buf.putInt(meta.videoCodecId);
+        buf.putInt(meta.audioCodecId);
+        buf.putInt(count);
+        buf.asLongBuffer().put(meta.positions);
+        buf.position(buf.position() + count * 8);
+        buf.asIntBuffer().put(meta.timestamps, 0, count);
+        buf.rewind();
+        // write next to the sidecar and move it into place, so readers never see a partial index
+        Path target = getSidecar(file).toPath();
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (buf.hasRemaining()) {
+                    channel.write(buf);
+                }
+            }
+            try {
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            log.error("could not save keyframe data", e);
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void remove(String path, CacheEntry entry) {
+        if (entries.remove(path, entry)) {
+            cachedBytes.addAndGet(-entry.size);
+        }
+    }
+
+    /**
+     * Removes the least recently used entries until the cache is within its bounds.
+     */
+    private void evict() {
+        while (entries.size() > maxCacheEntry || cachedBytes.get() > maxCacheBytes) {
+            String oldestPath = null;
+            CacheEntry oldest = null;
+            for (Map.Entry<String, CacheEntry> e : entries.entrySet()) {
+                CacheEntry candidate = e.getValue();
+                // entries still loading have no size yet and are skipped
+                if (candidate.size > 0 && (oldest == null || candidate.lastAccess < oldest.lastAccess)) {
+                    oldestPath = e.getKey();
+                    oldest = candidate;
+                }
+            }
+            if (oldest == null) {
+                break;
+            }
+            log.trace("Evicting keyframe metadata of {}", oldestPath);
+            remove(oldestPath, oldest);
+        }
+    }
+
+    private static long sizeOf(KeyFrameMeta meta) {
+        return 64L + meta.positions.length * 12L;
+    }
+
+    public int getCacheEntryCount() {
+        return entries.size();
+    }
+
+    public long getCacheBytes() {
+        return cachedBytes.get();
+    }
+
+    public void setMaxCacheEntry(int maxCacheEntry) {
+        this.maxCacheEntry = maxCacheEntry;
+    }
+
+    public void setMaxCacheBytes(long maxCacheBytes) {
+        this.maxCacheBytes = maxCacheBytes;
+    }
+
+    public void setMapThreshold(int mapThreshold) {
+        this.mapThreshold = mapThreshold;
+    }
+
+    public void setMigrateLegacy(boolean migrateLegacy) {
+        this.migrateLegacy = migrateLegacy;
+    }
+
+    private static final class CacheEntry {
+
+        final long lastModified;
+
+        final long length;
+
+        final FutureTask<KeyFrameMeta> loader;
+
+        volatile long size;
+
+        volatile long lastAccess;
+
+        CacheEntry(long lastModified, long length, FutureTask<KeyFrameMeta> loader) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.loader = loader;
+        }
+
+        boolean matches(long lastModified, long length) {
+            return this.lastModified == lastModified && this.length == length;
+        }
+
+        KeyFrameMeta get() {
+            try {
+                return loader.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                log.warn("Keyframe metadata could not be loaded", e.getCause());
+            }
+            return null;
+        }
+
+    }
+
+}
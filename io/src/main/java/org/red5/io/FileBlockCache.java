@@ -0,0 +1,438 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Node-wide read-ahead cache for streamable files. Files are split into fixed-size blocks keyed by file, modification time and block
+ * number; blocks are shared by every reader of the same file and evicted least recently used first once the byte budget is exceeded.
+ * Only files opened by at least {@link #setHotReaders(int) hotReaders} readers at once go through the cache, reads of other files go
+ * straight to disk. Concurrent misses on the same block are coalesced into a single disk read.
+ *
+ * @author The Red5 Project
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+public class FileBlockCache {
+
+    private static Logger log = LoggerFactory.getLogger(FileBlockCache.class);
+
+    private static volatile FileBlockCache instance;
+
+    private final ConcurrentMap<String, FileState> files = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<BlockKey, Block> blocks = new ConcurrentHashMap<>();
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private final AtomicLong cachedBytes = new AtomicLong();
+
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong(), bypassed = new AtomicLong(), evictions = new AtomicLong();
+
+    private boolean enabled;
+
+    private int blockSize = 64 * 1024;
+
+    private long maxBytes = 256 * 1024 * 1024;
+
+    private boolean direct;
+
+    private int hotReaders = 2;
+
+    /**
+     * Source of the bytes of a file, read at an absolute position.
+     */
+    @FunctionalInterface
+    public interface BlockSource {
+
+        /**
+         * Reads bytes at the given position.
+         *
+         * @param dst
+         *            destination buffer
+         * @param position
+         *            file position
+         * @return bytes read or -1 at the end of the file
+         * @throws IOException
+         *             on read error
+         */
+        int read(ByteBuffer dst, long position) throws IOException;
+
+    }
+
+    /**
+     * Returns the shared cache.
+     *
+     * @return cache or null if none is configured
+     */
+    public static FileBlockCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Sets the shared cache used by the file readers.
+     *
+     * @param cache
+     *            cache or null to read from disk directly
+     */
+    public static void setInstance(FileBlockCache cache) {
+        instance = cache;
+    }
+
+    /**
+     * Opens a reader handle on the shared cache, if one is configured and enabled.
+     *
+     * @param file
+     *            file being read
+     * @return handle or null if reads should go to the file directly
+     */
+    public static Handle open(File file) {
+        FileBlockCache cache = instance;
+        if (cache != null && cache.enabled && file != null) {
+            return cache.register(file);
+        }
+        return null;
+    }
+
+    private Handle register(File file) {
+        String path = file.getAbsolutePath();
+        long version = file.lastModified();
+        FileState state = files.compute(path, (key, existing) -> {
+            if (existing == null || existing.version != version) {
+                existing = new FileState(key, version);
+            }
+            existing.readers.incrementAndGet();
+            return existing;
+        });
+        return new Handle(state);
+    }
+
+    private void unregister(FileState state) {
+        files.computeIfPresent(state.path, (key, existing) -> {
+            if (existing == state && state.readers.decrementAndGet() <= 0) {
+                return null;
+            }
+            return existing;
+        });
+    }
+
+    int read(FileState state, BlockSource source, long position, ByteBuffer dst) throws IOException {
+        if (state.readers.get() < hotReaders) {
+            bypassed.incrementAndGet();
+            return source.read(dst, position);
+        }
+        int total = 0;
+        while (dst.hasRemaining()) {
+            long index = position / blockSize;
+            int offset = (int) (position - index * blockSize);
+            ByteBuffer data = getBlock(state, index, source);
+            if (offset >= data.limit()) {
+                break;
+            }
+            ByteBuffer src = data.duplicate();
+            src.position(offset);
+            if (src.remaining() > dst.remaining()) {
+                src.limit(offset + dst.remaining());
+            }
+            int length = src.remaining();
+            dst.put(src);
+            total += length;
+            position += length;
+            if (data.limit() < blockSize) {
+                // last block of the file
+                break;
+            }
+        }
+        return total == 0 && dst.hasRemaining() ? -1 : total;
+    }
+
+    private ByteBuffer getBlock(FileState state, long index, BlockSource source) throws IOException {
+        BlockKey key = new BlockKey(state.path, state.version, index);
+        Block block = blocks.get(key);
+        if (block == null) {
+            Block created = new Block(new FutureTask<>(() -> load(source, index)));
+            block = blocks.putIfAbsent(key, created);
+            if (block == null) {
+                misses.incrementAndGet();
+                block = created;
+                block.loader.run();
+                ByteBuffer data;
+                try {
+                    data = block.get();
+                } catch (IOException e) {
+                    blocks.remove(key, block);
+                    throw e;
+                }
+                if (data.limit() < blockSize) {
+                    // partial blocks are not kept, the file may still be growing
+                    blocks.remove(key, block);
+                    return data;
+                }
+                block.size = data.capacity();
+                cachedBytes.addAndGet(block.size);
+                if (cachedBytes.get() > maxBytes) {
+                    evict();
+                }
+            } else {
+                hits.incrementAndGet();
+            }
+        } else {
+            hits.incrementAndGet();
+        }
+        block.lastAccess = clock.incrementAndGet();
+        return block.get();
+    }
+
+    private ByteBuffer load(BlockSource source, long index) throws IOException {
+        ByteBuffer data = direct ? ByteBuffer.allocateDirect(blockSize) : ByteBuffer.allocate(blockSize);
+        long position = index * blockSize;
+        while (data.hasRemaining()) {
+            int read = source.read(data, position + data.position());
+            if (read < 0) {
+                break;
+            }
+        }
+        data.flip();
+        return data.asReadOnlyBuffer();
+    }
+
+    /**
+     * Removes the least recently used blocks until the cache holds no more than 90% of its budget.
+     */
+    private void evict() {
+        if (evicting.compareAndSet(false, true)) {
+            try {
+                List<Map.Entry<BlockKey, Block>> candidates = new ArrayList<>(blocks.size());
+                for (Map.Entry<BlockKey, Block> entry : blocks.entrySet()) {
+                    // blocks still loading have no size yet and are skipped
+                    if (entry.getValue().size > 0) {
+                        candidates.add(entry);
+                    }
+                }
+                candidates.sort(Comparator.comparingLong(entry -> entry.getValue().lastAccess));
+                long target = maxBytes - maxBytes / 10;
+                for (int i = 0; i < candidates.size() && cachedBytes.get() > target; i++) {
+                    Map.Entry<BlockKey, Block> entry = candidates.get(i);
+                    if (blocks.remove(entry.getKey(), entry.getValue())) {
+                        cachedBytes.addAndGet(-entry.getValue().size);
+                        evictions.incrementAndGet();
+                    }
+                }
+                log.debug("Evicted blocks, cached bytes: {}", cachedBytes.get());
+            } finally {
+                evicting.set(false);
+            }
+        }
+    }
+
+    /**
+     * Removes all cached blocks.
+     */
+    public void clear() {
+        blocks.clear();
+        cachedBytes.set(0);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public void setBlockSize(int blockSize) {
+        this.blockSize = blockSize;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public boolean isDirect() {
+        return direct;
+    }
+
+    public void setDirect(boolean direct) {
+        this.direct = direct;
+    }
+
+    public int getHotReaders() {
+        return hotReaders;
+    }
+
+    public void setHotReaders(int hotReaders) {
+        this.hotReaders = hotReaders;
+    }
+
+    public long getCachedBytes() {
+        return cachedBytes.get();
+    }
+
+    public int getBlockCount() {
+        return blocks.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getBypassed() {
+        return bypassed.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * A reader's registration with the cache; reads through a handle are served from shared blocks while the file is hot.
+     */
+    public final class Handle {
+
+        private final FileState state;
+
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        Handle(FileState state) {
+            this.state = state;
+        }
+
+        /**
+         * Reads bytes at the given position, through the cache if the file is hot.
+         *
+         * @param source
+         *            the reader's own access to the file, used on a cache miss
+         * @param position
+         *            file position
+         * @param dst
+         *            destination buffer
+         * @return bytes read or -1 at the end of the file
+         * @throws IOException
+         *             on read error
+         */
+        public int read(BlockSource source, long position, ByteBuffer dst) throws IOException {
+            return FileBlockCache.this.read(state, source, position, dst);
+        }
+
+        /**
+         * Releases the registration, must be called once the reader is closed.
+         */
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                unregister(state);
+            }
+        }
+
+    }
+
+    static final class FileState {
+
+        final String path;
+
+        final long version;
+
+        final AtomicInteger readers = new AtomicInteger();
+
+        FileState(String path, long version) {
+            this.path = path;
+            this.version = version;
+        }
+
+    }
+
+    private static final class BlockKey {
+
+        final String path;
+
+        final long version;
+
+        final long index;
+
+        BlockKey(String path, long version, long index) {
+            this.path = path;
+            this.version = version;
+            this.index = index;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * path.hashCode() + Long.hashCode(version)) + Long.hashCode(index);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof BlockKey)) {
+                return false;
+            }
+            BlockKey other = (BlockKey) obj;
+            return index == other.index && version == other.version && path.equals(other.path);
+        }
+
+    }
+
+    private static final class Block {
+
+        final FutureTask<ByteBuffer> loader;
+
+        volatile long size;
+
+        volatile long lastAccess;
+
+        Block(FutureTask<ByteBuffer> loader) {
+            this.loader = loader;
+        }
+
+        ByteBuffer get() throws IOException {
+            try {
+                return loader.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for block", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,504 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Node-wide I/O engine for recordings. A small pool of workers serves every recording: the writes of a recording are queued on its
+ * {@link Stream} and written by whichever worker picks the stream up next, as a single gathering write of everything queued up to
+ * {@link #setMaxBatchBytes(int) maxBatchBytes}, optionally followed by one fsync for the whole batch. The same workers run the queue
+ * processing of the file consumers, so the thread count does not depend on the number of recordings.
+ *
+ * @author The Red5 Project
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+public class RecordingScheduler {
+
+    private static Logger log = LoggerFactory.getLogger(RecordingScheduler.class);
+
+    private static volatile RecordingScheduler instance;
+
+    private final Set<Stream> streams = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong batches = new AtomicLong(), writes = new AtomicLong(), bytesWritten = new AtomicLong(), syncs = new AtomicLong();
+
+    private volatile ExecutorService executor;
+
+    private int threads = 4;
+
+    private int maxBatchBytes = 1024 * 1024;
+
+    private int maxPendingBytes = 8 * 1024 * 1024;
+
+    private boolean groupCommit;
+
+    /**
+     * Returns the shared scheduler, creating one with the default settings if none is configured.
+     *
+     * @return scheduler
+     */
+    public static RecordingScheduler getInstance() {
+        RecordingScheduler scheduler = instance;
+        if (scheduler == null) {
+            synchronized (RecordingScheduler.class) {
+                if ((scheduler = instance) == null) {
+                    instance = scheduler = new RecordingScheduler();
+                }
+            }
+        }
+        return scheduler;
+    }
+
+    /**
+     * Sets the shared scheduler.
+     *
+     * @param scheduler
+     *            scheduler
+     */
+    public static void setInstance(RecordingScheduler scheduler) {
+        instance = scheduler;
+    }
+
+    /**
+     * Opens a write stream on the given channel. Queued writes are appended at the current position of the channel.
+     *
+     * @param name
+     *            name of the recording, used for the metrics
+     * @param channel
+     *            channel to write to
+     * @return stream
+     */
+    public Stream open(String name, WritableByteChannel channel) {
+        Stream stream = new Stream(name, channel);
+        streams.add(stream);
+        return stream;
+    }
+
+    /**
+     * Runs a task on the I/O workers.
+     *
+     * @param task
+     *            task
+     * @return future of the task
+     */
+    public Future<?> submit(Runnable task) {
+        return getExecutor().submit(task);
+    }
+
+    private ExecutorService getExecutor() {
+        ExecutorService exec = executor;
+        if (exec == null) {
+            synchronized (this) {
+                if ((exec = executor) == null) {
+                    executor = exec = Executors.newFixedThreadPool(threads, new WorkerFactory());
+                }
+            }
+        }
+        return exec;
+    }
+
+    /**
+     * Flushes the open streams and stops the workers.
+     */
+    public void destroy() {
+        for (Stream stream : streams) {
+            try {
+                stream.flush();
+            } catch (IOException e) {
+                log.warn("Recording {} could not be flushed", stream.name, e);
+            }
+        }
+        ExecutorService exec = executor;
+        if (exec != null) {
+            exec.shutdown();
+        }
+    }
+
+    /**
+     * Number of I/O worker threads.
+     *
+     * @param threads
+     *            threads
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Most bytes of a recording written by one gathering write.
+     *
+     * @param maxBatchBytes
+     *            bytes
+     */
+    public void setMaxBatchBytes(int maxBatchBytes) {
+        this.maxBatchBytes = maxBatchBytes;
+    }
+
+    public int getMaxBatchBytes() {
+        return maxBatchBytes;
+    }
+
+    /**
+     * Bytes a recording may have queued before its producer has to write them itself.
+     *
+     * @param maxPendingBytes
+     *            bytes
+     */
+    public void setMaxPendingBytes(int maxPendingBytes) {
+        this.maxPendingBytes = maxPendingBytes;
+    }
+
+    public int getMaxPendingBytes() {
+        return maxPendingBytes;
+    }
+
+    /**
+     * Whether each batch is forced to disk once it has been written.
+     *
+     * @param groupCommit
+     *            true to fsync every batch
+     */
+    public void setGroupCommit(boolean groupCommit) {
+        this.groupCommit = groupCommit;
+    }
+
+    public boolean isGroupCommit() {
+        return groupCommit;
+    }
+
+    /**
+     * Returns the number of open recording streams.
+     *
+     * @return streams
+     */
+    public int getStreamCount() {
+        return streams.size();
+    }
+
+    /**
+     * Returns the bytes queued over all recordings.
+     *
+     * @return bytes
+     */
+    public long getPendingBytes() {
+        long pending = 0;
+        for (Stream stream : streams) {
+            pending += stream.getPendingBytes();
+        }
+        return pending;
+    }
+
+    /**
+     * Returns the queued bytes of each open recording.
+     *
+     * @return bytes by recording name
+     */
+    public Map<String, Long> getQueueDepths() {
+        Map<String, Long> depths = new HashMap<>();
+        for (Stream stream : streams) {
+            depths.merge(stream.name, stream.getPendingBytes(), Long::sum);
+        }
+        return depths;
+    }
+
+    public long getBatches() {
+        return batches.get();
+    }
+
+    public long getWrites() {
+        return writes.get();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    public long getSyncs() {
+        return syncs.get();
+    }
+
+    /**
+     * Write queue of one recording. Buffers are written in the order they were queued; once written they are not touched again, so the
+     * caller hands them over and must not reuse them.
+     */
+    public final class Stream {
+
+        private final String name;
+
+        private final WritableByteChannel channel;
+
+        private final Queue<ByteBuffer> queue = new ConcurrentLinkedQueue<>();
+
+        private final AtomicLong pendingBytes = new AtomicLong();
+
+        private final AtomicInteger pendingWrites = new AtomicInteger();
+
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        // held while buffers are taken from the queue and written, keeps the batches in order
+        private final ReentrantLock writeLock = new ReentrantLock();
+
+        // bytes accepted so far
+        private final AtomicLong position = new AtomicLong();
+
+        private final Runnable drain = this::drain;
+
+        private volatile Runnable afterWrite;
+
+        private volatile IOException failure;
+
+        private volatile boolean closed;
+
+        private Stream(String name, WritableByteChannel channel) {
+            this.name = name;
+            this.channel = channel;
+        }
+
+        /**
+         * Sets a task run by the writing thread after each batch, such as updating an index of the written data.
+         *
+         * @param afterWrite
+         *            task or null
+         */
+        public void setAfterWrite(Runnable afterWrite) {
+            this.afterWrite = afterWrite;
+        }
+
+        /**
+         * Queues a buffer for writing.
+         *
+         * @param buf
+         *            buffer holding the bytes between its position and limit
+         * @return number of bytes accepted by the stream so far, including the given buffer
+         * @throws IOException
+         *             if a previous write failed, or a ClosedChannelException if the stream is closed
+         */
+        public long write(ByteBuffer buf) throws IOException {
+            checkState();
+            int length = buf.remaining();
+            queue.add(buf);
+            pendingWrites.incrementAndGet();
+            long pending = pendingBytes.addAndGet(length);
+            long end = position.addAndGet(length);
+            if (pending > maxPendingBytes) {
+                // the disk is not keeping up, the producer writes its own backlog
+                log.debug("Recording {} has {} bytes queued, writing inline", name, pending);
+                flush();
+            } else {
+                schedule();
+            }
+            return end;
+        }
+
+        /**
+         * Writes everything queued so far from the calling thread.
+         *
+         * @throws IOException
+         *             if a write failed
+         */
+        public void flush() throws IOException {
+            writeLock.lock();
+            try {
+                while (!queue.isEmpty() && failure == null) {
+                    writeBatch();
+                }
+            } finally {
+                writeLock.unlock();
+            }
+            checkFailure();
+        }
+
+        /**
+         * Flushes the stream and removes it from the scheduler. The channel is left open.
+         *
+         * @throws IOException
+         *             if a write failed
+         */
+        public void close() throws IOException {
+            closed = true;
+            try {
+                flush();
+            } finally {
+                streams.remove(this);
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the number of bytes accepted by the stream, written or not.
+         *
+         * @return bytes
+         */
+        public long getPosition() {
+            return position.get();
+        }
+
+        public long getPendingBytes() {
+            return pendingBytes.get();
+        }
+
+        public int getPendingWrites() {
+            return pendingWrites.get();
+        }
+
+        private void checkState() throws IOException {
+            if (closed) {
+                throw new ClosedChannelException();
+            }
+            checkFailure();
+        }
+
+        private void checkFailure() throws IOException {
+            if (failure != null) {
+                throw new IOException("Write to " + name + " failed", failure);
+            }
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    getExecutor().execute(drain);
+                } catch (RuntimeException e) {
+                    scheduled.set(false);
+                    log.warn("Recording {} could not be scheduled, writing inline", name, e);
+                    try {
+                        flush();
+                    } catch (IOException ioe) {
+                        log.warn("Write to {} failed", name, ioe);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Writes one batch, then yields the worker to the other recordings.
+         */
+        private void drain() {
+            writeLock.lock();
+            try {
+                if (failure == null) {
+                    writeBatch();
+                }
+            } finally {
+                writeLock.unlock();
+            }
+            scheduled.set(false);
+            if (!queue.isEmpty() && failure == null) {
+                schedule();
+            }
+        }
+
+        private void writeBatch() {
+            List<ByteBuffer> batch = new ArrayList<>();
+            long length = 0;
+            ByteBuffer buf;
+            while (length < maxBatchBytes && (buf = queue.poll()) != null) {
+                batch.add(buf);
+                length += buf.remaining();
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            try {
+                ByteBuffer[] srcs = batch.toArray(new ByteBuffer[0]);
+                if (channel instanceof GatheringByteChannel) {
+                    GatheringByteChannel gathering = (GatheringByteChannel) channel;
+                    for (int i = 0; i < srcs.length;) {
+                        gathering.write(srcs, i, srcs.length - i);
+                        while (i < srcs.length && !srcs[i].hasRemaining()) {
+                            i++;
+                        }
+                    }
+                } else {
+                    for (ByteBuffer src : srcs) {
+                        while (src.hasRemaining()) {
+                            channel.write(src);
+                        }
+                    }
+                }
+                if (groupCommit && channel instanceof FileChannel) {
+                    ((FileChannel) channel).force(false);
+                    syncs.incrementAndGet();
+                }
+                batches.incrementAndGet();
+                writes.addAndGet(srcs.length);
+                bytesWritten.addAndGet(length);
+            } catch (IOException e) {
+                log.warn("Write to {} failed", name, e);
+                failure = e;
+                // nothing queued will be written anymore
+                queue.clear();
+                pendingWrites.set(batch.size());
+                pendingBytes.set(length);
+            } finally {
+                pendingWrites.addAndGet(-batch.size());
+                pendingBytes.addAndGet(-length);
+            }
+            Runnable task = afterWrite;
+            if (task != null) {
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    log.warn("Post write task of {} failed", name, e);
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Stream [name=" + name + ", pendingBytes=" + pendingBytes + ", pendingWrites=" + pendingWrites + "]";
+        }
+
+    }
+
+    private static final class WorkerFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "RecordingIO-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+
+    }
+
+}
@@ -29,6 +29,7 @@ import org.apache.commons.lang3.math.NumberUtils;
 import org.apache.mina.core.buffer.IoBuffer;
 import org.red5.io.amf3.ByteArray;
 import org.red5.io.object.BaseInput;
+import org.red5.io.object.ClassCodec;
 import org.red5.io.object.DataTypes;
 import org.red5.io.object.Deserializer;
 import org.red5.io.object.RecordSet;
@@ -412,8 +413,23 @@ public class Input extends BaseInput implements org.red5.io.object.Input {
         log.debug("readBean: {}", bean);
         storeReference(bean);
         Class theClass = bean.getClass();
+        ClassCodec codec = ClassCodec.isEnabled() ? ClassCodec.forClass(theClass) : null;
         while (hasMoreProperties()) {
             String name = readPropertyName();
+            ClassCodec.Property writable = codec != null ? codec.getWritableProperty(name) : null;
+            if (codec != null) {
+                Object property = Deserializer.deserialize(this, writable != null ? writable.getGenericType() : Object.class);
+                if (property == null) {
+                    log.debug("Skipping null property: {}", name);
+                } else if (writable == null || !writable.set(bean, property)) {
+                    log.error("Error mapping property: {} ({})", name, property);
+                }
+                if (hasMoreProperties()) {
+                    skipPropertySeparator();
+                    continue;
+                }
+                break;
+            }
             Type type = getPropertyType(bean, name);
             log.debug("property: {} type: {}", name, type);
             Object property = Deserializer.deserialize(this, type);
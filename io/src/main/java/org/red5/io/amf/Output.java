@@ -26,6 +26,7 @@ import org.apache.mina.core.buffer.IoBuffer;
 import org.red5.annotations.Anonymous;
 import org.red5.io.amf3.ByteArray;
 import org.red5.io.object.BaseOutput;
+import org.red5.io.object.ClassCodec;
 import org.red5.io.object.RecordSet;
 import org.red5.io.object.Serializer;
 import org.red5.io.utils.XMLUtils;
@@ -292,6 +293,10 @@ public class Output extends BaseOutput implements org.red5.io.object.Output {
     public void writeObject(Object object) {
         if (!checkWriteReference(object)) {
             storeReference(object);
+            if (ClassCodec.isEnabled()) {
+                writeObject(object, ClassCodec.forClass(object.getClass()));
+                return;
+            }
             // create new map out of bean properties
             BeanMap beanMap = new BeanMap(object);
             // set of bean attributes
@@ -333,6 +338,38 @@ public class Output extends BaseOutput implements org.red5.io.object.Output {
         }
     }
 
+    /**
+     * Writes the properties of an object as resolved by its class codec.
+     *
+     * @param object
+     *            Object to write
+     * @param codec
+     *            codec of the object class
+     */
+    protected void writeObject(Object object, ClassCodec codec) {
+        if (!codec.isAnonymous()) {
+            buf.put(AMF.TYPE_CLASS_OBJECT);
+            putString(buf, codec.getClassName());
+        } else {
+            buf.put(AMF.TYPE_OBJECT);
+        }
+        for (ClassCodec.Property property : codec.getProperties()) {
+            Object value;
+            try {
+                value = property.get(object);
+            } catch (Throwable t) {
+                log.debug("Property {} could not be read", property.getName(), t);
+                if (codec.isFieldsOnly()) {
+                    continue;
+                }
+                value = null;
+            }
+            putEncodedString(buf, property.getEncodedName());
+            Serializer.serialize(this, property.getField(), property.getGetter(), object, value);
+        }
+        buf.put(AMF.END_OF_OBJECT_SEQUENCE);
+    }
+
     @SuppressWarnings("unchecked")
     protected boolean serializeField(Class<?> objectClass, String keyName, Field field, Method getter) {
         // to prevent, NullPointerExceptions, get the element first and check if it's null
@@ -537,7 +574,18 @@ public class Output extends BaseOutput implements org.red5.io.object.Output {
      *            String to write
      */
     public static void putString(IoBuffer buf, String string) {
-        final byte[] encoded = encodeString(string);
+        putEncodedString(buf, encodeString(string));
+    }
+
+    /**
+     * Write out an encoded string
+     *
+     * @param buf
+     *            Byte buffer to write to
+     * @param encoded
+     *            UTF-8 encoded string
+     */
+    protected static void putEncodedString(IoBuffer buf, byte[] encoded) {
         if (encoded.length < AMF.LONG_STRING_LENGTH) {
             // write unsigned short
             buf.put((byte) ((encoded.length >> 8) & 0xff));
@@ -34,6 +34,7 @@ import java.util.concurrent.ConcurrentMap;
 import org.apache.commons.beanutils.BeanUtils;
 import org.apache.mina.core.buffer.IoBuffer;
 import org.red5.io.amf.AMF;
+import org.red5.io.object.ClassCodec;
 import org.red5.io.object.DataTypes;
 import org.red5.io.object.Deserializer;
 import org.red5.io.utils.ArrayUtils;
@@ -131,6 +132,13 @@ public class Input extends org.red5.io.amf.Input {
         public void resolveProperties(Object result) {
             if (properties != null) {
                 for (PendingProperty prop : properties) {
+                    if (ClassCodec.isEnabled()) {
+                        ClassCodec.Property writable = ClassCodec.forClass(prop.klass).getWritableProperty(prop.name);
+                        if (writable == null || !writable.set(prop.obj, result)) {
+                            log.warn("Error mapping property: {} ({})", prop.name, result);
+                        }
+                        continue;
+                    }
                     try {
                         prop.klass.getField(prop.name).set(prop.obj, result);
                     } catch (Exception e) {
@@ -811,6 +819,7 @@ public class Input extends org.red5.io.amf.Input {
                     storeReference(tempRefId, result);
                     Class resultClass = result.getClass();
                     pending.resolveProperties(result);
+                    ClassCodec codec = ClassCodec.isEnabled() ? ClassCodec.forClass(resultClass) : null;
                     for (Map.Entry<String, Object> entry : properties.entrySet()) {
                         // Resolve circular references
                         final String key = entry.getKey();
@@ -823,7 +832,12 @@ public class Input extends org.red5.io.amf.Input {
                             ((PendingObject) value).addPendingProperty(result, resultClass, key);
                             continue;
                         }
-                        if (value != null) {
+                        if (value != null && codec != null) {
+                            ClassCodec.Property writable = codec.getWritableProperty(key);
+                            if (writable == null || !writable.set(result, value)) {
+                                log.warn("Error mapping key: {} value: {}", key, value);
+                            }
+                        } else if (value != null) {
                             try {
                                 final Field field = resultClass.getField(key);
                                 final Class fieldType = field.getType();
@@ -26,6 +26,7 @@ import org.apache.mina.core.buffer.IoBuffer;
 import org.red5.annotations.Anonymous;
 import org.red5.compatibility.flex.messaging.io.ObjectProxy;
 import org.red5.io.amf.AMF;
+import org.red5.io.object.ClassCodec;
 import org.red5.io.object.RecordSet;
 import org.red5.io.object.Serializer;
 import org.red5.io.object.UnsignedInt;
@@ -456,6 +457,10 @@ public class Output extends org.red5.io.amf.Output {
         // we have an inline class that is not a reference, store the properties using key/value pairs
         int type = AMF3.TYPE_OBJECT_VALUE << 2 | 1 << 1 | 1;
         putInteger(type);
+        if (ClassCodec.isEnabled()) {
+            writeObject(object, ClassCodec.forClass(objectClass));
+            return;
+        }
         // create new map out of bean properties
         BeanMap beanMap = new BeanMap(object);
         // set of bean attributes
@@ -491,6 +496,30 @@ public class Output extends org.red5.io.amf.Output {
         putString("");
     }
 
+    /** {@inheritDoc} */
+    @Override
+    protected void writeObject(Object object, ClassCodec codec) {
+        putString(codec.isAnonymous() ? "" : codec.getClassName());
+        amf3_mode += 1;
+        for (ClassCodec.Property property : codec.getProperties()) {
+            Object value;
+            try {
+                value = property.get(object);
+            } catch (Throwable t) {
+                log.debug("Property {} could not be read", property.getName(), t);
+                if (codec.isFieldsOnly()) {
+                    continue;
+                }
+                value = null;
+            }
+            putString(property.getName());
+            Serializer.serialize(this, property.getField(), property.getGetter(), object, value);
+        }
+        amf3_mode -= 1;
+        // end of object marker
+        putString("");
+    }
+
     /** {@inheritDoc} */
     @Override
     public void writeObject(Map<Object, Object> map) {
@@ -24,6 +24,7 @@ import org.apache.mina.core.buffer.IoBuffer;
 import org.red5.codec.AudioCodec;
 import org.red5.codec.VideoCodec;
 import org.red5.io.BufferType;
+import org.red5.io.FileBlockCache;
 import org.red5.io.IKeyFrameMetaCache;
 import org.red5.io.IStreamableFile;
 import org.red5.io.ITag;
@@ -68,6 +69,11 @@ public class FLVReader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
 
     private long channelSize;
 
+    /**
+     * Registration with the shared block cache, null when reading the channel directly
+     */
+    private FileBlockCache.Handle blockCache;
+
     /**
      * Keyframe metadata
      */
@@ -158,6 +164,7 @@ public class FLVReader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
         this.generateMetadata = generateMetadata;
         channel = fis.getChannel();
         channelSize = channel.size();
+        blockCache = FileBlockCache.open(f);
         in = null;
         fillBuffer();
         postInitialize();
@@ -318,6 +325,26 @@ public class FLVReader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
         fillBuffer(amount, false);
     }
 
+    /**
+     * Reads from the current channel position, through the shared block cache when there is one.
+     *
+     * @param dst
+     *            destination buffer
+     * @throws IOException
+     *             on read error
+     */
+    private void readChannel(ByteBuffer dst) throws IOException {
+        if (blockCache != null) {
+            long pos = channel.position();
+            int read = blockCache.read(channel::read, pos, dst);
+            if (read > 0) {
+                channel.position(pos + read);
+            }
+        } else {
+            channel.read(dst);
+        }
+    }
+
     /**
      * Load enough bytes from channel to buffer. After the loading process, the caller can make sure the amount in buffer is of size
      * 'amount' if we haven't reached the end of channel.
@@ -348,7 +375,7 @@ public class FLVReader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
                     default:
                         in = IoBuffer.allocate(bufferSize);
                 }
-                channel.read(in.buf());
+                readChannel(in.buf());
                 in.flip();
                 useLoadBuf = true;
             }
@@ -361,7 +388,7 @@ public class FLVReader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
                 } else {
                     in.clear();
                 }
-                channel.read(in.buf());
+                readChannel(in.buf());
                 in.flip();
             }
         } catch (Exception e) {
@@ -713,6 +740,10 @@ public class FLVReader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
                 in.free();
                 in = null;
             }
+            if (blockCache != null) {
+                blockCache.close();
+                blockCache = null;
+            }
             if (channel != null) {
                 try {
                     channel.close();
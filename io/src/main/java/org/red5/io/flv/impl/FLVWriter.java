@@ -24,8 +24,6 @@ import java.util.LinkedList;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
@@ -37,6 +35,7 @@ import org.red5.codec.VideoCodec;
 import org.red5.io.IStreamableFile;
 import org.red5.io.ITag;
 import org.red5.io.ITagWriter;
+import org.red5.io.RecordingScheduler;
 import org.red5.io.amf.Input;
 import org.red5.io.amf.Output;
 import org.red5.io.flv.FLVHeader;
@@ -75,11 +74,6 @@ public class FLVWriter implements ITagWriter {
      */
     private final static byte[] DEFAULT_STREAM_ID = new byte[] { (byte) (0 & 0xff), (byte) (0 & 0xff), (byte) (0 & 0xff) };
 
-    /**
-     * Executor for tasks within this instance
-     */
-    private ExecutorService executor = Executors.newSingleThreadExecutor();
-
     /**
      * FLV object
      */
@@ -165,11 +159,19 @@ public class FLVWriter implements ITagWriter {
      */
     private SeekableByteChannel dataChannel;
 
+    /**
+     * Write queue of the data channel on the shared recording scheduler.
+     */
+    private RecordingScheduler.Stream dataStream;
+
     // path to the original file passed to the writer
     private String filePath;
 
     private final Semaphore lock = new Semaphore(1, true);
 
+    // file information as of the last queued tag, taken under the lock for the recording scheduler worker
+    private volatile int[] infoSnapshot;
+
     // the size of the last tag written, which includes the tag header length
     private volatile int lastTagSize;
 
@@ -388,9 +390,9 @@ public class FLVWriter implements ITagWriter {
                 log.trace("Incoming previous tag size: {} does not match current value for last tag size: {}", previousTagSize, lastTagSize);
             }
             // ensure that the channel is still open
-            if (dataChannel != null) {
+            if (dataStream != null) {
                 if (log.isTraceEnabled()) {
-                    log.trace("Current file position: {}", dataChannel.position());
+                    log.trace("Current file position: {}", bytesWritten);
                 }
                 // get the data type
                 byte dataType = tag.getDataType();
@@ -558,16 +560,16 @@ public class FLVWriter implements ITagWriter {
                 tagBuffer.putInt(lastTagSize);
                 // flip so we can process from the beginning
                 tagBuffer.flip();
-                // write the tag
-                dataChannel.write(tagBuffer);
-                bytesWritten = dataChannel.position();
-                if (log.isTraceEnabled()) {
-                    log.trace("Tag written, check value: {} (should be 0)", (bytesWritten - prevBytesWritten) - totalTagSize);
-                }
-                tagBuffer.clear();
                 // update the duration
                 log.debug("Current duration: {} timestamp: {}", duration, timestamp);
                 duration = Math.max(duration, timestamp);
+                // the info file is written by the worker from what is known now, including this tag
+                infoSnapshot = snapshotInfo();
+                // queue the tag, the buffer belongs to the recording scheduler from now on
+                bytesWritten = dataStream.write(tagBuffer);
+                if (log.isTraceEnabled()) {
+                    log.trace("Tag written, check value: {} (should be 0)", (bytesWritten - prevBytesWritten) - totalTagSize);
+                }
                 // validate written amount
                 if ((bytesWritten - prevBytesWritten) != totalTagSize) {
                     log.debug("Not all of the bytes appear to have been written, prev-current: {}", (bytesWritten - prevBytesWritten));
@@ -580,8 +582,6 @@ public class FLVWriter implements ITagWriter {
         } catch (InterruptedException e) {
             log.warn("Exception acquiring lock", e);
         } finally {
-            // update the file information
-            updateInfoFile();
             // mark config written flags
             if (onWrittenSetAudioFlag && audioConfigWritten.compareAndSet(false, true)) {
                 log.trace("Audio configuration written");
@@ -617,8 +617,8 @@ public class FLVWriter implements ITagWriter {
             int bodySize = data.limit();
             log.debug("Tag body size: {}", bodySize);
             // ensure that the channel is still open
-            if (dataChannel != null) {
-                log.debug("Current file position: {}", dataChannel.position());
+            if (dataStream != null) {
+                log.debug("Current file position: {}", bytesWritten);
                 // set a var holding the entire tag size including the previous tag length
                 int totalTagSize = TAG_HEADER_LENGTH + bodySize + 4;
                 // create a buffer for this tag
@@ -651,16 +651,15 @@ public class FLVWriter implements ITagWriter {
                     //HexDump.dumpHex(sb, tagBuffer.array());
                     //log.debug("\n{}", sb);
                 }
-                // write the tag
-                dataChannel.write(tagBuffer);
-                bytesWritten = dataChannel.position();
-                if (log.isTraceEnabled()) {
-                    log.trace("Tag written, check value: {} (should be 0)", (bytesWritten - prevBytesWritten) - totalTagSize);
-                }
-                tagBuffer.clear();
                 // update the duration
                 duration = Math.max(duration, timestamp);
                 log.debug("Writer duration: {}", duration);
+                infoSnapshot = snapshotInfo();
+                // queue the tag, the buffer belongs to the recording scheduler from now on
+                bytesWritten = dataStream.write(tagBuffer);
+                if (log.isTraceEnabled()) {
+                    log.trace("Tag written, check value: {} (should be 0)", (bytesWritten - prevBytesWritten) - totalTagSize);
+                }
                 // validate written amount
                 if ((bytesWritten - prevBytesWritten) != totalTagSize) {
                     log.debug("Not all of the bytes appear to have been written, prev-current: {}", (bytesWritten - prevBytesWritten));
@@ -673,8 +672,6 @@ public class FLVWriter implements ITagWriter {
         } catch (InterruptedException e) {
             log.warn("Exception acquiring lock", e);
         } finally {
-            // update the file information
-            updateInfoFile();
             // release lock
             lock.release();
         }
@@ -685,7 +682,7 @@ public class FLVWriter implements ITagWriter {
     @Override
     public boolean writeStream(byte[] b) {
         try {
-            dataChannel.write(ByteBuffer.wrap(b));
+            bytesWritten = dataStream.write(ByteBuffer.wrap(b));
             return true;
         } catch (IOException e) {
             log.error("", e);
@@ -714,6 +711,9 @@ public class FLVWriter implements ITagWriter {
             log.debug("Previous flv data file existed and was removed");
         }
         this.dataChannel = Files.newByteChannel(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        // tags are written by the shared recording workers, which also keep the file information current
+        this.dataStream = RecordingScheduler.getInstance().open(filePath, dataChannel);
+        dataStream.setAfterWrite(this::updateInfoFile);
     }
 
     /**
@@ -851,6 +851,10 @@ public class FLVWriter implements ITagWriter {
         if (!finalized.get()) {
             log.debug("Finalizing {}", filePath);
             try {
+                // write out whatever is still queued for the data file
+                if (dataStream != null) {
+                    dataStream.close();
+                }
                 // read file info if it exists
                 File tmpFile = new File(filePath + ".info");
                 if (tmpFile.exists()) {
@@ -987,7 +991,7 @@ public class FLVWriter implements ITagWriter {
                             // set properties that the post processor requires or may require
                             postProcessor.init(filePath);
                             // execute and block
-                            executor.submit(postProcessor).get();
+                            postProcessor.run();
                         } catch (Throwable t) {
                             log.warn("Exception during post process on: {}", filePath, t);
                         }
@@ -1035,19 +1039,27 @@ public class FLVWriter implements ITagWriter {
     }
 
     /**
-     * Write or update flv file information into the pre-finalization file.
+     * Returns the flv file information in the order of the pre-finalization file. Called while holding the lock.
+     *
+     * @return file information
+     */
+    private int[] snapshotInfo() {
+        return new int[] { audioCodecId, videoCodecId, duration, audioDataSize, soundRate, soundSize, soundType ? 1 : 0, videoDataSize };
+    }
+
+    /**
+     * Write or update flv file information into the pre-finalization file. Run by the recording scheduler after each batch, it writes the
+     * information as of the last queued tag rather than reading the fields the writer thread is updating.
      */
     private void updateInfoFile() {
+        int[] snapshot = infoSnapshot;
+        if (snapshot == null) {
+            return;
+        }
         try (RandomAccessFile infoFile = new RandomAccessFile(filePath + ".info", "rw")) {
-            infoFile.writeInt(audioCodecId);
-            infoFile.writeInt(videoCodecId);
-            infoFile.writeInt(duration);
-            // additional props
-            infoFile.writeInt(audioDataSize);
-            infoFile.writeInt(soundRate);
-            infoFile.writeInt(soundSize);
-            infoFile.writeInt(soundType ? 1 : 0);
-            infoFile.writeInt(videoDataSize);
+            for (int value : snapshot) {
+                infoFile.writeInt(value);
+            }
         } catch (Exception e) {
             log.warn("Exception writing flv file information data", e);
         }
@@ -1073,9 +1085,6 @@ public class FLVWriter implements ITagWriter {
             if (locked) {
                 lock.release();
             }
-            if (executor != null && !executor.isTerminated()) {
-                executor.shutdown();
-            }
         }
     }
 
@@ -1131,6 +1140,15 @@ public class FLVWriter implements ITagWriter {
         return bytesWritten;
     }
 
+    /**
+     * Returns the number of bytes queued for the data file but not yet written.
+     *
+     * @return bytes
+     */
+    public long getPendingBytes() {
+        return dataStream != null ? dataStream.getPendingBytes() : 0L;
+    }
+
     public void setVideoCodecId(int videoCodecId) {
         this.videoCodecId = videoCodecId;
     }
@@ -1237,7 +1255,7 @@ public class FLVWriter implements ITagWriter {
         }
         if (writer != null) {
             // spawn a flv finalizer
-            Future<?> future = writer.submit(writer.new FLVFinalizer());
+            Future<?> future = RecordingScheduler.getInstance().submit(writer.new FLVFinalizer());
             try {
                 // get result / blocking
                 future.get();
@@ -1251,19 +1269,6 @@ public class FLVWriter implements ITagWriter {
         return result;
     }
 
-    /**
-     * Submits a finalizer internally.
-     *
-     * @param flvFinalizer
-     * @return Future representing task
-     */
-    private Future<?> submit(FLVFinalizer flvFinalizer) {
-        if (executor != null && !executor.isTerminated()) {
-            return executor.submit(flvFinalizer);
-        }
-        return null;
-    }
-
     /**
      * Exposed to allow repair of flv files if .info and .ser files still exist.
      *
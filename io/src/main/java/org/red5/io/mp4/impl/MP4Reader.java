@@ -13,7 +13,6 @@ import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -22,7 +21,6 @@ import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.mina.core.buffer.IoBuffer;
 import org.jcodec.codecs.h264.mp4.AvcCBox;
@@ -57,6 +55,7 @@ import org.jcodec.containers.mp4.boxes.TrackHeaderBox;
 import org.jcodec.containers.mp4.boxes.TrakBox;
 import org.jcodec.containers.mp4.boxes.VideoSampleEntry;
 import org.jcodec.containers.mp4.boxes.WaveExtension;
+import org.red5.io.FileBlockCache;
 import org.red5.io.IStreamableFile;
 import org.red5.io.ITag;
 import org.red5.io.ITagReader;
@@ -65,7 +64,6 @@ import org.red5.io.amf.Output;
 import org.red5.io.flv.IKeyFrameDataAnalyzer;
 import org.red5.io.flv.impl.Tag;
 import org.red5.io.isobmff.atom.ShortEsdsBox;
-import org.red5.io.mp4.MP4Frame;
 import org.red5.io.utils.HexDump;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -112,10 +110,10 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
      */
     private SeekableByteChannel dataSource;
 
-    /** Mapping between file position and timestamp in ms. */
-    private HashMap<Integer, Long> timePosMap;
-
-    private HashMap<Integer, Long> samplePosMap;
+    /**
+     * Registration with the shared block cache, null when reading the data source directly
+     */
+    private FileBlockCache.Handle blockCache;
 
     /** Whether or not the clip contains a video track */
     private boolean hasVideo = false;
@@ -186,7 +184,10 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
 
     private int prevVideoTS = -1;
 
-    private List<MP4Frame> frames = new ArrayList<>();
+    /**
+     * Sample table in playback order, shared with all other readers of the same file
+     */
+    private MP4SampleIndex index;
 
     private long audioCount;
 
@@ -200,11 +201,6 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
      */
     private LinkedList<ITag> firstTags = new LinkedList<>();
 
-    /**
-     * Container for seek points in the video. These are the time stamps for the key frames or samples.
-     */
-    private LinkedList<Integer> seekPoints;
-
     private final Semaphore lock = new Semaphore(1, true);
 
     /** Constructs a new MP4Reader. */
@@ -228,12 +224,43 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
         if (f.exists() && f.canRead()) {
             // create a datasource / channel
             dataSource = NIOUtils.readableChannel(f);
-            // parse the movie
-            parseMovie(dataSource);
-            // analyze the samples/chunks and build the keyframe meta data
-            analyzeFrames();
-            // add meta data
-            firstTags.add(createFileMeta());
+            blockCache = FileBlockCache.open(f);
+            // readers of an unchanged file share its parsed movie and sample index
+            MP4SampleIndex cached = MP4SampleIndex.lookup(f);
+            if (cached != null) {
+                index = cached;
+                hasAudio = cached.hasAudio;
+                hasVideo = cached.hasVideo;
+                audioCodecId = cached.audioCodecId;
+                videoCodecId = cached.videoCodecId;
+                audioDecoderBytes = cached.audioDecoderBytes;
+                videoDecoderBytes = cached.videoDecoderBytes;
+                duration = cached.duration;
+                // add meta data
+                IoBuffer buf = IoBuffer.wrap(cached.metaData.clone());
+                ITag meta = new Tag(IoConstants.TYPE_METADATA, 0, buf.limit(), null, 0);
+                meta.setBody(buf);
+                firstTags.add(meta);
+            } else {
+                // parse the movie
+                parseMovie(dataSource);
+                // analyze the samples/chunks and build the keyframe meta data
+                analyzeFrames();
+                // add meta data
+                ITag meta = createFileMeta();
+                firstTags.add(meta);
+                index.hasAudio = hasAudio;
+                index.hasVideo = hasVideo;
+                index.audioCodecId = audioCodecId;
+                index.videoCodecId = videoCodecId;
+                index.audioDecoderBytes = audioDecoderBytes;
+                index.videoDecoderBytes = videoDecoderBytes;
+                index.duration = duration;
+                IoBuffer body = meta.getBody();
+                index.metaData = new byte[body.remaining()];
+                body.duplicate().get(index.metaData);
+                MP4SampleIndex.store(f, index);
+            }
             // create / add the pre-streaming (decoder config) tags
             createPreStreamingTags(0, false);
         } else {
@@ -808,7 +835,7 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
      */
     @Override
     public boolean hasMoreTags() {
-        return currentFrame < frames.size();
+        return index != null && currentFrame < index.getSampleCount();
     }
 
     /**
@@ -878,6 +905,7 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
         // position of the moov atom
         //props.put("moovposition", moovOffset);
         //props.put("chapters", ""); //this is for f4b - books
+        List<Integer> seekPoints = index.getSeekPoints();
         if (seekPoints != null) {
             log.debug("Seekpoint list size: {}", seekPoints.size());
             props.put("seekpoints", seekPoints);
@@ -1009,7 +1037,7 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
             log.trace("Read tag - prevFrameSize {} audio: {} video: {}", new Object[] { prevFrameSize, audioCount, videoCount });
         }
         // ensure there are frames before proceeding
-        if (!frames.isEmpty()) {
+        if (index != null && index.getSampleCount() > 0) {
             try {
                 lock.acquire();
                 //log.debug("Read tag");
@@ -1020,16 +1048,15 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
                     return firstTags.removeFirst();
                 }
                 //get the current frame
-                MP4Frame frame = frames.get(currentFrame);
-                if (frame != null) {
-                    log.debug("Playback #{} {}", currentFrame, frame);
-                    int sampleSize = frame.getSize();
-                    int time = (int) Math.round(frame.getTime() * 1000.0);
+                if (currentFrame < index.getSampleCount()) {
+                    log.debug("Playback #{}", currentFrame);
+                    int sampleSize = index.getSize(currentFrame);
+                    int time = index.getTimestamp(currentFrame);
                     log.debug("Read tag - time: {}", time);
-                    long samplePos = frame.getOffset();
+                    long samplePos = index.getOffset(currentFrame);
                     log.debug("Read tag - samplePos {}", samplePos);
                     // determine frame type and packet body padding
-                    byte type = frame.getType();
+                    byte type = index.getType(currentFrame);
                     // assume video type
                     int pad = 5;
                     if (type == TYPE_AUDIO) {
@@ -1040,7 +1067,7 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
                     try {
                         // prefix is different for keyframes
                         if (type == TYPE_VIDEO) {
-                            if (frame.isKeyFrame()) {
+                            if (index.isKeyFrame(currentFrame)) {
                                 //log.debug("Writing keyframe prefix");
                                 data.put(PREFIX_VIDEO_KEYFRAME);
                             } else {
@@ -1070,9 +1097,14 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
                             audioCount++;
                         }
                         // do we need to add the mdat offset to the sample position?
-                        dataSource.setPosition(samplePos);
-                        // read from the channel
-                        dataSource.read(data);
+                        if (blockCache != null) {
+                            // read through the shared cache, the data source is only used on a miss
+                            blockCache.read(this::readDataSource, samplePos, data);
+                        } else {
+                            dataSource.setPosition(samplePos);
+                            // read from the channel
+                            dataSource.read(data);
+                        }
                     } catch (IOException e) {
                         log.error("Error on channel position / read", e);
                     }
@@ -1098,15 +1130,18 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
         return tag;
     }
 
+    private int readDataSource(ByteBuffer dst, long position) throws IOException {
+        dataSource.setPosition(position);
+        return dataSource.read(dst);
+    }
+
     /**
-     * Performs frame analysis and generates metadata for use in seeking. All the frames are analyzed and sorted together based on time and
-     * offset.
+     * Performs frame analysis and generates metadata for use in seeking. All the frames are analyzed and merged together based on time and
+     * offset into the sample index.
      */
     public void analyzeFrames() {
         log.debug("Analyzing frames - video samples/chunks: {}", videoSamplesToChunks);
-        // Maps positions, samples, timestamps to one another
-        timePosMap = new HashMap<>();
-        samplePosMap = new HashMap<>();
+        MP4SampleIndex.Builder builder = new MP4SampleIndex.Builder();
         // tag == sample
         int sample = 1;
         // position
@@ -1132,41 +1167,25 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
                     pos = videoChunkOffsets[(int) (chunk - 1)];
                     while (sampleCount > 0) {
                         //log.debug("Position: {}", pos);
-                        samplePosMap.put(sample, pos);
                         // calculate ts
                         double ts = (videoSampleDuration * (sample - 1)) / videoTimeScale;
                         // check to see if the sample is a keyframe
                         boolean keyframe = false;
                         // some files appear not to have sync samples
                         if (syncSamples != null) {
-                            keyframe = ArrayUtils.contains(syncSamples, sample);
-                            if (seekPoints == null) {
-                                seekPoints = new LinkedList<>();
-                            }
-                            // get the timestamp
-                            int frameTs = (int) Math.round(ts * 1000.0);
-                            // add each key frames timestamp to the seek points list
-                            if (keyframe) {
-                                seekPoints.add(frameTs);
-                            }
-                            timePosMap.put(frameTs, pos);
+                            // sync sample numbers are stored in ascending order
+                            keyframe = Arrays.binarySearch(syncSamples, sample) >= 0;
                         } else {
                             log.debug("No sync samples available");
                         }
                         // size of the sample
                         int size = (int) videoSamples[sample - 1];
-                        // create a frame
-                        MP4Frame frame = new MP4Frame();
-                        frame.setKeyFrame(keyframe);
-                        frame.setOffset(pos);
-                        frame.setSize(size);
-                        frame.setTime(ts);
-                        frame.setType(TYPE_VIDEO);
+                        int timeOffset = 0;
                         // set time offset value from composition records
                         if (compositeTimeEntry != null) {
                             // how many samples have this offset
                             int consecutiveSamples = compositeTimeEntry.getCount();
-                            frame.setTimeOffset(compositeTimeEntry.getOffset());
+                            timeOffset = compositeTimeEntry.getOffset();
                             // increment our count
                             compositeIndex++;
                             if (compositeIndex - consecutiveSamples == 0) {
@@ -1178,11 +1197,11 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
                                 // reset
                                 compositeIndex = 0;
                             }
-                            log.debug("Composite sample #{} {}", sample, frame);
+                            log.debug("Composite sample #{} offset: {}", sample, timeOffset);
                         }
                         // add the frame
-                        frames.add(frame);
-                        log.debug("Sample #{} {}", sample, frame);
+                        builder.addVideo(pos, size, ts, timeOffset, keyframe);
+                        log.debug("Sample #{} pos: {} size: {} ts: {} keyframe: {}", sample, pos, size, ts, keyframe);
                         // inc and dec stuff
                         pos += size;
                         sampleCount--;
@@ -1190,7 +1209,6 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
                     }
                 }
             }
-            log.debug("Sample position map (video): {}", samplePosMap);
         }
         // if video-only, skip this
         if (audioSamplesToChunks != null) {
@@ -1250,14 +1268,8 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
                         }
                         // set audio sample size
                         size = (int) (size != 0 ? size : audioSampleSize);
-                        // create a frame
-                        MP4Frame frame = new MP4Frame();
-                        frame.setOffset(pos);
-                        frame.setSize(size);
-                        frame.setTime(ts);
-                        frame.setType(TYPE_AUDIO);
-                        frames.add(frame);
-                        //log.debug("Sample #{} {}", sample, frame);
+                        // add the frame
+                        builder.addAudio(pos, size, ts);
                         // update counts
                         pos += size;
                         sampleCount--;
@@ -1266,10 +1278,9 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
                 }
             }
         }
-        // sort the frames
-        Collections.sort(frames);
-        log.debug("Frames count: {}", frames.size());
-        //log.debug("Frames: {}", frames);
+        // each track is already in time order, so they only need to be merged
+        index = builder.build(syncSamples != null);
+        log.debug("Frames count: {}", index.getSampleCount());
         //release some memory
         if (audioSamplesToChunks != null) {
             audioChunkOffsets = null;
@@ -1294,25 +1305,17 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
     public void position(long pos) {
         log.debug("Position: {}", pos);
         log.debug("Current frame: {}", currentFrame);
-        int len = frames.size();
-        MP4Frame frame = null;
-        for (int f = 0; f < len; f++) {
-            frame = frames.get(f);
-            long offset = frame.getOffset();
-            //look for pos to match frame offset or grab the first keyframe
-            //beyond the offset
-            if (pos == offset || (offset > pos && frame.isKeyFrame())) {
-                //ensure that it is a keyframe
-                if (!frame.isKeyFrame()) {
-                    log.debug("Frame #{} was not a key frame, so trying again..", f);
-                    continue;
-                }
-                log.info("Frame #{} found for seek: {}", f, frame);
-                createPreStreamingTags((int) (frame.getTime() * 1000), true);
-                currentFrame = f;
-                break;
+        //look for the first keyframe at or beyond the offset
+        int f = index != null ? index.findSeekPoint(pos) : -1;
+        if (f >= 0) {
+            log.info("Frame #{} found for seek: {}", f, index.getOffset(f));
+            createPreStreamingTags(index.getTimestamp(f), true);
+            currentFrame = f;
+            if (f > 0) {
+                prevVideoTS = index.getTimestamp(f - 1);
             }
-            prevVideoTS = (int) (frame.getTime() * 1000);
+        } else if (index != null && index.getSampleCount() > 0) {
+            prevVideoTS = index.getTimestamp(index.getSampleCount() - 1);
         }
         //
         log.debug("Setting current frame: {}", currentFrame);
@@ -1330,9 +1333,10 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
             } catch (IOException e) {
                 log.error("Channel close {}", e);
             } finally {
-                if (frames != null) {
-                    frames.clear();
-                    frames = null;
+                index = null;
+                if (blockCache != null) {
+                    blockCache.close();
+                    blockCache = null;
                 }
             }
         }
@@ -1355,28 +1359,12 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
         KeyFrameMeta result = new KeyFrameMeta();
         result.audioOnly = hasAudio && !hasVideo;
         result.duration = duration;
-        if (result.audioOnly) {
-            result.positions = new long[frames.size()];
-            result.timestamps = new int[frames.size()];
-            result.audioOnly = true;
-            for (int i = 0; i < result.positions.length; i++) {
-                frames.get(i).setKeyFrame(true);
-                result.positions[i] = frames.get(i).getOffset();
-                result.timestamps[i] = (int) Math.round(frames.get(i).getTime() * 1000.0);
-            }
+        // audio-only files may be seeked to any sample
+        if (index != null && index.hasSeekPoints()) {
+            result.positions = index.getSeekOffsets();
+            result.timestamps = index.getSeekTimestamps();
         } else {
-            if (seekPoints != null) {
-                int seekPointCount = seekPoints.size();
-                result.positions = new long[seekPointCount];
-                result.timestamps = new int[seekPointCount];
-                for (int idx = 0; idx < seekPointCount; idx++) {
-                    final Integer ts = seekPoints.get(idx);
-                    result.positions[idx] = timePosMap.get(ts);
-                    result.timestamps[idx] = ts;
-                }
-            } else {
-                log.warn("Seek points array was null");
-            }
+            log.warn("Seek points array was null");
         }
         return result;
     }
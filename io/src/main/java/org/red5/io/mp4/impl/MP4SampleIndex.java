@@ -0,0 +1,398 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.io.mp4.impl;
+
+import java.io.File;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.red5.io.IoConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sample table of an MP4 file, stored as primitive columns (offset, size, timestamp, composition offset and flags) in playback order, that
+ * is sorted by time and then by file offset. Along with the few movie level properties a reader needs, an index is immutable once built and
+ * is shared by all the readers of the same file; it is cached per path and modification time for as long as memory permits.
+ *
+ * @author The Red5 Project
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+public final class MP4SampleIndex {
+
+    private static Logger log = LoggerFactory.getLogger(MP4SampleIndex.class);
+
+    /** Flag for a video sample, audio otherwise */
+    public static final byte FLAG_VIDEO = 0x01;
+
+    /** Flag for a video sync sample */
+    public static final byte FLAG_KEYFRAME = 0x02;
+
+    /**
+     * Indexes keyed by absolute path
+     */
+    private static final ConcurrentMap<String, CacheEntry> cache = new ConcurrentHashMap<>();
+
+    private final long[] offsets;
+
+    private final int[] sizes;
+
+    private final int[] timestamps;
+
+    private final int[] timeOffsets;
+
+    private final byte[] flags;
+
+    /**
+     * Sample numbers of the video keyframes in playback order, null if the file has no sync sample table
+     */
+    private final int[] keyframes;
+
+    /**
+     * Whether or not the offsets of keyframes, respectively of all samples, increase with time, which allows seeking by offset to use a
+     * binary search
+     */
+    private final boolean keyframeOffsetsAscending, offsetsAscending;
+
+    // movie level properties, set once before the index is shared
+    boolean hasAudio, hasVideo;
+
+    String audioCodecId, videoCodecId;
+
+    byte[] audioDecoderBytes, videoDecoderBytes;
+
+    long duration;
+
+    /**
+     * Encoded body of the onMetaData tag
+     */
+    byte[] metaData;
+
+    private MP4SampleIndex(long[] offsets, int[] sizes, int[] timestamps, int[] timeOffsets, byte[] flags, int[] keyframes) {
+        this.offsets = offsets;
+        this.sizes = sizes;
+        this.timestamps = timestamps;
+        this.timeOffsets = timeOffsets;
+        this.flags = flags;
+        this.keyframes = keyframes;
+        boolean ascending = true;
+        for (int i = 1; keyframes != null && i < keyframes.length && ascending; i++) {
+            ascending = offsets[keyframes[i - 1]] < offsets[keyframes[i]];
+        }
+        this.keyframeOffsetsAscending = ascending;
+        ascending = true;
+        for (int i = 1; i < offsets.length && ascending; i++) {
+            ascending = offsets[i - 1] < offsets[i];
+        }
+        this.offsetsAscending = ascending;
+    }
+
+    /**
+     * Returns the cached index of the given file, if it was built from the file as it is now.
+     *
+     * @param file
+     *            MP4 file
+     * @return index or null if not cached
+     */
+    public static MP4SampleIndex lookup(File file) {
+        CacheEntry entry = cache.get(file.getAbsolutePath());
+        if (entry != null) {
+            if (entry.lastModified == file.lastModified()) {
+                MP4SampleIndex index = entry.index.get();
+                if (index != null) {
+                    log.debug("Using cached sample index for {}", file.getName());
+                    return index;
+                }
+            }
+            cache.remove(file.getAbsolutePath(), entry);
+        }
+        return null;
+    }
+
+    /**
+     * Caches the index of the given file.
+     *
+     * @param file
+     *            MP4 file
+     * @param index
+     *            fully populated index
+     */
+    public static void store(File file, MP4SampleIndex index) {
+        cache.put(file.getAbsolutePath(), new CacheEntry(file.lastModified(), index));
+    }
+
+    /**
+     * Removes all cached indexes.
+     */
+    public static void clearCache() {
+        cache.clear();
+    }
+
+    public int getSampleCount() {
+        return offsets.length;
+    }
+
+    public long getOffset(int sample) {
+        return offsets[sample];
+    }
+
+    public int getSize(int sample) {
+        return sizes[sample];
+    }
+
+    /**
+     * Returns the decoding time of a sample.
+     *
+     * @param sample
+     *            sample number in playback order
+     * @return time in milliseconds
+     */
+    public int getTimestamp(int sample) {
+        return timestamps[sample];
+    }
+
+    /**
+     * Returns the composition time offset of a sample as found in the ctts atom.
+     *
+     * @param sample
+     *            sample number in playback order
+     * @return offset in media time scale units
+     */
+    public int getTimeOffset(int sample) {
+        return timeOffsets[sample];
+    }
+
+    public byte getType(int sample) {
+        return (flags[sample] & FLAG_VIDEO) != 0 ? IoConstants.TYPE_VIDEO : IoConstants.TYPE_AUDIO;
+    }
+
+    public boolean isKeyFrame(int sample) {
+        return (flags[sample] & FLAG_KEYFRAME) != 0;
+    }
+
+    /**
+     * Returns whether or not this is an audio-only file, in which case every sample is a seek point.
+     *
+     * @return true if audio-only
+     */
+    public boolean isAudioOnly() {
+        return hasAudio && !hasVideo;
+    }
+
+    /**
+     * Returns whether or not the file has seek points.
+     *
+     * @return true if there are seek points
+     */
+    public boolean hasSeekPoints() {
+        return keyframes != null || isAudioOnly();
+    }
+
+    /**
+     * Returns the timestamps of the seek points in milliseconds.
+     *
+     * @return seek point timestamps, empty if there are none
+     */
+    public int[] getSeekTimestamps() {
+        if (isAudioOnly()) {
+            return timestamps.clone();
+        }
+        if (keyframes == null) {
+            return new int[0];
+        }
+        int[] result = new int[keyframes.length];
+        for (int i = 0; i < keyframes.length; i++) {
+            result[i] = timestamps[keyframes[i]];
+        }
+        return result;
+    }
+
+    /**
+     * Returns the file offsets of the seek points.
+     *
+     * @return seek point offsets, empty if there are none
+     */
+    public long[] getSeekOffsets() {
+        if (isAudioOnly()) {
+            return offsets.clone();
+        }
+        if (keyframes == null) {
+            return new long[0];
+        }
+        long[] result = new long[keyframes.length];
+        for (int i = 0; i < keyframes.length; i++) {
+            result[i] = offsets[keyframes[i]];
+        }
+        return result;
+    }
+
+    /**
+     * Returns the video keyframe timestamps for the seekpoints property of the metadata.
+     *
+     * @return keyframe timestamps or null if the file has no sync sample table
+     */
+    public List<Integer> getSeekPoints() {
+        if (keyframes == null) {
+            return null;
+        }
+        List<Integer> seekPoints = new ArrayList<>(keyframes.length);
+        for (int keyframe : keyframes) {
+            seekPoints.add(timestamps[keyframe]);
+        }
+        return seekPoints;
+    }
+
+    /**
+     * Finds the first seek point, in playback order, at or beyond the given file offset.
+     *
+     * @param pos
+     *            file offset
+     * @return sample number in playback order or -1 if there is none
+     */
+    public int findSeekPoint(long pos) {
+        boolean audioOnly = isAudioOnly();
+        if (!audioOnly && keyframes == null) {
+            return -1;
+        }
+        int count = audioOnly ? offsets.length : keyframes.length;
+        if (audioOnly ? offsetsAscending : keyframeOffsetsAscending) {
+            int low = 0, high = count - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                long offset = offsets[audioOnly ? mid : keyframes[mid]];
+                if (offset < pos) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return low < count ? (audioOnly ? low : keyframes[low]) : -1;
+        }
+        for (int i = 0; i < count; i++) {
+            int sample = audioOnly ? i : keyframes[i];
+            if (offsets[sample] >= pos) {
+                return sample;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Builds an index from the samples of one video and one audio track, each given in decoding order.
+     */
+    static final class Builder {
+
+        private final Track video = new Track(), audio = new Track();
+
+        void addVideo(long offset, int size, double time, int timeOffset, boolean keyframe) {
+            video.add(offset, size, time, timeOffset, (byte) (FLAG_VIDEO | (keyframe ? FLAG_KEYFRAME : 0)));
+        }
+
+        void addAudio(long offset, int size, double time) {
+            audio.add(offset, size, time, 0, (byte) 0);
+        }
+
+        /**
+         * Merges both tracks into playback order.
+         *
+         * @param hasSyncSamples
+         *            whether or not the video track has a sync sample table
+         * @return index
+         */
+        MP4SampleIndex build(boolean hasSyncSamples) {
+            int count = video.count + audio.count;
+            long[] offsets = new long[count];
+            int[] sizes = new int[count];
+            int[] timestamps = new int[count];
+            int[] timeOffsets = new int[count];
+            byte[] flags = new byte[count];
+            int[] keyframes = new int[video.keyframes];
+            int v = 0, a = 0, k = 0;
+            for (int i = 0; i < count; i++) {
+                Track track;
+                int idx;
+                if (a >= audio.count || (v < video.count && (video.times[v] < audio.times[a] || (video.times[v] == audio.times[a] && video.offsets[v] < audio.offsets[a])))) {
+                    track = video;
+                    idx = v++;
+                } else {
+                    track = audio;
+                    idx = a++;
+                }
+                offsets[i] = track.offsets[idx];
+                sizes[i] = track.sizes[idx];
+                timestamps[i] = (int) Math.round(track.times[idx] * 1000.0);
+                timeOffsets[i] = track.timeOffsets[idx];
+                flags[i] = track.flags[idx];
+                if ((flags[i] & FLAG_KEYFRAME) != 0) {
+                    keyframes[k++] = i;
+                }
+            }
+            return new MP4SampleIndex(offsets, sizes, timestamps, timeOffsets, flags, hasSyncSamples ? keyframes : null);
+        }
+
+    }
+
+    /**
+     * Growable columns of a single track.
+     */
+    private static final class Track {
+
+        long[] offsets = new long[64];
+
+        int[] sizes = new int[64];
+
+        double[] times = new double[64];
+
+        int[] timeOffsets = new int[64];
+
+        byte[] flags = new byte[64];
+
+        int count;
+
+        int keyframes;
+
+        void add(long offset, int size, double time, int timeOffset, byte flag) {
+            if (count == offsets.length) {
+                int capacity = count << 1;
+                offsets = Arrays.copyOf(offsets, capacity);
+                sizes = Arrays.copyOf(sizes, capacity);
+                times = Arrays.copyOf(times, capacity);
+                timeOffsets = Arrays.copyOf(timeOffsets, capacity);
+                flags = Arrays.copyOf(flags, capacity);
+            }
+            offsets[count] = offset;
+            sizes[count] = size;
+            times[count] = time;
+            timeOffsets[count] = timeOffset;
+            flags[count] = flag;
+            if ((flag & FLAG_KEYFRAME) != 0) {
+                keyframes++;
+            }
+            count++;
+        }
+
+    }
+
+    private static final class CacheEntry {
+
+        final long lastModified;
+
+        final SoftReference<MP4SampleIndex> index;
+
+        CacheEntry(long lastModified, MP4SampleIndex index) {
+            this.lastModified = lastModified;
+            this.index = new SoftReference<>(index);
+        }
+
+    }
+
+}
@@ -0,0 +1,345 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.io.object;
+
+import java.beans.BeanInfo;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.red5.annotations.Anonymous;
+import org.red5.io.utils.ConversionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reader and writer for the properties of a class, resolved once per class and kept with the class. The properties are accessed through
+ * method handles, so writing an object takes neither a bean map nor a cache lookup per property. The codecs are used by the AMF inputs and
+ * outputs when enabled, either with {@link #setEnabled(boolean)} or the <i>red5.io.classCodecs</i> system property.
+ *
+ * @author The Red5 Project
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+public final class ClassCodec {
+
+    private static final Logger log = LoggerFactory.getLogger(ClassCodec.class);
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private static final ClassValue<ClassCodec> codecs = new ClassValue<ClassCodec>() {
+        @Override
+        protected ClassCodec computeValue(Class<?> type) {
+            return new ClassCodec(type);
+        }
+    };
+
+    private static volatile boolean enabled = Boolean.getBoolean("red5.io.classCodecs");
+
+    private final String className;
+
+    private final boolean anonymous;
+
+    // bean properties, or public fields if the class has no bean properties
+    private final boolean fieldsOnly;
+
+    // properties to write, in the order the bean map would return them
+    private final Property[] properties;
+
+    // properties which can be set by name
+    private final Map<String, Property> writable;
+
+    private ClassCodec(Class<?> type) {
+        className = Serializer.getClassName(type);
+        anonymous = type.isAnnotationPresent(Anonymous.class);
+        // read methods keyed the way a bean map keys them, which keeps the property order of the output
+        Map<String, Method> readMethods = new HashMap<>();
+        Map<String, Method> writeMethods = new HashMap<>();
+        try {
+            BeanInfo beanInfo = Introspector.getBeanInfo(type);
+            for (PropertyDescriptor descriptor : beanInfo.getPropertyDescriptors()) {
+                if (descriptor.getReadMethod() != null) {
+                    readMethods.put(descriptor.getName(), descriptor.getReadMethod());
+                }
+                if (descriptor.getWriteMethod() != null) {
+                    writeMethods.put(descriptor.getName(), descriptor.getWriteMethod());
+                }
+            }
+        } catch (IntrospectionException e) {
+            log.warn("Introspection of {} failed", type, e);
+        }
+        List<Property> list = new ArrayList<>();
+        fieldsOnly = readMethods.isEmpty() || (readMethods.size() == 1 && readMethods.containsKey("class"));
+        if (fieldsOnly) {
+            for (Field field : type.getFields()) {
+                if (Serializer.serializeField(field.getName(), field, null)) {
+                    list.add(new Property(field.getName(), field, null, null));
+                }
+            }
+        } else {
+            for (Map.Entry<String, Method> entry : readMethods.entrySet()) {
+                String name = entry.getKey();
+                Field field = findField(type, name);
+                if (Serializer.serializeField(name, field, entry.getValue())) {
+                    list.add(new Property(name, field, entry.getValue(), null));
+                }
+            }
+        }
+        properties = list.toArray(new Property[0]);
+        // public fields are set before setters, as the readers always did
+        Map<String, Property> setters = new HashMap<>();
+        for (Map.Entry<String, Method> entry : writeMethods.entrySet()) {
+            setters.put(entry.getKey(), new Property(entry.getKey(), null, null, entry.getValue()));
+        }
+        for (Field field : type.getFields()) {
+            if (!Modifier.isStatic(field.getModifiers()) && !Modifier.isFinal(field.getModifiers())) {
+                setters.put(field.getName(), new Property(field.getName(), field, null, null));
+            }
+        }
+        writable = Collections.unmodifiableMap(setters);
+    }
+
+    /**
+     * Returns the codec of a class, creating it on first use.
+     *
+     * @param type
+     *            class
+     * @return codec
+     */
+    public static ClassCodec forClass(Class<?> type) {
+        return codecs.get(type);
+    }
+
+    /**
+     * Returns whether the AMF inputs and outputs use the class codecs.
+     *
+     * @return true if enabled
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Sets whether the AMF inputs and outputs use the class codecs instead of bean maps and reflection.
+     *
+     * @param enabled
+     *            true to enable
+     */
+    public static void setEnabled(boolean enabled) {
+        ClassCodec.enabled = enabled;
+    }
+
+    /**
+     * Returns the class name to write, which is the alias of a remote class.
+     *
+     * @return class name
+     */
+    public String getClassName() {
+        return className;
+    }
+
+    public boolean isAnonymous() {
+        return anonymous;
+    }
+
+    /**
+     * Returns whether the class is written from its public fields because it has no bean properties.
+     *
+     * @return true for public fields
+     */
+    public boolean isFieldsOnly() {
+        return fieldsOnly;
+    }
+
+    /**
+     * Returns the properties to write, the ones which are transient or not to be serialized are left out.
+     *
+     * @return properties
+     */
+    public Property[] getProperties() {
+        return properties;
+    }
+
+    /**
+     * Returns the property to set for a name.
+     *
+     * @param name
+     *            property name
+     * @return property or null if there is no public field or setter for the name
+     */
+    public Property getWritableProperty(String name) {
+        return writable.get(name);
+    }
+
+    private static Field findField(Class<?> type, String name) {
+        for (Class<?> clazz = type; clazz != null && !clazz.equals(Object.class); clazz = clazz.getSuperclass()) {
+            for (Field field : clazz.getDeclaredFields()) {
+                if (field.getName().equals(name)) {
+                    return field;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static MethodHandle unreflect(Method method, MethodType type) {
+        try {
+            method.setAccessible(true);
+            return MethodHandles.lookup().unreflect(method).asType(type);
+        } catch (Exception e) {
+            log.debug("No handle for {}", method, e);
+            return null;
+        }
+    }
+
+    private static MethodHandle unreflectGetter(Field field) {
+        try {
+            field.setAccessible(true);
+            return MethodHandles.lookup().unreflectGetter(field).asType(GETTER_TYPE);
+        } catch (Exception e) {
+            log.debug("No handle for {}", field, e);
+            return null;
+        }
+    }
+
+    private static MethodHandle unreflectSetter(Field field) {
+        try {
+            field.setAccessible(true);
+            return MethodHandles.lookup().unreflectSetter(field).asType(SETTER_TYPE);
+        } catch (Exception e) {
+            log.debug("No handle for {}", field, e);
+            return null;
+        }
+    }
+
+    /**
+     * Property of a class.
+     */
+    public static final class Property {
+
+        private final String name;
+
+        // name as written by AMF0
+        private final byte[] encodedName;
+
+        private final Field field;
+
+        private final Method getter;
+
+        private final MethodHandle get, set;
+
+        private final Class<?> type;
+
+        private final Type genericType;
+
+        private Property(String name, Field field, Method getter, Method setter) {
+            this.name = name;
+            this.encodedName = name.getBytes(StandardCharsets.UTF_8);
+            this.field = field;
+            this.getter = getter;
+            if (setter != null) {
+                get = null;
+                set = unreflect(setter, SETTER_TYPE);
+                type = setter.getParameterTypes()[0];
+                genericType = setter.getGenericParameterTypes()[0];
+            } else if (getter != null) {
+                get = unreflect(getter, GETTER_TYPE);
+                set = null;
+                type = getter.getReturnType();
+                genericType = getter.getGenericReturnType();
+            } else {
+                get = unreflectGetter(field);
+                set = Modifier.isFinal(field.getModifiers()) ? null : unreflectSetter(field);
+                type = field.getType();
+                genericType = field.getGenericType();
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public byte[] getEncodedName() {
+            return encodedName;
+        }
+
+        public Field getField() {
+            return field;
+        }
+
+        public Method getGetter() {
+            return getter;
+        }
+
+        public Type getGenericType() {
+            return genericType;
+        }
+
+        /**
+         * Reads the property of an object.
+         *
+         * @param object
+         *            object
+         * @return value
+         * @throws Throwable
+         *             exception thrown by the getter, or if the property cannot be read
+         */
+        public Object get(Object object) throws Throwable {
+            if (get == null) {
+                throw new IllegalAccessException("Property " + name + " cannot be read");
+            }
+            return (Object) get.invokeExact(object);
+        }
+
+        /**
+         * Sets the property of an object, converting the value to the type of the property if needed.
+         *
+         * @param object
+         *            object
+         * @param value
+         *            value
+         * @return true if the property was set
+         */
+        public boolean set(Object object, Object value) {
+            if (set == null) {
+                return false;
+            }
+            try {
+                if (value != null && !type.isInstance(value)) {
+                    value = ConversionUtils.convert(value, type);
+                }
+                set.invokeExact(object, value);
+                return true;
+            } catch (Throwable t) {
+                log.debug("Property {} could not be set to {}", name, value, t);
+                return false;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Property [name=" + name + ", type=" + type.getName() + "]";
+        }
+
+    }
+
+}
@@ -0,0 +1,94 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.codec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.Test;
+
+public class FrameRingBufferTest {
+
+    @Test
+    public void testCursorReplaysGroup() {
+        FrameRingBuffer frames = new FrameRingBuffer(16);
+        addGroup(frames, 0, 5);
+        assertEquals(1, frames.getKeyframes().length);
+        assertEquals(4, frames.getNumInterframes());
+        assertEquals(3, frames.getInterframe(2).getFrame().getInt());
+        assertNull(frames.getInterframe(4));
+        FrameRingBuffer.Cursor cursor = frames.attach();
+        assertNotNull(cursor);
+        FrameRingBuffer.Frame frame = cursor.poll();
+        assertTrue(frame.isKeyframe());
+        assertEquals(0, frame.getTimestamp());
+        for (int i = 1; i < 5; i++) {
+            frame = cursor.poll();
+            assertFalse(frame.isKeyframe());
+            assertEquals(i, frame.getFrame().getInt());
+        }
+        assertEquals(0, cursor.getLag());
+        assertNull(cursor.poll());
+        // frames added later are picked up
+        frames.add(frame(5), 5, false);
+        assertEquals(5, cursor.poll().getFrame().getInt());
+    }
+
+    @Test
+    public void testNewGroupEndsReplay() {
+        FrameRingBuffer frames = new FrameRingBuffer(16);
+        addGroup(frames, 0, 5);
+        FrameRingBuffer.Cursor cursor = frames.attach();
+        cursor.poll();
+        addGroup(frames, 5, 3);
+        // the cursor stops, the reader continues at the new keyframe
+        assertNull(cursor.poll());
+        FrameRingBuffer.Cursor late = frames.attach();
+        assertEquals(5, late.poll().getFrame().getInt());
+        // the frames of the ended group are released
+        assertEquals(2, frames.getNumInterframes());
+        assertEquals(6, frames.getInterframe(0).getFrame().getInt());
+    }
+
+    @Test
+    public void testOverflowedGroupIsNotReplayed() {
+        FrameRingBuffer frames = new FrameRingBuffer(8);
+        addGroup(frames, 0, 20);
+        assertNull(frames.attach());
+        assertEquals(0, frames.getKeyframes().length);
+        addGroup(frames, 20, 2);
+        assertNotNull(frames.attach());
+    }
+
+    @Test
+    public void testGroupWithoutKeyframe() {
+        FrameRingBuffer frames = new FrameRingBuffer(8);
+        frames.clear();
+        frames.add(frame(0), 0, false);
+        assertNull(frames.attach());
+        assertEquals(1, frames.getNumInterframes());
+    }
+
+    private static void addGroup(FrameRingBuffer frames, int first, int count) {
+        frames.clear();
+        for (int i = first; i < first + count; i++) {
+            frames.add(frame(i), i, i == first);
+        }
+    }
+
+    private static IoBuffer frame(int number) {
+        IoBuffer data = IoBuffer.allocate(4);
+        data.putInt(number).flip();
+        return data;
+    }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+package org.red5.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.red5.io.flv.IKeyFrameDataAnalyzer.KeyFrameMeta;
+
+public class BinaryKeyFrameMetaCacheTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("red5kfm").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        File flv = media("a.flv");
+        KeyFrameMeta meta = meta(1000);
+        meta.videoCodecId = 7;
+        meta.audioCodecId = 10;
+        // both the heap and the mapped read path
+        for (int threshold : new int[] { Integer.MAX_VALUE, 0 }) {
+            BinaryKeyFrameMetaCache cache = new BinaryKeyFrameMetaCache();
+            cache.setMapThreshold(threshold);
+            cache.saveKeyFrameMeta(flv, meta);
+            Assert.assertTrue(BinaryKeyFrameMetaCache.getSidecar(flv).exists());
+            KeyFrameMeta loaded = cache.loadKeyFrameMeta(flv);
+            Assert.assertArrayEquals(meta.positions, loaded.positions);
+            Assert.assertArrayEquals(meta.timestamps, loaded.timestamps);
+            Assert.assertEquals(meta.duration, loaded.duration);
+            Assert.assertEquals(7, loaded.videoCodecId);
+            Assert.assertEquals(10, loaded.audioCodecId);
+            Assert.assertFalse(loaded.audioOnly);
+            // second load is served from memory
+            Assert.assertSame(loaded, cache.loadKeyFrameMeta(flv));
+        }
+    }
+
+    @Test
+    public void testModifiedMediaInvalidatesIndex() throws IOException {
+        File flv = media("b.flv");
+        BinaryKeyFrameMetaCache cache = new BinaryKeyFrameMetaCache();
+        cache.saveKeyFrameMeta(flv, meta(10));
+        Assert.assertNotNull(cache.loadKeyFrameMeta(flv));
+        flv.setLastModified(flv.lastModified() + 5000L);
+        Assert.assertNull(cache.loadKeyFrameMeta(flv));
+        Assert.assertNull(new BinaryKeyFrameMetaCache().loadKeyFrameMeta(flv));
+        cache.saveKeyFrameMeta(flv, meta(10));
+        cache.removeKeyFrameMeta(flv);
+        Assert.assertFalse(BinaryKeyFrameMetaCache.getSidecar(flv).exists());
+        Assert.assertNull(cache.loadKeyFrameMeta(flv));
+    }
+
+    @Test
+    public void testLegacyMetaIsMigrated() throws IOException {
+        File flv = media("c.flv");
+        KeyFrameMeta meta = meta(5);
+        meta.audioOnly = true;
+        new FileKeyFrameMetaCache().saveKeyFrameMeta(flv, meta);
+        KeyFrameMeta loaded = new BinaryKeyFrameMetaCache().loadKeyFrameMeta(flv);
+        Assert.assertArrayEquals(meta.positions, loaded.positions);
+        Assert.assertTrue(loaded.audioOnly);
+        Assert.assertTrue(BinaryKeyFrameMetaCache.getSidecar(flv).exists());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() throws IOException {
+        BinaryKeyFrameMetaCache cache = new BinaryKeyFrameMetaCache();
+        cache.setMaxCacheEntry(2);
+        File[] files = { media("1.flv"), media("2.flv"), media("3.flv") };
+        for (File f : files) {
+            cache.saveKeyFrameMeta(f, meta(100));
+        }
+        KeyFrameMeta first = cache.loadKeyFrameMeta(files[0]);
+        cache.loadKeyFrameMeta(files[1]);
+        // touch the first so that the second is the oldest
+        cache.loadKeyFrameMeta(files[0]);
+        cache.loadKeyFrameMeta(files[2]);
+        Assert.assertEquals(2, cache.getCacheEntryCount());
+        Assert.assertSame(first, cache.loadKeyFrameMeta(files[0]));
+        Assert.assertEquals(2 * (64L + 100 * 12L), cache.getCacheBytes());
+    }
+
+    private File media(String name) throws IOException {
+        File f = new File(dir, name);
+        Files.write(f.toPath(), new byte[] { 'F', 'L', 'V', 1 });
+        f.setLastModified(1481275039000L);
+        return f;
+    }
+
+    private static KeyFrameMeta meta(int count) {
+        KeyFrameMeta meta = new KeyFrameMeta();
+        meta.duration = count * 1000L;
+        meta.positions = new long[count];
+        meta.timestamps = new int[count];
+        for (int i = 0; i < count; i++) {
+            meta.positions[i] = 13L + i * 4096L;
+            meta.timestamps[i] = i * 1000;
+        }
+        return meta;
+    }
+
+}
@@ -0,0 +1,141 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+package org.red5.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.red5.io.flv.impl.FLVReader;
+
+public class FileBlockCacheTest {
+
+    private File file;
+
+    private byte[] content;
+
+    private FileBlockCache cache;
+
+    @Before
+    public void setUp() throws IOException {
+        content = new byte[10000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i * 31);
+        }
+        file = File.createTempFile("red5", "BlockCacheTest");
+        Files.write(file.toPath(), content);
+        cache = new FileBlockCache();
+        cache.setEnabled(true);
+        cache.setBlockSize(1024);
+        cache.setMaxBytes(4096);
+        FileBlockCache.setInstance(cache);
+    }
+
+    @After
+    public void tearDown() {
+        FileBlockCache.setInstance(null);
+        file.delete();
+    }
+
+    @Test
+    public void testColdFileBypassesCache() throws IOException {
+        FileBlockCache.Handle handle = FileBlockCache.open(file);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer dst = ByteBuffer.allocate(100);
+            Assert.assertEquals(100, handle.read(channel::read, 500, dst));
+            Assert.assertEquals(0, cache.getBlockCount());
+            Assert.assertEquals(1L, cache.getBypassed());
+        }
+        handle.close();
+    }
+
+    @Test
+    public void testHotFileIsReadOnce() throws IOException {
+        FileBlockCache.Handle first = FileBlockCache.open(file);
+        FileBlockCache.Handle second = FileBlockCache.open(file);
+        AtomicInteger diskReads = new AtomicInteger();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            FileBlockCache.BlockSource source = (dst, position) -> {
+                diskReads.incrementAndGet();
+                return channel.read(dst, position);
+            };
+            // spans the first two blocks
+            ByteBuffer dst = ByteBuffer.allocate(1500);
+            Assert.assertEquals(1500, first.read(source, 100, dst));
+            assertContent(dst, 100);
+            int reads = diskReads.get();
+            dst.clear();
+            Assert.assertEquals(1500, second.read(source, 100, dst));
+            assertContent(dst, 100);
+            Assert.assertEquals(reads, diskReads.get());
+            Assert.assertEquals(2L, cache.getMisses());
+            Assert.assertEquals(2L, cache.getHits());
+            // the partial block at the end of the file is returned but not kept
+            dst.clear();
+            Assert.assertEquals(500, first.read(source, 9500, dst));
+            Assert.assertEquals(2, cache.getBlockCount());
+            dst.clear();
+            Assert.assertEquals(-1, first.read(source, 10000, dst));
+        }
+        first.close();
+        second.close();
+    }
+
+    @Test
+    public void testEvictionKeepsBudget() throws IOException {
+        FileBlockCache.Handle first = FileBlockCache.open(file);
+        FileBlockCache.Handle second = FileBlockCache.open(file);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer dst = ByteBuffer.allocate(9216);
+            Assert.assertEquals(9216, first.read(channel::read, 0, dst));
+            assertContent(dst, 0);
+            Assert.assertTrue(cache.getCachedBytes() <= cache.getMaxBytes());
+            Assert.assertTrue(cache.getEvictions() > 0);
+        }
+        first.close();
+        second.close();
+    }
+
+    @Test
+    public void testReaderReadsThroughCache() throws IOException {
+        File flv = new File("target/test-classes/fixtures/h264_aac.flv");
+        FLVReader plain = new FLVReader(flv);
+        cache.setBlockSize(64 * 1024);
+        cache.setMaxBytes(1024 * 1024);
+        FLVReader first = new FLVReader(flv);
+        FLVReader second = new FLVReader(flv);
+        int tags = 0;
+        while (plain.hasMoreTags() && tags++ < 200) {
+            ITag expected = plain.readTag();
+            ITag a = first.readTag();
+            ITag b = second.readTag();
+            Assert.assertEquals(expected.getTimestamp(), a.getTimestamp());
+            Assert.assertEquals(expected.getBody(), a.getBody());
+            Assert.assertEquals(expected.getBody(), b.getBody());
+        }
+        Assert.assertTrue(cache.getHits() > 0);
+        plain.close();
+        first.close();
+        second.close();
+    }
+
+    private void assertContent(ByteBuffer dst, int offset) {
+        dst.flip();
+        for (int i = 0; dst.hasRemaining(); i++) {
+            Assert.assertEquals(content[offset + i], dst.get());
+        }
+    }
+
+}
@@ -0,0 +1,168 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+package org.red5.io;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.red5.io.flv.impl.FLVReader;
+import org.red5.io.flv.impl.FLVWriter;
+import org.red5.io.flv.impl.Tag;
+
+public class RecordingSchedulerTest {
+
+    private RecordingScheduler scheduler;
+
+    private List<File> files = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        scheduler = new RecordingScheduler();
+        scheduler.setThreads(2);
+        scheduler.setMaxBatchBytes(64 * 1024);
+        scheduler.setGroupCommit(true);
+        RecordingScheduler.setInstance(scheduler);
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.destroy();
+        RecordingScheduler.setInstance(null);
+        for (File file : files) {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testStreamsAreWrittenInOrder() throws IOException {
+        int recordings = 20, writes = 500;
+        List<FileChannel> channels = new ArrayList<>();
+        List<RecordingScheduler.Stream> streams = new ArrayList<>();
+        for (int i = 0; i < recordings; i++) {
+            File file = createFile();
+            FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+            channels.add(channel);
+            streams.add(scheduler.open(file.getName(), channel));
+        }
+        Assert.assertEquals(recordings, scheduler.getStreamCount());
+        for (int w = 0; w < writes; w++) {
+            for (RecordingScheduler.Stream stream : streams) {
+                ByteBuffer buf = ByteBuffer.allocate(4);
+                buf.putInt(w).flip();
+                stream.write(buf);
+            }
+        }
+        for (int i = 0; i < recordings; i++) {
+            streams.get(i).close();
+            Assert.assertEquals(0L, streams.get(i).getPendingBytes());
+            channels.get(i).close();
+            ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(files.get(i).toPath()));
+            Assert.assertEquals(writes * 4, content.remaining());
+            for (int w = 0; w < writes; w++) {
+                Assert.assertEquals(w, content.getInt());
+            }
+        }
+        Assert.assertEquals(0, scheduler.getStreamCount());
+        Assert.assertEquals((long) recordings * writes, scheduler.getWrites());
+        // writes are gathered and synced per batch, not one by one
+        Assert.assertTrue(scheduler.getBatches() < scheduler.getWrites());
+        Assert.assertEquals(scheduler.getBatches(), scheduler.getSyncs());
+    }
+
+    @Test(expected = ClosedChannelException.class)
+    public void testClosedStreamRejectsWrites() throws IOException {
+        File file = createFile();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            RecordingScheduler.Stream stream = scheduler.open(file.getName(), channel);
+            stream.close();
+            stream.write(ByteBuffer.allocate(1));
+        }
+    }
+
+    @Test
+    public void testWriterRecordsThroughScheduler() throws IOException {
+        File file = createFile();
+        files.add(new File(file.getPath() + ".ser"));
+        files.add(new File(file.getPath() + ".info"));
+        FLVWriter writer = new FLVWriter(file.toPath(), false);
+        int tags = 100;
+        for (int i = 0; i < tags; i++) {
+            // nellymoser audio
+            byte[] body = new byte[] { (byte) 0x62, (byte) i, (byte) i, (byte) i };
+            Assert.assertTrue(writer.writeTag(new Tag(ITag.TYPE_AUDIO, i * 20, body.length, IoBuffer.wrap(body), 0)));
+        }
+        writer.close();
+        Assert.assertEquals(0L, writer.getPendingBytes());
+        FLVReader reader = new FLVReader(file);
+        int read = 0;
+        while (reader.hasMoreTags()) {
+            ITag tag = reader.readTag();
+            if (tag.getDataType() == ITag.TYPE_AUDIO) {
+                Assert.assertEquals(read * 20, tag.getTimestamp());
+                Assert.assertEquals(read, tag.getBody().get(1));
+                read++;
+            }
+        }
+        reader.close();
+        Assert.assertEquals(tags, read);
+    }
+
+    @Test
+    public void testInfoFileMatchesQueuedTags() throws Exception {
+        File file = createFile();
+        File info = new File(file.getPath() + ".info");
+        files.add(new File(file.getPath() + ".ser"));
+        files.add(info);
+        FLVWriter writer = new FLVWriter(file.toPath(), false);
+        int tags = 50;
+        for (int i = 0; i < tags; i++) {
+            byte[] body = new byte[] { (byte) 0x62, (byte) i, (byte) i, (byte) i };
+            Assert.assertTrue(writer.writeTag(new Tag(ITag.TYPE_AUDIO, i * 20, body.length, IoBuffer.wrap(body), 0)));
+        }
+        // the worker writes the info file after the last batch, as of the last queued tag
+        int[] values = new int[8];
+        long deadline = System.currentTimeMillis() + 5000L;
+        do {
+            Thread.sleep(10L);
+            if (info.length() == values.length * 4) {
+                try (DataInputStream in = new DataInputStream(new FileInputStream(info))) {
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = in.readInt();
+                    }
+                }
+            }
+        } while (values[2] != (tags - 1) * 20 && System.currentTimeMillis() < deadline);
+        // nellymoser, no video
+        Assert.assertEquals(6, values[0]);
+        Assert.assertEquals(-1, values[1]);
+        Assert.assertEquals((tags - 1) * 20, values[2]);
+        Assert.assertEquals(tags * 4, values[3]);
+        Assert.assertEquals(0, values[7]);
+        writer.close();
+    }
+
+    private File createFile() throws IOException {
+        File file = File.createTempFile("red5", "RecordingSchedulerTest.flv");
+        files.add(file);
+        return file;
+    }
+
+}
@@ -47,6 +47,41 @@ public class MP4ReaderTest extends TestCase {
         log.info("----------------------------------------------------------------------------------");
     }
 
+    @Test
+    public void testSampleIndex() throws Exception {
+        File file = new File("target/test-classes/fixtures/sample.mp4");
+        MP4SampleIndex.clearCache();
+        MP4Reader first = new MP4Reader(file);
+        MP4SampleIndex index = MP4SampleIndex.lookup(file);
+        assertNotNull(index);
+        assertTrue(index.getSampleCount() > 0);
+        for (int i = 1; i < index.getSampleCount(); i++) {
+            assertTrue(index.getTimestamp(i - 1) <= index.getTimestamp(i));
+        }
+        // a second reader of the same file gets the same tags from the cached index
+        MP4Reader second = new MP4Reader(file);
+        assertSame(index, MP4SampleIndex.lookup(file));
+        KeyFrameMeta meta = first.analyzeKeyFrames();
+        assertEquals(meta.positions.length, second.analyzeKeyFrames().positions.length);
+        for (int t = 0; t < 32 && first.hasMoreTags(); t++) {
+            ITag expected = first.readTag();
+            ITag actual = second.readTag();
+            assertEquals(expected.getDataType(), actual.getDataType());
+            assertEquals(expected.getTimestamp(), actual.getTimestamp());
+            assertEquals(expected.getBody(), actual.getBody());
+        }
+        // seeking to a keyframe position continues from that keyframe
+        int last = meta.positions.length - 1;
+        second.position(meta.positions[last]);
+        ITag tag;
+        do {
+            tag = second.readTag();
+        } while (tag.getTimestamp() < meta.timestamps[last] && second.hasMoreTags());
+        assertEquals(meta.timestamps[last], tag.getTimestamp());
+        first.close();
+        second.close();
+    }
+
     @Test
     public void testBytes() throws Exception {
         //00 40 94 00 00 00 00 00 00 00 06 ==
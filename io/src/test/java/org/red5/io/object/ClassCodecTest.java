@@ -0,0 +1,99 @@
+package org.red5.io.object;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.After;
+import org.junit.Test;
+import org.red5.io.TestJavaBean;
+
+public class ClassCodecTest {
+
+    @After
+    public void tearDown() {
+        ClassCodec.setEnabled(false);
+    }
+
+    @Test
+    public void testCodecIsKeptWithTheClass() {
+        ClassCodec codec = ClassCodec.forClass(TestJavaBean.class);
+        assertSame(codec, ClassCodec.forClass(TestJavaBean.class));
+        assertEquals(TestJavaBean.class.getName(), codec.getClassName());
+        // the class property is not written
+        for (ClassCodec.Property property : codec.getProperties()) {
+            assertTrue(!"class".equals(property.getName()));
+        }
+        assertNull(codec.getWritableProperty("class"));
+        assertTrue(ClassCodec.forClass(Point.class).isFieldsOnly());
+    }
+
+    @Test
+    public void testOutputMatchesBeanMapOutput() {
+        TestJavaBean bean = new TestJavaBean();
+        bean.setTestDate(new Date(1000000L));
+        Point point = new Point();
+        point.x = 3;
+        for (boolean amf3 : new boolean[] { false, true }) {
+            for (Object object : new Object[] { bean, point }) {
+                ClassCodec.setEnabled(false);
+                byte[] expected = write(object, amf3);
+                ClassCodec.setEnabled(true);
+                assertArrayEquals(expected, write(object, amf3));
+            }
+        }
+    }
+
+    @Test
+    public void testRoundTrip() {
+        ClassCodec.setEnabled(true);
+        TestJavaBean bean = new TestJavaBean();
+        bean.setTestString("codec");
+        bean.setTestPrimitiveNumber(42);
+        bean.setTestNumberObject(Integer.valueOf(7));
+        bean.setTestBoolean(false);
+        Point point = new Point();
+        point.x = 5;
+        point.label = "five";
+        for (boolean amf3 : new boolean[] { false, true }) {
+            TestJavaBean beanOut = (TestJavaBean) read(write(bean, amf3), amf3);
+            assertEquals("codec", beanOut.getTestString());
+            assertEquals(42, beanOut.getTestPrimitiveNumber());
+            assertEquals(Integer.valueOf(7), beanOut.getTestNumberObject());
+            assertEquals(false, beanOut.isTestBoolean());
+            Point pointOut = (Point) read(write(point, amf3), amf3);
+            assertEquals(5, pointOut.x);
+            assertEquals("five", pointOut.label);
+        }
+    }
+
+    private static byte[] write(Object object, boolean amf3) {
+        IoBuffer buf = IoBuffer.allocate(256).setAutoExpand(true);
+        Serializer.serialize(amf3 ? new org.red5.io.amf3.Output(buf) : new org.red5.io.amf.Output(buf), object);
+        buf.flip();
+        byte[] bytes = new byte[buf.remaining()];
+        buf.get(bytes);
+        return bytes;
+    }
+
+    private static Object read(byte[] bytes, boolean amf3) {
+        IoBuffer buf = IoBuffer.wrap(bytes);
+        return Deserializer.deserialize(amf3 ? new org.red5.io.amf3.Input(buf) : new org.red5.io.amf.Input(buf), Object.class);
+    }
+
+    public static class Point {
+
+        public int x;
+
+        public String label;
+
+        public transient int hidden;
+
+    }
+
+}
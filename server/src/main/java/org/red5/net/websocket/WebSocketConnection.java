@@ -8,6 +8,7 @@
 package org.red5.net.websocket;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.UnsupportedEncodingException;
 import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
@@ -18,9 +19,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 import java.util.stream.Stream;
@@ -29,11 +28,16 @@ import javax.websocket.CloseReason;
 import javax.websocket.CloseReason.CloseCode;
 import javax.websocket.CloseReason.CloseCodes;
 import javax.websocket.Extension;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
 import javax.websocket.Session;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.tomcat.websocket.Constants;
 import org.apache.tomcat.websocket.WsSession;
+import org.red5.net.websocket.WebSocketOutboundQueue.OverflowPolicy;
+import org.red5.net.websocket.model.WSMessage.MessageType;
+import org.red5.net.websocket.model.WSOutboundMessage;
 import org.red5.server.AttributeStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -59,6 +63,11 @@ public class WebSocketConnection extends AttributeStore implements Comparable<We
 
     private static long sendTimeout = 8000L, readTimeout = 30000L;
 
+    // outbound queue settings
+    private static int outboundQueueSize = 256;
+
+    private static OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+
     private static final AtomicLongFieldUpdater<WebSocketConnection> readBytesUpdater = AtomicLongFieldUpdater.newUpdater(WebSocketConnection.class, "readBytes");
 
     private static final AtomicLongFieldUpdater<WebSocketConnection> writeBytesUpdater = AtomicLongFieldUpdater.newUpdater(WebSocketConnection.class, "writtenBytes");
@@ -105,8 +114,8 @@ public class WebSocketConnection extends AttributeStore implements Comparable<We
     // stats
     private volatile long readBytes, writtenBytes;
 
-    // send future for when async is enabled
-    private Future<Void> sendFuture;
+    // messages waiting to be sent asynchronously
+    private final WebSocketOutboundQueue outbound;
 
     public WebSocketConnection(WebSocketScope scope, Session session) {
         log.debug("New WebSocket - scope: {} session: {}", scope, session);
@@ -129,6 +138,41 @@ public class WebSocketConnection extends AttributeStore implements Comparable<We
         }
         hashCode = wsSessionId.hashCode();
         log.info("ws id: {} hashCode: {}", wsSessionId, hashCode);
+        outbound = new WebSocketOutboundQueue(outboundQueueSize, overflowPolicy, new WebSocketOutboundQueue.Sender() {
+
+            public void send(WSOutboundMessage message, SendHandler handler) {
+                updateWriteBytes(message.getLength());
+                if (useAsync) {
+                    if (message.getMessageType() == MessageType.TEXT) {
+                        wsSession.getAsyncRemote().sendText(message.getText(), handler);
+                    } else {
+                        wsSession.getAsyncRemote().sendBinary(message.getPayload(), handler);
+                    }
+                } else {
+                    // blocking sends, the queue is drained on the sending thread
+                    SendResult result;
+                    try {
+                        synchronized (wsSessionId) {
+                            if (message.getMessageType() == MessageType.TEXT) {
+                                wsSession.getBasicRemote().sendText(message.getText());
+                            } else {
+                                wsSession.getBasicRemote().sendBinary(message.getPayload());
+                            }
+                        }
+                        result = new SendResult();
+                    } catch (Exception e) {
+                        result = new SendResult(e);
+                    }
+                    handler.onResult(result);
+                }
+            }
+
+            public void overflow() {
+                log.warn("Outbound queue overflow {}", wsSessionId);
+                close(CloseCodes.TRY_AGAIN_LATER, "Outbound queue overflow");
+            }
+
+        });
         // get extensions
         List<Extension> extList = session.getNegotiatedExtensions();
         if (extList != null) {
@@ -194,34 +238,18 @@ public class WebSocketConnection extends AttributeStore implements Comparable<We
         if (StringUtils.isNotBlank(data)) {
             // attempt send only if the session is not closed
             if (!wsSession.isClosed()) {
-                try {
-                    if (useAsync) {
-                        if (sendFuture != null && !sendFuture.isDone()) {
-                            try {
-                                sendFuture.get(sendTimeout, TimeUnit.MILLISECONDS);
-                            } catch (TimeoutException e) {
-                                log.warn("Send timed out {}", wsSessionId);
-                                // if the session is not open, cancel the future
-                                if (!wsSession.isOpen()) {
-                                    sendFuture.cancel(true);
-                                    return;
-                                }
-                            }
-                        }
-                        synchronized (wsSessionId) {
-                            int lengthToWrite = data.getBytes().length;
-                            sendFuture = wsSession.getAsyncRemote().sendText(data);
-                            updateWriteBytes(lengthToWrite);
-                        }
-                    } else {
+                if (useAsync) {
+                    queue(WSOutboundMessage.text(data));
+                } else {
+                    try {
                         synchronized (wsSessionId) {
                             int lengthToWrite = data.getBytes().length;
                             wsSession.getBasicRemote().sendText(data);
                             updateWriteBytes(lengthToWrite);
                         }
+                    } catch (Exception e) {
+                        log.warn("Send text exception", e);
                     }
-                } catch (Exception e) {
-                    log.warn("Send text exception", e);
                 }
             } else {
                 throw new IOException("WS session closed");
@@ -242,38 +270,62 @@ public class WebSocketConnection extends AttributeStore implements Comparable<We
             log.debug("send binary: {}", Arrays.toString(buf));
         }
         if (!wsSession.isClosed()) {
-            try {
-                // send the bytes
-                if (useAsync) {
-                    if (sendFuture != null && !sendFuture.isDone()) {
-                        try {
-                            sendFuture.get(sendTimeout, TimeUnit.MILLISECONDS);
-                        } catch (TimeoutException e) {
-                            log.warn("Send timed out {}", wsSessionId);
-                            if (!isConnected()) {
-                                sendFuture.cancel(true);
-                                return;
-                            }
-                        }
-                    }
-                    synchronized (wsSessionId) {
-                        sendFuture = wsSession.getAsyncRemote().sendBinary(ByteBuffer.wrap(buf));
-                        updateWriteBytes(buf.length);
-                    }
-                } else {
+            // send the bytes
+            if (useAsync) {
+                queue(WSOutboundMessage.binary(buf));
+            } else {
+                try {
                     synchronized (wsSessionId) {
                         wsSession.getBasicRemote().sendBinary(ByteBuffer.wrap(buf));
                         updateWriteBytes(buf.length);
                     }
+                } catch (Exception e) {
+                    log.warn("Send bytes exception", e);
                 }
-            } catch (Exception e) {
-                log.warn("Send bytes exception", e);
             }
         } else {
             throw new IOException("WS session closed");
         }
     }
 
+    /**
+     * Queues a message which must not be dropped, waiting up to the send timeout for room in the outbound queue.
+     *
+     * @param message
+     *            message
+     * @throws IOException
+     *             if the message could not be queued
+     */
+    private void queue(WSOutboundMessage message) throws IOException {
+        try {
+            if (!outbound.offer(message, sendTimeout)) {
+                if (wsSession.isClosed()) {
+                    throw new IOException("WS session closed");
+                }
+                log.warn("Outbound queue full for {}ms, message not sent {}", sendTimeout, wsSessionId);
+                throw new IOException("Outbound queue full");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for room in the outbound queue");
+        }
+    }
+
+    /**
+     * Queues a message to be sent to the client without waiting for the messages queued before. The message is dropped if the outbound
+     * queue is full, or the connection is closed, depending on the overflow policy.
+     *
+     * @param message
+     *            message
+     * @return true if the message was queued, false if it was dropped or the session is closed
+     */
+    public boolean send(WSOutboundMessage message) {
+        if (wsSession.isClosed()) {
+            return false;
+        }
+        return outbound.offer(message);
+    }
+
     /**
      * Sends a ping to the client.
      *
@@ -340,6 +392,7 @@ public class WebSocketConnection extends AttributeStore implements Comparable<We
                 reasonPhrase = "";
             }
             log.debug("close: {} code: {} reason: {}", wsSessionId, code, reasonPhrase);
+            outbound.close();
             try {
                 // close the session if open
                 if (wsSession.isOpen()) {
@@ -634,6 +687,77 @@ public class WebSocketConnection extends AttributeStore implements Comparable<We
         WebSocketConnection.sendTimeout = sendTimeout;
     }
 
+    public static int getOutboundQueueSize() {
+        return outboundQueueSize;
+    }
+
+    /**
+     * Sets the number of messages which may be waiting to be sent to a connection, applies to connections created afterwards.
+     *
+     * @param outboundQueueSize
+     */
+    public static void setOutboundQueueSize(int outboundQueueSize) {
+        WebSocketConnection.outboundQueueSize = outboundQueueSize;
+    }
+
+    public static OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * Sets what to do with messages which do not fit into the outbound queue, applies to connections created afterwards.
+     *
+     * @param overflowPolicy
+     */
+    public static void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        WebSocketConnection.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Returns the number of messages waiting to be sent.
+     *
+     * @return queued messages
+     */
+    public int getOutboundQueueLength() {
+        return outbound.size();
+    }
+
+    /**
+     * Returns how long the oldest message waiting to be sent has been queued.
+     *
+     * @return milliseconds
+     */
+    public long getOutboundLag() {
+        return outbound.getLag();
+    }
+
+    /**
+     * Returns the longest time a message waited to be sent.
+     *
+     * @return milliseconds
+     */
+    public long getMaxOutboundLag() {
+        return outbound.getMaxLag();
+    }
+
+    /**
+     * Returns the number of messages dropped because the outbound queue was full.
+     *
+     * @return dropped messages
+     */
+    public long getDroppedMessages() {
+        return outbound.getDroppedCount();
+    }
+
+    /**
+     * Returns the number of queued messages replaced by a newer message with the same key.
+     *
+     * @return coalesced messages
+     */
+    public long getCoalescedMessages() {
+        return outbound.getCoalescedCount();
+    }
+
     public static long getReadTimeout() {
         return readTimeout;
     }
@@ -0,0 +1,341 @@
+/*
+ * RED5 Open Source Flash Server - https://github.com/red5 Copyright 2006-2018 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.net.websocket;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.websocket.SendHandler;
+
+import org.red5.net.websocket.model.WSOutboundMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded queue of the messages waiting to be sent to a connection. Messages are handed to the sender one at a time and the next one
+ * follows from the completion of the previous send, so nobody waits for a slow client; the queue fills up instead and the overflow policy
+ * decides what gives. Messages which must not be lost are offered with a timeout instead, which waits for room in the queue.
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+public class WebSocketOutboundQueue {
+
+    private static final Logger log = LoggerFactory.getLogger(WebSocketOutboundQueue.class);
+
+    /**
+     * What to do with a message which does not fit into a full queue.
+     */
+    public enum OverflowPolicy {
+        // drop the oldest queued message to make room
+        DROP_OLDEST,
+        // drop the new message
+        DROP_NEWEST,
+        // drop the new message and let the sender close the connection
+        DISCONNECT;
+    }
+
+    /**
+     * Sends the messages of a queue.
+     */
+    public interface Sender {
+
+        /**
+         * Starts sending a message, the handler is called once it has been written or failed.
+         *
+         * @param message
+         *            message
+         * @param handler
+         *            completion handler
+         */
+        void send(WSOutboundMessage message, SendHandler handler);
+
+        /**
+         * Called when a message did not fit into the queue and the policy is {@link OverflowPolicy#DISCONNECT}.
+         */
+        default void overflow() {
+        }
+
+    }
+
+    private final int capacity;
+
+    private final OverflowPolicy policy;
+
+    private final Sender sender;
+
+    // guarded by this
+    private final ArrayDeque<Entry> queue = new ArrayDeque<>();
+
+    // queued entries with a coalescing key, guarded by this
+    private final Map<Object, Entry> keyed = new HashMap<>();
+
+    // whether a send is in progress, guarded by this
+    private boolean sending;
+
+    private boolean closed;
+
+    private final AtomicLong sent = new AtomicLong(), dropped = new AtomicLong(), coalesced = new AtomicLong();
+
+    private volatile long maxLag;
+
+    public WebSocketOutboundQueue(int capacity, OverflowPolicy policy, Sender sender) {
+        this.capacity = Math.max(1, capacity);
+        this.policy = policy;
+        this.sender = sender;
+    }
+
+    /**
+     * Queues a message and starts sending if the connection is idle.
+     *
+     * @param message
+     *            message
+     * @return true if the message was queued, false if it was dropped
+     */
+    public boolean offer(WSOutboundMessage message) {
+        Entry next = null;
+        boolean overflow = false, queued = false;
+        synchronized (this) {
+            if (closed) {
+                return false;
+            }
+            if (coalesce(message)) {
+                return true;
+            }
+            if (queue.size() >= capacity) {
+                if (policy == OverflowPolicy.DROP_OLDEST) {
+                    remove(queue.poll());
+                    dropped.incrementAndGet();
+                } else {
+                    dropped.incrementAndGet();
+                    overflow = policy == OverflowPolicy.DISCONNECT;
+                }
+            }
+            if (!overflow && queue.size() < capacity) {
+                next = add(message);
+                queued = true;
+            }
+        }
+        if (overflow) {
+            log.debug("Outbound queue overflow, {} messages queued", capacity);
+            sender.overflow();
+            return false;
+        }
+        if (next != null) {
+            send(next);
+        }
+        return queued;
+    }
+
+    /**
+     * Queues a message and starts sending if the connection is idle. Whatever the overflow policy, no message is dropped: if the queue is
+     * full this waits for room.
+     *
+     * @param message
+     *            message
+     * @param timeout
+     *            milliseconds to wait for room in the queue
+     * @return true if the message was queued, false if the queue stayed full or was closed
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    public boolean offer(WSOutboundMessage message, long timeout) throws InterruptedException {
+        Entry next;
+        synchronized (this) {
+            long deadline = System.currentTimeMillis() + timeout;
+            while (!closed && queue.size() >= capacity && !keyed.containsKey(message.getKey())) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    log.debug("Outbound queue full, {} messages queued", capacity);
+                    return false;
+                }
+                wait(remaining);
+            }
+            if (closed) {
+                return false;
+            }
+            if (coalesce(message)) {
+                return true;
+            }
+            next = add(message);
+        }
+        if (next != null) {
+            send(next);
+        }
+        return true;
+    }
+
+    /**
+     * Replaces a waiting message with the same coalescing key, guarded by this.
+     */
+    private boolean coalesce(WSOutboundMessage message) {
+        Object key = message.getKey();
+        Entry entry = key != null ? keyed.get(key) : null;
+        if (entry != null) {
+            // replace the waiting message in place
+            entry.message = message;
+            coalesced.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Adds a message to the queue, guarded by this. Returns the entry to send if the connection was idle.
+     */
+    private Entry add(WSOutboundMessage message) {
+        Entry entry = new Entry(message);
+        queue.add(entry);
+        if (message.getKey() != null) {
+            keyed.put(message.getKey(), entry);
+        }
+        if (!sending) {
+            sending = true;
+            return remove(queue.poll());
+        }
+        return null;
+    }
+
+    private Entry remove(Entry entry) {
+        if (entry != null && entry.message.getKey() != null) {
+            keyed.remove(entry.message.getKey(), entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Sends the entry and the ones queued after it. A send completing before the sender returns is followed up here rather than from the
+     * completion handler, so blocking senders do not recurse.
+     */
+    private void send(Entry entry) {
+        while (entry != null) {
+            long lag = System.currentTimeMillis() - entry.queued;
+            if (lag > maxLag) {
+                maxLag = lag;
+            }
+            // set by whichever of the sender and the completion handler returns first
+            final AtomicBoolean first = new AtomicBoolean();
+            try {
+                sender.send(entry.message, result -> {
+                    if (result.isOK()) {
+                        sent.incrementAndGet();
+                    } else {
+                        log.debug("Send failed", result.getException());
+                    }
+                    if (!first.compareAndSet(false, true)) {
+                        send(next());
+                    }
+                });
+            } catch (Throwable t) {
+                log.debug("Send failed", t);
+                // carry on with the next message here
+                first.set(true);
+            }
+            if (first.compareAndSet(false, true)) {
+                // the handler follows up once the send completes
+                return;
+            }
+            entry = next();
+        }
+    }
+
+    /**
+     * Takes the next entry to send, or marks the queue idle if there is none.
+     */
+    private Entry next() {
+        synchronized (this) {
+            Entry next = closed ? null : remove(queue.poll());
+            if (next == null) {
+                sending = false;
+            } else {
+                // room for a waiting sender
+                notifyAll();
+            }
+            return next;
+        }
+    }
+
+    /**
+     * Drops the queued messages, no more messages are accepted.
+     */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            queue.clear();
+            keyed.clear();
+            notifyAll();
+        }
+    }
+
+    /**
+     * Returns the number of messages waiting to be sent.
+     *
+     * @return queued messages
+     */
+    public synchronized int size() {
+        return queue.size();
+    }
+
+    /**
+     * Returns how long the oldest waiting message has been queued.
+     *
+     * @return milliseconds
+     */
+    public long getLag() {
+        Entry head;
+        synchronized (this) {
+            head = queue.peek();
+        }
+        return head != null ? System.currentTimeMillis() - head.queued : 0;
+    }
+
+    /**
+     * Returns the longest time a message waited in the queue.
+     *
+     * @return milliseconds
+     */
+    public long getMaxLag() {
+        return maxLag;
+    }
+
+    public long getSentCount() {
+        return sent.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    private static final class Entry {
+
+        // time the entry was queued, a replacing message keeps its place and its time
+        final long queued = System.currentTimeMillis();
+
+        WSOutboundMessage message;
+
+        Entry(WSOutboundMessage message) {
+            this.message = message;
+        }
+
+    }
+
+}
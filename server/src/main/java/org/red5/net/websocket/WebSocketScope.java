@@ -18,6 +18,7 @@ import javax.websocket.CloseReason.CloseCodes;
 
 import org.red5.net.websocket.listener.IWebSocketDataListener;
 import org.red5.net.websocket.model.WSMessage;
+import org.red5.net.websocket.model.WSOutboundMessage;
 import org.red5.server.api.scope.IScope;
 import org.red5.server.plugin.PluginRegistry;
 import org.red5.server.util.ScopeUtils;
@@ -269,6 +270,47 @@ public class WebSocketScope implements InitializingBean, DisposableBean {
         return (conns.size() + listeners.size()) > 0;
     }
 
+    /**
+     * Sends text to every connection of the scope.
+     *
+     * @param text
+     *            text
+     * @return number of connections the message was queued to
+     */
+    public int broadcast(String text) {
+        return broadcast(WSOutboundMessage.text(text));
+    }
+
+    /**
+     * Sends binary data to every connection of the scope, the data must not be modified afterwards.
+     *
+     * @param data
+     *            data
+     * @return number of connections the message was queued to
+     */
+    public int broadcast(byte[] data) {
+        return broadcast(WSOutboundMessage.binary(data));
+    }
+
+    /**
+     * Sends a message to every connection of the scope. The message is prepared once and queued to each connection without waiting for
+     * any of them, so a slow client only holds up itself.
+     *
+     * @param message
+     *            message
+     * @return number of connections the message was queued to
+     */
+    public int broadcast(WSOutboundMessage message) {
+        int queued = 0;
+        for (WebSocketConnection conn : conns) {
+            if (conn.send(message)) {
+                queued++;
+            }
+        }
+        log.trace("Broadcast {} queued to {} of {} connections", message, queued, conns.size());
+        return queued;
+    }
+
     /**
      * Message received from client and passed on to the listeners.
      *
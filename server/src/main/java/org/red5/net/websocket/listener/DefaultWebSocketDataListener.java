@@ -7,10 +7,6 @@
 
 package org.red5.net.websocket.listener;
 
-import java.io.IOException;
-import java.io.UnsupportedEncodingException;
-import java.util.Set;
-
 import org.red5.net.websocket.WebSocketConnection;
 import org.red5.net.websocket.WebSocketPlugin;
 import org.red5.net.websocket.WebSocketScope;
@@ -49,19 +45,9 @@ public class DefaultWebSocketDataListener extends WebSocketDataListener {
         // just echo back the message
         WebSocketScopeManager manager = ((WebSocketPlugin) PluginRegistry.getPlugin(WebSocketPlugin.NAME)).getManager(path);
         if (manager != null) {
-            // get the ws scope
+            // get the ws scope and echo to all of its connections
             WebSocketScope wsScope = manager.getScope(path);
-            Set<WebSocketConnection> conns = wsScope.getConns();
-            for (WebSocketConnection conn : conns) {
-                log.debug("Echoing to {}", conn);
-                try {
-                    conn.send(msg);
-                } catch (UnsupportedEncodingException e) {
-                    log.warn("Encoding issue with the message data: {}", message, e);
-                } catch (IOException e) {
-                    log.warn("IO exception", e);
-                }
-            }
+            wsScope.broadcast(msg);
         } else {
             log.info("No manager found for path: {}", path);
         }
@@ -0,0 +1,138 @@
+/*
+ * RED5 Open Source Flash Server - https://github.com/red5 Copyright 2006-2018 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.net.websocket.model;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.red5.net.websocket.model.WSMessage.MessageType;
+
+/**
+ * Message to be sent to any number of connections. The payload is prepared once, when the message is created, and shared read-only by
+ * every connection it is queued to. A message with a key replaces a message with the same key still waiting in the queue of a
+ * connection, so a client which falls behind on a data feed only gets the latest value.
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+public final class WSOutboundMessage {
+
+    private final MessageType messageType;
+
+    private final String text;
+
+    private final ByteBuffer payload;
+
+    // length of the payload in bytes
+    private final int length;
+
+    private final Object key;
+
+    // creation time
+    private final long timeStamp = System.currentTimeMillis();
+
+    private WSOutboundMessage(MessageType messageType, String text, ByteBuffer payload, int length, Object key) {
+        this.messageType = messageType;
+        this.text = text;
+        this.payload = payload;
+        this.length = length;
+        this.key = key;
+    }
+
+    /**
+     * Creates a text message.
+     *
+     * @param text
+     *            text
+     * @return message
+     */
+    public static WSOutboundMessage text(String text) {
+        return text(text, null);
+    }
+
+    /**
+     * Creates a text message replacing any queued message with the same key.
+     *
+     * @param text
+     *            text
+     * @param key
+     *            coalescing key or null
+     * @return message
+     */
+    public static WSOutboundMessage text(String text, Object key) {
+        return new WSOutboundMessage(MessageType.TEXT, text, null, utf8Length(text), key);
+    }
+
+    /**
+     * Creates a binary message, the data is not copied and must not be modified afterwards.
+     *
+     * @param data
+     *            data
+     * @return message
+     */
+    public static WSOutboundMessage binary(byte[] data) {
+        return binary(data, null);
+    }
+
+    /**
+     * Creates a binary message replacing any queued message with the same key, the data is not copied and must not be modified afterwards.
+     *
+     * @param data
+     *            data
+     * @param key
+     *            coalescing key or null
+     * @return message
+     */
+    public static WSOutboundMessage binary(byte[] data, Object key) {
+        return new WSOutboundMessage(MessageType.BINARY, null, ByteBuffer.wrap(data).asReadOnlyBuffer(), data.length, key);
+    }
+
+    public MessageType getMessageType() {
+        return messageType;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Returns a view of the binary payload with its own position, for a single send.
+     *
+     * @return payload or null for a text message
+     */
+    public ByteBuffer getPayload() {
+        return payload != null ? payload.duplicate() : null;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public Object getKey() {
+        return key;
+    }
+
+    public long getTimeStamp() {
+        return timeStamp;
+    }
+
+    private static int utf8Length(String text) {
+        // ascii text is the common case and needs no encoding to be measured
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80) {
+                return text.getBytes(StandardCharsets.UTF_8).length;
+            }
+        }
+        return text.length();
+    }
+
+    @Override
+    public String toString() {
+        return "WSOutboundMessage [type=" + messageType + ", length=" + length + ", key=" + key + "]";
+    }
+
+}
@@ -0,0 +1,60 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.jmx.mxbeans;
+
+import javax.management.MXBean;
+
+/**
+ * Executor for the RTMP handshakes of the MINA based transports.
+ *
+ * @author The Red5 Project
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+@MXBean
+public interface HandshakeExecutorMXBean {
+
+    public int getThreads();
+
+    public int getMaxPending();
+
+    public int getPendingCount();
+
+    public long getHandshakeCount();
+
+    public long getFailedCount();
+
+    public long getRejectedCount();
+
+    /**
+     * Returns the number of handshakes completed during the last full second.
+     *
+     * @return handshakes per second
+     */
+    public long getHandshakeRate();
+
+    /**
+     * Returns the upper bounds of the latency histogram buckets in milliseconds; the last bucket has no upper bound.
+     *
+     * @return bucket bounds
+     */
+    public long[] getLatencyBuckets();
+
+    /**
+     * Returns the number of handshakes per latency bucket, the latency being measured from the arrival of C0+C1 until S0+S1+S2 is written.
+     *
+     * @return handshakes per bucket
+     */
+    public long[] getLatencyHistogram();
+
+    public int getKeyPairPoolSize();
+
+    public int getPooledKeyPairs();
+
+    public long getKeyPairPoolMisses();
+
+}
@@ -0,0 +1,249 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.net.rtmp;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+import org.apache.mina.core.session.IoSession;
+import org.red5.server.jmx.mxbeans.HandshakeExecutorMXBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Runs the C0+C1 step of RTMP handshakes, which holds the digest and Diffie-Hellman work, on its own threads instead of the MINA I/O
+ * processors, so a burst of connecting clients does not hold up the reads and writes of the established ones. Reads of a session are
+ * suspended while its handshake is pending. When more handshakes are pending than allowed the session is closed rather than queued, the
+ * client is expected to connect again.
+ *
+ * @author The Red5 Project
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+@ManagedResource(objectName = "org.red5.server:name=rtmpHandshake,type=HandshakeExecutor")
+public class HandshakeExecutor implements HandshakeExecutorMXBean, InitializingBean, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(HandshakeExecutor.class);
+
+    // upper bounds of the latency buckets in milliseconds
+    private static final long[] LATENCY_BUCKETS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000 };
+
+    private static volatile HandshakeExecutor instance;
+
+    private int threads = 4;
+
+    private int maxPending = 1024;
+
+    private ThreadPoolExecutor executor;
+
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private final LongAdder handshakes = new LongAdder();
+
+    private final LongAdder failed = new LongAdder();
+
+    private final LongAdder rejected = new LongAdder();
+
+    private final LongAdder[] histogram = new LongAdder[LATENCY_BUCKETS.length + 1];
+
+    // handshakes of the current second and count of the last one
+    private final LongAdder rateCount = new LongAdder();
+
+    private volatile long rateSecond;
+
+    private volatile long lastRate;
+
+    {
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = new LongAdder();
+        }
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<>(Math.max(1, maxPending)), new CustomizableThreadFactory("RTMPHandshake-"));
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs a handshake step for the session, on the handshake threads if an executor is set or on the calling thread otherwise.
+     *
+     * @param session
+     *            session
+     * @param handshake
+     *            handshake step, returning false if the handshake failed
+     */
+    public static void execute(IoSession session, BooleanSupplier handshake) {
+        HandshakeExecutor handshakeExecutor = instance;
+        if (handshakeExecutor != null) {
+            handshakeExecutor.submit(session, handshake);
+        } else {
+            handshake.getAsBoolean();
+        }
+    }
+
+    /**
+     * Queues a handshake step for the session.
+     *
+     * @param session
+     *            session
+     * @param handshake
+     *            handshake step, returning false if the handshake failed
+     */
+    public void submit(IoSession session, BooleanSupplier handshake) {
+        final long start = System.nanoTime();
+        session.suspendRead();
+        pending.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                boolean success = false;
+                try {
+                    success = handshake.getAsBoolean();
+                } catch (Throwable t) {
+                    log.warn("Exception in handshake of session {}", session.getId(), t);
+                    session.closeNow();
+                } finally {
+                    pending.decrementAndGet();
+                    record(start, success);
+                    if (!session.isClosing()) {
+                        session.resumeRead();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.decrementAndGet();
+            rejected.increment();
+            log.debug("Handshake of session {} rejected, {} pending", session.getId(), maxPending);
+            session.closeNow();
+        }
+    }
+
+    private void record(long start, boolean success) {
+        long now = System.nanoTime();
+        handshakes.increment();
+        if (!success) {
+            failed.increment();
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(now - start);
+        int bucket = 0;
+        while (bucket < LATENCY_BUCKETS.length && elapsed >= LATENCY_BUCKETS[bucket]) {
+            bucket++;
+        }
+        histogram[bucket].increment();
+        long second = TimeUnit.NANOSECONDS.toSeconds(now);
+        if (second != rateSecond) {
+            synchronized (rateCount) {
+                if (second != rateSecond) {
+                    long count = rateCount.sumThenReset();
+                    // the rate is zero if no handshake was done during the last second
+                    lastRate = second == rateSecond + 1 ? count : 0;
+                    rateSecond = second;
+                }
+            }
+        }
+        rateCount.increment();
+    }
+
+    public static void setInstance(HandshakeExecutor instance) {
+        HandshakeExecutor.instance = instance;
+    }
+
+    public static HandshakeExecutor getInstance() {
+        return instance;
+    }
+
+    /**
+     * Sets the number of handshake threads.
+     *
+     * @param threads
+     *            threads
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Sets the number of handshakes which may be waiting for a thread.
+     *
+     * @param maxPending
+     *            pending handshakes
+     */
+    public void setMaxPending(int maxPending) {
+        this.maxPending = maxPending;
+    }
+
+    public int getMaxPending() {
+        return maxPending;
+    }
+
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    public long getHandshakeCount() {
+        return handshakes.sum();
+    }
+
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public long getHandshakeRate() {
+        return TimeUnit.NANOSECONDS.toSeconds(System.nanoTime()) <= rateSecond + 1 ? lastRate : 0;
+    }
+
+    public long[] getLatencyBuckets() {
+        return LATENCY_BUCKETS.clone();
+    }
+
+    public long[] getLatencyHistogram() {
+        long[] counts = new long[histogram.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = histogram[i].sum();
+        }
+        return counts;
+    }
+
+    public int getKeyPairPoolSize() {
+        DHKeyPairPool pool = RTMPHandshake.getKeyPairPool();
+        return pool != null ? pool.getSize() : 0;
+    }
+
+    public int getPooledKeyPairs() {
+        DHKeyPairPool pool = RTMPHandshake.getKeyPairPool();
+        return pool != null ? pool.getPooledCount() : 0;
+    }
+
+    public long getKeyPairPoolMisses() {
+        DHKeyPairPool pool = RTMPHandshake.getKeyPairPool();
+        return pool != null ? pool.getMissCount() : 0;
+    }
+
+}
@@ -131,7 +131,7 @@ public class InboundHandshake extends RTMPHandshake {
             // add to handshake bytes
             System.arraycopy(incomingPublicKey, 0, handshakeBytes, serverDHOffset, KEY_LENGTH);
             // create the RC4 ciphers
-            initRC4Encryption(getSharedSecret(outgoingPublicKey, keyAgreement));
+            initRC4Encryption(getSharedSecret(outgoingPublicKey));
         }
         // create the server digest
         digestPosServer = getDigestOffset(algorithm, handshakeBytes, 0);
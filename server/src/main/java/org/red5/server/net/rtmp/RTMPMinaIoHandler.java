@@ -219,6 +219,9 @@ public class RTMPMinaIoHandler extends IoHandlerAdapter {
                     case RTMP.STATE_DISCONNECTING:
                     case RTMP.STATE_DISCONNECTED:
                     default:
+                        if (message instanceof Packet) {
+                            ((Packet) message).releaseEncoded();
+                        }
                 }
             } else {
                 log.warn("Destination connection was null, it is already disposed. Session id: {}", sessionId);
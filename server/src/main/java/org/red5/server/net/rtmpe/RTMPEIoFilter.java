@@ -16,6 +16,7 @@ import org.apache.mina.core.filterchain.IoFilterAdapter;
 import org.apache.mina.core.session.IoSession;
 import org.apache.mina.core.write.WriteRequest;
 import org.bouncycastle.util.encoders.Hex;
+import org.red5.server.net.rtmp.HandshakeExecutor;
 import org.red5.server.net.rtmp.InboundHandshake;
 import org.red5.server.net.rtmp.RTMPConnManager;
 import org.red5.server.net.rtmp.RTMPConnection;
@@ -77,25 +78,9 @@ public class RTMPEIoFilter extends IoFilterAdapter {
                         log.debug("decodeHandshakeC0C1");
                         // get the buffered bytes 1536 + connection type byte
                         byte[] dst = buffer.getBuffer(Constants.HANDSHAKE_SIZE + 1);
-                        // set handshake to match client requested type
-                        byte connectionType = dst[0];
                         if (handshake != null) {
-                            handshake.setHandshakeType(connectionType);
-                            log.trace("Incoming C0 connection type: {}", connectionType);
-                            IoBuffer decBuffer = IoBuffer.wrap(dst);
-                            // skip the connection type
-                            decBuffer.get();
-                            // decode it
-                            IoBuffer s1 = handshake.decodeClientRequest1(decBuffer);
-                            if (s1 != null) {
-                                // set state to indicate we're waiting for C2
-                                ((RTMPConnection) conn).setStateCode(RTMP.STATE_HANDSHAKE);
-                                //log.trace("S1 byte order: {}", s1.order());
-                                session.write(s1);
-                            } else {
-                                log.warn("Client was rejected due to invalid handshake");
-                                conn.close();
-                            }
+                            // decode it off the io thread
+                            HandshakeExecutor.execute(session, () -> decodeHandshakeC0C1(session, conn, handshake, dst));
                         } else {
                             log.warn("Handshake is null");
                             conn.close();
@@ -156,11 +141,10 @@ public class RTMPEIoFilter extends IoFilterAdapter {
                                 if (isDebug) {
                                     log.debug("Decrypting message: {}", message);
                                 }
-                                byte[] encrypted = new byte[message.remaining()];
-                                message.get(encrypted);
-                                message.free();
-                                byte[] plain = cipher.update(encrypted);
-                                IoBuffer messageDecrypted = IoBuffer.wrap(plain);
+                                // decrypt straight from the received bytes, rc4 output is the size of its input
+                                IoBuffer messageDecrypted = IoBuffer.allocate(cipher.getOutputSize(message.remaining()));
+                                cipher.update(message.buf(), messageDecrypted.buf());
+                                messageDecrypted.flip();
                                 if (isDebug) {
                                     log.debug("Receiving decrypted message: {}", messageDecrypted);
                                 }
@@ -181,6 +165,41 @@ public class RTMPEIoFilter extends IoFilterAdapter {
         }
     }
 
+    /**
+     * Decodes C0+C1 and writes S0+S1+S2.
+     *
+     * @param session
+     *            session
+     * @param conn
+     *            connection
+     * @param handshake
+     *            handshake
+     * @param dst
+     *            C0+C1 bytes
+     * @return true if the client handshake was accepted
+     */
+    protected static boolean decodeHandshakeC0C1(IoSession session, RTMPMinaConnection conn, InboundHandshake handshake, byte[] dst) {
+        // set handshake to match client requested type
+        byte connectionType = dst[0];
+        handshake.setHandshakeType(connectionType);
+        log.trace("Incoming C0 connection type: {}", connectionType);
+        IoBuffer decBuffer = IoBuffer.wrap(dst);
+        // skip the connection type
+        decBuffer.get();
+        // decode it
+        IoBuffer s1 = handshake.decodeClientRequest1(decBuffer);
+        if (s1 != null) {
+            // set state to indicate we're waiting for C2
+            ((RTMPConnection) conn).setStateCode(RTMP.STATE_HANDSHAKE);
+            //log.trace("S1 byte order: {}", s1.order());
+            session.write(s1);
+            return true;
+        }
+        log.warn("Client was rejected due to invalid handshake");
+        conn.close();
+        return false;
+    }
+
     @Override
     public void filterWrite(NextFilter nextFilter, IoSession session, WriteRequest request) throws Exception {
         log.trace("filterWrite nextFilter: {} session: {} request: {}", nextFilter, session, request);
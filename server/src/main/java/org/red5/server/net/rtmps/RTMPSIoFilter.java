@@ -13,6 +13,7 @@ import org.apache.mina.core.buffer.IoBuffer;
 import org.apache.mina.core.session.IoSession;
 import org.apache.mina.filter.codec.ProtocolCodecFilter;
 import org.apache.mina.filter.ssl.SslFilter.SslFilterMessage;
+import org.red5.server.net.rtmp.HandshakeExecutor;
 import org.red5.server.net.rtmp.InboundHandshake;
 import org.red5.server.net.rtmp.RTMPConnManager;
 import org.red5.server.net.rtmp.RTMPConnection;
@@ -76,23 +77,8 @@ public class RTMPSIoFilter extends RTMPEIoFilter {
                                 break;
                             }
                             if (handshake != null) {
-                                handshake.setHandshakeType(connectionType);
-                                log.trace("Incoming C0 connection type: {}", connectionType);
-                                IoBuffer decBuffer = IoBuffer.wrap(dst);
-                                // skip the connection type
-                                decBuffer.get();
-                                //log.debug("C1 - buffer: {}", Hex.encodeHexString(dst));
-                                // decode it
-                                IoBuffer s1 = handshake.decodeClientRequest1(decBuffer);
-                                if (s1 != null) {
-                                    // set state to indicate we're waiting for C2
-                                    ((RTMPConnection) conn).setStateCode(RTMP.STATE_HANDSHAKE);
-                                    //log.trace("S1 byte order: {}", s1.order());
-                                    session.write(s1);
-                                } else {
-                                    log.warn("Client was rejected due to invalid handshake");
-                                    conn.close();
-                                }
+                                // decode it off the io thread
+                                HandshakeExecutor.execute(session, () -> decodeHandshakeC0C1(session, conn, handshake, dst));
                             } else {
                                 log.warn("Handshake is null");
                                 conn.close();
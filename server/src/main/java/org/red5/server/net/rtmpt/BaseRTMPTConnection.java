@@ -7,15 +7,13 @@
 
 package org.red5.server.net.rtmpt;
 
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
-import org.apache.commons.lang3.ArrayUtils;
 import org.apache.mina.core.buffer.IoBuffer;
 import org.red5.server.api.Red5;
 import org.red5.server.net.rtmp.RTMPConnection;
@@ -69,9 +67,19 @@ public abstract class BaseRTMPTConnection extends RTMPConnection {
     private volatile IoBuffer buffer;
 
     /**
-     * List of pending outgoing messages. Default size is 8192.
+     * Pending outgoing messages, encoded but not copied. Writers never wait on the queue, messages above the limit are dropped.
      */
-    protected transient volatile LinkedBlockingQueue<PendingData> pendingOutMessages = new LinkedBlockingQueue<PendingData>(8192);
+    protected transient ConcurrentLinkedQueue<PendingData> pendingOutMessages = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Number of pending outgoing messages, the queue does not count its entries in constant time
+     */
+    protected final AtomicInteger pendingOutCount = new AtomicInteger();
+
+    /**
+     * Maximum number of pending outgoing messages
+     */
+    protected int maxPendingOutMessages = 8192;
 
     /**
      * Maximum incoming messages to process at a time per client
@@ -81,11 +89,13 @@ public abstract class BaseRTMPTConnection extends RTMPConnection {
     /**
      * Maximum amount of time in milliseconds to wait before allowing an offer to fail
      */
+    @Deprecated
     protected long maxQueueOfferTime = 500L;
 
     /**
      * Maximum offer attempts before failing on incoming or outgoing queues
      */
+    @Deprecated
     protected int maxQueueOfferAttempts = 4;
 
     public BaseRTMPTConnection(String type) {
@@ -106,11 +116,11 @@ public abstract class BaseRTMPTConnection extends RTMPConnection {
     @Override
     public void close() {
         closing = true;
-        if (pendingOutMessages.size() > 0) {
+        if (pendingOutCount.get() > 0) {
             if (log.isTraceEnabled()) {
-                log.trace("Clearing pending messages out: {}", pendingOutMessages.size());
+                log.trace("Clearing pending messages out: {}", pendingOutCount.get());
             }
-            pendingOutMessages.clear();
+            clearPendingMessages();
         }
         // clean up buffer
         if (buffer != null) {
@@ -155,9 +165,20 @@ public abstract class BaseRTMPTConnection extends RTMPConnection {
         log.debug("Checking pending queue size. Session id: {} closing: {} state: {}", sessionId, closing, state);
         if (state.getState() == RTMP.STATE_DISCONNECTED) {
             log.debug("Connection is disconnected");
-            pendingOutMessages.clear();
+            clearPendingMessages();
+        }
+        return pendingOutCount.get();
+    }
+
+    /**
+     * Drops the pending outgoing messages.
+     */
+    protected void clearPendingMessages() {
+        PendingData pendingData;
+        while ((pendingData = pendingOutMessages.poll()) != null) {
+            pendingOutCount.decrementAndGet();
+            pendingData.release();
         }
-        return pendingOutMessages.size();
     }
 
     /**
@@ -204,24 +225,14 @@ public abstract class BaseRTMPTConnection extends RTMPConnection {
                     log.debug("Local: {} this: {}", Red5.getConnectionLocal(), this);
                 }
                 Red5.setConnectionLocal(this);
-                // encode the data
-                data = encoder.encodePacket(packet);
+                // encode the data, shared media payload is kept by reference
+                List<IoBuffer> sharedParts = new ArrayList<>(1);
+                data = encoder.encodePacket(packet, sharedParts);
                 if (data != null) {
                     // add to pending
                     log.debug("Adding outgoing message packet");
-                    PendingData pendingData = new PendingData(data, packet);
-                    try {
-                        int attempt = 0;
-                        while (!pendingOutMessages.offer(pendingData, maxQueueOfferTime, TimeUnit.MILLISECONDS)) {
-                            log.trace("Packet was not added to out queue");
-                            attempt++;
-                            if (attempt >= maxQueueOfferAttempts) {
-                                break;
-                            }
-                        }
-                    } catch (InterruptedException ex) {
-                        log.warn("Offering packet to out queue failed", ex);
-                    }
+                    packet.setEncoded(data);
+                    offer(new PendingData(data, sharedParts, packet));
                 } else {
                     log.warn("Response buffer was null after encoding");
                 }
@@ -242,51 +253,119 @@ public abstract class BaseRTMPTConnection extends RTMPConnection {
         if (log.isDebugEnabled()) {
             log.debug("write - io buffer: {}", packet);
         }
-        PendingData pendingData = new PendingData(packet);
-        try {
-            int attempt = 0;
-            while (!pendingOutMessages.offer(pendingData, maxQueueOfferTime, TimeUnit.MILLISECONDS)) {
-                log.trace("Packet was not added to out queue");
-                attempt++;
-                if (attempt >= maxQueueOfferAttempts) {
-                    break;
+        offer(new PendingData(packet, Collections.emptyList(), null));
+    }
+
+    /**
+     * Queues outgoing data without waiting, the data is dropped if the queue is full.
+     *
+     * @param pendingData
+     *            data to queue
+     * @return true if queued
+     */
+    private boolean offer(PendingData pendingData) {
+        if (pendingOutCount.incrementAndGet() > maxPendingOutMessages) {
+            pendingOutCount.decrementAndGet();
+            log.warn("Outgoing queue is full, dropping {}", pendingData.getPacket() != null ? pendingData.getPacket() : "raw data");
+            pendingData.release();
+            return false;
+        }
+        pendingOutMessages.add(pendingData);
+        if (closing) {
+            // raced with close
+            clearPendingMessages();
+        }
+        onPendingData();
+        return true;
+    }
+
+    /**
+     * Called after outgoing data was queued.
+     */
+    protected void onPendingData() {
+    }
+
+    /**
+     * Takes pending messages until their size reaches the target size, at least one message is taken if any is pending. The buffers are
+     * returned as they were encoded, the batch must be passed to {@link #messagesSent(List)} once written, or to
+     * {@link #messagesDropped(List)} if it could not be.
+     *
+     * @param targetSize
+     *            the size the batch should have
+     * @return pending messages or null if no messages are pending
+     */
+    public List<PendingData> pollPendingMessages(int targetSize) {
+        List<PendingData> batch = null;
+        int size = 0;
+        PendingData pendingData;
+        while (size < targetSize && (pendingData = pendingOutMessages.poll()) != null) {
+            pendingOutCount.decrementAndGet();
+            if (batch == null) {
+                batch = new ArrayList<>();
+            }
+            batch.add(pendingData);
+            size += pendingData.getBufferSize();
+        }
+        if (batch != null && log.isDebugEnabled()) {
+            log.debug("Send size: {} messages: {}", size, batch.size());
+        }
+        return batch;
+    }
+
+    /**
+     * Notifies the stream subsystem about the messages of a batch and releases their buffers.
+     *
+     * @param batch
+     *            messages taken by {@link #pollPendingMessages(int)}
+     */
+    public void messagesSent(List<PendingData> batch) {
+        for (PendingData pendingMessage : batch) {
+            Packet packet = pendingMessage.getPacket();
+            if (packet != null) {
+                try {
+                    handler.messageSent(this, packet);
+                    // mark packet as being written
+                    writingMessage(packet);
+                } catch (Exception e) {
+                    log.error("Could not notify stream subsystem about sent message", e);
                 }
+            } else {
+                log.trace("Pending message did not have a packet");
             }
-        } catch (InterruptedException ex) {
-            log.warn("Offering io buffer to out queue failed", ex);
+            pendingMessage.release();
+        }
+    }
+
+    /**
+     * Releases the buffers of a batch which could not be written, without reporting its messages as sent.
+     *
+     * @param batch
+     *            messages taken by {@link #pollPendingMessages(int)}
+     */
+    public void messagesDropped(List<PendingData> batch) {
+        log.debug("Dropping {} messages which could not be written", batch.size());
+        for (PendingData pendingMessage : batch) {
+            pendingMessage.release();
         }
     }
 
     protected IoBuffer foldPendingMessages(int targetSize) {
         log.debug("foldPendingMessages - target size: {}", targetSize);
         IoBuffer result = null;
-        if (!pendingOutMessages.isEmpty()) {
-            int available = pendingOutMessages.size();
-            // create list to hold outgoing data
-            LinkedList<PendingData> sendList = new LinkedList<PendingData>();
-            pendingOutMessages.drainTo(sendList, Math.min(164, available));
-            result = IoBuffer.allocate(targetSize).setAutoExpand(true);
-            for (PendingData pendingMessage : sendList) {
-                result.put(pendingMessage.getBuffer());
-                Packet packet = pendingMessage.getPacket();
-                if (packet != null) {
-                    try {
-                        handler.messageSent(this, packet);
-                        // mark packet as being written
-                        writingMessage(packet);
-                    } catch (Exception e) {
-                        log.error("Could not notify stream subsystem about sent message", e);
-                    }
-                } else {
-                    log.trace("Pending message did not have a packet");
+        List<PendingData> batch = pollPendingMessages(targetSize);
+        if (batch != null) {
+            int size = 0;
+            for (PendingData pendingMessage : batch) {
+                size += pendingMessage.getBufferSize();
+            }
+            result = IoBuffer.allocate(size);
+            for (PendingData pendingMessage : batch) {
+                for (IoBuffer part : pendingMessage.getBuffers()) {
+                    result.put(part.duplicate());
                 }
             }
-            sendList.clear();
+            messagesSent(batch);
             result.flip();
-            // send byte length
-            if (log.isDebugEnabled()) {
-                log.debug("Send size: {}", result.limit());
-            }
         }
         return result;
     }
@@ -307,10 +386,20 @@ public abstract class BaseRTMPTConnection extends RTMPConnection {
         this.maxInMessagesPerProcess = maxInMessagesPerProcess;
     }
 
+    /**
+     * @param maxPendingOutMessages
+     *            the maximum number of pending outgoing messages to set
+     */
+    public void setMaxPendingOutMessages(int maxPendingOutMessages) {
+        this.maxPendingOutMessages = maxPendingOutMessages;
+    }
+
     /**
      * @param maxQueueOfferTime
      *            the maxQueueOfferTime to set
+     * @deprecated writers no longer wait on the outgoing queue
      */
+    @Deprecated
     public void setMaxQueueOfferTime(long maxQueueOfferTime) {
         this.maxQueueOfferTime = maxQueueOfferTime;
     }
@@ -318,59 +407,71 @@ public abstract class BaseRTMPTConnection extends RTMPConnection {
     /**
      * @param maxQueueOfferAttempts
      *            the maxQueueOfferAttempts to set
+     * @deprecated writers no longer wait on the outgoing queue
      */
+    @Deprecated
     public void setMaxQueueOfferAttempts(int maxQueueOfferAttempts) {
         this.maxQueueOfferAttempts = maxQueueOfferAttempts;
     }
 
     /**
-     * Holder for data destined for a requester that is not ready to be sent.
+     * Holder for data destined for a requester that is not ready to be sent. The encoded buffers are held as they are, to be written
+     * one after the other.
      */
-    private static class PendingData {
+    public static class PendingData {
 
         // simple packet
         private final Packet packet;
 
-        // encoded packet data
-        private final byte[] byteBuffer;
+        // connection specific part of the encoded data
+        private final IoBuffer buffer;
 
-        private PendingData(IoBuffer buffer, Packet packet) {
-            int size = buffer.limit();
-            this.byteBuffer = new byte[size];
-            buffer.get(byteBuffer);
-            this.packet = packet;
-            if (log.isTraceEnabled()) {
-                log.trace("Buffer: {}", Arrays.toString(ArrayUtils.subarray(byteBuffer, 0, 32)));
-            }
-        }
+        // read-only payload shared with other connections, written after the buffer
+        private final List<IoBuffer> sharedParts;
 
-        private PendingData(IoBuffer buffer) {
-            int size = buffer.limit();
-            this.byteBuffer = new byte[size];
-            buffer.get(byteBuffer);
-            this.packet = null;
-            if (log.isTraceEnabled()) {
-                log.trace("Buffer: {}", Arrays.toString(ArrayUtils.subarray(byteBuffer, 0, 32)));
+        private final int size;
+
+        private PendingData(IoBuffer buffer, List<IoBuffer> sharedParts, Packet packet) {
+            this.buffer = buffer;
+            this.sharedParts = sharedParts;
+            this.packet = packet;
+            int size = buffer.remaining();
+            for (IoBuffer part : sharedParts) {
+                size += part.remaining();
             }
+            this.size = size;
         }
 
-        public byte[] getBuffer() {
-            if (log.isTraceEnabled()) {
-                log.trace("Get buffer: {}", Arrays.toString(ArrayUtils.subarray(byteBuffer, 0, 32)));
+        /**
+         * Returns the buffers to write, in order.
+         *
+         * @return buffers
+         */
+        public List<IoBuffer> getBuffers() {
+            if (sharedParts.isEmpty()) {
+                return Collections.singletonList(buffer);
             }
-            return byteBuffer;
+            List<IoBuffer> buffers = new ArrayList<>(sharedParts.size() + 1);
+            buffers.add(buffer);
+            buffers.addAll(sharedParts);
+            return buffers;
         }
 
         public Packet getPacket() {
             return packet;
         }
 
-        @SuppressWarnings("unused")
         public int getBufferSize() {
-            if (byteBuffer != null) {
-                return byteBuffer.length;
+            return size;
+        }
+
+        /**
+         * Frees the encoded buffer, which returns it to its pool if it was pooled.
+         */
+        void release() {
+            if (packet != null) {
+                packet.releaseEncoded();
             }
-            return 0;
         }
 
     }
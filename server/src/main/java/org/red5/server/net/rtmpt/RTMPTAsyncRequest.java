@@ -0,0 +1,172 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.net.rtmpt;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.logging.Red5LoggerFactory;
+import org.red5.server.api.Red5;
+import org.slf4j.Logger;
+
+/**
+ * RTMPT send or idle request handled asynchronously. The request body is read as it arrives, without holding a container thread, and
+ * an idle poll without pending data is parked on its connection until data is queued, the connection closes or the timeout expires.
+ *
+ * @author The Red5 Project
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+class RTMPTAsyncRequest implements ReadListener, AsyncListener {
+
+    private static final Logger log = Red5LoggerFactory.getLogger(RTMPTAsyncRequest.class);
+
+    private final RTMPTServlet servlet;
+
+    private final RTMPTConnection conn;
+
+    private final AsyncContext ctx;
+
+    private final ServletInputStream input;
+
+    // request body, null when the body is skipped
+    private final IoBuffer body;
+
+    private final byte[] readBuffer = new byte[2048];
+
+    // whether an idle poll may be parked
+    private final boolean park;
+
+    private final AtomicBoolean done = new AtomicBoolean();
+
+    private final Runnable wakeUp = this::wake;
+
+    private int read;
+
+    RTMPTAsyncRequest(RTMPTServlet servlet, RTMPTConnection conn, AsyncContext ctx, boolean send) throws IOException {
+        this.servlet = servlet;
+        this.conn = conn;
+        this.ctx = ctx;
+        this.input = ctx.getRequest().getInputStream();
+        int length = ctx.getRequest().getContentLength();
+        this.body = send ? IoBuffer.allocate(Math.max(length, readBuffer.length)).setAutoExpand(true) : null;
+        this.park = !send;
+    }
+
+    /**
+     * Starts reading the request body.
+     *
+     * @param timeout
+     *            milliseconds to wait for the body and for pending data
+     */
+    void start(long timeout) {
+        ctx.setTimeout(timeout);
+        ctx.addListener(this);
+        input.setReadListener(this);
+    }
+
+    public void onDataAvailable() throws IOException {
+        while (input.isReady()) {
+            int len = input.read(readBuffer);
+            if (len < 0) {
+                break;
+            }
+            read += len;
+            if (body != null) {
+                body.put(readBuffer, 0, len);
+            }
+        }
+    }
+
+    public void onAllDataRead() throws IOException {
+        Red5.setConnectionLocal(conn);
+        try {
+            if (body != null) {
+                body.flip();
+                servlet.handleData(conn, body);
+                body.free();
+            }
+            conn.dataReceived();
+            conn.updateReadBytes(read);
+        } catch (Exception e) {
+            log.warn("Exception handling request data", e);
+            conn.close();
+        } finally {
+            Red5.setConnectionLocal(null);
+        }
+        if (done.get()) {
+            // timed out while reading
+            return;
+        }
+        if (park) {
+            conn.park(wakeUp);
+        } else {
+            respond();
+        }
+    }
+
+    public void onError(Throwable t) {
+        log.debug("Request failed for {}", conn.getSessionId(), t);
+        if (done.compareAndSet(false, true)) {
+            conn.unpark(wakeUp);
+            ctx.complete();
+        }
+    }
+
+    public void onTimeout(AsyncEvent event) throws IOException {
+        respond();
+    }
+
+    public void onError(AsyncEvent event) throws IOException {
+        onError(event.getThrowable());
+    }
+
+    public void onComplete(AsyncEvent event) throws IOException {
+    }
+
+    public void onStartAsync(AsyncEvent event) throws IOException {
+    }
+
+    /**
+     * Answers a parked poll from a container thread, the caller may be writing media.
+     */
+    private void wake() {
+        try {
+            ctx.start(this::respond);
+        } catch (IllegalStateException e) {
+            // completed or timed out meanwhile
+            log.trace("Request was answered already", e);
+        }
+    }
+
+    /**
+     * Writes the pending data, or the polling delay if there is none, and completes the request.
+     */
+    private void respond() {
+        if (done.compareAndSet(false, true)) {
+            conn.unpark(wakeUp);
+            if (park) {
+                // the client waited here instead of between its polls
+                conn.resetPollingDelay();
+            }
+            try {
+                servlet.returnPendingMessages(conn, (HttpServletResponse) ctx.getResponse());
+            } finally {
+                ctx.complete();
+            }
+        }
+    }
+
+}
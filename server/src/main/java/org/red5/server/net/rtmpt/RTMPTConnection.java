@@ -7,7 +7,9 @@
 
 package org.red5.server.net.rtmpt;
 
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -74,6 +76,11 @@ public class RTMPTConnection extends BaseRTMPTConnection {
 
     private transient IoSession ioSession;
 
+    /**
+     * Poll request waiting for outgoing data, woken once
+     */
+    private final AtomicReference<Runnable> parkedPoll = new AtomicReference<>();
+
     /** Constructs a new RTMPTConnection */
     RTMPTConnection() {
         super(IConnection.Type.POLLING.name().toLowerCase());
@@ -116,6 +123,8 @@ public class RTMPTConnection extends BaseRTMPTConnection {
             }
             // now close
             super.close();
+            // let a waiting poll tell the client
+            onPendingData();
             if (servlet != null) {
                 servlet = null;
             }
@@ -235,13 +244,74 @@ public class RTMPTConnection extends BaseRTMPTConnection {
         return (byte) (pollingDelay + 1);
     }
 
+    /**
+     * Parks a poll request until outgoing data is queued or the connection closes. The listener is called once, right away if data is
+     * already pending; a poll parked before is woken to make room.
+     *
+     * @param listener
+     *            called when the poll should be answered
+     */
+    public void park(Runnable listener) {
+        Runnable previous = parkedPoll.getAndSet(listener);
+        if (previous != null) {
+            previous.run();
+        }
+        if (!pendingOutMessages.isEmpty() || isClosing()) {
+            onPendingData();
+        }
+    }
+
+    /**
+     * Removes a parked poll which has been answered otherwise.
+     *
+     * @param listener
+     *            listener given to {@link #park(Runnable)}
+     */
+    public void unpark(Runnable listener) {
+        parkedPoll.compareAndSet(listener, null);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void onPendingData() {
+        Runnable listener = parkedPoll.getAndSet(null);
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Resets the polling delay; a client whose poll was parked on the server has waited already.
+     */
+    public void resetPollingDelay() {
+        pollingDelay = INITIAL_POLLING_DELAY;
+        noPendingMessages = 0;
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public IoBuffer getPendingMessages(int targetSize) {
+        updatePollingDelay();
+        return foldPendingMessages(targetSize);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<PendingData> pollPendingMessages(int targetSize) {
+        updatePollingDelay();
+        return super.pollPendingMessages(targetSize);
+    }
+
+    /**
+     * Resets the polling delay if messages are pending, otherwise increases it after a number of empty polls.
+     */
+    private void updatePollingDelay() {
         if (log.isTraceEnabled()) {
-            log.trace("Pending messages out: {}", pendingOutMessages.size());
+            log.trace("Pending messages out: {}", pendingOutCount.get());
         }
         if (!pendingOutMessages.isEmpty()) {
             pollingDelay = INITIAL_POLLING_DELAY;
@@ -259,7 +329,6 @@ public class RTMPTConnection extends BaseRTMPTConnection {
                 }
             }
         }
-        return foldPendingMessages(targetSize);
     }
 
     /**
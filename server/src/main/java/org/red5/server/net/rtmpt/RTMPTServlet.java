@@ -12,12 +12,14 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.apache.catalina.connector.CoyoteOutputStream;
 import org.apache.commons.codec.binary.Hex;
 import org.apache.mina.core.buffer.IoBuffer;
 import org.apache.mina.core.session.IoSession;
@@ -35,6 +37,7 @@ import org.red5.server.net.rtmp.message.Header;
 import org.red5.server.net.rtmp.message.Packet;
 import org.red5.server.net.rtmp.status.Status;
 import org.red5.server.net.rtmp.status.StatusCodes;
+import org.red5.server.net.rtmpt.BaseRTMPTConnection.PendingData;
 import org.red5.server.net.servlet.ServletUtils;
 import org.red5.server.service.PendingCall;
 import org.slf4j.Logger;
@@ -75,6 +78,32 @@ public class RTMPTServlet extends HttpServlet {
      */
     private static int targetResponseSize = Short.MAX_VALUE + 1;
 
+    /**
+     * Whether send and idle requests are handled asynchronously, with idle polls parked until data is pending
+     */
+    private static boolean asyncPolling;
+
+    /**
+     * Milliseconds an idle poll is parked at most
+     */
+    private static long asyncPollTimeout = 2000L;
+
+    /**
+     * Whether the container is Tomcat, whose output stream writes buffers without an intermediate array
+     */
+    private static final boolean coyoteOutput;
+
+    static {
+        boolean found = false;
+        try {
+            Class.forName("org.apache.catalina.connector.CoyoteOutputStream", false, RTMPTServlet.class.getClassLoader());
+            found = true;
+        } catch (Throwable t) {
+            log.debug("Tomcat output stream is not available, buffers are written through an array", t);
+        }
+        coyoteOutput = found;
+    }
+
     /**
      * Reference to RTMPT handler;
      */
@@ -226,6 +255,48 @@ public class RTMPTServlet extends HttpServlet {
         buffer = null;
     }
 
+    /**
+     * Return pending messages to the client. The encoded buffers are written one after the other into the response, without being folded
+     * into a single buffer first.
+     *
+     * @param conn
+     *            RTMP connection
+     * @param batch
+     *            pending messages
+     * @param resp
+     *            Servlet response
+     * @throws IOException
+     *             I/O exception
+     */
+    protected void returnMessage(RTMPTConnection conn, List<PendingData> batch, HttpServletResponse resp) throws IOException {
+        log.trace("returnMessage {} messages", batch.size());
+        resp.setStatus(HttpServletResponse.SC_OK);
+        resp.setHeader("Connection", "Keep-Alive");
+        resp.setHeader("Cache-Control", "no-cache");
+        resp.setContentType(CONTENT_TYPE);
+        int size = 0;
+        for (PendingData pendingData : batch) {
+            size += pendingData.getBufferSize();
+        }
+        int contentLength = size + 1;
+        resp.setContentLength(contentLength);
+        ServletOutputStream output = resp.getOutputStream();
+        byte pollingDelay = conn.getPollingDelay();
+        log.debug("Sending {} bytes; polling delay: {}", size, pollingDelay);
+        output.write(pollingDelay);
+        for (PendingData pendingData : batch) {
+            for (IoBuffer part : pendingData.getBuffers()) {
+                if (coyoteOutput && output instanceof CoyoteOutputStream) {
+                    // tomcat takes buffers directly, read-only ones included
+                    ((CoyoteOutputStream) output).write(part.buf().duplicate());
+                } else {
+                    ServletUtils.write(part.buf(), output);
+                }
+            }
+        }
+        conn.updateWrittenBytes(contentLength);
+    }
+
     /**
      * Sets the request info for the current request. Request info contains the session id and request number gathered from the incoming
      * request. The URI is in this form /[method]/[session id]/[request number] ie. /send/CAFEBEEF01/7
@@ -271,14 +342,16 @@ public class RTMPTServlet extends HttpServlet {
     protected void returnPendingMessages(RTMPTConnection conn, HttpServletResponse resp) {
         log.debug("returnPendingMessages {}", conn);
         // grab any pending outgoing data
-        IoBuffer data = conn.getPendingMessages(targetResponseSize);
-        if (data != null) {
+        List<PendingData> batch = conn.pollPendingMessages(targetResponseSize);
+        if (batch != null) {
             try {
-                returnMessage(conn, data, resp);
+                returnMessage(conn, batch, resp);
+                conn.messagesSent(batch);
             } catch (Exception ex) {
                 // using "Exception" is meant to catch any exception that would occur when doing a write
                 // this can be an IOException or a container specific one like ClientAbortException from catalina
                 log.warn("Exception returning outgoing data", ex);
+                conn.messagesDropped(batch);
                 conn.close();
             }
         } else {
@@ -385,92 +458,13 @@ public class RTMPTServlet extends HttpServlet {
         log.debug("handleSend");
         final RTMPTConnection conn = getConnection();
         if (conn != null) {
-            IoSession session = conn.getIoSession();
-            // get the handshake from the session
-            InboundHandshake handshake = null;
             // put the received data in a ByteBuffer
             int length = req.getContentLength();
             log.trace("Request content length: {}", length);
             final IoBuffer message = IoBuffer.allocate(length);
             ServletUtils.copy(req, message.asOutputStream());
             message.flip();
-            RTMP rtmp = conn.getState();
-            int connectionState = rtmp.getState();
-            switch (connectionState) {
-                case RTMP.STATE_CONNECT:
-                    // we're expecting C0+C1 here
-                    //log.trace("C0C1 byte order: {}", message.order());
-                    log.debug("decodeHandshakeC0C1 - buffer: {}", message);
-                    // we want 1537 bytes for C0C1
-                    if (message.remaining() >= (Constants.HANDSHAKE_SIZE + 1)) {
-                        // get the connection type byte, may want to set this on the conn in the future
-                        byte connectionType = message.get();
-                        log.trace("Incoming C0 connection type: {}", connectionType);
-                        // add the in-bound handshake, defaults to non-encrypted mode
-                        handshake = new InboundHandshake(connectionType);
-                        handshake.setUnvalidatedConnectionAllowed(handler.isUnvalidatedConnectionAllowed());
-                        session.setAttribute(RTMPConnection.RTMP_HANDSHAKE, handshake);
-                        // create array for decode
-                        byte[] dst = new byte[Constants.HANDSHAKE_SIZE];
-                        // copy out 1536 bytes
-                        message.get(dst);
-                        //log.debug("C1 - buffer: {}", Hex.encodeHexString(dst));
-                        // set state to indicate we're waiting for C2
-                        rtmp.setState(RTMP.STATE_HANDSHAKE);
-                        IoBuffer s1 = handshake.decodeClientRequest1(IoBuffer.wrap(dst));
-                        if (s1 != null) {
-                            //log.trace("S1 byte order: {}", s1.order());
-                            conn.writeRaw(s1);
-                        } else {
-                            log.warn("Client was rejected due to invalid handshake");
-                            conn.close();
-                        }
-                    }
-                    break;
-                case RTMP.STATE_HANDSHAKE:
-                    // we're expecting C2 here
-                    //log.trace("C2 byte order: {}", message.order());
-                    log.debug("decodeHandshakeC2 - buffer: {}", message);
-                    // no connection type byte is supposed to be in C2 data
-                    if (message.remaining() >= Constants.HANDSHAKE_SIZE) {
-                        // get the handshake
-                        handshake = (InboundHandshake) session.getAttribute(RTMPConnection.RTMP_HANDSHAKE);
-                        // create array for decode
-                        byte[] dst = new byte[Constants.HANDSHAKE_SIZE];
-                        // copy
-                        message.get(dst);
-                        log.trace("Copied {}", Hex.encodeHexString(dst));
-                        //if (log.isTraceEnabled()) {
-                        //    log.trace("C2 - buffer: {}", Hex.encodeHexString(dst));
-                        //}
-                        if (handshake.decodeClientRequest2(IoBuffer.wrap(dst))) {
-                            log.debug("Connected, removing handshake data and adding rtmp protocol filter");
-                            // set state to indicate we're connected
-                            rtmp.setState(RTMP.STATE_CONNECTED);
-                            // remove handshake from session now that we are connected
-                            session.removeAttribute(RTMPConnection.RTMP_HANDSHAKE);
-                        } else {
-                            log.warn("Client was rejected due to invalid handshake");
-                            conn.close();
-                        }
-                    }
-                    // let the logic flow into connected to catch the remaining bytes that probably contain
-                    // the connect call
-                case RTMP.STATE_CONNECTED:
-                    // decode the objects and pass to received; messages should all be Packet type
-                    for (Object obj : conn.decode(message)) {
-                        conn.handleMessageReceived(obj);
-                    }
-                    break;
-                case RTMP.STATE_ERROR:
-                case RTMP.STATE_DISCONNECTING:
-                case RTMP.STATE_DISCONNECTED:
-                    // do nothing, really
-                    log.debug("Nothing to do, connection state: {}", RTMP.states[connectionState]);
-                    break;
-                default:
-                    throw new IllegalStateException("Invalid RTMP state: " + connectionState);
-            }
+            handleData(conn, message);
             conn.dataReceived();
             conn.updateReadBytes(length);
             message.clear();
@@ -482,6 +476,97 @@ public class RTMPTServlet extends HttpServlet {
         }
     }
 
+    /**
+     * Handles data sent by the client according to the state of the connection.
+     *
+     * @param conn
+     *            RTMPT connection
+     * @param message
+     *            received data
+     */
+    protected void handleData(RTMPTConnection conn, IoBuffer message) {
+        IoSession session = conn.getIoSession();
+        // get the handshake from the session
+        InboundHandshake handshake = null;
+        RTMP rtmp = conn.getState();
+        int connectionState = rtmp.getState();
+        switch (connectionState) {
+            case RTMP.STATE_CONNECT:
+                // we're expecting C0+C1 here
+                //log.trace("C0C1 byte order: {}", message.order());
+                log.debug("decodeHandshakeC0C1 - buffer: {}", message);
+                // we want 1537 bytes for C0C1
+                if (message.remaining() >= (Constants.HANDSHAKE_SIZE + 1)) {
+                    // get the connection type byte, may want to set this on the conn in the future
+                    byte connectionType = message.get();
+                    log.trace("Incoming C0 connection type: {}", connectionType);
+                    // add the in-bound handshake, defaults to non-encrypted mode
+                    handshake = new InboundHandshake(connectionType);
+                    handshake.setUnvalidatedConnectionAllowed(handler.isUnvalidatedConnectionAllowed());
+                    session.setAttribute(RTMPConnection.RTMP_HANDSHAKE, handshake);
+                    // create array for decode
+                    byte[] dst = new byte[Constants.HANDSHAKE_SIZE];
+                    // copy out 1536 bytes
+                    message.get(dst);
+                    //log.debug("C1 - buffer: {}", Hex.encodeHexString(dst));
+                    // set state to indicate we're waiting for C2
+                    rtmp.setState(RTMP.STATE_HANDSHAKE);
+                    IoBuffer s1 = handshake.decodeClientRequest1(IoBuffer.wrap(dst));
+                    if (s1 != null) {
+                        //log.trace("S1 byte order: {}", s1.order());
+                        conn.writeRaw(s1);
+                    } else {
+                        log.warn("Client was rejected due to invalid handshake");
+                        conn.close();
+                    }
+                }
+                break;
+            case RTMP.STATE_HANDSHAKE:
+                // we're expecting C2 here
+                //log.trace("C2 byte order: {}", message.order());
+                log.debug("decodeHandshakeC2 - buffer: {}", message);
+                // no connection type byte is supposed to be in C2 data
+                if (message.remaining() >= Constants.HANDSHAKE_SIZE) {
+                    // get the handshake
+                    handshake = (InboundHandshake) session.getAttribute(RTMPConnection.RTMP_HANDSHAKE);
+                    // create array for decode
+                    byte[] dst = new byte[Constants.HANDSHAKE_SIZE];
+                    // copy
+                    message.get(dst);
+                    log.trace("Copied {}", Hex.encodeHexString(dst));
+                    //if (log.isTraceEnabled()) {
+                    //    log.trace("C2 - buffer: {}", Hex.encodeHexString(dst));
+                    //}
+                    if (handshake.decodeClientRequest2(IoBuffer.wrap(dst))) {
+                        log.debug("Connected, removing handshake data and adding rtmp protocol filter");
+                        // set state to indicate we're connected
+                        rtmp.setState(RTMP.STATE_CONNECTED);
+                        // remove handshake from session now that we are connected
+                        session.removeAttribute(RTMPConnection.RTMP_HANDSHAKE);
+                    } else {
+                        log.warn("Client was rejected due to invalid handshake");
+                        conn.close();
+                    }
+                }
+                // let the logic flow into connected to catch the remaining bytes that probably contain
+                // the connect call
+            case RTMP.STATE_CONNECTED:
+                // decode the objects and pass to received; messages should all be Packet type
+                for (Object obj : conn.decode(message)) {
+                    conn.handleMessageReceived(obj);
+                }
+                break;
+            case RTMP.STATE_ERROR:
+            case RTMP.STATE_DISCONNECTING:
+            case RTMP.STATE_DISCONNECTED:
+                // do nothing, really
+                log.debug("Nothing to do, connection state: {}", RTMP.states[connectionState]);
+                break;
+            default:
+                throw new IllegalStateException("Invalid RTMP state: " + connectionState);
+        }
+    }
+
     /**
      * Poll RTMPT session for updates.
      *
@@ -508,6 +593,36 @@ public class RTMPTServlet extends HttpServlet {
         }
     }
 
+    /**
+     * Handles a send or idle request without holding the request thread. The body is read as it arrives and an idle poll is answered once
+     * data is pending for the connection, or after the poll timeout.
+     *
+     * @param req
+     *            Servlet request
+     * @param resp
+     *            Servlet response
+     * @param send
+     *            true for a send request, false for an idle request
+     * @return true if the request is handled asynchronously, false if the container does not support it
+     * @throws IOException
+     *             I/O exception
+     */
+    protected boolean handleAsync(HttpServletRequest req, HttpServletResponse resp, boolean send) throws IOException {
+        if (!req.isAsyncSupported()) {
+            log.debug("Async is not supported for this request, check async-supported for the servlet");
+            return false;
+        }
+        log.debug("handleAsync - send: {}", send);
+        RTMPTConnection conn = getConnection();
+        if (conn != null) {
+            AsyncContext ctx = req.startAsync(req, resp);
+            new RTMPTAsyncRequest(this, conn, ctx, send).start(asyncPollTimeout);
+        } else {
+            handleBadRequest(String.format("%s: unknown client session: %s", send ? "Send" : "Idle", requestInfo.get().getSessionId()), resp);
+        }
+        return true;
+    }
+
     /**
      * Main entry point for the servlet.
      *
@@ -572,12 +687,16 @@ public class RTMPTServlet extends HttpServlet {
                 break;
             case 's': // SEND_REQUEST
                 setRequestInfo(req);
-                handleSend(req, resp);
+                if (!asyncPolling || !handleAsync(req, resp, true)) {
+                    handleSend(req, resp);
+                }
                 requestInfo.remove();
                 break;
             case 'i': // IDLE_REQUEST
                 setRequestInfo(req);
-                handleIdle(req, resp);
+                if (!asyncPolling || !handleAsync(req, resp, false)) {
+                    handleIdle(req, resp);
+                }
                 requestInfo.remove();
                 break;
             case 'f': // HTTPIdent request (ident and ident2)
@@ -694,6 +813,27 @@ public class RTMPTServlet extends HttpServlet {
         RTMPTServlet.targetResponseSize = targetResponseSize;
     }
 
+    /**
+     * Sets whether send and idle requests are handled asynchronously. Idle polls are then parked until data is pending for the connection,
+     * which requires async-supported to be set for the servlet.
+     *
+     * @param asyncPolling
+     *            the asyncPolling to set
+     */
+    public void setAsyncPolling(boolean asyncPolling) {
+        RTMPTServlet.asyncPolling = asyncPolling;
+    }
+
+    /**
+     * Sets the time an idle poll is parked at most. Clients which do not send while a poll is open wait this long for their sends.
+     *
+     * @param asyncPollTimeout
+     *            the asyncPollTimeout to set in milliseconds
+     */
+    public void setAsyncPollTimeout(long asyncPollTimeout) {
+        RTMPTServlet.asyncPollTimeout = asyncPollTimeout;
+    }
+
     /**
      * @return the enforceContentTypeCheck
      */
@@ -12,8 +12,16 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.lang.reflect.Constructor;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
 
 import org.apache.mina.core.buffer.IoBuffer;
 import org.red5.io.amf.Input;
@@ -25,6 +33,7 @@ import org.red5.server.api.scheduling.IScheduledJob;
 import org.red5.server.api.scheduling.ISchedulingService;
 import org.red5.server.api.scope.IScope;
 import org.red5.server.net.servlet.ServletUtils;
+import org.red5.server.so.ISharedObjectEvent;
 import org.red5.server.so.SharedObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -82,6 +91,37 @@ public class FilePersistence extends RamPersistence {
      */
     private String storeJobName;
 
+    /**
+     * Extension of the change logs written next to shared object snapshots
+     */
+    public static final String LOG_EXTENSION = ".log";
+
+    /**
+     * Whether shared objects are persisted as a snapshot plus a log of changes, rather than rewritten whole on every change
+     */
+    private static boolean deltaLog;
+
+    /**
+     * Whether change logs are written through a memory-mapped file
+     */
+    private static boolean mappedLog;
+
+    /**
+     * Whether change log writes are forced to disk
+     */
+    private static boolean syncLog;
+
+    /**
+     * Size in bytes a change log may reach before it is compacted into a new snapshot; a log is also compacted once it outgrows its
+     * snapshot.
+     */
+    private static int compactionSize = 64 * 1024;
+
+    /**
+     * Open change logs keyed by snapshot path
+     */
+    private ConcurrentMap<String, SharedObjectChangeLog> changeLogs = new ConcurrentHashMap<>();
+
     /**
      * Create file persistence object from given resource pattern resolver
      *
@@ -213,6 +253,38 @@ public class FilePersistence extends RamPersistence {
         this.checkForEmptyDirectories = checkForEmptyDirectories;
     }
 
+    /**
+     * @param deltaLog
+     *            whether shared objects are persisted as a snapshot plus a log of changes
+     */
+    public static void setDeltaLog(boolean deltaLog) {
+        FilePersistence.deltaLog = deltaLog;
+    }
+
+    /**
+     * @param mappedLog
+     *            whether change logs are written through a memory-mapped file
+     */
+    public static void setMappedLog(boolean mappedLog) {
+        FilePersistence.mappedLog = mappedLog;
+    }
+
+    /**
+     * @param syncLog
+     *            whether change log writes are forced to disk
+     */
+    public static void setSyncLog(boolean syncLog) {
+        FilePersistence.syncLog = syncLog;
+    }
+
+    /**
+     * @param compactionSize
+     *            size in bytes a change log may reach before it is compacted into a new snapshot
+     */
+    public static void setCompactionSize(int compactionSize) {
+        FilePersistence.compactionSize = compactionSize;
+    }
+
     /**
      * @return the persistenceInterval
      */
@@ -433,6 +505,16 @@ public class FilePersistence extends RamPersistence {
                 buf.free();
                 buf = null;
             }
+            if (deltaLog && result instanceof SharedObject) {
+                // changes from now on are logged after the snapshot and the changes read back
+                ((SharedObject) result).setTrackChanges(true);
+                // apply the changes logged since the snapshot was written
+                List<ISharedObjectEvent> changes = SharedObjectChangeLog.read(new File(filename + LOG_EXTENSION), readGeneration(new File(filename)));
+                if (!changes.isEmpty()) {
+                    log.debug("Replaying {} changes on {}", changes.size(), filename);
+                    ((SharedObject) result).applyChanges(changes);
+                }
+            }
             if (result.getStore() != this) {
                 result.setStore(this);
             }
@@ -487,9 +569,105 @@ public class FilePersistence extends RamPersistence {
      *
      *         otherwise
      */
-    @SuppressWarnings("null")
     protected boolean saveObject(IPersistable object) {
         log.debug("saveObject - object: {}", object);
+        File dir = getObjectDirectory(object);
+        if (dir == null) {
+            return false;
+        }
+        // if it's a persistent SharedObject and it's empty don't write it to disk. APPSERVER-364
+        if (object instanceof SharedObject) {
+            SharedObject soRef = (SharedObject) object;
+            if (soRef.getAttributes().size() == 0) {
+                // return true to trick the server into thinking everything is just fine :P
+                return true;
+            }
+        }
+        return writeObject(object, getObjectFile(dir, object), 0);
+    }
+
+    /**
+     * Save the changes of a shared object to its change log, or a new snapshot once the log has grown large.
+     *
+     * @param so
+     *            shared object
+     * @return true on success, false otherwise
+     */
+    protected boolean saveChanges(SharedObject so) {
+        File dir = getObjectDirectory(so);
+        if (dir == null) {
+            return false;
+        }
+        File file = getObjectFile(dir, so);
+        SharedObjectChangeLog changeLog = changeLogs.computeIfAbsent(file.getAbsolutePath(), path -> new SharedObjectChangeLog(new File(path + LOG_EXTENSION), mappedLog, syncLog));
+        synchronized (changeLog) {
+            try {
+                changeLog.open();
+                if (!changeLog.verified && file.exists()) {
+                    // a log left over by a crash during compaction belongs to an older snapshot
+                    changeLog.verified = changeLog.getGeneration() == readGeneration(file);
+                }
+                // changes made before they were tracked are only in a new snapshot
+                boolean tracked = so.isTrackChanges();
+                so.setTrackChanges(true);
+                if (!tracked || !changeLog.verified || !file.exists() || changeLog.size() > Math.max(compactionSize, file.length())) {
+                    // changes up to now are in the snapshot, later ones are logged after it
+                    so.drainChanges();
+                    long generation = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+                    if (so.getAttributes().size() == 0) {
+                        // an empty shared object is not written to disk
+                        Files.deleteIfExists(file.toPath());
+                    } else if (!writeObject(so, file, generation)) {
+                        return false;
+                    }
+                    changeLog.reset(generation);
+                    log.debug("Compacted {} into a new snapshot", file.getName());
+                } else {
+                    List<ISharedObjectEvent> changes = so.drainChanges();
+                    if (!changes.isEmpty()) {
+                        changeLog.append(changes);
+                        log.debug("Logged {} changes of {}", changes.size(), file.getName());
+                    }
+                }
+            } catch (IOException e) {
+                log.error("Could not log changes of {}", file, e);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the snapshot generation a change log must match, which is stored at the end of the snapshot.
+     *
+     * @param file
+     *            snapshot file
+     * @return generation or 0 if the snapshot has none
+     */
+    private long readGeneration(File file) {
+        if (file.length() > SharedObjectChangeLog.HEADER_SIZE) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                raf.seek(file.length() - SharedObjectChangeLog.HEADER_SIZE);
+                long generation = raf.readLong();
+                if (raf.readInt() == SharedObjectChangeLog.MAGIC) {
+                    return generation;
+                }
+            } catch (IOException e) {
+                log.debug("Could not read snapshot generation of {}", file, e);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the directory holding the file of the given object, creating it if needed.
+     *
+     * @param object
+     *            Persistable object
+     * @return directory or null on error
+     */
+    @SuppressWarnings("null")
+    private File getObjectDirectory(IPersistable object) {
         boolean result = true;
         String path = getObjectFilepath(object, true);
         log.trace("Path: {}", path);
@@ -528,54 +706,79 @@ public class FilePersistence extends RamPersistence {
             result = false;
         }
         //if we made it this far and everything seems ok
-        if (result) {
-            // if it's a persistent SharedObject and it's empty don't write it to disk. APPSERVER-364
-            if (object instanceof SharedObject) {
-                SharedObject soRef = (SharedObject) object;
-                if (soRef.getAttributes().size() == 0) {
-                    // return true to trick the server into thinking everything is just fine :P
-                    return true;
-                }
+        return result ? dir : null;
+    }
+
+    /**
+     * Returns the file of the given object.
+     *
+     * @param dir
+     *            directory holding the file
+     * @param object
+     *            Persistable object
+     * @return file
+     */
+    private File getObjectFile(File dir, IPersistable object) {
+        String filename = getObjectFilename(object);
+        log.debug("File name: {}", filename);
+        //strip path
+        if (filename.indexOf('/') != -1) {
+            filename = filename.substring(filename.lastIndexOf('/'));
+            log.debug("New file name: {}", filename);
+        }
+        return new File(dir, filename);
+    }
+
+    /**
+     * Writes the object to its file. The object is written next to the file first and then moved into place, so that a crash never leaves
+     * a partially written file.
+     *
+     * @param object
+     *            Persistable object
+     * @param file
+     *            object file
+     * @param generation
+     *            snapshot generation to append for a change log, 0 for none
+     * @return true on success, false otherwise
+     */
+    private boolean writeObject(IPersistable object, File file, long generation) {
+        boolean result = true;
+        File tmp = new File(file.getAbsolutePath() + ".tmp");
+        IoBuffer buf = null;
+        try {
+            int initialSize = 8192;
+            if (file.exists()) {
+                // We likely also need the original file size when writing object
+                initialSize += (int) file.length();
             }
-            String filename = getObjectFilename(object);
-            log.debug("File name: {}", filename);
-            //strip path
-            if (filename.indexOf('/') != -1) {
-                filename = filename.substring(filename.lastIndexOf('/'));
-                log.debug("New file name: {}", filename);
+            buf = IoBuffer.allocate(initialSize);
+            buf.setAutoExpand(true);
+            Output out = new Output(buf);
+            out.writeString(object.getClass().getName());
+            object.serialize(out);
+            if (generation != 0) {
+                buf.putLong(generation);
+                buf.putInt(SharedObjectChangeLog.MAGIC);
             }
-            File file = new File(dir, filename);
-            //Resource resFile = resources.getResource(filename);
-            //log.debug("Resource (file) check #1 - file name: {} exists: {}", resPath.getFilename(), exists);
-            IoBuffer buf = null;
-            try {
-                int initialSize = 8192;
-                if (file.exists()) {
-                    // We likely also need the original file size when writing object
-                    initialSize += (int) file.length();
-                }
-                buf = IoBuffer.allocate(initialSize);
-                buf.setAutoExpand(true);
-                Output out = new Output(buf);
-                out.writeString(object.getClass().getName());
-                object.serialize(out);
-                buf.flip();
-
-                FileOutputStream output = new FileOutputStream(file.getAbsolutePath());
+            buf.flip();
+            try (FileOutputStream output = new FileOutputStream(tmp)) {
                 ServletUtils.copy(buf.asInputStream(), output);
-                output.close();
-                log.debug("Stored persistent object {} at {}", object, filename);
-            } catch (IOException e) {
-                log.error("Could not create / write file {}", filename, e);
-                log.warn("Exception {}", e);
-                result = false;
-            } finally {
-                if (buf != null) {
-                    buf.free();
-                    buf = null;
-                }
-                file = null;
-                dir = null;
+            }
+            try {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            log.debug("Stored persistent object {} at {}", object, file.getName());
+        } catch (IOException e) {
+            log.error("Could not create / write file {}", file.getName(), e);
+            log.warn("Exception {}", e);
+            tmp.delete();
+            result = false;
+        } finally {
+            if (buf != null) {
+                buf.free();
+                buf = null;
             }
         }
         return result;
@@ -635,6 +838,12 @@ public class FilePersistence extends RamPersistence {
         Resource resFile = resources.getResource(filename);
         if (resFile.exists()) {
             try {
+                SharedObjectChangeLog changeLog = changeLogs.remove(resFile.getFile().getAbsolutePath());
+                if (changeLog != null) {
+                    synchronized (changeLog) {
+                        changeLog.delete();
+                    }
+                }
                 result = resFile.getFile().delete();
                 if (result) {
                     checkRemoveEmptyDirectories(filename);
@@ -662,6 +871,12 @@ public class FilePersistence extends RamPersistence {
         }
         // write any pending objects
         persist();
+        changeLogs.values().forEach(changeLog -> {
+            synchronized (changeLog) {
+                changeLog.close();
+            }
+        });
+        changeLogs.clear();
         //
         super.notifyClose();
     }
@@ -671,7 +886,8 @@ public class FilePersistence extends RamPersistence {
         while (!queue.isEmpty()) {
             try {
                 persistable = queue.poll();
-                if (!saveObject(persistable)) {
+                boolean saved = deltaLog && persistable instanceof SharedObject ? saveChanges((SharedObject) persistable) : saveObject(persistable);
+                if (!saved) {
                     log.warn("Object persist failed for: {}", persistable);
                 }
             } catch (Throwable e) {
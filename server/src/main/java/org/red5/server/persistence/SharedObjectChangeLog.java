@@ -0,0 +1,330 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.io.amf.Input;
+import org.red5.io.amf.Output;
+import org.red5.io.object.Deserializer;
+import org.red5.io.object.Serializer;
+import org.red5.server.so.ISharedObjectEvent;
+import org.red5.server.so.ISharedObjectEvent.Type;
+import org.red5.server.so.SharedObjectEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only log of the attribute changes of a persistent shared object, applied on top of its last snapshot. The log starts with a
+ * header naming the generation of the snapshot it belongs to; each record holds its length, a CRC32 of its content, the change type, the
+ * attribute name and, for updates, the AMF encoded value. A torn record at the end of the log, as left by a crash, ends the replay.
+ *
+ * @author The Red5 Project
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+final class SharedObjectChangeLog {
+
+    private static Logger log = LoggerFactory.getLogger(SharedObjectChangeLog.class);
+
+    /** Marks the log header as well as the generation trailer of snapshots */
+    static final int MAGIC = 0x52354C47;
+
+    static final int HEADER_SIZE = 12;
+
+    private static final byte UPDATE = 0, DELETE = 1, CLEAR = 2;
+
+    // size by which a mapped log grows
+    private static final int MAP_SIZE = 256 * 1024;
+
+    private final File file;
+
+    private final boolean mapped;
+
+    private final boolean sync;
+
+    private FileChannel channel;
+
+    private MappedByteBuffer map;
+
+    private long mapStart;
+
+    /**
+     * End of the last valid record
+     */
+    private long end;
+
+    private long generation;
+
+    /**
+     * Whether the generation of the log was checked against the current snapshot
+     */
+    boolean verified;
+
+    SharedObjectChangeLog(File file, boolean mapped, boolean sync) {
+        this.file = file;
+        this.mapped = mapped;
+        this.sync = sync;
+    }
+
+    /**
+     * Opens the log for appending, dropping any torn record at its end.
+     *
+     * @throws IOException
+     *             on error
+     */
+    @SuppressWarnings("resource")
+    void open() throws IOException {
+        if (channel == null) {
+            channel = new RandomAccessFile(file, "rw").getChannel();
+            generation = 0;
+            end = 0;
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            if (channel.read(header, 0) == HEADER_SIZE && header.getInt(0) == MAGIC) {
+                generation = header.getLong(4);
+                end = scan(channel, null);
+            }
+            if (channel.size() > end) {
+                channel.truncate(end);
+            }
+        }
+    }
+
+    boolean isOpen() {
+        return channel != null;
+    }
+
+    /**
+     * Returns the generation of the snapshot this log applies to.
+     *
+     * @return generation or 0 if the log has no header
+     */
+    long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Returns the size of the log in bytes.
+     *
+     * @return size
+     */
+    long size() {
+        return end;
+    }
+
+    /**
+     * Appends changes to the log.
+     *
+     * @param changes
+     *            update, delete and clear events
+     * @throws IOException
+     *             on error
+     */
+    void append(List<ISharedObjectEvent> changes) throws IOException {
+        IoBuffer buf = IoBuffer.allocate(256).setAutoExpand(true);
+        try {
+            Output out = new Output(buf);
+            CRC32 crc = new CRC32();
+            for (ISharedObjectEvent change : changes) {
+                int start = buf.position();
+                // room for length and checksum
+                buf.skip(8);
+                switch (change.getType()) {
+                    case CLIENT_UPDATE_DATA:
+                        buf.put(UPDATE);
+                        Serializer.serialize(out, change.getKey());
+                        Serializer.serialize(out, change.getValue());
+                        break;
+                    case CLIENT_DELETE_DATA:
+                        buf.put(DELETE);
+                        Serializer.serialize(out, change.getKey());
+                        break;
+                    case CLIENT_CLEAR_DATA:
+                        buf.put(CLEAR);
+                        break;
+                    default:
+                        buf.position(start);
+                        continue;
+                }
+                int length = buf.position() - start - 8;
+                crc.reset();
+                crc.update(buf.array(), buf.arrayOffset() + start + 8, length);
+                buf.putInt(start, length);
+                buf.putInt(start + 4, (int) crc.getValue());
+                out.reset();
+            }
+            buf.flip();
+            write(buf.buf());
+        } finally {
+            buf.free();
+        }
+    }
+
+    /**
+     * Empties the log and starts a new generation.
+     *
+     * @param generation
+     *            generation of the snapshot just written
+     * @throws IOException
+     *             on error
+     */
+    void reset(long generation) throws IOException {
+        open();
+        map = null;
+        channel.truncate(0);
+        end = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putLong(generation).flip();
+        write(header);
+        this.generation = generation;
+        verified = true;
+    }
+
+    private void write(ByteBuffer src) throws IOException {
+        int length = src.remaining();
+        if (mapped) {
+            if (map == null || end + length > mapStart + map.capacity()) {
+                mapStart = end;
+                map = channel.map(FileChannel.MapMode.READ_WRITE, mapStart, Math.max(length, MAP_SIZE));
+            }
+            map.position((int) (end - mapStart));
+            map.put(src);
+            if (sync) {
+                map.force();
+            }
+        } else {
+            long position = end;
+            while (src.hasRemaining()) {
+                position += channel.write(src, position);
+            }
+            if (sync) {
+                channel.force(false);
+            }
+        }
+        end += length;
+    }
+
+    /**
+     * Closes the log, trimming the unused part of a mapped log.
+     */
+    void close() {
+        if (channel != null) {
+            map = null;
+            try {
+                channel.truncate(end);
+            } catch (IOException e) {
+                log.debug("Could not trim change log {}", file, e);
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Could not close change log {}", file, e);
+            }
+            channel = null;
+        }
+    }
+
+    /**
+     * Closes and deletes the log.
+     */
+    void delete() {
+        close();
+        if (file.exists() && !file.delete()) {
+            log.warn("Change log was not deleted - {}", file);
+        }
+    }
+
+    /**
+     * Reads the changes logged for the given snapshot generation.
+     *
+     * @param file
+     *            log file
+     * @param generation
+     *            generation of the loaded snapshot
+     * @return changes in log order, empty if the log does not belong to the snapshot
+     */
+    static List<ISharedObjectEvent> read(File file, long generation) {
+        List<ISharedObjectEvent> changes = new ArrayList<>();
+        if (generation != 0 && file.exists()) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                if (channel.read(header, 0) == HEADER_SIZE && header.getInt(0) == MAGIC && header.getLong(4) == generation) {
+                    scan(channel, changes);
+                } else {
+                    log.debug("Change log {} does not belong to the snapshot", file);
+                }
+            } catch (IOException e) {
+                log.warn("Could not read change log {}", file, e);
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Reads the valid records following the header.
+     *
+     * @param channel
+     *            log channel
+     * @param changes
+     *            list receiving the changes or null to only validate
+     * @return end of the last valid record
+     * @throws IOException
+     *             on error
+     */
+    private static long scan(FileChannel channel, List<ISharedObjectEvent> changes) throws IOException {
+        long size = channel.size();
+        long position = HEADER_SIZE;
+        ByteBuffer prefix = ByteBuffer.allocate(8);
+        CRC32 crc = new CRC32();
+        while (position + 8 < size) {
+            prefix.clear();
+            channel.read(prefix, position);
+            int length = prefix.getInt(0);
+            if (length <= 0 || position + 8 + length > size) {
+                break;
+            }
+            ByteBuffer record = ByteBuffer.allocate(length);
+            while (record.hasRemaining() && channel.read(record, position + 8 + record.position()) >= 0) {
+            }
+            crc.reset();
+            crc.update(record.array(), 0, length);
+            if ((int) crc.getValue() != prefix.getInt(4)) {
+                log.debug("Change log ends with a torn record at {}", position);
+                break;
+            }
+            if (changes != null) {
+                record.flip();
+                changes.add(decode(IoBuffer.wrap(record)));
+            }
+            position += 8 + length;
+        }
+        return position;
+    }
+
+    private static ISharedObjectEvent decode(IoBuffer record) {
+        byte type = record.get();
+        if (type == CLEAR) {
+            return new SharedObjectEvent(Type.CLIENT_CLEAR_DATA, null, null);
+        }
+        Input in = new Input(record);
+        String key = Deserializer.deserialize(in, String.class);
+        if (type == DELETE) {
+            return new SharedObjectEvent(Type.CLIENT_DELETE_DATA, key, null);
+        }
+        return new SharedObjectEvent(Type.CLIENT_UPDATE_DATA, key, Deserializer.deserialize(in, Object.class));
+    }
+
+}
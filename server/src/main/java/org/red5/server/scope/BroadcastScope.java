@@ -16,6 +16,7 @@ import org.red5.server.api.scope.IBroadcastScope;
 import org.red5.server.api.scope.IScope;
 import org.red5.server.api.scope.ScopeType;
 import org.red5.server.api.stream.IClientBroadcastStream;
+import org.red5.server.messaging.FanOutDispatcher;
 import org.red5.server.messaging.IConsumer;
 import org.red5.server.messaging.IMessage;
 import org.red5.server.messaging.IPipeConnectionListener;
@@ -30,6 +31,11 @@ import org.red5.server.stream.IProviderService;
  */
 public class BroadcastScope extends BasicScope implements IBroadcastScope, IPipeConnectionListener {
 
+    /**
+     * Dispatcher for parallel fan-out of live messages to subscribers, serial pushing is used when null or disabled
+     */
+    private static FanOutDispatcher fanOutDispatcher;
+
     /**
      * Broadcasting stream associated with this scope
      */
@@ -61,9 +67,20 @@ public class BroadcastScope extends BasicScope implements IBroadcastScope, IPipe
     public BroadcastScope(IScope parent, String name) {
         super(parent, ScopeType.BROADCAST, name, false);
         pipe = new InMemoryPushPushPipe(this);
+        pipe.setFanOutDispatcher(fanOutDispatcher);
         keepOnDisconnect = true;
     }
 
+    /**
+     * Sets the dispatcher used by broadcast scopes created from now on.
+     *
+     * @param dispatcher
+     *            fan-out dispatcher
+     */
+    public static void setFanOutDispatcher(FanOutDispatcher dispatcher) {
+        fanOutDispatcher = dispatcher;
+    }
+
     /**
      * Register pipe connection event listener with this scope's pipe. A listener that wants to listen to events when provider/consumer connects to or disconnects from a specific pipe.
      *
@@ -265,6 +282,11 @@ public class BroadcastScope extends BasicScope implements IBroadcastScope, IPipe
             }
         }
         this.clientBroadcastStream = clientBroadcastStream;
+        // index the aliases of the stream with the parent
+        IScope parent = getParent();
+        if (clientBroadcastStream != null && parent instanceof Scope) {
+            ((Scope) parent).addBroadcastAliases(this);
+        }
     }
 
     /*
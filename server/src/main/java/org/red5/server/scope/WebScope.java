@@ -12,6 +12,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import javax.servlet.ServletContext;
 
 import org.red5.server.LoaderBase;
+import org.red5.server.StartupTimeline;
 import org.red5.server.api.IApplicationContext;
 import org.red5.server.api.IApplicationLoader;
 import org.red5.server.api.IConnection;
@@ -205,6 +206,9 @@ public class WebScope extends Scope implements ServletContextAware, WebScopeMXBe
     public void register() {
         if (registered.compareAndSet(false, true)) {
             log.debug("Webscope registering: {}", contextPath);
+            // recorded on the timeline of the loader starting the application, if any
+            StartupTimeline timeline = StartupTimeline.current();
+            long start = System.nanoTime();
             getAppContext();
             appLoader = LoaderBase.getApplicationLoader();
             // get the parent name
@@ -218,6 +222,9 @@ public class WebScope extends Scope implements ServletContextAware, WebScopeMXBe
             init();
             // don't free configured scopes when a client disconnects
             keepOnDisconnect = true;
+            if (timeline != null) {
+                timeline.record(StartupTimeline.SCOPE_REGISTRATION, start);
+            }
         } else {
             log.info("Webscope already registered; remove the 'init-method' from your 'web.scope' bean to prevent this message in the future.");
         }
@@ -0,0 +1,292 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.stream;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Token bucket refilled lazily: whoever touches the bucket first after a millisecond boundary credits the tokens for the elapsed time,
+ * so there is no per bucket refill work while nobody sends. Tokens are taken with compare-and-set, first from this bucket and then from
+ * each parent, handing them back if a parent runs short. A request larger than the capacity is granted once the bucket is full and
+ * leaves it in debt. A bucket with a speed of zero or less is not limited itself, only by its parents.
+ *
+ * @author The Red5 Project
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+final class TokenBucket implements ITokenBucket {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenBucket.class);
+
+    private static final long NANOS_PER_MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final TokenBucketService service;
+
+    private final TokenBucket parent;
+
+    private final long capacity;
+
+    private final long speed;
+
+    private final AtomicLong tokens;
+
+    // time up to which tokens have been credited
+    private final AtomicLong refilled = new AtomicLong(System.nanoTime());
+
+    private final Queue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+
+    TokenBucket(TokenBucketService service, TokenBucket parent, long capacity, long speed) {
+        this.service = service;
+        this.parent = parent;
+        this.capacity = Math.max(capacity, speed);
+        this.speed = speed;
+        this.tokens = new AtomicLong(this.capacity);
+    }
+
+    /** {@inheritDoc} */
+    public boolean acquireToken(long tokenCount, long wait) {
+        if (tryAcquire(tokenCount)) {
+            return true;
+        }
+        if (wait == 0) {
+            return false;
+        }
+        final long deadline = wait > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(wait) : Long.MAX_VALUE;
+        Waiter waiter = new Waiter(tokenCount, null);
+        waiters.add(waiter);
+        try {
+            while (!waiter.cancelled.get()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                // sleep until the tokens should be there, the wait is cut short by a reset
+                LockSupport.parkNanos(this, Math.min(remaining, Math.max(1L, waitMillis(tokenCount)) * NANOS_PER_MS));
+                if (Thread.currentThread().isInterrupted()) {
+                    return false;
+                }
+                if (!waiter.cancelled.get() && tryAcquire(tokenCount)) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            waiters.remove(waiter);
+        }
+    }
+
+    /** {@inheritDoc} */
+    public boolean acquireTokenNonblocking(long tokenCount, ITokenBucketCallback callback) {
+        if (tryAcquire(tokenCount)) {
+            return true;
+        }
+        if (callback != null) {
+            Waiter waiter = new Waiter(tokenCount, callback);
+            waiters.add(waiter);
+            service.schedule(waiter, waitMillis(tokenCount));
+        }
+        return false;
+    }
+
+    /** {@inheritDoc} */
+    public long acquireTokenBestEffort(long upperLimitCount) {
+        long taken = takeUpTo(upperLimitCount);
+        if (taken > 0 && parent != null) {
+            long granted = parent.acquireTokenBestEffort(taken);
+            if (granted < taken) {
+                give(taken - granted);
+            }
+            taken = granted;
+        }
+        return taken;
+    }
+
+    /** {@inheritDoc} */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /** {@inheritDoc} */
+    public double getSpeed() {
+        return speed;
+    }
+
+    /** {@inheritDoc} */
+    public void reset() {
+        Waiter waiter;
+        while ((waiter = waiters.poll()) != null) {
+            if (waiter.cancelled.compareAndSet(false, true) && waiter.callback != null) {
+                try {
+                    waiter.callback.reset(this, waiter.tokenCount);
+                } catch (Exception e) {
+                    log.warn("Exception in token bucket callback", e);
+                }
+            }
+            if (waiter.thread != null) {
+                LockSupport.unpark(waiter.thread);
+            }
+        }
+    }
+
+    TokenBucket getParent() {
+        return parent;
+    }
+
+    /**
+     * Returns the tokens currently in the bucket, negative if it is in debt.
+     *
+     * @return tokens
+     */
+    long getTokens() {
+        refill();
+        return tokens.get();
+    }
+
+    /**
+     * Takes the tokens from this bucket and all of its parents, or from none of them.
+     */
+    boolean tryAcquire(long tokenCount) {
+        if (!take(tokenCount)) {
+            return false;
+        }
+        if (parent != null && !parent.tryAcquire(tokenCount)) {
+            give(tokenCount);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Estimates the milliseconds until the given number of tokens is available in this bucket and all of its parents.
+     */
+    long waitMillis(long tokenCount) {
+        long wait = 0;
+        if (speed > 0) {
+            refill();
+            long deficit = Math.min(tokenCount, capacity) - tokens.get();
+            if (deficit > 0) {
+                wait = (deficit + speed - 1) / speed;
+            }
+        }
+        return parent != null ? Math.max(wait, parent.waitMillis(tokenCount)) : wait;
+    }
+
+    /**
+     * Called by the timer wheel once a callback waiter is due.
+     *
+     * @return true if the waiter is done, false to schedule it again
+     */
+    boolean fire(Waiter waiter) {
+        if (waiter.cancelled.get()) {
+            return true;
+        }
+        long wait = waitMillis(waiter.tokenCount);
+        if (wait > 0) {
+            return false;
+        }
+        if (waiters.remove(waiter) && waiter.cancelled.compareAndSet(false, true)) {
+            try {
+                waiter.callback.available(this, waiter.tokenCount);
+            } catch (Exception e) {
+                log.warn("Exception in token bucket callback", e);
+            }
+        }
+        return true;
+    }
+
+    private boolean take(long tokenCount) {
+        if (speed <= 0) {
+            return true;
+        }
+        refill();
+        final long needed = Math.min(tokenCount, capacity);
+        long current;
+        do {
+            current = tokens.get();
+            if (current < needed) {
+                return false;
+            }
+        } while (!tokens.compareAndSet(current, current - tokenCount));
+        return true;
+    }
+
+    private long takeUpTo(long limit) {
+        if (speed <= 0) {
+            return limit;
+        }
+        refill();
+        long current, taken;
+        do {
+            current = tokens.get();
+            if (current <= 0) {
+                return 0;
+            }
+            taken = Math.min(current, limit);
+        } while (!tokens.compareAndSet(current, current - taken));
+        return taken;
+    }
+
+    private void give(long tokenCount) {
+        if (speed > 0) {
+            tokens.accumulateAndGet(tokenCount, (current, given) -> Math.min(capacity, current + given));
+        }
+    }
+
+    private void refill() {
+        if (speed > 0) {
+            long last = refilled.get();
+            long elapsed = (System.nanoTime() - last) / NANOS_PER_MS;
+            // only the thread moving the refill time forward credits the elapsed milliseconds
+            if (elapsed > 0 && refilled.compareAndSet(last, last + elapsed * NANOS_PER_MS)) {
+                long credit = elapsed > capacity / speed ? capacity : elapsed * speed;
+                tokens.accumulateAndGet(credit, (current, added) -> Math.min(capacity, current + added));
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TokenBucket [capacity=" + capacity + ", speed=" + speed + ", tokens=" + tokens + "]";
+    }
+
+    /**
+     * Thread or callback waiting for tokens.
+     */
+    final class Waiter {
+
+        final long tokenCount;
+
+        final ITokenBucketCallback callback;
+
+        final Thread thread;
+
+        final AtomicBoolean cancelled = new AtomicBoolean();
+
+        // tick of the timer wheel at which the waiter is due
+        long deadline;
+
+        Waiter(long tokenCount, ITokenBucketCallback callback) {
+            this.tokenCount = tokenCount;
+            this.callback = callback;
+            this.thread = callback == null ? Thread.currentThread() : null;
+        }
+
+        TokenBucket getBucket() {
+            return TokenBucket.this;
+        }
+
+    }
+
+}
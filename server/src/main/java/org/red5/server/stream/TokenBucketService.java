@@ -0,0 +1,313 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.stream;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.red5.server.api.IConnection;
+import org.red5.server.api.scope.IScope;
+import org.red5.server.api.stream.ISubscriberStream;
+import org.red5.server.util.ScopeUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Token bucket service shaping the egress of subscriber streams. Stream buckets are nested in a bucket per connection, per application
+ * scope and one for the whole server, each level being limited only if a speed is configured for it; the connection and application
+ * buckets are shared by their streams and dropped with the last one. Buckets refill themselves as they are used, the single thread of
+ * the service only runs a hashed timer wheel which calls back the nonblocking requests once their tokens should be available.
+ *
+ * @author The Red5 Project
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+public class TokenBucketService implements ITokenBucketService, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenBucketService.class);
+
+    private final Map<Object, SharedBucket> sharedBuckets = new ConcurrentHashMap<>();
+
+    private final Map<TokenBucket, List<Object>> streamBuckets = new ConcurrentHashMap<>();
+
+    private volatile TokenBucket nodeBucket;
+
+    private volatile ScheduledExecutorService wheelExecutor;
+
+    private Queue<TokenBucket.Waiter>[] wheel;
+
+    private int wheelSize = 512;
+
+    private volatile long tick;
+
+    private long tickInterval = 10L;
+
+    private long nodeSpeed;
+
+    private long applicationSpeed;
+
+    private long connectionSpeed;
+
+    private long streamSpeed;
+
+    private long burst = 1000L;
+
+    /** {@inheritDoc} */
+    public ITokenBucket createTokenBucket(long capacity, long speed) {
+        return createTokenBucket(getNodeBucket(), capacity, speed);
+    }
+
+    /** {@inheritDoc} */
+    public ITokenBucket createTokenBucket(ITokenBucket parent, long capacity, long speed) {
+        if (parent != null && !(parent instanceof TokenBucket)) {
+            log.warn("Parent bucket {} is not managed by this service", parent);
+            return null;
+        }
+        return new TokenBucket(this, (TokenBucket) parent, capacity, speed);
+    }
+
+    /** {@inheritDoc} */
+    public ITokenBucket createStreamBucket(ISubscriberStream stream) {
+        if (nodeSpeed <= 0 && applicationSpeed <= 0 && connectionSpeed <= 0 && streamSpeed <= 0) {
+            return null;
+        }
+        List<Object> keys = new ArrayList<>(2);
+        TokenBucket parent = getNodeBucket();
+        IScope scope = stream.getScope();
+        if (applicationSpeed > 0 && scope != null) {
+            IScope app = ScopeUtils.findApplication(scope);
+            parent = acquireShared(app != null ? app : scope, parent, applicationSpeed, keys);
+        }
+        IConnection conn = stream.getConnection();
+        if (connectionSpeed > 0 && conn != null) {
+            parent = acquireShared(conn, parent, connectionSpeed, keys);
+        }
+        TokenBucket bucket = new TokenBucket(this, parent, streamSpeed * burst, streamSpeed);
+        streamBuckets.put(bucket, keys);
+        log.debug("Created stream bucket {} for {}", bucket, stream);
+        return bucket;
+    }
+
+    /** {@inheritDoc} */
+    public void removeTokenBucket(ITokenBucket bucket) {
+        if (bucket != null) {
+            bucket.reset();
+            List<Object> keys = streamBuckets.remove(bucket);
+            if (keys != null) {
+                keys.forEach(this::releaseShared);
+            }
+        }
+    }
+
+    private TokenBucket getNodeBucket() {
+        if (nodeSpeed > 0 && nodeBucket == null) {
+            synchronized (this) {
+                if (nodeBucket == null) {
+                    nodeBucket = new TokenBucket(this, null, nodeSpeed * burst, nodeSpeed);
+                }
+            }
+        }
+        return nodeBucket;
+    }
+
+    private TokenBucket acquireShared(Object key, TokenBucket parent, long speed, List<Object> keys) {
+        SharedBucket shared = sharedBuckets.compute(key, (k, existing) -> {
+            if (existing == null) {
+                existing = new SharedBucket(new TokenBucket(this, parent, speed * burst, speed));
+            }
+            existing.references++;
+            return existing;
+        });
+        keys.add(key);
+        return shared.bucket;
+    }
+
+    private void releaseShared(Object key) {
+        sharedBuckets.computeIfPresent(key, (k, existing) -> --existing.references > 0 ? existing : null);
+    }
+
+    /**
+     * Puts a callback waiter on the timer wheel.
+     *
+     * @param waiter
+     *            waiter
+     * @param delay
+     *            milliseconds until the tokens should be available
+     */
+    void schedule(TokenBucket.Waiter waiter, long delay) {
+        Queue<TokenBucket.Waiter>[] slots = getWheel();
+        // one tick of slack, the wheel may be moving past the next slot right now
+        waiter.deadline = tick + 1 + Math.max(1L, (delay + tickInterval - 1) / tickInterval);
+        slots[(int) (waiter.deadline % wheelSize)].add(waiter);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Queue<TokenBucket.Waiter>[] getWheel() {
+        if (wheelExecutor == null) {
+            synchronized (this) {
+                if (wheelExecutor == null) {
+                    Queue<TokenBucket.Waiter>[] slots = new Queue[wheelSize];
+                    for (int i = 0; i < wheelSize; i++) {
+                        slots[i] = new ConcurrentLinkedQueue<>();
+                    }
+                    wheel = slots;
+                    ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("TokenBucketWheel-"));
+                    executor.scheduleAtFixedRate(this::advance, tickInterval, tickInterval, TimeUnit.MILLISECONDS);
+                    wheelExecutor = executor;
+                }
+            }
+        }
+        return wheel;
+    }
+
+    /**
+     * Moves the wheel one tick ahead and handles the waiters due.
+     */
+    private void advance() {
+        final long current = ++tick;
+        Queue<TokenBucket.Waiter> slot = wheel[(int) (current % wheelSize)];
+        List<TokenBucket.Waiter> later = null;
+        TokenBucket.Waiter waiter;
+        while ((waiter = slot.poll()) != null) {
+            try {
+                if (waiter.deadline > current) {
+                    // due in a later round
+                    if (later == null) {
+                        later = new ArrayList<>();
+                    }
+                    later.add(waiter);
+                } else if (!waiter.getBucket().fire(waiter)) {
+                    schedule(waiter, waiter.getBucket().waitMillis(waiter.tokenCount));
+                }
+            } catch (Throwable t) {
+                log.warn("Exception handling token bucket waiter", t);
+            }
+        }
+        if (later != null) {
+            slot.addAll(later);
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        ScheduledExecutorService executor = wheelExecutor;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Sets the server wide egress limit.
+     *
+     * @param nodeSpeed
+     *            bytes per millisecond, 0 for no limit
+     */
+    public void setNodeSpeed(long nodeSpeed) {
+        this.nodeSpeed = nodeSpeed;
+    }
+
+    /**
+     * Sets the egress limit of each application scope.
+     *
+     * @param applicationSpeed
+     *            bytes per millisecond, 0 for no limit
+     */
+    public void setApplicationSpeed(long applicationSpeed) {
+        this.applicationSpeed = applicationSpeed;
+    }
+
+    /**
+     * Sets the egress limit of each connection.
+     *
+     * @param connectionSpeed
+     *            bytes per millisecond, 0 for no limit
+     */
+    public void setConnectionSpeed(long connectionSpeed) {
+        this.connectionSpeed = connectionSpeed;
+    }
+
+    /**
+     * Sets the egress limit of each subscriber stream.
+     *
+     * @param streamSpeed
+     *            bytes per millisecond, 0 for no limit
+     */
+    public void setStreamSpeed(long streamSpeed) {
+        this.streamSpeed = streamSpeed;
+    }
+
+    /**
+     * Sets how long a burst at full speed may last; the capacity of each bucket is its speed times the burst.
+     *
+     * @param burst
+     *            milliseconds
+     */
+    public void setBurst(long burst) {
+        this.burst = Math.max(1L, burst);
+    }
+
+    /**
+     * Sets the tick of the timer wheel.
+     *
+     * @param tickInterval
+     *            milliseconds
+     */
+    public void setTickInterval(long tickInterval) {
+        this.tickInterval = Math.max(1L, tickInterval);
+    }
+
+    /**
+     * Sets the number of slots of the timer wheel.
+     *
+     * @param wheelSize
+     *            slots
+     */
+    public void setWheelSize(int wheelSize) {
+        this.wheelSize = Math.max(16, wheelSize);
+    }
+
+    /**
+     * Returns the number of connection and application buckets in use.
+     *
+     * @return shared buckets
+     */
+    public int getSharedBucketCount() {
+        return sharedBuckets.size();
+    }
+
+    /**
+     * Returns the number of stream buckets in use.
+     *
+     * @return stream buckets
+     */
+    public int getStreamBucketCount() {
+        return streamBuckets.size();
+    }
+
+    private static final class SharedBucket {
+
+        final TokenBucket bucket;
+
+        // guarded by the map compute
+        int references;
+
+        SharedBucket(TokenBucket bucket) {
+            this.bucket = bucket;
+        }
+
+    }
+
+}
@@ -13,11 +13,15 @@ import java.lang.management.ManagementFactory;
 import java.net.BindException;
 import java.security.Security;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import javax.management.JMX;
 import javax.management.MBeanServer;
@@ -46,7 +50,9 @@ import org.red5.net.websocket.WebSocketPlugin;
 import org.red5.server.ContextLoader;
 import org.red5.server.LoaderBase;
 import org.red5.server.Server;
+import org.red5.server.StartupTimeline;
 import org.red5.server.api.IApplicationContext;
+import org.red5.server.api.IApplicationLoader;
 import org.red5.server.api.Red5;
 import org.red5.server.jmx.mxbeans.ContextLoaderMXBean;
 import org.red5.server.jmx.mxbeans.LoaderMXBean;
@@ -60,6 +66,7 @@ import org.springframework.beans.factory.InitializingBean;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.support.AbstractApplicationContext;
 import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.web.context.ConfigurableWebApplicationContext;
 import org.springframework.web.context.WebApplicationContext;
 import org.springframework.web.context.support.XmlWebApplicationContext;
@@ -176,6 +183,18 @@ public class TomcatLoader extends LoaderBase implements InitializingBean, Dispos
      */
     protected boolean awaitPlugins = true;
 
+    /**
+     * Number of web applications started at once
+     */
+    protected int startupThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Start-up timelines of the web applications by context path
+     */
+    protected final Map<String, StartupTimeline> timelines = new LinkedHashMap<>();
+
+    private ExecutorService startupExecutor;
+
     private static ExecutorService executor;
 
     @Override
@@ -298,8 +317,6 @@ public class TomcatLoader extends LoaderBase implements InitializingBean, Dispos
         if (websocketEnabled) {
             checkWebsocketPlugin();
         }
-        // get a reference to the current threads classloader
-        final ClassLoader originalClassLoader = Thread.currentThread().getContextClassLoader();
         // root location for servlet container
         String serverRoot = System.getProperty("red5.root");
         log.info("Server root: {}", serverRoot);
@@ -411,120 +428,14 @@ public class TomcatLoader extends LoaderBase implements InitializingBean, Dispos
         } catch (Exception ex) {
             log.warn("An exception occurred during network configuration", ex);
         }
-        // create an executor for "ordered" start-up of the webapps
-        ExecutorService executor = Executors.newSingleThreadExecutor();
         try {
             log.info("Starting Tomcat servlet engine");
             embedded.start();
             // create references for later lookup
-            LoaderBase.setApplicationLoader(new TomcatApplicationLoader(embedded, host, applicationContext));
-            for (final Container cont : host.findChildren()) {
-                if (cont instanceof StandardContext) {
-                    if (log.isDebugEnabled()) {
-                        ContainerBase cb = (ContainerBase) cont;
-                        log.debug("Oname - domain: {}", cb.getDomain());
-                    }
-                    final StandardContext ctx = (StandardContext) cont;
-                    final ServletContext servletContext = ctx.getServletContext();
-                    // set the hosts id
-                    servletContext.setAttribute("red5.host.id", getHostId());
-                    final String prefix = servletContext.getRealPath("/");
-                    log.info("Context initialized: {} path: {}", servletContext.getContextPath(), prefix);
-                    try {
-                        ctx.resourcesStart();
-                        log.debug("Context - privileged: {}, start time: {}, reloadable: {}", new Object[] { ctx.getPrivileged(), ctx.getStartTime(), ctx.getReloadable() });
-                        Loader cldr = ctx.getLoader();
-                        log.debug("Loader delegate: {} type: {}", cldr.getDelegate(), cldr.getClass().getName());
-                        if (log.isTraceEnabled()) {
-                            if (cldr instanceof WebappLoader) {
-                                log.trace("WebappLoader class path: {}", ((WebappLoader) cldr).getClasspath());
-                            }
-                        }
-                        final ClassLoader webClassLoader = cldr.getClassLoader();
-                        log.debug("Webapp classloader: {}", webClassLoader);
-                        // get the (spring) config file path
-                        final String contextConfigLocation = servletContext.getInitParameter(CONFIG_LOCATION_PARAM) == null ? defaultSpringConfigLocation : servletContext.getInitParameter(CONFIG_LOCATION_PARAM);
-                        log.debug("Spring context config location: {}", contextConfigLocation);
-                        // get the (spring) parent context key
-                        final String parentContextKey = servletContext.getInitParameter(LOCATOR_FACTORY_KEY_PARAM) == null ? defaultParentContextKey : servletContext.getInitParameter(LOCATOR_FACTORY_KEY_PARAM);
-                        log.debug("Spring parent context key: {}", parentContextKey);
-                        // set current threads classloader to the webapp classloader
-                        Thread.currentThread().setContextClassLoader(webClassLoader);
-                        // create a thread to speed-up application loading
-                        Future<?> appStartTask = executor.submit(new Runnable() {
-                            public void run() {
-                                //set thread context classloader to web classloader
-                                Thread.currentThread().setContextClassLoader(webClassLoader);
-                                Thread.currentThread().setName("Loader:" + servletContext.getContextPath());
-                                //get the web app's parent context
-                                ApplicationContext parentContext = null;
-                                if (applicationContext.containsBean(parentContextKey)) {
-                                    parentContext = (ApplicationContext) applicationContext.getBean(parentContextKey);
-                                } else {
-                                    log.warn("Parent context was not found: {}", parentContextKey);
-                                }
-                                // create a spring web application context
-                                final String contextClass = servletContext.getInitParameter(CONTEXT_CLASS_PARAM) == null ? XmlWebApplicationContext.class.getName() : servletContext.getInitParameter(CONTEXT_CLASS_PARAM);
-                                // web app context (spring)
-                                ConfigurableWebApplicationContext appctx = null;
-                                try {
-                                    Class<?> clazz = Class.forName(contextClass, true, webClassLoader);
-                                    appctx = (ConfigurableWebApplicationContext) clazz.getDeclaredConstructor().newInstance();
-                                    // set the root webapp ctx attr on the each servlet context so spring can find it later
-                                    servletContext.setAttribute(WebApplicationContext.ROOT_WEB_APPLICATION_CONTEXT_ATTRIBUTE, appctx);
-                                    appctx.setConfigLocations(new String[] { contextConfigLocation });
-                                    appctx.setServletContext(servletContext);
-                                    // set parent context or use current app context
-                                    if (parentContext != null) {
-                                        appctx.setParent(parentContext);
-                                    } else {
-                                        appctx.setParent(applicationContext);
-                                    }
-                                    // refresh the factory
-                                    log.trace("Classloader prior to refresh: {}", appctx.getClassLoader());
-                                    appctx.refresh();
-                                    if (log.isDebugEnabled()) {
-                                        log.debug("Red5 app is active: {} running: {}", appctx.isActive(), appctx.isRunning());
-                                    }
-                                    // set a realm for the webapp if one is specified
-                                    if (appctx.containsBean("realm")) {
-                                        log.debug("Realm specified in context configuration");
-                                        Realm contextRealm = (Realm) appctx.getBean("realm");
-                                        if (contextRealm != null) {
-                                            log.debug("Realm class: {}", contextRealm.getClass().getName());
-                                            contextRealm.setContainer(cont);
-                                            ctx.setRealm(contextRealm);
-                                            // when a realm implements our red5 realm, add the app and servlet contexts
-                                            if (contextRealm instanceof IRed5Realm) {
-                                                ((IRed5Realm) contextRealm).setApplicationContext(appctx);
-                                                ((IRed5Realm) contextRealm).setServletContext(servletContext);
-                                            }
-                                            // set the system property to allow the config to be located
-                                            if (contextRealm instanceof JAASRealm) {
-                                                log.debug("Realm is JAAS type");
-                                                // this may interfere with other concurrently loaded jaas realms
-                                                System.setProperty("java.security.auth.login.config", prefix + "WEB-INF/jaas.config");
-                                            }
-                                            log.debug("Realm info: {} path: {}", contextRealm, ((RealmBase) contextRealm).getRealmPath());
-                                        }
-                                    }
-                                    appctx.start();
-                                } catch (Throwable e) {
-                                    throw new RuntimeException("Failed to load webapplication context class", e);
-                                }
-                            }
-                        });
-                        // see if everything completed
-                        log.debug("Context: {} done: {}", servletContext.getContextPath(), appStartTask.isDone());
-                    } catch (Throwable t) {
-                        log.error("Error setting up context: {} due to: {}", servletContext.getContextPath(), t.getMessage());
-                        t.printStackTrace();
-                    } finally {
-                        //reset the classloader
-                        Thread.currentThread().setContextClassLoader(originalClassLoader);
-                    }
-                }
-            }
+            final TomcatApplicationLoader appLoader = new TomcatApplicationLoader(embedded, host, applicationContext);
+            LoaderBase.setApplicationLoader(appLoader);
+            // start the red5 component of each web application
+            startContexts(host.findChildren(), appLoader);
             // if everything is ok at this point then call the rtmpt and rtmps beans so they will init
             if (applicationContext.containsBean("rtmpt.server")) {
                 log.debug("Initializing RTMPT");
@@ -547,14 +458,229 @@ public class TomcatLoader extends LoaderBase implements InitializingBean, Dispos
                 log.error("Error loading tomcat", e);
             }
         } finally {
-            // finish-up with the executor
-            executor.shutdown();
             // do our jmx stuff
             registerJMX();
         }
         log.debug("Tomcat load completed");
     }
 
+    /**
+     * Queues the start of the red5 (spring) component of each web application on the start-up executor.
+     *
+     * @param containers
+     *            children of the host, those that are not web application contexts are skipped
+     * @param appLoader
+     *            application loader made available to the threads starting the applications
+     */
+    protected void startContexts(Container[] containers, IApplicationLoader appLoader) {
+        // parent contexts by key, each one resolved before the first application depending on it is queued
+        Map<String, ApplicationContext> parentContexts = new HashMap<>();
+        for (final Container cont : containers) {
+            if (cont instanceof StandardContext) {
+                if (log.isDebugEnabled()) {
+                    ContainerBase cb = (ContainerBase) cont;
+                    log.debug("Oname - domain: {}", cb.getDomain());
+                }
+                final StandardContext ctx = (StandardContext) cont;
+                final ServletContext servletContext = ctx.getServletContext();
+                // set the hosts id
+                servletContext.setAttribute("red5.host.id", getHostId());
+                final String contextPath = servletContext.getContextPath();
+                log.info("Context initialized: {} path: {}", contextPath, servletContext.getRealPath("/"));
+                final StartupTimeline timeline = newTimeline(contextPath);
+                try {
+                    // get the (spring) parent context key
+                    final String parentContextKey = servletContext.getInitParameter(LOCATOR_FACTORY_KEY_PARAM) == null ? defaultParentContextKey : servletContext.getInitParameter(LOCATOR_FACTORY_KEY_PARAM);
+                    log.debug("Spring parent context key: {}", parentContextKey);
+                    long start = System.nanoTime();
+                    if (!parentContexts.containsKey(parentContextKey)) {
+                        parentContexts.put(parentContextKey, getParentContext(parentContextKey));
+                    }
+                    final ApplicationContext parentContext = parentContexts.get(parentContextKey);
+                    timeline.record(StartupTimeline.PARENT_CONTEXT, start);
+                    // start the applications in parallel, their parents are ready
+                    final long queued = System.nanoTime();
+                    getStartupExecutor().execute(() -> {
+                        timeline.record(StartupTimeline.QUEUED, queued);
+                        final Thread thread = Thread.currentThread();
+                        final String oldName = thread.getName();
+                        final ClassLoader oldClassLoader = thread.getContextClassLoader();
+                        thread.setName("Loader:" + contextPath);
+                        LoaderBase.setApplicationLoader(appLoader);
+                        StartupTimeline.setCurrent(timeline);
+                        try {
+                            startContext(ctx, parentContext, timeline);
+                            timeline.finished(null);
+                            log.info("Web application started: {}", timeline);
+                        } catch (Throwable t) {
+                            timeline.finished(t);
+                            log.error("Error starting context: {}", contextPath, t);
+                        } finally {
+                            StartupTimeline.setCurrent(null);
+                            LoaderBase.setApplicationLoader(null);
+                            //reset the classloader
+                            thread.setContextClassLoader(oldClassLoader);
+                            thread.setName(oldName);
+                        }
+                    });
+                } catch (Throwable t) {
+                    timeline.finished(t);
+                    log.error("Error setting up context: {} due to: {}", contextPath, t.getMessage());
+                    t.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts the red5 (spring) component of a web application, recording each phase on its timeline. Called on a thread of the start-up
+     * executor.
+     *
+     * @param ctx
+     *            context of the web application
+     * @param parentContext
+     *            parent of its application context or null to use the one of this loader
+     * @param timeline
+     *            start-up timeline of the web application
+     * @throws Exception
+     *             on error
+     */
+    protected void startContext(StandardContext ctx, ApplicationContext parentContext, StartupTimeline timeline) throws Exception {
+        final ServletContext servletContext = ctx.getServletContext();
+        final String prefix = servletContext.getRealPath("/");
+        long start = System.nanoTime();
+        ctx.resourcesStart();
+        log.debug("Context - privileged: {}, start time: {}, reloadable: {}", new Object[] { ctx.getPrivileged(), ctx.getStartTime(), ctx.getReloadable() });
+        Loader cldr = ctx.getLoader();
+        log.debug("Loader delegate: {} type: {}", cldr.getDelegate(), cldr.getClass().getName());
+        if (log.isTraceEnabled()) {
+            if (cldr instanceof WebappLoader) {
+                log.trace("WebappLoader class path: {}", ((WebappLoader) cldr).getClasspath());
+            }
+        }
+        final ClassLoader webClassLoader = cldr.getClassLoader();
+        log.debug("Webapp classloader: {}", webClassLoader);
+        // set thread context classloader to web classloader
+        Thread.currentThread().setContextClassLoader(webClassLoader);
+        // get the (spring) config file path
+        final String contextConfigLocation = servletContext.getInitParameter(CONFIG_LOCATION_PARAM) == null ? defaultSpringConfigLocation : servletContext.getInitParameter(CONFIG_LOCATION_PARAM);
+        log.debug("Spring context config location: {}", contextConfigLocation);
+        // create a spring web application context
+        final String contextClass = servletContext.getInitParameter(CONTEXT_CLASS_PARAM) == null ? XmlWebApplicationContext.class.getName() : servletContext.getInitParameter(CONTEXT_CLASS_PARAM);
+        // web app context (spring)
+        ConfigurableWebApplicationContext appctx = null;
+        try {
+            Class<?> clazz = Class.forName(contextClass, true, webClassLoader);
+            appctx = (ConfigurableWebApplicationContext) clazz.getDeclaredConstructor().newInstance();
+        } catch (Throwable e) {
+            throw new RuntimeException("Failed to load webapplication context class", e);
+        }
+        timeline.record(StartupTimeline.CLASS_LOADING, start);
+        start = System.nanoTime();
+        // set the root webapp ctx attr on the each servlet context so spring can find it later
+        servletContext.setAttribute(WebApplicationContext.ROOT_WEB_APPLICATION_CONTEXT_ATTRIBUTE, appctx);
+        appctx.setConfigLocations(new String[] { contextConfigLocation });
+        appctx.setServletContext(servletContext);
+        // set parent context or use current app context
+        if (parentContext != null) {
+            appctx.setParent(parentContext);
+        } else {
+            appctx.setParent(applicationContext);
+        }
+        // refresh the factory
+        log.trace("Classloader prior to refresh: {}", appctx.getClassLoader());
+        appctx.refresh();
+        if (log.isDebugEnabled()) {
+            log.debug("Red5 app is active: {} running: {}", appctx.isActive(), appctx.isRunning());
+        }
+        timeline.record(StartupTimeline.REFRESH, start);
+        start = System.nanoTime();
+        // set a realm for the webapp if one is specified
+        if (appctx.containsBean("realm")) {
+            log.debug("Realm specified in context configuration");
+            Realm contextRealm = (Realm) appctx.getBean("realm");
+            if (contextRealm != null) {
+                log.debug("Realm class: {}", contextRealm.getClass().getName());
+                contextRealm.setContainer(ctx);
+                ctx.setRealm(contextRealm);
+                // when a realm implements our red5 realm, add the app and servlet contexts
+                if (contextRealm instanceof IRed5Realm) {
+                    ((IRed5Realm) contextRealm).setApplicationContext(appctx);
+                    ((IRed5Realm) contextRealm).setServletContext(servletContext);
+                }
+                // set the system property to allow the config to be located
+                if (contextRealm instanceof JAASRealm) {
+                    log.debug("Realm is JAAS type");
+                    // this may interfere with other concurrently loaded jaas realms
+                    System.setProperty("java.security.auth.login.config", prefix + "WEB-INF/jaas.config");
+                }
+                log.debug("Realm info: {} path: {}", contextRealm, ((RealmBase) contextRealm).getRealmPath());
+            }
+        }
+        appctx.start();
+        timeline.record(StartupTimeline.START, start);
+    }
+
+    /**
+     * Returns the parent context of web applications.
+     *
+     * @param parentContextKey
+     *            name of the parent context bean
+     * @return parent context or null if there is no such bean
+     */
+    protected ApplicationContext getParentContext(String parentContextKey) {
+        if (applicationContext.containsBean(parentContextKey)) {
+            return (ApplicationContext) applicationContext.getBean(parentContextKey);
+        }
+        log.warn("Parent context was not found: {}", parentContextKey);
+        return null;
+    }
+
+    /**
+     * Returns the executor starting the web applications, creating it if needed. Its threads time out when idle so it does not outlive the
+     * start-up, yet it remains available to applications started later on.
+     *
+     * @return executor
+     */
+    protected ExecutorService getStartupExecutor() {
+        synchronized (timelines) {
+            if (startupExecutor == null) {
+                int threads = Math.max(1, startupThreads);
+                CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("WebappStartup-");
+                threadFactory.setDaemon(true);
+                ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), threadFactory);
+                pool.allowCoreThreadTimeOut(true);
+                startupExecutor = pool;
+            }
+            return startupExecutor;
+        }
+    }
+
+    /**
+     * Creates the start-up timeline of a web application, replacing the one of an earlier start.
+     *
+     * @param contextPath
+     *            context path of the web application
+     * @return timeline
+     */
+    protected StartupTimeline newTimeline(String contextPath) {
+        StartupTimeline timeline = new StartupTimeline(contextPath.isEmpty() ? "/" : contextPath);
+        synchronized (timelines) {
+            // moved to the end, in the order of queueing
+            timelines.remove(contextPath);
+            timelines.put(contextPath, timeline);
+        }
+        return timeline;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String[] getStartupTimeline() {
+        synchronized (timelines) {
+            return timelines.values().stream().map(StartupTimeline::toString).toArray(String[]::new);
+        }
+    }
+
     private void checkWebsocketPlugin() {
         // if websockets are enabled, ensure the websocket plugin is loaded
         if (PluginRegistry.getPlugin(WebSocketPlugin.NAME) == null) {
@@ -628,17 +754,27 @@ public class TomcatLoader extends LoaderBase implements InitializingBean, Dispos
             // get the (spring) parent context key
             final String parentContextKey = servletContext.getInitParameter("parentContextKey") == null ? defaultParentContextKey : servletContext.getInitParameter("parentContextKey");
             log.debug("Spring parent context key: {}", parentContextKey);
-            //set current threads classloader to the webapp classloader
-            Thread.currentThread().setContextClassLoader(webClassLoader);
-            //create a thread to speed-up application loading
-            Thread thread = new Thread("Launcher:" + servletContext.getContextPath()) {
-                public void run() {
+            final String contextPath = servletContext.getContextPath();
+            final StartupTimeline timeline = newTimeline(contextPath);
+            final long queued = System.nanoTime();
+            // start it on the start-up executor, along with any other application being started
+            getStartupExecutor().execute(() -> {
+                timeline.record(StartupTimeline.QUEUED, queued);
+                final Thread thread = Thread.currentThread();
+                final String oldName = thread.getName();
+                final ClassLoader oldClassLoader = thread.getContextClassLoader();
+                thread.setName("Launcher:" + contextPath);
+                StartupTimeline.setCurrent(timeline);
+                try {
+                    long start = System.nanoTime();
                     //set current threads classloader to the webapp classloader
-                    Thread.currentThread().setContextClassLoader(webClassLoader);
+                    thread.setContextClassLoader(webClassLoader);
                     // create a spring web application context
                     XmlWebApplicationContext appctx = new XmlWebApplicationContext();
                     appctx.setClassLoader(webClassLoader);
                     appctx.setConfigLocations(new String[] { contextConfigLocation });
+                    timeline.record(StartupTimeline.CLASS_LOADING, start);
+                    start = System.nanoTime();
                     // check for red5 context bean
                     ApplicationContext parentAppCtx = null;
                     if (applicationContext.containsBean(defaultParentContextKey)) {
@@ -676,15 +812,25 @@ public class TomcatLoader extends LoaderBase implements InitializingBean, Dispos
                             log.debug("Parent application context: {}", appctx.getParent().getDisplayName());
                         }
                     }
+                    timeline.record(StartupTimeline.PARENT_CONTEXT, start);
+                    start = System.nanoTime();
                     // add the servlet context
                     appctx.setServletContext(servletContext);
                     // set the root webapp ctx attr on the each servlet context so spring can find it later
                     servletContext.setAttribute(WebApplicationContext.ROOT_WEB_APPLICATION_CONTEXT_ATTRIBUTE, appctx);
                     appctx.refresh();
+                    timeline.record(StartupTimeline.REFRESH, start);
+                    timeline.finished(null);
+                    log.info("Web application started: {}", timeline);
+                } catch (Throwable t) {
+                    timeline.finished(t);
+                    log.error("Error starting context: {}", contextPath, t);
+                } finally {
+                    StartupTimeline.setCurrent(null);
+                    thread.setContextClassLoader(oldClassLoader);
+                    thread.setName(oldName);
                 }
-            };
-            thread.setDaemon(true);
-            thread.start();
+            });
             result = true;
         } catch (Throwable t) {
             log.error("Error setting up context: {} due to: {}", servletContext.getContextPath(), t.getMessage());
@@ -858,6 +1004,25 @@ public class TomcatLoader extends LoaderBase implements InitializingBean, Dispos
         this.awaitPlugins = awaitPlugins;
     }
 
+    /**
+     * Returns the number of web applications started at once.
+     *
+     * @return number of threads starting web applications
+     */
+    public int getStartupThreads() {
+        return startupThreads;
+    }
+
+    /**
+     * Sets the number of web applications started at once; applications sharing a parent context wait for it to be resolved.
+     *
+     * @param startupThreads
+     *            number of threads starting web applications
+     */
+    public void setStartupThreads(int startupThreads) {
+        this.startupThreads = startupThreads;
+    }
+
     /**
      * Returns a semi-unique id for this host based on its host values
      *
@@ -904,6 +1069,11 @@ public class TomcatLoader extends LoaderBase implements InitializingBean, Dispos
         if (executor != null) {
             executor.shutdown();
         }
+        synchronized (timelines) {
+            if (startupExecutor != null) {
+                startupExecutor.shutdown();
+            }
+        }
         // run through the applications and ensure that spring is told to commence shutdown / disposal
         AbstractApplicationContext absCtx = (AbstractApplicationContext) LoaderBase.getApplicationContext();
         if (absCtx != null) {
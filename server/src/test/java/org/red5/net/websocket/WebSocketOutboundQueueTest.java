@@ -0,0 +1,179 @@
+package org.red5.net.websocket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+
+import org.junit.Test;
+import org.red5.net.websocket.WebSocketOutboundQueue.OverflowPolicy;
+import org.red5.net.websocket.model.WSOutboundMessage;
+
+public class WebSocketOutboundQueueTest {
+
+    @Test
+    public void testOneSendInFlight() {
+        RecordingSender sender = new RecordingSender();
+        WebSocketOutboundQueue queue = new WebSocketOutboundQueue(8, OverflowPolicy.DROP_OLDEST, sender);
+        assertTrue(queue.offer(WSOutboundMessage.text("a")));
+        assertTrue(queue.offer(WSOutboundMessage.text("b")));
+        assertTrue(queue.offer(WSOutboundMessage.text("c")));
+        // the first message is being sent, the others wait for it
+        assertEquals(1, sender.sent.size());
+        assertEquals(2, queue.size());
+        sender.complete();
+        sender.complete();
+        assertEquals(3, sender.sent.size());
+        assertEquals("c", sender.sent.get(2).getText());
+        sender.complete();
+        assertEquals(0, queue.size());
+        assertEquals(3, queue.getSentCount());
+        // an idle queue sends right away
+        queue.offer(WSOutboundMessage.text("d"));
+        assertEquals(4, sender.sent.size());
+    }
+
+    @Test
+    public void testDropOldest() {
+        RecordingSender sender = new RecordingSender();
+        WebSocketOutboundQueue queue = new WebSocketOutboundQueue(2, OverflowPolicy.DROP_OLDEST, sender);
+        for (String text : new String[] { "a", "b", "c", "d" }) {
+            assertTrue(queue.offer(WSOutboundMessage.text(text)));
+        }
+        assertEquals(1, queue.getDroppedCount());
+        sender.complete();
+        sender.complete();
+        assertEquals("c", sender.sent.get(1).getText());
+        assertEquals("d", sender.sent.get(2).getText());
+    }
+
+    @Test
+    public void testDropNewestAndDisconnect() {
+        RecordingSender sender = new RecordingSender();
+        WebSocketOutboundQueue queue = new WebSocketOutboundQueue(1, OverflowPolicy.DROP_NEWEST, sender);
+        assertTrue(queue.offer(WSOutboundMessage.text("a")));
+        assertTrue(queue.offer(WSOutboundMessage.text("b")));
+        assertFalse(queue.offer(WSOutboundMessage.text("c")));
+        assertEquals(1, queue.getDroppedCount());
+        assertEquals(0, sender.overflows);
+        queue = new WebSocketOutboundQueue(1, OverflowPolicy.DISCONNECT, sender);
+        assertTrue(queue.offer(WSOutboundMessage.text("a")));
+        assertTrue(queue.offer(WSOutboundMessage.text("b")));
+        assertFalse(queue.offer(WSOutboundMessage.text("c")));
+        assertEquals(1, sender.overflows);
+    }
+
+    @Test
+    public void testTimedOfferWaitsForRoom() throws Exception {
+        final RecordingSender sender = new RecordingSender();
+        final WebSocketOutboundQueue queue = new WebSocketOutboundQueue(1, OverflowPolicy.DROP_OLDEST, sender);
+        assertTrue(queue.offer(WSOutboundMessage.text("a"), 0));
+        assertTrue(queue.offer(WSOutboundMessage.text("b"), 0));
+        // the queue is full, nothing is dropped to make room
+        assertFalse(queue.offer(WSOutboundMessage.text("x"), 50));
+        assertEquals(0, queue.getDroppedCount());
+        assertEquals(1, queue.size());
+        Thread completer = new Thread(() -> {
+            try {
+                Thread.sleep(100L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            sender.complete();
+        });
+        completer.start();
+        assertTrue(queue.offer(WSOutboundMessage.text("c"), 5000));
+        completer.join();
+        sender.complete();
+        assertEquals(3, sender.sent.size());
+        assertEquals("b", sender.sent.get(1).getText());
+        assertEquals("c", sender.sent.get(2).getText());
+        assertEquals(0, queue.getDroppedCount());
+    }
+
+    @Test
+    public void testTimedOfferEndsOnClose() throws Exception {
+        RecordingSender sender = new RecordingSender();
+        final WebSocketOutboundQueue queue = new WebSocketOutboundQueue(1, OverflowPolicy.DROP_OLDEST, sender);
+        queue.offer(WSOutboundMessage.text("a"));
+        queue.offer(WSOutboundMessage.text("b"));
+        Thread closer = new Thread(() -> {
+            try {
+                Thread.sleep(100L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            queue.close();
+        });
+        closer.start();
+        long start = System.currentTimeMillis();
+        assertFalse(queue.offer(WSOutboundMessage.text("c"), 5000));
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        closer.join();
+    }
+
+    @Test
+    public void testCoalescing() {
+        RecordingSender sender = new RecordingSender();
+        WebSocketOutboundQueue queue = new WebSocketOutboundQueue(8, OverflowPolicy.DROP_OLDEST, sender);
+        queue.offer(WSOutboundMessage.text("price=1", "price"));
+        queue.offer(WSOutboundMessage.text("price=2", "price"));
+        queue.offer(WSOutboundMessage.text("news"));
+        queue.offer(WSOutboundMessage.text("price=3", "price"));
+        // the first price is in flight, the later ones share one place in the queue
+        assertEquals(2, queue.size());
+        assertEquals(1, queue.getCoalescedCount());
+        sender.complete();
+        sender.complete();
+        assertEquals("price=3", sender.sent.get(1).getText());
+        assertEquals("news", sender.sent.get(2).getText());
+    }
+
+    @Test
+    public void testBlockingSenderDrainsInline() {
+        List<WSOutboundMessage> sent = new ArrayList<>();
+        WebSocketOutboundQueue queue = new WebSocketOutboundQueue(4096, OverflowPolicy.DROP_OLDEST, (message, handler) -> {
+            sent.add(message);
+            handler.onResult(new SendResult());
+        });
+        byte[] data = new byte[] { 1, 2, 3 };
+        WSOutboundMessage message = WSOutboundMessage.binary(data);
+        for (int i = 0; i < 2000; i++) {
+            assertTrue(queue.offer(message));
+        }
+        assertEquals(2000, sent.size());
+        assertEquals(0, queue.size());
+        // each send gets its own view of the shared payload
+        assertEquals(3, message.getPayload().remaining());
+        assertEquals(3, message.getLength());
+    }
+
+    private static final class RecordingSender implements WebSocketOutboundQueue.Sender {
+
+        final List<WSOutboundMessage> sent = new ArrayList<>();
+
+        final List<SendHandler> handlers = new ArrayList<>();
+
+        int overflows;
+
+        public void send(WSOutboundMessage message, SendHandler handler) {
+            sent.add(message);
+            handlers.add(handler);
+        }
+
+        public void overflow() {
+            overflows++;
+        }
+
+        void complete() {
+            handlers.remove(0).onResult(new SendResult());
+        }
+
+    }
+
+}
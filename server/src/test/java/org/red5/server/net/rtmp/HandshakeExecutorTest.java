@@ -0,0 +1,83 @@
+package org.red5.server.net.rtmp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.security.KeyPair;
+import java.util.Arrays;
+
+import javax.crypto.interfaces.DHPublicKey;
+
+import org.apache.mina.core.session.DummySession;
+import org.junit.After;
+import org.junit.Test;
+
+public class HandshakeExecutorTest {
+
+    private DHKeyPairPool pool;
+
+    private HandshakeExecutor executor;
+
+    @After
+    public void tearDown() throws Exception {
+        RTMPHandshake.setKeyPairPool(null);
+        if (pool != null) {
+            pool.destroy();
+        }
+        if (executor != null) {
+            executor.destroy();
+        }
+    }
+
+    @Test
+    public void testPooledKeyPairsAgree() throws Exception {
+        pool = new DHKeyPairPool();
+        pool.setSize(4);
+        pool.afterPropertiesSet();
+        long deadline = System.currentTimeMillis() + 10000L;
+        while (pool.getPooledCount() < 4 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        assertEquals(4, pool.getPooledCount());
+        RTMPHandshake.setKeyPairPool(pool);
+        InboundHandshake server = new InboundHandshake(RTMPConnection.RTMP_ENCRYPTED);
+        InboundHandshake client = new InboundHandshake(RTMPConnection.RTMP_ENCRYPTED);
+        KeyPair serverKeys = server.generateKeyPair();
+        KeyPair clientKeys = client.generateKeyPair();
+        assertEquals(2, pool.getHitCount());
+        assertEquals(0, pool.getMissCount());
+        // each pair is handed out once
+        assertNotEquals(((DHPublicKey) serverKeys.getPublic()).getY(), ((DHPublicKey) clientKeys.getPublic()).getY());
+        byte[] serverSecret = server.getSharedSecret(((DHPublicKey) clientKeys.getPublic()).getY().toByteArray());
+        byte[] clientSecret = client.getSharedSecret(((DHPublicKey) serverKeys.getPublic()).getY().toByteArray());
+        assertArrayEquals(serverSecret, clientSecret);
+    }
+
+    @Test
+    public void testHandshakesAreRecorded() throws Exception {
+        executor = new HandshakeExecutor();
+        executor.setThreads(2);
+        executor.afterPropertiesSet();
+        DummySession session = new DummySession();
+        int handshakes = 10;
+        for (int i = 0; i < handshakes; i++) {
+            final boolean success = i % 5 != 0;
+            executor.submit(session, () -> success);
+        }
+        long deadline = System.currentTimeMillis() + 10000L;
+        while (executor.getHandshakeCount() < handshakes && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        assertEquals(handshakes, executor.getHandshakeCount());
+        assertEquals(2, executor.getFailedCount());
+        assertEquals(0, executor.getPendingCount());
+        assertEquals(handshakes, Arrays.stream(executor.getLatencyHistogram()).sum());
+        assertEquals(executor.getLatencyBuckets().length + 1, executor.getLatencyHistogram().length);
+        assertFalse(session.isReadSuspended());
+        assertTrue(executor.getHandshakeRate() <= handshakes);
+    }
+
+}
@@ -3,6 +3,7 @@ package org.red5.server.net.rtmp.codec;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.BufferedReader;
 import java.io.File;
@@ -21,6 +22,7 @@ import org.red5.server.net.rtmp.RTMPConnection;
 import org.red5.server.net.rtmp.RTMPMinaConnection;
 import org.red5.server.net.rtmp.RTMPUtils;
 import org.red5.server.net.rtmp.event.Invoke;
+import org.red5.server.net.rtmp.event.VideoData;
 import org.red5.server.net.rtmp.message.ChunkHeader;
 import org.red5.server.net.rtmp.message.Header;
 import org.red5.server.net.rtmp.message.Packet;
@@ -71,6 +73,35 @@ public class TestRTMPProtocolDecoder implements IRTMPHandler {
         log.debug("Objects #0: {}", objs2);
     }
 
+    @Test
+    public void testDecodeBufferInPlace() {
+        log.debug("\ntestDecodeBufferInPlace");
+        RTMPProtocolDecoder dec = new RTMPProtocolDecoder();
+        RTMPConnection conn = new RTMPMinaConnection();
+        conn.getState().setState(RTMP.STATE_CONNECTED);
+        conn.setHandler(this);
+        // video message of 10 bytes in a single chunk on channel 5, followed by the first byte of the next chunk
+        byte[] bytes = IOUtils.hexStringToByteArray("05000000" + "00000a" + "09" + "01000000" + "17000000000102030405" + "45");
+        // not enough for the message
+        IoBuffer p1 = IoBuffer.wrap(bytes, 0, 12);
+        List<Object> objs = dec.decodeBufferInPlace(conn, p1);
+        assertTrue(objs.isEmpty());
+        assertEquals(0, p1.position());
+        // the whole message
+        IoBuffer p2 = IoBuffer.wrap(bytes);
+        objs = dec.decodeBufferInPlace(conn, p2);
+        assertEquals(1, objs.size());
+        // the incomplete chunk is left in the buffer
+        assertEquals(1, p2.remaining());
+        VideoData video = (VideoData) ((Packet) objs.get(0)).getMessage();
+        IoBuffer data = video.getData();
+        assertEquals(10, data.remaining());
+        assertEquals(0x17, data.get(0));
+        // the body is a view of the input, not a copy
+        bytes[12] = 0x27;
+        assertEquals(0x27, data.get(0));
+    }
+
     @Test
     public void testDecodeBufferPro2() {
         log.debug("\ntestDecodeBufferPro2");
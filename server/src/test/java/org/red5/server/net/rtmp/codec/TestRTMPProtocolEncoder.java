@@ -0,0 +1,104 @@
+package org.red5.server.net.rtmp.codec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.After;
+import org.junit.Test;
+import org.red5.server.api.Red5;
+import org.red5.server.net.rtmp.RTMPConnection;
+import org.red5.server.net.rtmp.RTMPMinaConnection;
+import org.red5.server.net.rtmp.event.VideoData;
+import org.red5.server.net.rtmp.message.Constants;
+import org.red5.server.net.rtmp.message.Header;
+import org.red5.server.net.rtmp.message.Packet;
+import org.red5.server.net.rtmp.message.SharedChunkCache;
+
+public class TestRTMPProtocolEncoder {
+
+    private static final int CHUNK_SIZE = 128;
+
+    @After
+    public void tearDown() {
+        Red5.setConnectionLocal(null);
+        RTMPProtocolEncoder.setBufferPool(null);
+    }
+
+    @Test
+    public void testSharedChunkCacheMatchesRegularEncoding() {
+        byte[] payload = new byte[5000];
+        payload[0] = 0x17;
+        for (int i = 1; i < payload.length; i++) {
+            payload[i] = (byte) i;
+        }
+        RTMPProtocolEncoder encoder = new RTMPProtocolEncoder();
+        // regular encoding
+        byte[] expected = toArray(encoder.encodePacket(packet(payload, null)), null);
+        // shared cache, copied into a single buffer
+        SharedChunkCache cache = new SharedChunkCache();
+        byte[] copied = toArray(encoder.encodePacket(packet(payload, cache)), null);
+        assertEquals(IoBuffer.wrap(expected), IoBuffer.wrap(copied));
+        // shared cache, gathering write; the body was chunked once above and is now reused
+        List<IoBuffer> sharedParts = new ArrayList<>();
+        IoBuffer header = encoder.encodePacket(packet(payload, cache), sharedParts);
+        assertEquals(1, sharedParts.size());
+        assertTrue(header.remaining() < 20);
+        byte[] gathered = toArray(header, sharedParts);
+        assertEquals(IoBuffer.wrap(expected), IoBuffer.wrap(gathered));
+    }
+
+    @Test
+    public void testPooledOutputIsReleasedOnceSent() throws Exception {
+        PooledBufferAllocator pool = new PooledBufferAllocator();
+        pool.setEnabled(true);
+        pool.afterPropertiesSet();
+        RTMPProtocolEncoder.setBufferPool(pool);
+        RTMPProtocolEncoder encoder = new RTMPProtocolEncoder();
+        encoder.setPooledOutput(true);
+        byte[] payload = new byte[300];
+        payload[0] = 0x17;
+        Packet packet = packet(payload, null);
+        IoBuffer out = encoder.encodePacket(packet);
+        assertTrue(pool.isPooled(out));
+        assertEquals(1L, pool.getOutstandingCount());
+        // as done by the connection when the packet has been written
+        packet.setEncoded(out);
+        packet.releaseEncoded();
+        assertEquals(0L, pool.getOutstandingCount());
+        pool.destroy();
+    }
+
+    private static Packet packet(byte[] payload, SharedChunkCache cache) {
+        // each packet is written on a fresh connection so that every one starts with a full header
+        RTMPConnection conn = new RTMPMinaConnection();
+        conn.getState().setWriteChunkSize(CHUNK_SIZE);
+        Red5.setConnectionLocal(conn);
+        VideoData video = new VideoData(IoBuffer.wrap(payload).asReadOnlyBuffer());
+        video.setChunkCache(cache);
+        Header header = new Header();
+        header.setChannelId(6);
+        header.setDataType(Constants.TYPE_VIDEO_DATA);
+        header.setStreamId(1);
+        header.setTimer(1000);
+        return new Packet(header, video);
+    }
+
+    private static byte[] toArray(IoBuffer first, List<IoBuffer> rest) {
+        IoBuffer all = IoBuffer.allocate(first.remaining()).setAutoExpand(true);
+        all.put(first);
+        if (rest != null) {
+            for (IoBuffer part : rest) {
+                all.put(part);
+            }
+        }
+        all.flip();
+        byte[] array = new byte[all.remaining()];
+        all.get(array);
+        return array;
+    }
+
+}
@@ -0,0 +1,102 @@
+package org.red5.server.net.rtmpt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.Test;
+import org.red5.server.net.rtmpt.BaseRTMPTConnection.PendingData;
+
+public class RTMPTConnectionTest {
+
+    @Test
+    public void testBatchesAreSizeTargeted() {
+        RTMPTConnection conn = new RTMPTConnection();
+        for (int i = 0; i < 10; i++) {
+            conn.writeRaw(IoBuffer.wrap(new byte[100]));
+        }
+        assertEquals(10, conn.getPendingMessages());
+        // the message crossing the target is included
+        List<PendingData> batch = conn.pollPendingMessages(250);
+        assertEquals(3, batch.size());
+        conn.messagesSent(batch);
+        assertEquals(7, conn.getPendingMessages());
+        batch = conn.pollPendingMessages(Short.MAX_VALUE + 1);
+        assertEquals(7, batch.size());
+        conn.messagesSent(batch);
+        assertNull(conn.pollPendingMessages(250));
+    }
+
+    @Test
+    public void testBuffersAreNotCopied() {
+        RTMPTConnection conn = new RTMPTConnection();
+        IoBuffer data = IoBuffer.wrap(new byte[] { 1, 2, 3 });
+        conn.writeRaw(data);
+        List<PendingData> batch = conn.pollPendingMessages(1);
+        assertSame(data, batch.get(0).getBuffers().get(0));
+        assertEquals(3, batch.get(0).getBufferSize());
+        conn.messagesSent(batch);
+    }
+
+    @Test
+    public void testFoldKeepsOrder() {
+        RTMPTConnection conn = new RTMPTConnection();
+        conn.writeRaw(IoBuffer.wrap(new byte[] { 1, 2 }));
+        conn.writeRaw(IoBuffer.wrap(new byte[] { 3 }));
+        IoBuffer folded = conn.getPendingMessages(1024);
+        assertEquals(3, folded.remaining());
+        assertEquals(1, folded.get());
+        assertEquals(2, folded.get());
+        assertEquals(3, folded.get());
+    }
+
+    @Test
+    public void testWritersDoNotWaitOnAFullQueue() {
+        RTMPTConnection conn = new RTMPTConnection();
+        conn.setMaxPendingOutMessages(2);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 5; i++) {
+            conn.writeRaw(IoBuffer.wrap(new byte[1]));
+        }
+        assertEquals(2, conn.getPendingMessages());
+        assertTrue(System.currentTimeMillis() - start < 500L);
+    }
+
+    @Test
+    public void testParkedPollWakesOnData() {
+        RTMPTConnection conn = new RTMPTConnection();
+        AtomicInteger woken = new AtomicInteger();
+        conn.park(woken::incrementAndGet);
+        assertEquals(0, woken.get());
+        conn.writeRaw(IoBuffer.wrap(new byte[1]));
+        assertEquals(1, woken.get());
+        // woken once only
+        conn.writeRaw(IoBuffer.wrap(new byte[1]));
+        assertEquals(1, woken.get());
+        // data is pending already
+        conn.park(woken::incrementAndGet);
+        assertEquals(2, woken.get());
+    }
+
+    @Test
+    public void testParkingReplacesAndUnparks() {
+        RTMPTConnection conn = new RTMPTConnection();
+        AtomicInteger first = new AtomicInteger(), second = new AtomicInteger();
+        Runnable firstPoll = first::incrementAndGet;
+        conn.park(firstPoll);
+        // a newer poll answers the older one
+        conn.park(second::incrementAndGet);
+        assertEquals(1, first.get());
+        assertEquals(0, second.get());
+        conn.unpark(firstPoll);
+        conn.writeRaw(IoBuffer.wrap(new byte[1]));
+        assertEquals(1, first.get());
+        assertEquals(1, second.get());
+    }
+
+}
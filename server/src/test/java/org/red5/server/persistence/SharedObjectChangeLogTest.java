@@ -0,0 +1,93 @@
+package org.red5.server.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.red5.server.so.ISharedObjectEvent;
+import org.red5.server.so.ISharedObjectEvent.Type;
+import org.red5.server.so.SharedObjectEvent;
+
+public class SharedObjectChangeLogTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("red5", ".so.log");
+        file.delete();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testReplay() throws IOException {
+        for (boolean mapped : new boolean[] { false, true }) {
+            SharedObjectChangeLog changeLog = new SharedObjectChangeLog(file, mapped, false);
+            changeLog.reset(42L);
+            changeLog.append(changes());
+            changeLog.append(Arrays.asList(new SharedObjectEvent(Type.CLIENT_DELETE_DATA, "a", null)));
+            changeLog.close();
+            Assert.assertEquals(changeLog.size(), file.length());
+            List<ISharedObjectEvent> read = SharedObjectChangeLog.read(file, 42L);
+            Assert.assertEquals(4, read.size());
+            Assert.assertEquals(Type.CLIENT_UPDATE_DATA, read.get(0).getType());
+            Assert.assertEquals("a", read.get(0).getKey());
+            Assert.assertEquals("value", read.get(0).getValue());
+            Assert.assertEquals(7d, ((Number) read.get(1).getValue()).doubleValue(), 0d);
+            Assert.assertEquals(Type.CLIENT_CLEAR_DATA, read.get(2).getType());
+            Assert.assertEquals(Type.CLIENT_DELETE_DATA, read.get(3).getType());
+            Assert.assertEquals("a", read.get(3).getKey());
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testOtherGenerationIsIgnored() throws IOException {
+        SharedObjectChangeLog changeLog = new SharedObjectChangeLog(file, false, false);
+        changeLog.reset(42L);
+        changeLog.append(changes());
+        changeLog.close();
+        Assert.assertTrue(SharedObjectChangeLog.read(file, 43L).isEmpty());
+        Assert.assertTrue(SharedObjectChangeLog.read(file, 0L).isEmpty());
+    }
+
+    @Test
+    public void testTornRecordIsDropped() throws IOException {
+        SharedObjectChangeLog changeLog = new SharedObjectChangeLog(file, false, false);
+        changeLog.reset(42L);
+        changeLog.append(changes());
+        long valid = changeLog.size();
+        changeLog.append(Arrays.asList(new SharedObjectEvent(Type.CLIENT_UPDATE_DATA, "b", "lost")));
+        changeLog.close();
+        // cut the last record short, as a crash while appending would
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(file.length() - 2);
+        }
+        Assert.assertEquals(3, SharedObjectChangeLog.read(file, 42L).size());
+        // reopening drops the torn record and appends after the last valid one
+        changeLog = new SharedObjectChangeLog(file, false, false);
+        changeLog.open();
+        Assert.assertEquals(42L, changeLog.getGeneration());
+        Assert.assertEquals(valid, changeLog.size());
+        changeLog.append(Arrays.asList(new SharedObjectEvent(Type.CLIENT_UPDATE_DATA, "b", "kept")));
+        changeLog.close();
+        List<ISharedObjectEvent> read = SharedObjectChangeLog.read(file, 42L);
+        Assert.assertEquals(4, read.size());
+        Assert.assertEquals("kept", read.get(3).getValue());
+    }
+
+    private static List<ISharedObjectEvent> changes() {
+        return Arrays.asList(new SharedObjectEvent(Type.CLIENT_UPDATE_DATA, "a", "value"), new SharedObjectEvent(Type.CLIENT_UPDATE_DATA, "b", 7), new SharedObjectEvent(Type.CLIENT_CLEAR_DATA, null, null));
+    }
+
+}
@@ -2,6 +2,7 @@ package org.red5.server.scope;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
@@ -101,6 +102,13 @@ public class ScopeTest extends AbstractJUnit4SpringContextTests {
         // check again after stream added alias
         stream1Scope = appScope.getBasicScope(ScopeType.BROADCAST, "streamA");
         log.debug(">>>>>>>>>>>> Stream#1: {}", stream1Scope);
+        assertEquals(stream1, stream1Scope);
+        assertEquals(stream1, appScope.getBasicScope(ScopeType.BROADCAST, "stream1"));
+        assertTrue(appScope.getBasicScopeCount(ScopeType.BROADCAST) >= 1);
+        // removal drops the name and its aliases from the index
+        appScope.removeChildScope(stream1);
+        assertNull(appScope.getBasicScope(ScopeType.BROADCAST, "stream1"));
+        assertNull(appScope.getBasicScope(ScopeType.BROADCAST, "streamA"));
         // XXX to test adding rooms etc, uncomment this section
         /*
         // test runnables represent worker threads creating scopes
@@ -1,5 +1,12 @@
 package org.red5.server.service;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.util.Arrays;
@@ -7,6 +14,7 @@ import java.util.List;
 
 import org.junit.Test;
 import org.red5.server.api.IConnection;
+import org.red5.server.api.service.IPendingServiceCall;
 import org.red5.server.api.service.IServiceCall;
 import org.red5.server.net.rtmp.RTMPMinaConnection;
 import org.slf4j.Logger;
@@ -95,6 +103,43 @@ public class ReflectionUtilsTest {
         }
     }
 
+    @Test
+    public void testDispatchTable() {
+        IConnection conn = new DummyConnection();
+        TestService service = new TestService();
+        // numbers arrive as doubles and are converted for the String, Integer method
+        IServiceCall call = new PendingCall("TestService.add", new Object[] { 40d, 2d });
+        Object[] first = ReflectionUtils.findDispatch(conn, call, service, "add");
+        assertNotNull(first[0]);
+        Object[] second = ReflectionUtils.findDispatch(conn, new PendingCall("TestService.add", new Object[] { 1d, 2d }), service, "add");
+        assertSame(first[0], second[0]);
+        assertArrayEquals(new Object[] { 1, 2 }, (Object[]) second[1]);
+        // unknown signatures are remembered too
+        call = new PendingCall("TestService.add", new Object[] { "a" });
+        assertNull(ReflectionUtils.findDispatch(conn, call, service, "add")[0]);
+        assertEquals(Call.STATUS_METHOD_NOT_FOUND, call.getStatus());
+        // a value which doesn't convert is not remembered against the values which do
+        call = new PendingCall("TestService.square", new Object[] { "abc" });
+        assertNull(ReflectionUtils.findDispatch(conn, call, service, "square")[0]);
+        assertEquals(Call.STATUS_METHOD_NOT_FOUND, call.getStatus());
+        call = new PendingCall("TestService.square", new Object[] { "12" });
+        Object[] square = ReflectionUtils.findDispatch(conn, call, service, "square");
+        assertNotNull(square[0]);
+        assertArrayEquals(new Object[] { 12 }, (Object[]) square[1]);
+        assertNull(call.getException());
+        // invoked through the method handle
+        ServiceInvoker invoker = new ServiceInvoker();
+        IPendingServiceCall pending = new PendingCall("TestService", "add", new Object[] { 40d, 2d });
+        assertTrue(invoker.invoke(pending, service));
+        assertEquals(Call.STATUS_SUCCESS_RESULT, pending.getStatus());
+        assertNull(pending.getException());
+        assertEquals(42, pending.getResult());
+        pending = new PendingCall("TestService", "fail", new Object[0]);
+        assertFalse(invoker.invoke(pending, service));
+        assertEquals(Call.STATUS_INVOCATION_EXCEPTION, pending.getStatus());
+        assertTrue(pending.getException().getCause() instanceof IllegalStateException);
+    }
+
     private class DummyConnection extends RTMPMinaConnection {
 
     }
@@ -131,6 +176,18 @@ public class ReflectionUtilsTest {
             log.info("doTestWithConn - Connection, String, and Integer: {} {} {}", conn, param0, param1);
         }
 
+        public int add(int a, int b) {
+            return a + b;
+        }
+
+        public int square(int a) {
+            return a * a;
+        }
+
+        public void fail() {
+            throw new IllegalStateException("fail");
+        }
+
         // simple method generically taking an object array
         public void doTestObjectArray(Object[] param) {
             log.info("doTestObjectArray - Object array: {}", Arrays.asList(param));
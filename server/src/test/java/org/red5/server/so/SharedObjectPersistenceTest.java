@@ -0,0 +1,67 @@
+package org.red5.server.so;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.red5.server.persistence.FilePersistence;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+
+public class SharedObjectPersistenceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void setUp() throws Exception {
+        FilePersistence.setDeltaLog(true);
+    }
+
+    @After
+    public void tearDown() {
+        FilePersistence.setDeltaLog(false);
+    }
+
+    /** A store keeping its files in the temporary folder */
+    private FilePersistence store() {
+        final File root = folder.getRoot();
+        new File(root, "persistence").mkdirs();
+        return new FilePersistence(new PathMatchingResourcePatternResolver(new DefaultResourceLoader() {
+            @Override
+            protected Resource getResourceByPath(String path) {
+                return new FileSystemResource(new File(root, path));
+            }
+        }));
+    }
+
+    @Test
+    public void testCloseKeepsStoredData() throws Exception {
+        FilePersistence store = store();
+        SharedObject so = new SharedObject("scores", "/test", true, store);
+        so.setAttribute("a", "1");
+        so.setAttribute("b", "2");
+        // snapshot
+        store.notifyClose();
+        // logged after the snapshot
+        so.setAttribute("c", "3");
+        store.notifyClose();
+        // the reference goes away, its data stays stored
+        so.close();
+        store.notifyClose();
+        SharedObject loaded = new SharedObject("scores", "/test", false);
+        assertTrue(store().load(loaded));
+        assertEquals(3, loaded.getAttributes().size());
+        assertEquals("1", loaded.getAttribute("a"));
+        assertEquals("3", loaded.getAttribute("c"));
+    }
+
+}
@@ -479,17 +479,18 @@ public class SharedObjectTest extends AbstractJUnit4SpringContextTests {
     }
 
     /**
-     * Simple object for incrementing a counter shared in the shared object.
+     * Simple object for incrementing a counter shared in the shared object. The workers increment it concurrently, the shared object does
+     * not serialize them.
      */
     class CounterObject {
 
-        int value;
+        volatile int value;
 
         CounterObject(int value) {
             this.value = value;
         }
 
-        void inc() {
+        synchronized void inc() {
             value++;
         }
 
@@ -0,0 +1,164 @@
+package org.red5.server.stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.red5.server.api.stream.IStreamCapableConnection;
+import org.red5.server.api.stream.ISubscriberStream;
+
+public class TokenBucketServiceTest {
+
+    private TokenBucketService service;
+
+    @Before
+    public void setUp() {
+        service = new TokenBucketService();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        service.destroy();
+    }
+
+    @Test
+    public void testParentLimitsChildren() {
+        ITokenBucket parent = service.createTokenBucket(null, 1000, 1);
+        ITokenBucket first = service.createTokenBucket(parent, 800, 1);
+        ITokenBucket second = service.createTokenBucket(parent, 800, 1);
+        assertTrue(first.acquireToken(600, 0));
+        // the second child has the tokens, the parent does not
+        assertFalse(second.acquireToken(600, 0));
+        assertEquals(800, ((TokenBucket) second).getTokens());
+        assertEquals(400, second.acquireTokenBestEffort(600));
+        assertEquals(0, first.acquireTokenBestEffort(100));
+    }
+
+    @Test
+    public void testRequestLargerThanCapacity() {
+        ITokenBucket bucket = service.createTokenBucket(null, 100, 1);
+        // granted on a full bucket, which then is in debt
+        assertTrue(bucket.acquireToken(250, 0));
+        assertTrue(((TokenBucket) bucket).getTokens() < 0);
+        assertFalse(bucket.acquireToken(1, 0));
+    }
+
+    @Test
+    public void testBlockingAcquireWaitsForRefill() {
+        ITokenBucket bucket = service.createTokenBucket(null, 1000, 10);
+        assertTrue(bucket.acquireToken(1000, 0));
+        long start = System.nanoTime();
+        assertTrue(bucket.acquireToken(50, 1000));
+        long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("waited " + waited, waited >= 4);
+        assertFalse(bucket.acquireToken(1000, 1));
+    }
+
+    @Test
+    public void testCallbackOnTimerWheel() throws InterruptedException {
+        ITokenBucket bucket = service.createTokenBucket(null, 100, 1);
+        assertTrue(bucket.acquireToken(100, 0));
+        CountDownLatch available = new CountDownLatch(1);
+        assertFalse(bucket.acquireTokenNonblocking(30, new ITokenBucket.ITokenBucketCallback() {
+
+            public void available(ITokenBucket bucket, long tokenCount) {
+                // tokens are not taken for the callback
+                if (bucket.acquireToken(tokenCount, 0)) {
+                    available.countDown();
+                }
+            }
+
+            public void reset(ITokenBucket bucket, long tokenCount) {
+            }
+
+        }));
+        assertTrue(available.await(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testResetWakesWaiters() throws InterruptedException {
+        ITokenBucket bucket = service.createTokenBucket(null, 10000, 1);
+        assertTrue(bucket.acquireToken(10000, 0));
+        AtomicBoolean result = new AtomicBoolean(true);
+        // would take about five seconds to refill
+        Thread waiter = new Thread(() -> result.set(bucket.acquireToken(5000, -1)));
+        waiter.start();
+        CountDownLatch reset = new CountDownLatch(1);
+        assertFalse(bucket.acquireTokenNonblocking(5000, new ITokenBucket.ITokenBucketCallback() {
+
+            public void available(ITokenBucket bucket, long tokenCount) {
+            }
+
+            public void reset(ITokenBucket bucket, long tokenCount) {
+                reset.countDown();
+            }
+
+        }));
+        Thread.sleep(50L);
+        bucket.reset();
+        waiter.join(2000L);
+        assertFalse(waiter.isAlive());
+        assertFalse(result.get());
+        // pending callbacks are told
+        assertTrue(reset.await(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testStreamBuckets() {
+        assertNull(service.createStreamBucket(stream(connection())));
+        service.setConnectionSpeed(10);
+        IStreamCapableConnection conn = connection();
+        TokenBucket first = (TokenBucket) service.createStreamBucket(stream(conn));
+        TokenBucket second = (TokenBucket) service.createStreamBucket(stream(conn));
+        assertNotNull(first);
+        // streams of a connection share its bucket
+        assertSame(first.getParent(), second.getParent());
+        assertEquals(10000, first.getParent().getCapacity());
+        assertEquals(1, service.getSharedBucketCount());
+        service.removeTokenBucket(first);
+        assertEquals(1, service.getSharedBucketCount());
+        service.removeTokenBucket(second);
+        assertEquals(0, service.getSharedBucketCount());
+        assertEquals(0, service.getStreamBucketCount());
+    }
+
+    private static IStreamCapableConnection connection() {
+        return (IStreamCapableConnection) Proxy.newProxyInstance(IStreamCapableConnection.class.getClassLoader(), new Class<?>[] { IStreamCapableConnection.class }, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    return null;
+            }
+        });
+    }
+
+    private static ISubscriberStream stream(IStreamCapableConnection conn) {
+        return (ISubscriberStream) Proxy.newProxyInstance(ISubscriberStream.class.getClassLoader(), new Class<?>[] { ISubscriberStream.class }, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getConnection":
+                    return conn;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    return null;
+            }
+        });
+    }
+
+}
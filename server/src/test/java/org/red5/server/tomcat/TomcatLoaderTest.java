@@ -0,0 +1,272 @@
+package org.red5.server.tomcat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.JMX;
+import javax.management.ObjectName;
+import javax.servlet.ServletContext;
+
+import org.apache.catalina.Container;
+import org.apache.catalina.core.StandardContext;
+import org.apache.catalina.core.StandardHost;
+import org.apache.catalina.loader.WebappLoader;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.red5.server.CoreHandler;
+import org.red5.server.Server;
+import org.red5.server.StartupTimeline;
+import org.red5.server.api.scheduling.ISchedulingService;
+import org.red5.server.jmx.mxbeans.LoaderMXBean;
+import org.red5.server.scheduling.JDKSchedulingService;
+import org.red5.server.scope.GlobalScope;
+import org.red5.server.scope.WebScope;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.support.StaticApplicationContext;
+import org.springframework.mock.web.MockServletContext;
+
+public class TomcatLoaderTest {
+
+    private static final int THREADS = 2;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private StubLoader loader;
+
+    private StaticApplicationContext parent;
+
+    private StaticApplicationContext other;
+
+    private StaticApplicationContext root;
+
+    private GlobalScope global;
+
+    private String webappRoot;
+
+    @Before
+    public void setUp() throws Exception {
+        webappRoot = System.getProperty("red5.webapp.root");
+        parent = new StaticApplicationContext();
+        parent.refresh();
+        other = new StaticApplicationContext();
+        other.refresh();
+        root = new StaticApplicationContext();
+        root.registerSingleton(ISchedulingService.BEAN_NAME, JDKSchedulingService.class);
+        root.registerSingleton("red5.server", Server.class);
+        root.getBeanFactory().registerSingleton(TomcatLoader.defaultParentContextKey, parent);
+        root.getBeanFactory().registerSingleton("other.context", other);
+        root.refresh();
+        Server server = root.getBean(Server.class);
+        global = new GlobalScope();
+        global.setServer(server);
+        global.setName("default");
+        global.setHandler(new CoreHandler());
+        global.setPersistenceClass("org.red5.server.persistence.RamPersistence");
+        global.register();
+        StandardHost host = new StandardHost();
+        host.setName("localhost");
+        loader = new StubLoader(server, global);
+        loader.setApplicationContext(root);
+        loader.setHost(host);
+        loader.setStartupThreads(THREADS);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (loader != null) {
+            loader.getStartupExecutor().shutdownNow();
+            loader.setApplicationContext(null);
+        }
+        if (root != null) {
+            root.close();
+        }
+        if (webappRoot != null) {
+            System.setProperty("red5.webapp.root", webappRoot);
+        } else {
+            System.clearProperty("red5.webapp.root");
+        }
+    }
+
+    /** A context with a servlet context of its own, as it would be once Tomcat has started it */
+    private static StandardContext context(String path, String parentContextKey) {
+        final MockServletContext servletContext = new MockServletContext();
+        servletContext.setContextPath(path);
+        servletContext.addInitParameter("contextConfigLocation", "classpath:org/red5/server/tomcat/TomcatLoaderTest.xml");
+        if (parentContextKey != null) {
+            servletContext.addInitParameter("locatorFactorySelector", parentContextKey);
+        }
+        StandardContext ctx = new StandardContext() {
+            @Override
+            public ServletContext getServletContext() {
+                return servletContext;
+            }
+        };
+        ctx.setName(path);
+        ctx.setPath(path);
+        ctx.setLoader(new WebappLoader());
+        return ctx;
+    }
+
+    private static void await(StartupTimeline timeline) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (!timeline.isFinished() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        assertTrue(timeline.toString(), timeline.isFinished());
+    }
+
+    @Test
+    public void testStartContexts() throws Exception {
+        List<Container> containers = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            containers.add(context("/app" + i, i == 3 ? "other.context" : null));
+        }
+        // not a web application, skipped
+        containers.add(new StandardHost());
+        loader.startContexts(containers.toArray(new Container[0]), null);
+        // each parent context was looked up once, on the calling thread
+        assertEquals(1, loader.lookups.get(TomcatLoader.defaultParentContextKey).get());
+        assertEquals(1, loader.lookups.get("other.context").get());
+        assertEquals(2, loader.lookups.size());
+        Map<String, StartupTimeline> timelines;
+        synchronized (loader.timelines) {
+            timelines = Map.copyOf(loader.timelines);
+        }
+        assertEquals(5, timelines.size());
+        for (StartupTimeline timeline : timelines.values()) {
+            await(timeline);
+        }
+        // as many at once as there are start-up threads, never more
+        assertEquals(THREADS, loader.maxActive.get());
+        assertTrue(loader.threads.toString(), loader.threads.size() <= THREADS);
+        assertFalse(loader.threads.contains(Thread.currentThread()));
+        for (int i = 0; i < 5; i++) {
+            String path = "/app" + i;
+            StartupTimeline timeline = timelines.get(path);
+            assertNull(timeline.getFailure());
+            assertEquals(Arrays.asList(StartupTimeline.PARENT_CONTEXT, StartupTimeline.QUEUED, StartupTimeline.CLASS_LOADING, StartupTimeline.REFRESH, StartupTimeline.SCOPE_REGISTRATION, StartupTimeline.START), new ArrayList<>(timeline.getPhases().keySet()));
+            assertSame(i == 3 ? other : parent, loader.parents.get(path));
+            assertTrue(global.hasChildScope(path.substring(1)));
+        }
+    }
+
+    @Test
+    public void testStartWebApplication() throws Exception {
+        loader.setWebappFolder(folder.getRoot().getAbsolutePath());
+        loader.getHost().addChild(context("/live", null));
+        assertTrue(loader.startWebApplication("live"));
+        StartupTimeline timeline;
+        synchronized (loader.timelines) {
+            timeline = loader.timelines.get("/live");
+        }
+        assertNotNull(timeline);
+        await(timeline);
+        assertNull(timeline.getFailure());
+        assertEquals(Arrays.asList(StartupTimeline.QUEUED, StartupTimeline.CLASS_LOADING, StartupTimeline.PARENT_CONTEXT, StartupTimeline.REFRESH), new ArrayList<>(timeline.getPhases().keySet()));
+        // started on the start-up executor, not by the caller
+        assertEquals(1L, ((ThreadPoolExecutor) loader.getStartupExecutor()).getCompletedTaskCount());
+        assertEquals(0, loader.maxActive.get());
+    }
+
+    @Test
+    public void testStartupTimelineOverJmx() throws Exception {
+        loader.startContexts(new Container[] { context("/first", null), context("/second", null) }, null);
+        synchronized (loader.timelines) {
+            for (StartupTimeline timeline : loader.timelines.values()) {
+                await(timeline);
+            }
+        }
+        loader.registerJMX();
+        try {
+            ObjectName oName = new ObjectName("org.red5.server:type=TomcatLoader");
+            LoaderMXBean proxy = JMX.newMXBeanProxy(ManagementFactory.getPlatformMBeanServer(), oName, LoaderMXBean.class);
+            String[] lines = proxy.getStartupTimeline();
+            assertEquals(2, lines.length);
+            // in the order of queueing
+            assertTrue(lines[0], lines[0].startsWith("/first parentContext="));
+            assertTrue(lines[1], lines[1].startsWith("/second parentContext="));
+            assertTrue(lines[1], lines[1].contains("scopeRegistration="));
+        } finally {
+            loader.unregisterJMX();
+        }
+    }
+
+    /** Starts each application by registering its scope, waiting until as many are starting as there are start-up threads */
+    private static class StubLoader extends TomcatLoader {
+
+        final Server server;
+
+        final GlobalScope global;
+
+        final Map<String, AtomicInteger> lookups = new ConcurrentHashMap<>();
+
+        final Map<String, ApplicationContext> parents = new ConcurrentHashMap<>();
+
+        final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+        final CountDownLatch started = new CountDownLatch(THREADS);
+
+        final AtomicInteger active = new AtomicInteger();
+
+        final AtomicInteger maxActive = new AtomicInteger();
+
+        StubLoader(Server server, GlobalScope global) {
+            this.server = server;
+            this.global = global;
+        }
+
+        @Override
+        protected ApplicationContext getParentContext(String parentContextKey) {
+            lookups.computeIfAbsent(parentContextKey, key -> new AtomicInteger()).incrementAndGet();
+            return super.getParentContext(parentContextKey);
+        }
+
+        @Override
+        protected void startContext(StandardContext ctx, ApplicationContext parentContext, StartupTimeline timeline) throws Exception {
+            String contextPath = ctx.getServletContext().getContextPath();
+            parents.put(contextPath, parentContext);
+            threads.add(Thread.currentThread());
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            try {
+                long start = System.nanoTime();
+                started.countDown();
+                started.await(5, TimeUnit.SECONDS);
+                timeline.record(StartupTimeline.CLASS_LOADING, start);
+                timeline.record(StartupTimeline.REFRESH, System.nanoTime());
+                WebScope scope = new WebScope();
+                scope.setServer(server);
+                scope.setParent(global);
+                scope.setContextPath(contextPath);
+                scope.setServletContext(ctx.getServletContext());
+                scope.setPersistenceClass("org.red5.server.persistence.RamPersistence");
+                // recorded by the scope on the timeline of the starting thread
+                scope.register();
+                timeline.record(StartupTimeline.START, System.nanoTime());
+            } finally {
+                active.decrementAndGet();
+            }
+        }
+
+    }
+
+}
@@ -23,6 +23,9 @@ public final class ChildFirstClassLoader extends URLClassLoader {
 
     private ClassLoader system;
 
+    // packages of the libraries of this class loader, null to search them for everything
+    private PackageIndex index;
+
     public ChildFirstClassLoader(URL[] urls) {
         super(urls);
         this.parent = super.getParent();
@@ -44,6 +47,18 @@ public final class ChildFirstClassLoader extends URLClassLoader {
         dumpClassLoaderNames();
     }
 
+    /**
+     * Creates a class loader searching its libraries only for the classes and resources of the packages they contain.
+     *
+     * @param urls the libraries
+     * @param parent the parent class loader
+     * @param index packages of the libraries, or null to search them for everything
+     */
+    public ChildFirstClassLoader(URL[] urls, ClassLoader parent, PackageIndex index) {
+        this(urls, parent);
+        this.index = index;
+    }
+
     private void dumpClassLoaderNames() {
         System.out.printf("[ChildFirstClassLoader] Classloaders:\nSystem %s\nParents Parent %s\nParent %s\nThis class %s\nTCL %s\n\n", system, parentParent, this.parent, ChildFirstClassLoader.class.getClassLoader(), Thread.currentThread().getContextClassLoader());
     }
@@ -69,8 +84,8 @@ public final class ChildFirstClassLoader extends URLClassLoader {
         // First, check if the class has already been loaded
         Class<?> c = findLoadedClass(name);
 
-        // if not loaded, search the local (child) resources
-        if (c == null) {
+        // if not loaded, search the local (child) resources unless none has its package
+        if (c == null && (index == null || index.mayContainClass(name))) {
             try {
                 c = findClass(name);
             } catch (ClassNotFoundException cnfe) {
@@ -125,7 +140,7 @@ public final class ChildFirstClassLoader extends URLClassLoader {
      */
     @Override
     public URL getResource(String name) {
-        URL url = findResource(name);
+        URL url = index == null || index.mayContainResource(name) ? findResource(name) : null;
         // If local search failed, delegate to parent
         if (url == null) {
             url = this.parent.getResource(name);
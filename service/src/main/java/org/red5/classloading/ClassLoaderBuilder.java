@@ -10,7 +10,6 @@ package org.red5.classloading;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
@@ -19,15 +18,17 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.jar.JarEntry;
-import java.util.jar.JarInputStream;
+import java.util.jar.JarFile;
 import java.util.regex.Pattern;
 
 /**
@@ -149,8 +150,19 @@ public final class ClassLoaderBuilder {
             } catch (Exception e) {
                 System.err.printf("Exception %s\n", e);
             }
-            // look over the libraries and remove the old versions
-            scrubURLList(urlList);
+            // look over the libraries and remove the old versions, unless they were looked over already
+            ClassLoaderCache cache = ClassLoaderCache.getInstance();
+            List<URL> selected = cache != null ? cache.getSelectedLibraries(urlList) : null;
+            if (selected != null) {
+                urlList.clear();
+                urlList.addAll(selected);
+            } else {
+                List<URL> libraries = new ArrayList<>(urlList);
+                scrubURLList(urlList);
+                if (cache != null) {
+                    cache.setSelectedLibraries(libraries, urlList);
+                }
+            }
             // get config dir
             Path confDir = null;
             String conf = System.getProperty("red5.config_root");
@@ -209,6 +221,7 @@ public final class ClassLoaderBuilder {
                 loader = new URLClassLoader(urls, parent);
             }
         } else {
+            ClassLoaderCache cache = ClassLoaderCache.getInstance();
             List<String> standardLibs = new ArrayList<String>(7);
             if (path != null) {
                 try {
@@ -255,24 +268,24 @@ public final class ClassLoaderBuilder {
                         System.err.printf("Exception %s\n", e);
                     }
                 } else {
-                    try (InputStream is = Files.newInputStream(path); JarInputStream jarStream = new JarInputStream(is)) {
-                        JarEntry entry = jarStream.getNextJarEntry();
-                        while (entry != null) {
+                    // the central directory lists the libraries, the war is not read through
+                    try (JarFile war = new JarFile(path.toFile())) {
+                        Enumeration<JarEntry> entries = war.entries();
+                        while (entries.hasMoreElements()) {
+                            JarEntry entry = entries.nextElement();
                             String entryName = entry.getName();
                             if (entryName.startsWith("WEB-INF/lib/") && entryName.endsWith(".jar") && !standardLibs.contains(entryName.substring(12))) {
-                                Path tempJarFile = unpack(jarStream, entryName);
-                                urlList.add(tempJarFile.toUri().toURL());
+                                Path jarFile = cache != null ? cache.unpack(war, entry) : unpack(war, entry);
+                                urlList.add(jarFile.toUri().toURL());
                             }
-                            entry = jarStream.getNextJarEntry();
                         }
-                        jarStream.close();
                     } catch (IOException e) {
                         System.err.printf("Exception %s\n", e);
                     }
                 }
             }
             urls = urlList.toArray(new URL[0]);
-            loader = new ChildFirstClassLoader(urls, parent);
+            loader = new ChildFirstClassLoader(urls, parent, cache != null ? cache.index(urls) : null);
         }
         Thread.currentThread().setContextClassLoader(loader);
         // loop thru all the current urls
@@ -284,26 +297,22 @@ public final class ClassLoaderBuilder {
     }
 
     /**
-     * Unpack the specified entry from the JAR file.
+     * Unpack the specified entry from the JAR file, used when the class loader cache is disabled.
      *
-     * @param jarStream
-     *            The input stream of the JAR file positioned at the entry
-     * @param entryName
-     *            The name of the entry to extract
+     * @param jar
+     *            The JAR file
+     * @param entry
+     *            The entry to extract
      * @return The extracted file. The created file is a temporary file in the temporary directory
      * @throws IOException
      *             if the JAR file cannot be read or is incorrect
      */
-    private static Path unpack(JarInputStream jarStream, String entryName) throws IOException {
+    private static Path unpack(JarFile jar, JarEntry entry) throws IOException {
+        String entryName = entry.getName();
         String libName = entryName.substring(entryName.lastIndexOf('/') + 1, entryName.length() - 4);
         Path tempJarFile = Files.createTempFile("tmp_" + libName, ".jar");
-        try (OutputStream os = Files.newOutputStream(tempJarFile)) {
-            // Transfer bytes from the JAR file to the output file
-            byte[] buf = new byte[1024];
-            int len;
-            while ((len = jarStream.read(buf)) > 0) {
-                os.write(buf, 0, len);
-            }
+        try (InputStream is = jar.getInputStream(entry)) {
+            Files.copy(is, tempJarFile, StandardCopyOption.REPLACE_EXISTING);
         }
         return tempJarFile;
     }
@@ -0,0 +1,442 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.classloading;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.CRC32;
+
+/**
+ * Start-up cache of the class loader builder, kept across restarts so that a server started again with the same libraries does not scan
+ * them again. It holds:
+ * <ul>
+ * <li>the libraries of a WAR file, unpacked in directories named after their size and checksum so an unchanged library is unpacked once</li>
+ * <li>the packages of each library, the index used by {@link ChildFirstClassLoader} to only search its own libraries for the classes and
+ * resources they contain</li>
+ * <li>the libraries selected among those of the red5 lib directory once their older versions were removed</li>
+ * </ul>
+ * Libraries are told apart by their path, size and modification time; a library that changed is scanned again. The cache is in the
+ * directory named by the <i>red5.classloader.cache</i> system property, <i>work/classloader</i> in the red5 root by default, and is disabled
+ * when the property is <i>none</i> or there is no red5 root. The directory is only used if it belongs to the user running the server, and is
+ * closed to other users. It may be deleted at any time the server is stopped.
+ *
+ * @author The Red5 Project
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+public final class ClassLoaderCache {
+
+    public static final String CACHE_PROPERTY = "red5.classloader.cache";
+
+    private static final String INDEX_FILE = "packages.idx";
+
+    private static final String LIBRARIES_FILE = "libraries.idx";
+
+    private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString("rwx------");
+
+    private final Path dir;
+
+    private ClassLoaderCache(Path dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Returns the cache in the configured directory.
+     *
+     * @return cache or null if it is disabled or its directory cannot be created
+     */
+    public static ClassLoaderCache getInstance() {
+        String location = System.getProperty(CACHE_PROPERTY);
+        if ("none".equalsIgnoreCase(location)) {
+            return null;
+        }
+        Path dir = null;
+        if (location != null) {
+            dir = Paths.get(location);
+        } else {
+            String home = System.getProperty("red5.root", System.getenv("RED5_HOME"));
+            if (home == null) {
+                // no directory of our own to put it in
+                return null;
+            }
+            dir = Paths.get(home, "work", "classloader");
+        }
+        return open(dir);
+    }
+
+    /**
+     * Returns the cache in the given directory, creating the directory readable and writable by the current user only.
+     *
+     * @param dir
+     *            cache directory
+     * @return cache or null if the directory cannot be created or belongs to another user
+     */
+    static ClassLoaderCache open(Path dir) {
+        try {
+            return new ClassLoaderCache(createPrivateDirectory(dir.toAbsolutePath()));
+        } catch (IOException e) {
+            System.err.printf("Class loader cache disabled, %s cannot be used: %s%n", dir, e);
+            return null;
+        }
+    }
+
+    /**
+     * Creates a directory only its owner may use. The cache decides which libraries the server loads, so an existing directory is only used
+     * if it belongs to the current user; it is closed to others if it was not.
+     *
+     * @param dir
+     *            directory
+     * @return the directory
+     * @throws IOException
+     *             if it cannot be created or belongs to another user
+     */
+    private static Path createPrivateDirectory(Path dir) throws IOException {
+        if (!dir.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            return Files.createDirectories(dir);
+        }
+        Files.createDirectories(dir.getParent());
+        try {
+            Files.createDirectory(dir, PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+        } catch (FileAlreadyExistsException e) {
+            // checked below
+        }
+        PosixFileAttributes attrs = Files.readAttributes(dir, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        if (!attrs.isDirectory()) {
+            throw new IOException("Not a directory");
+        }
+        UserPrincipal user = dir.getFileSystem().getUserPrincipalLookupService().lookupPrincipalByName(System.getProperty("user.name"));
+        if (!user.equals(attrs.owner())) {
+            throw new IOException("Owned by " + attrs.owner());
+        }
+        if (!OWNER_ONLY.equals(attrs.permissions())) {
+            Files.setPosixFilePermissions(dir, OWNER_ONLY);
+        }
+        return dir;
+    }
+
+    /**
+     * Returns a library of a WAR file, unpacking it only if no unpacked copy with the same size and checksum exists.
+     *
+     * @param war
+     *            the WAR file
+     * @param entry
+     *            the library entry
+     * @return the unpacked library
+     * @throws IOException
+     *             if the WAR file cannot be read or the library written
+     */
+    public Path unpack(JarFile war, JarEntry entry) throws IOException {
+        String entryName = entry.getName();
+        String fileName = entryName.substring(entryName.lastIndexOf('/') + 1);
+        // size and checksum come from the central directory of the war, the library need not be inflated to find its copy
+        Path libDir = dir.resolve("lib").resolve(String.format("%x-%08x", entry.getSize(), entry.getCrc()));
+        Path libFile = libDir.resolve(fileName);
+        if (Files.isRegularFile(libFile, LinkOption.NOFOLLOW_LINKS) && matches(libFile, entry)) {
+            return libFile;
+        }
+        Files.createDirectories(libDir);
+        // unpack next to the final file, then move it in place so no partly written library is ever used
+        Path tempFile = Files.createTempFile(libDir, fileName, ".tmp");
+        try (InputStream in = war.getInputStream(entry)) {
+            Files.copy(in, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            move(tempFile, libFile);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+        return libFile;
+    }
+
+    /**
+     * Returns whether an unpacked library has the size and checksum of its entry.
+     *
+     * @param file
+     *            unpacked library
+     * @param entry
+     *            library entry
+     * @return true if it does
+     * @throws IOException
+     *             if the library cannot be read
+     */
+    private static boolean matches(Path file, JarEntry entry) throws IOException {
+        if (Files.size(file) != entry.getSize()) {
+            return false;
+        }
+        CRC32 crc = new CRC32();
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buf = new byte[8192];
+            int len;
+            while ((len = in.read(buf)) > 0) {
+                crc.update(buf, 0, len);
+            }
+        }
+        return crc.getValue() == entry.getCrc();
+    }
+
+    /**
+     * Returns the libraries selected earlier among the same libraries.
+     *
+     * @param libraries
+     *            all the libraries found
+     * @return selected libraries or null if the libraries changed since they were selected
+     */
+    public List<URL> getSelectedLibraries(Collection<URL> libraries) {
+        Map<String, String> entries = read(dir.resolve(LIBRARIES_FILE));
+        if (entries.isEmpty() || !fingerprint(libraries).equals(entries.remove("#fingerprint"))) {
+            return null;
+        }
+        Map<String, URL> found = new HashMap<>();
+        for (URL url : libraries) {
+            found.put(url.toExternalForm(), url);
+        }
+        List<URL> selected = new ArrayList<>(entries.size());
+        for (String url : entries.keySet()) {
+            // only libraries just found may be selected
+            URL library = found.get(url);
+            if (library == null) {
+                return null;
+            }
+            selected.add(library);
+        }
+        return selected;
+    }
+
+    /**
+     * Saves the libraries selected among the libraries found.
+     *
+     * @param libraries
+     *            all the libraries found
+     * @param selected
+     *            selected libraries
+     */
+    public void setSelectedLibraries(Collection<URL> libraries, Collection<URL> selected) {
+        Map<String, String> entries = new LinkedHashMap<>();
+        entries.put("#fingerprint", fingerprint(libraries));
+        for (URL url : selected) {
+            entries.put(url.toExternalForm(), "");
+        }
+        write(dir.resolve(LIBRARIES_FILE), entries);
+    }
+
+    /**
+     * Returns the index of the packages found in the given class path entries, scanning only the libraries that are not indexed yet or that
+     * changed since they were.
+     *
+     * @param urls
+     *            class path entries
+     * @return package index
+     */
+    public PackageIndex index(URL[] urls) {
+        Path indexFile = dir.resolve(INDEX_FILE);
+        Map<String, String> cached = read(indexFile);
+        Map<String, String> entries = new HashMap<>();
+        Set<String> packages = new TreeSet<>();
+        boolean complete = true, changed = false;
+        for (URL url : urls) {
+            String key = key(url);
+            String packageList = key != null ? cached.get(key) : null;
+            if (packageList == null && key != null) {
+                packageList = scan(url);
+                changed = true;
+            }
+            if (packageList == null) {
+                // a directory or a library that could not be read, it is searched for everything
+                complete = false;
+                continue;
+            }
+            entries.put(key, packageList);
+            for (String name : packageList.split(",")) {
+                if (!name.isEmpty()) {
+                    packages.add(name);
+                }
+            }
+        }
+        if (changed) {
+            // drop the earlier versions of these libraries, keep those of other class loaders
+            Set<String> locations = new TreeSet<>();
+            entries.keySet().forEach(key -> locations.add(key.substring(0, key.indexOf('|'))));
+            cached.keySet().removeIf(key -> key.indexOf('|') < 0 || locations.contains(key.substring(0, key.indexOf('|'))));
+            cached.putAll(entries);
+            write(indexFile, cached);
+        }
+        return new PackageIndex(packages, complete);
+    }
+
+    /**
+     * Returns the cache key of a library or a directory of a library: its path, size and modification time.
+     *
+     * @param url
+     *            class path entry
+     * @return key or null if the entry is not a library
+     */
+    private static String key(URL url) {
+        String[] parts = split(url);
+        if (parts == null) {
+            return null;
+        }
+        try {
+            Path file = Paths.get(parts[0]);
+            if (!Files.isRegularFile(file)) {
+                return null;
+            }
+            return String.format("%s!/%s|%d|%d", file.toAbsolutePath(), parts[1], Files.size(file), Files.getLastModifiedTime(file).toMillis());
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Lists the packages of a library, or of a directory within it, as a comma separated list.
+     *
+     * @param url
+     *            class path entry
+     * @return packages or null if the library cannot be read
+     */
+    private static String scan(URL url) {
+        String[] parts = split(url);
+        String prefix = parts[1];
+        Set<String> packages = new TreeSet<>();
+        try (JarFile jar = new JarFile(parts[0])) {
+            for (Enumeration<JarEntry> en = jar.entries(); en.hasMoreElements();) {
+                String name = en.nextElement().getName();
+                if (name.startsWith(prefix)) {
+                    packages.add(PackageIndex.packageOf(name.substring(prefix.length())));
+                }
+            }
+        } catch (IOException e) {
+            System.err.printf("Exception %s%n", e);
+            return null;
+        }
+        return String.join(",", packages);
+    }
+
+    /**
+     * Splits a class path entry into the path of its library and the directory within the library.
+     *
+     * @param url
+     *            file or jar url
+     * @return path and directory, or null if the entry is not a library
+     */
+    private static String[] split(URL url) {
+        try {
+            if ("file".equals(url.getProtocol())) {
+                String path = Paths.get(url.toURI()).toString();
+                return path.endsWith(".jar") || path.endsWith(".war") ? new String[] { path, "" } : null;
+            }
+            if ("jar".equals(url.getProtocol())) {
+                String spec = url.getPath();
+                int sep = spec.indexOf("!/");
+                if (sep > 0 && spec.startsWith("file:")) {
+                    return new String[] { Paths.get(new URL(spec.substring(0, sep)).toURI()).toString(), spec.substring(sep + 2) };
+                }
+            }
+        } catch (MalformedURLException | URISyntaxException | RuntimeException e) {
+            // not a local library
+        }
+        return null;
+    }
+
+    private static String fingerprint(Collection<URL> libraries) {
+        Set<String> keys = new TreeSet<>();
+        for (URL url : libraries) {
+            String key = key(url);
+            keys.add(key != null ? key : url.toExternalForm());
+        }
+        return Integer.toHexString(keys.hashCode()) + '-' + keys.size();
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Reads a cache file of lines holding a key, a tab and a value.
+     *
+     * @param file
+     *            cache file
+     * @return entries, empty if the file does not exist or cannot be read
+     */
+    private static Map<String, String> read(Path file) {
+        Map<String, String> entries = new LinkedHashMap<>();
+        if (Files.isRegularFile(file)) {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int tab = line.indexOf('\t');
+                    if (tab > 0) {
+                        entries.put(line.substring(0, tab), line.substring(tab + 1));
+                    }
+                }
+            } catch (IOException e) {
+                System.err.printf("Exception %s%n", e);
+                entries.clear();
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Writes a cache file, replacing the previous one at once so that servers starting at the same time never read a partial file.
+     *
+     * @param file
+     *            cache file
+     * @param entries
+     *            entries
+     */
+    private static void write(Path file, Map<String, String> entries) {
+        try {
+            Path tempFile = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            try {
+                try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                    for (Map.Entry<String, String> entry : entries.entrySet()) {
+                        writer.write(entry.getKey());
+                        writer.write('\t');
+                        writer.write(entry.getValue());
+                        writer.newLine();
+                    }
+                }
+                move(tempFile, file);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+        } catch (IOException e) {
+            System.err.printf("Exception %s%n", e);
+        }
+    }
+
+}
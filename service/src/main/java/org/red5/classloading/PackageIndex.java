@@ -0,0 +1,79 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.classloading;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Packages found in the libraries of a class loader. A class or resource in a package none of the libraries contain cannot be found by
+ * searching them, so the class loader goes to its parent straight away instead of searching every library first.
+ *
+ * @author The Red5 Project
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+public final class PackageIndex {
+
+    private final Set<String> packages;
+
+    // false when some class path entries, such as directories, were not indexed
+    private final boolean complete;
+
+    PackageIndex(Set<String> packages, boolean complete) {
+        this.packages = new HashSet<>(packages);
+        this.complete = complete;
+    }
+
+    /**
+     * Returns the package of a resource as a path.
+     *
+     * @param resourceName
+     *            resource name, such as <i>org/red5/server/Server.class</i>
+     * @return package, such as <i>org/red5/server</i>, or an empty string for the root
+     */
+    static String packageOf(String resourceName) {
+        int slash = resourceName.lastIndexOf('/');
+        return slash > 0 ? resourceName.substring(0, slash) : "";
+    }
+
+    /**
+     * Returns whether a class may be in the indexed libraries.
+     *
+     * @param className
+     *            binary name of the class
+     * @return false if the class is surely not in them
+     */
+    public boolean mayContainClass(String className) {
+        return mayContainResource(className.replace('.', '/').concat(".class"));
+    }
+
+    /**
+     * Returns whether a resource may be in the indexed libraries.
+     *
+     * @param resourceName
+     *            resource name
+     * @return false if the resource is surely not in them
+     */
+    public boolean mayContainResource(String resourceName) {
+        if (!complete) {
+            return true;
+        }
+        String name = resourceName.startsWith("/") ? resourceName.substring(1) : resourceName;
+        String pkg = packageOf(name);
+        return pkg.isEmpty() || packages.contains(pkg);
+    }
+
+    public int size() {
+        return packages.size();
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+}
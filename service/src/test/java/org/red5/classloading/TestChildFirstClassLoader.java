@@ -0,0 +1,75 @@
+package org.red5.classloading;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestChildFirstClassLoader {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static String read(URL url) throws Exception {
+        try (InputStream in = url.openStream()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void testMayContainResource() {
+        PackageIndex index = new PackageIndex(new HashSet<>(Arrays.asList("META-INF", "org/example")), true);
+        // the root is never ruled out
+        assertTrue(index.mayContainResource("logback.xml"));
+        assertTrue(index.mayContainResource("/logback.xml"));
+        assertTrue(index.mayContainResource("META-INF/MANIFEST.MF"));
+        assertFalse(index.mayContainResource("META-INF/services/java.sql.Driver"));
+        assertTrue(index.mayContainResource("/org/example/data.txt"));
+        assertFalse(index.mayContainResource("org/other/data.txt"));
+        assertTrue(index.mayContainClass("org.example.A$Inner"));
+        assertFalse(index.mayContainClass("java.lang.String"));
+        // not everything was indexed, nothing is ruled out
+        index = new PackageIndex(Collections.singleton("org/example"), false);
+        assertTrue(index.mayContainResource("org/other/data.txt"));
+    }
+
+    @Test
+    public void testFallsThroughToParent() throws Exception {
+        Path parentJar = TestClassLoaderCache.jar(folder.getRoot().toPath().resolve("parent.jar"), "com/parent/p.txt", "com/shared/s.txt");
+        Path childJar = TestClassLoaderCache.jar(folder.getRoot().toPath().resolve("child.jar"), "org/example/c.txt", "com/shared/s.txt");
+        URL[] urls = { childJar.toUri().toURL() };
+        ClassLoaderCache cache = ClassLoaderCache.open(folder.getRoot().toPath().resolve("cache"));
+        try (URLClassLoader parent = new URLClassLoader(new URL[] { parentJar.toUri().toURL() }, getClass().getClassLoader()); ChildFirstClassLoader loader = new ChildFirstClassLoader(urls, parent, cache.index(urls))) {
+            // packages the child does not hold come from the parent
+            URL url = loader.getResource("com/parent/p.txt");
+            assertNotNull(url);
+            assertTrue(url.toString(), url.toString().contains("parent.jar"));
+            assertSame(String.class, loader.loadClass("java.lang.String"));
+            assertSame(Test.class, loader.loadClass("org.junit.Test"));
+            // child first for those it does
+            assertTrue(loader.getResource("com/shared/s.txt").toString().contains("child.jar"));
+            assertEquals("org/example/c.txt", read(loader.getResource("org/example/c.txt")));
+        }
+        // the index is what is consulted: a package left out of it is not searched in the child
+        try (ChildFirstClassLoader loader = new ChildFirstClassLoader(urls, getClass().getClassLoader(), new PackageIndex(Collections.singleton("com/shared"), true))) {
+            assertNull(loader.getResource("org/example/c.txt"));
+            assertNotNull(loader.getResource("com/shared/s.txt"));
+        }
+    }
+
+}
@@ -0,0 +1,197 @@
+package org.red5.classloading;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Collectors;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestClassLoaderCache {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ClassLoaderCache cache;
+
+    private Path indexFile;
+
+    @Before
+    public void setUp() throws Exception {
+        Path dir = folder.getRoot().toPath().resolve("cache");
+        cache = ClassLoaderCache.open(dir);
+        assertNotNull(cache);
+        indexFile = dir.resolve("packages.idx");
+    }
+
+    static Path jar(Path file, String... entries) throws IOException {
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(file))) {
+            for (String entry : entries) {
+                out.putNextEntry(new JarEntry(entry));
+                out.write(entry.getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+        return file;
+    }
+
+    private static URL url(Path file) throws IOException {
+        return file.toUri().toURL();
+    }
+
+    /** Replaces the cached packages of every library, so a hit shows the replacement and a miss the packages scanned again */
+    private void plant(String packages) throws IOException {
+        List<String> lines = Files.readAllLines(indexFile).stream().map(line -> line.substring(0, line.indexOf('\t') + 1) + packages).collect(Collectors.toList());
+        Files.write(indexFile, lines);
+    }
+
+    @Test
+    public void testIndexHitAndMiss() throws Exception {
+        Path lib = jar(folder.getRoot().toPath().resolve("lib-1.0.jar"), "org/example/A.class");
+        URL[] urls = { url(lib) };
+        PackageIndex index = cache.index(urls);
+        assertTrue(index.isComplete());
+        assertTrue(index.mayContainClass("org.example.A"));
+        assertFalse(index.mayContainClass("com.other.B"));
+        // unchanged library, the cached packages are used
+        plant("com/planted");
+        index = cache.index(urls);
+        assertTrue(index.mayContainClass("com.planted.C"));
+        assertFalse(index.mayContainClass("org.example.A"));
+        // modification time changed, scanned again
+        Files.setLastModifiedTime(lib, FileTime.fromMillis(Files.getLastModifiedTime(lib).toMillis() - 10000L));
+        index = cache.index(urls);
+        assertTrue(index.mayContainClass("org.example.A"));
+        assertFalse(index.mayContainClass("com.planted.C"));
+        // size changed, scanned again
+        plant("com/planted");
+        FileTime mtime = Files.getLastModifiedTime(lib);
+        jar(lib, "org/example/A.class", "org/example/sub/B.class");
+        Files.setLastModifiedTime(lib, mtime);
+        index = cache.index(urls);
+        assertTrue(index.mayContainClass("org.example.sub.B"));
+        assertFalse(index.mayContainClass("com.planted.C"));
+        // one line per library
+        assertEquals(1, Files.readAllLines(indexFile).size());
+    }
+
+    @Test
+    public void testIndexKeepsOtherLoaders() throws Exception {
+        Path libA = jar(folder.getRoot().toPath().resolve("a.jar"), "org/a/A.class");
+        Path libB = jar(folder.getRoot().toPath().resolve("b.jar"), "org/b/B.class");
+        cache.index(new URL[] { url(libA) });
+        PackageIndex index = cache.index(new URL[] { url(libB) });
+        assertFalse(index.mayContainClass("org.a.A"));
+        assertEquals(2, Files.readAllLines(indexFile).size());
+        // the first loader still hits its entry
+        plant("org/planted");
+        index = cache.index(new URL[] { url(libA) });
+        assertTrue(index.mayContainClass("org.planted.P"));
+        assertEquals(2, Files.readAllLines(indexFile).size());
+    }
+
+    @Test
+    public void testIndexDirectoryOfWar() throws Exception {
+        Path war = jar(folder.getRoot().toPath().resolve("app.war"), "WEB-INF/classes/com/example/App.class", "WEB-INF/lib/x.jar");
+        URL classes = new URL("jar:" + url(war) + "!/WEB-INF/classes/");
+        PackageIndex index = cache.index(new URL[] { classes, folder.getRoot().toURI().toURL() });
+        // a directory on the class path is not indexed
+        assertFalse(index.isComplete());
+        index = cache.index(new URL[] { classes });
+        assertTrue(index.isComplete());
+        assertTrue(index.mayContainClass("com.example.App"));
+        assertFalse(index.mayContainResource("WEB-INF/lib/x.jar"));
+    }
+
+    @Test
+    public void testUnpackChecksContent() throws Exception {
+        Path inner = jar(folder.getRoot().toPath().resolve("inner.jar"), "org/inner/I.class");
+        byte[] bytes = Files.readAllBytes(inner);
+        Path war = folder.getRoot().toPath().resolve("app.war");
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(war))) {
+            out.putNextEntry(new JarEntry("WEB-INF/lib/inner.jar"));
+            out.write(bytes);
+            out.closeEntry();
+        }
+        try (JarFile jar = new JarFile(war.toFile())) {
+            JarEntry entry = jar.getJarEntry("WEB-INF/lib/inner.jar");
+            Path unpacked = cache.unpack(jar, entry);
+            assertArrayEquals(bytes, Files.readAllBytes(unpacked));
+            // reused as is
+            FileTime mtime = FileTime.fromMillis(1000000L);
+            Files.setLastModifiedTime(unpacked, mtime);
+            assertEquals(unpacked, cache.unpack(jar, entry));
+            assertEquals(mtime, Files.getLastModifiedTime(unpacked));
+            // same size, other content: unpacked again
+            byte[] planted = bytes.clone();
+            planted[planted.length / 2] ^= 0x55;
+            Files.write(unpacked, planted);
+            assertEquals(unpacked, cache.unpack(jar, entry));
+            assertArrayEquals(bytes, Files.readAllBytes(unpacked));
+        }
+    }
+
+    @Test
+    public void testSelectedLibraries() throws Exception {
+        List<URL> libraries = new ArrayList<>();
+        for (String name : new String[] { "a-1.0.jar", "a-2.0.jar", "b-1.0.jar" }) {
+            libraries.add(url(jar(folder.getRoot().toPath().resolve(name), "META-INF/")));
+        }
+        List<URL> selected = Arrays.asList(libraries.get(1), libraries.get(2));
+        assertNull(cache.getSelectedLibraries(libraries));
+        cache.setSelectedLibraries(libraries, selected);
+        assertEquals(selected, cache.getSelectedLibraries(libraries));
+        // a library changed, selected again
+        Files.setLastModifiedTime(Path.of(libraries.get(0).toURI()), FileTime.fromMillis(1000000L));
+        assertNull(cache.getSelectedLibraries(libraries));
+        cache.setSelectedLibraries(libraries, selected);
+        // a library that was not found is never selected
+        Path file = folder.getRoot().toPath().resolve("cache").resolve("libraries.idx");
+        try (OutputStream out = Files.newOutputStream(file, StandardOpenOption.APPEND)) {
+            out.write("file:/tmp/planted.jar\t\n".getBytes(StandardCharsets.UTF_8));
+        }
+        assertNull(cache.getSelectedLibraries(libraries));
+    }
+
+    @Test
+    public void testPrivateDirectory() throws Exception {
+        Path dir = folder.getRoot().toPath().resolve("shared");
+        Assume.assumeTrue(dir.getFileSystem().supportedFileAttributeViews().contains("posix"));
+        assertNotNull(ClassLoaderCache.open(dir));
+        assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(dir)));
+        // opened up by someone, closed again
+        Files.setPosixFilePermissions(dir, PosixFilePermissions.fromString("rwxrwxrwx"));
+        assertNotNull(ClassLoaderCache.open(dir));
+        assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(dir)));
+        // a file or link in place of the directory is not used
+        Path file = Files.createFile(folder.getRoot().toPath().resolve("file"));
+        assertNull(ClassLoaderCache.open(file));
+        Path link = folder.getRoot().toPath().resolve("link");
+        Files.createSymbolicLink(link, dir);
+        assertNull(ClassLoaderCache.open(link));
+    }
+
+}